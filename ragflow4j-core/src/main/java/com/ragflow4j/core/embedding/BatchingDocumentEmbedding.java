@@ -0,0 +1,438 @@
+package com.ragflow4j.core.embedding;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotEmpty;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * 在 DocumentEmbedding 之前做动态微批的装饰器
+ * <p>
+ * 并发的单条请求先进入队列，攒够 maxBatchSize 条或最早的请求等待超过最大延迟后，一起交给被装饰模型的
+ * {@link DocumentEmbedding#embedBatch(List)}，再分别完成各自的 future。一批请求按文本长度排序后切分为若干长度桶，
+ * 每个桶单独调用一次，桶内最长的文本不超过最短的两倍，填充浪费因此有界。
+ * <p>
+ * 请求分为两个通道：{@link Priority#QUERY} 用于在线查询，最大延迟更短，并且在分发和执行时都排在
+ * {@link Priority#BULK} 之前；批量导入走 BULK 通道，换取更大的批次。
+ */
+public class BatchingDocumentEmbedding implements DocumentEmbedding, AutoCloseable {
+    // 短于此长度的文本不再按长度分桶
+    private static final int MIN_BUCKET_CHARS = 32;
+
+    /**
+     * 请求通道
+     */
+    public enum Priority {
+        QUERY, BULK
+    }
+
+    private final DocumentEmbedding delegate;
+    private final int maxBatchSize;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    // 按优先级排列，分发时先检查靠前的通道
+    private final Lane[] lanes;
+    private final AtomicLong sequence = new AtomicLong();
+    private final Thread dispatcher;
+    private boolean closed;
+    // 分发线程异常退出的原因，之后的请求直接以它失败
+    private Throwable dispatcherFailure;
+
+    private BatchingDocumentEmbedding(Builder builder) {
+        this.delegate = ensureNotNull(builder.delegate, "delegate");
+        this.maxBatchSize = ensureGreaterThanZero(builder.maxBatchSize, "maxBatchSize");
+        ensureTrue(builder.queryMaxDelayMillis >= 0, "queryMaxDelayMillis must not be negative");
+        ensureTrue(builder.maxDelayMillis >= 0, "maxDelayMillis must not be negative");
+        this.lanes = new Lane[]{
+            new Lane(Priority.QUERY, builder.queryMaxDelayMillis),
+            new Lane(Priority.BULK, builder.maxDelayMillis)
+        };
+        if (builder.executor != null) {
+            this.executor = builder.executor;
+            this.ownsExecutor = false;
+        } else {
+            int threads = Runtime.getRuntime().availableProcessors();
+            // 排队的批次中查询批次先执行
+            this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>());
+            this.ownsExecutor = true;
+        }
+        this.dispatcher = new Thread(this::dispatch, "embedding-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    /**
+     * 创建一个新的Builder实例
+     *
+     * @return Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 同步调用方通常在等待查询结果，走 QUERY 通道
+     */
+    @Override
+    public float[] embed(String text) {
+        return embedAsync(text, Priority.QUERY).join();
+    }
+
+    /**
+     * 走 BULK 通道；在线查询请使用 {@link #embedAsync(String, Priority)} 指定 QUERY
+     */
+    @Override
+    public CompletableFuture<float[]> embedAsync(String text) {
+        return embedAsync(text, Priority.BULK);
+    }
+
+    /**
+     * 把一条文本加入指定通道，与其他调用方的请求合并推理
+     *
+     * @param text 输入文本
+     * @param priority 请求通道
+     * @return 包含向量表示的CompletableFuture
+     */
+    public CompletableFuture<float[]> embedAsync(String text, Priority priority) {
+        ensureNotNull(text, "text");
+        ensureNotNull(priority, "priority");
+        Request request = new Request(text);
+        lock.lock();
+        try {
+            if (closed) {
+                request.future.completeExceptionally(dispatcherFailure != null
+                    ? new IllegalStateException("BatchingDocumentEmbedding dispatcher has stopped", dispatcherFailure)
+                    : new IllegalStateException("BatchingDocumentEmbedding is closed"));
+                return request.future;
+            }
+            Lane lane = lanes[priority.ordinal()];
+            lane.pending.add(request);
+            // 只有出现新的截止时间或攒满一批时才需要唤醒分发线程
+            if (lane.pending.size() == 1 || lane.pending.size() == maxBatchSize) {
+                changed.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return request.future;
+    }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        return embedBatchAsync(texts).join();
+    }
+
+    /**
+     * 每条文本单独进入 BULK 通道，可以与其他调用方的文本合并
+     */
+    @Override
+    public CompletableFuture<List<float[]>> embedBatchAsync(List<String> texts) {
+        ensureNotEmpty(texts, "texts");
+        List<CompletableFuture<float[]>> futures = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            futures.add(embedAsync(text, Priority.BULK));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<float[]> embeddings = new ArrayList<>(futures.size());
+            for (CompletableFuture<float[]> future : futures) {
+                embeddings.add(future.join());
+            }
+            return embeddings;
+        });
+    }
+
+    @Override
+    public int getDimension() {
+        return delegate.getDimension();
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    /**
+     * 停止接收新的请求，已排队的请求照常完成
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            dispatcher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    /**
+     * 分发线程意外退出时让排队中和之后的请求失败，而不是永远等待
+     */
+    private void dispatch() {
+        try {
+            dispatchLoop();
+        } catch (Throwable t) {
+            lock.lock();
+            try {
+                failPending(t);
+            } finally {
+                lock.unlock();
+            }
+            throw t;
+        }
+    }
+
+    /**
+     * 等待某个通道攒满一批或到达截止时间，取出一批交给执行线程池
+     */
+    private void dispatchLoop() {
+        while (true) {
+            Lane ready = null;
+            List<Request> batch;
+            lock.lock();
+            try {
+                while (ready == null) {
+                    long now = System.nanoTime();
+                    long wait = Long.MAX_VALUE;
+                    boolean empty = true;
+                    for (Lane lane : lanes) {
+                        if (lane.pending.isEmpty()) {
+                            continue;
+                        }
+                        empty = false;
+                        long due = lane.pending.peek().enqueued + lane.maxDelayNanos;
+                        if (closed || lane.pending.size() >= maxBatchSize || due <= now) {
+                            ready = lane;
+                            break;
+                        }
+                        wait = Math.min(wait, due - now);
+                    }
+                    if (ready != null) {
+                        break;
+                    }
+                    if (empty && closed) {
+                        return;
+                    }
+                    if (empty) {
+                        changed.await();
+                    } else {
+                        changed.awaitNanos(wait);
+                    }
+                }
+                batch = new ArrayList<>(Math.min(maxBatchSize, ready.pending.size()));
+                while (batch.size() < maxBatchSize && !ready.pending.isEmpty()) {
+                    batch.add(ready.pending.poll());
+                }
+            } catch (InterruptedException e) {
+                failPending(e);
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                executor.execute(new BatchTask(ready.priority, sequence.getAndIncrement(), batch));
+            } catch (RejectedExecutionException e) {
+                // 外部线程池已关闭或队列已满，只有这一批失败，后续批次照常分发
+                for (Request request : batch) {
+                    request.future.completeExceptionally(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 调用方需持有 lock
+     */
+    private void failPending(Throwable cause) {
+        closed = true;
+        dispatcherFailure = cause;
+        for (Lane lane : lanes) {
+            Request request;
+            while ((request = lane.pending.poll()) != null) {
+                request.future.completeExceptionally(cause);
+            }
+        }
+    }
+
+    /**
+     * 按长度分桶后逐桶推理，完成每个请求的 future
+     */
+    private void run(List<Request> batch) {
+        batch.sort(Comparator.comparingInt(request -> request.text.length()));
+        int from = 0;
+        while (from < batch.size()) {
+            int limit = Math.max(MIN_BUCKET_CHARS, 2 * batch.get(from).text.length());
+            int to = from + 1;
+            while (to < batch.size() && batch.get(to).text.length() <= limit) {
+                to++;
+            }
+            List<Request> bucket = batch.subList(from, to);
+            try {
+                List<String> texts = new ArrayList<>(bucket.size());
+                for (Request request : bucket) {
+                    texts.add(request.text);
+                }
+                List<float[]> embeddings = delegate.embedBatch(texts);
+                ensureTrue(embeddings.size() == bucket.size(), "delegate returned " + embeddings.size()
+                    + " embeddings for " + bucket.size() + " texts");
+                for (int i = 0; i < bucket.size(); i++) {
+                    bucket.get(i).future.complete(embeddings.get(i));
+                }
+            } catch (Exception e) {
+                for (Request request : bucket) {
+                    request.future.completeExceptionally(e);
+                }
+            }
+            from = to;
+        }
+    }
+
+    private static final class Request {
+        final String text;
+        final long enqueued = System.nanoTime();
+        final CompletableFuture<float[]> future = new CompletableFuture<>();
+
+        Request(String text) {
+            this.text = text;
+        }
+    }
+
+    private static final class Lane {
+        final Priority priority;
+        final long maxDelayNanos;
+        final ArrayDeque<Request> pending = new ArrayDeque<>();
+
+        Lane(Priority priority, long maxDelayMillis) {
+            this.priority = priority;
+            this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        }
+    }
+
+    /**
+     * 交给执行线程池的一批请求；在内部的优先级队列中先按通道、再按提交顺序排列
+     */
+    private final class BatchTask implements Runnable, Comparable<BatchTask> {
+        private final Priority priority;
+        private final long sequence;
+        private final List<Request> batch;
+
+        BatchTask(Priority priority, long sequence, List<Request> batch) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.batch = batch;
+        }
+
+        @Override
+        public void run() {
+            BatchingDocumentEmbedding.this.run(batch);
+        }
+
+        @Override
+        public int compareTo(BatchTask other) {
+            int byPriority = priority.compareTo(other.priority);
+            return byPriority != 0 ? byPriority : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * BatchingDocumentEmbedding的构建器
+     */
+    public static class Builder {
+        private DocumentEmbedding delegate;
+        private int maxBatchSize = 32;
+        private long maxDelayMillis = 10;
+        private long queryMaxDelayMillis = 2;
+        private Executor executor;
+
+        /**
+         * 设置被装饰的嵌入模型，其 embedBatch 应当一次推理整批文本
+         *
+         * @param delegate 嵌入模型
+         * @return Builder实例
+         */
+        public Builder delegate(DocumentEmbedding delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * 设置一批最多包含的请求数，默认 32
+         *
+         * @param maxBatchSize 最大批次大小
+         * @return Builder实例
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * 设置 BULK 通道中请求最多等待的时间，默认 10 毫秒
+         *
+         * @param maxDelayMillis 最大延迟毫秒数
+         * @return Builder实例
+         */
+        public Builder maxDelayMillis(long maxDelayMillis) {
+            this.maxDelayMillis = maxDelayMillis;
+            return this;
+        }
+
+        /**
+         * 设置 QUERY 通道中请求最多等待的时间，默认 2 毫秒
+         *
+         * @param queryMaxDelayMillis 最大延迟毫秒数
+         * @return Builder实例
+         */
+        public Builder queryMaxDelayMillis(long queryMaxDelayMillis) {
+            this.queryMaxDelayMillis = queryMaxDelayMillis;
+            return this;
+        }
+
+        /**
+         * 设置执行推理的线程池，未设置时内部创建带优先级队列的线程池并在 close 时关闭
+         *
+         * @param executor 线程池
+         * @return Builder实例
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * 构建BatchingDocumentEmbedding实例
+         *
+         * @return BatchingDocumentEmbedding实例
+         */
+        public BatchingDocumentEmbedding build() {
+            return new BatchingDocumentEmbedding(this);
+        }
+    }
+}
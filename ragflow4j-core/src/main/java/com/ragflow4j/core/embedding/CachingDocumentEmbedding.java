@@ -0,0 +1,363 @@
+package com.ragflow4j.core.embedding;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotEmpty;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * 按内容缓存向量的 DocumentEmbedding 装饰器
+ * <p>
+ * 缓存键是模型名称和文本的 SHA-256，文档重新上传或知识库重建索引时，内容没有变化的分块不再重新推理。
+ * 缓存分为两层：堆内按 LRU 淘汰的有界缓存，以及可选的内存映射磁盘层（见 {@link Builder#diskCache(Path, int)}），
+ * 新计算的向量同时写入两层，磁盘层命中时提升到堆内。
+ * <p>
+ * 同一个键的并发请求只会推理一次：第一个请求登记一个进行中的 future，其余请求等待它的结果。
+ * 一次批量调用中未命中的文本合并为一次 {@link DocumentEmbedding#embedBatch(List)}。
+ */
+public class CachingDocumentEmbedding implements DocumentEmbedding, AutoCloseable {
+    private final DocumentEmbedding delegate;
+    private final byte[] modelName;
+    private final Map<ByteBuffer, float[]> heap;
+    private final MappedEmbeddingFile disk;
+    private final ConcurrentHashMap<ByteBuffer, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder heapHits = new LongAdder();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private CachingDocumentEmbedding(Builder builder) {
+        this.delegate = ensureNotNull(builder.delegate, "delegate");
+        // 磁盘层跨进程共享，同名不同权重的模型（例如所有 ONNX 模型都叫 onnx-embedding-model）会读到彼此的向量
+        ensureTrue(builder.diskPath == null || builder.modelName != null,
+            "modelName must be set explicitly when diskCache is enabled");
+        String name = builder.modelName != null ? builder.modelName : delegate.getModelName();
+        this.modelName = ensureNotNull(name, "modelName").getBytes(StandardCharsets.UTF_8);
+        int maxEntries = ensureGreaterThanZero(builder.maxEntries, "maxEntries");
+        this.heap = new LinkedHashMap<ByteBuffer, float[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, float[]> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        if (builder.diskPath != null) {
+            int dimension = builder.dimension > 0 ? builder.dimension : delegate.getDimension();
+            this.disk = MappedEmbeddingFile.open(builder.diskPath, dimension,
+                ensureGreaterThanZero(builder.diskEntries, "diskEntries"));
+        } else {
+            this.disk = null;
+        }
+    }
+
+    /**
+     * 创建一个新的Builder实例
+     *
+     * @return Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public float[] embed(String text) {
+        ensureNotNull(text, "text");
+        return lookup(Collections.singletonList(text),
+            misses -> CompletableFuture.completedFuture(Collections.singletonList(delegate.embed(misses.get(0)))))
+            .join().get(0);
+    }
+
+    @Override
+    public CompletableFuture<float[]> embedAsync(String text) {
+        ensureNotNull(text, "text");
+        return lookup(Collections.singletonList(text), misses -> delegate.embedAsync(misses.get(0))
+            .thenApply(Collections::singletonList)).thenApply(embeddings -> embeddings.get(0));
+    }
+
+    @Override
+    public List<float[]> embedBatch(List<String> texts) {
+        return embedBatchAsync(texts).join();
+    }
+
+    @Override
+    public CompletableFuture<List<float[]>> embedBatchAsync(List<String> texts) {
+        ensureNotEmpty(texts, "texts");
+        return lookup(texts, delegate::embedBatchAsync);
+    }
+
+    @Override
+    public int getDimension() {
+        return delegate.getDimension();
+    }
+
+    @Override
+    public String getModelName() {
+        return delegate.getModelName();
+    }
+
+    /**
+     * 当前的命中统计
+     *
+     * @return 统计快照
+     */
+    public Stats getStats() {
+        int heapSize;
+        synchronized (heap) {
+            heapSize = heap.size();
+        }
+        return new Stats(heapHits.sum(), diskHits.sum(), misses.sum(), heapSize, disk != null ? disk.size() : 0);
+    }
+
+    @Override
+    public void close() {
+        if (disk != null) {
+            disk.close();
+        }
+    }
+
+    /**
+     * 逐条查缓存，未命中且没有其他请求在计算的文本交给 compute 一次算完
+     */
+    private CompletableFuture<List<float[]>> lookup(List<String> texts,
+                                                    Function<List<String>, CompletableFuture<List<float[]>>> compute) {
+        List<CompletableFuture<float[]>> results = new ArrayList<>(texts.size());
+        List<String> owned = new ArrayList<>();
+        List<ByteBuffer> ownedKeys = new ArrayList<>();
+        List<CompletableFuture<float[]>> ownedFutures = new ArrayList<>();
+        for (String text : texts) {
+            ByteBuffer key = key(text);
+            float[] cached = cached(key);
+            if (cached != null) {
+                results.add(CompletableFuture.completedFuture(cached));
+                continue;
+            }
+            CompletableFuture<float[]> future = new CompletableFuture<>();
+            CompletableFuture<float[]> existing = inFlight.putIfAbsent(key, future);
+            if (existing != null) {
+                // 其他请求或同一批中的重复文本正在计算
+                results.add(existing.thenApply(float[]::clone));
+                continue;
+            }
+            // 登记之后再查一次，避免在查缓存和登记之间刚好完成的计算被重复执行
+            cached = cached(key);
+            if (cached != null) {
+                inFlight.remove(key, future);
+                future.complete(cached);
+                results.add(CompletableFuture.completedFuture(cached));
+                continue;
+            }
+            misses.increment();
+            owned.add(text);
+            ownedKeys.add(key);
+            ownedFutures.add(future);
+            results.add(future.thenApply(float[]::clone));
+        }
+
+        if (!owned.isEmpty()) {
+            CompletableFuture<List<float[]>> computed;
+            try {
+                computed = compute.apply(owned);
+            } catch (RuntimeException e) {
+                computed = new CompletableFuture<>();
+                computed.completeExceptionally(e);
+            }
+            computed.whenComplete((embeddings, error) -> {
+                for (int i = 0; i < ownedKeys.size(); i++) {
+                    ByteBuffer key = ownedKeys.get(i);
+                    CompletableFuture<float[]> future = ownedFutures.get(i);
+                    // 任何一条出错都不能让其余的 future 悬空，也不能在 inFlight 中留下登记
+                    try {
+                        if (error == null && embeddings.size() == ownedKeys.size()) {
+                            float[] embedding = embeddings.get(i).clone();
+                            store(key, embedding);
+                            future.complete(embedding);
+                        } else {
+                            future.completeExceptionally(error != null ? error
+                                : new IllegalStateException("delegate returned " + embeddings.size()
+                                + " embeddings for " + ownedKeys.size() + " texts"));
+                        }
+                    } catch (RuntimeException e) {
+                        future.completeExceptionally(e);
+                    } finally {
+                        inFlight.remove(key, future);
+                    }
+                }
+            });
+        }
+
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<float[]> embeddings = new ArrayList<>(results.size());
+            for (CompletableFuture<float[]> result : results) {
+                embeddings.add(result.join());
+            }
+            return embeddings;
+        });
+    }
+
+    /**
+     * @return 缓存向量的副本，未命中时返回 null
+     */
+    private float[] cached(ByteBuffer key) {
+        float[] embedding;
+        synchronized (heap) {
+            embedding = heap.get(key);
+        }
+        if (embedding != null) {
+            heapHits.increment();
+            return embedding.clone();
+        }
+        if (disk == null || (embedding = disk.get(key)) == null) {
+            return null;
+        }
+        diskHits.increment();
+        synchronized (heap) {
+            heap.put(key, embedding);
+        }
+        return embedding.clone();
+    }
+
+    private void store(ByteBuffer key, float[] embedding) {
+        synchronized (heap) {
+            heap.put(key, embedding);
+        }
+        if (disk != null) {
+            disk.put(key, embedding);
+        }
+    }
+
+    private ByteBuffer key(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(modelName);
+            digest.update((byte) 0);
+            return ByteBuffer.wrap(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 缓存命中统计
+     */
+    public static final class Stats {
+        public final long heapHits;
+        public final long diskHits;
+        public final long misses;
+        public final int heapSize;
+        public final int diskSize;
+
+        Stats(long heapHits, long diskHits, long misses, int heapSize, int diskSize) {
+            this.heapHits = heapHits;
+            this.diskHits = diskHits;
+            this.misses = misses;
+            this.heapSize = heapSize;
+            this.diskSize = diskSize;
+        }
+
+        /**
+         * @return 两层合计的命中率，没有请求时为 0
+         */
+        public double getHitRate() {
+            long requests = heapHits + diskHits + misses;
+            return requests == 0 ? 0 : (heapHits + diskHits) / (double) requests;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{heapHits=" + heapHits + ", diskHits=" + diskHits + ", misses=" + misses
+                + ", heapSize=" + heapSize + ", diskSize=" + diskSize + '}';
+        }
+    }
+
+    /**
+     * CachingDocumentEmbedding的构建器
+     */
+    public static class Builder {
+        private DocumentEmbedding delegate;
+        private String modelName;
+        private int maxEntries = 10000;
+        private Path diskPath;
+        private int diskEntries;
+        private int dimension;
+
+        /**
+         * 设置被装饰的嵌入模型
+         *
+         * @param delegate 嵌入模型
+         * @return Builder实例
+         */
+        public Builder delegate(DocumentEmbedding delegate) {
+            this.delegate = delegate;
+            return this;
+        }
+
+        /**
+         * 设置缓存键中的模型名称，默认使用被装饰模型的 getModelName；换用不同权重的同名模型时需要区分。
+         * 启用磁盘层时必须设置，应能唯一标识模型权重（例如模型文件名加版本）
+         *
+         * @param modelName 模型名称
+         * @return Builder实例
+         */
+        public Builder modelName(String modelName) {
+            this.modelName = modelName;
+            return this;
+        }
+
+        /**
+         * 设置堆内缓存的最大条目数，默认 10000
+         *
+         * @param maxEntries 最大条目数
+         * @return Builder实例
+         */
+        public Builder maxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * 启用磁盘层，向量以原始 float 保存在内存映射文件中，写满后覆盖最早的条目；需同时设置 {@link #modelName(String)}
+         *
+         * @param path 缓存文件路径，已有文件会被继续使用
+         * @param maxEntries 磁盘层的最大条目数
+         * @return Builder实例
+         */
+        public Builder diskCache(Path path, int maxEntries) {
+            this.diskPath = path;
+            this.diskEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * 设置向量维度，用于创建磁盘层；未设置时调用被装饰模型的 getDimension
+         *
+         * @param dimension 向量维度
+         * @return Builder实例
+         */
+        public Builder dimension(int dimension) {
+            this.dimension = dimension;
+            return this;
+        }
+
+        /**
+         * 构建CachingDocumentEmbedding实例
+         *
+         * @return CachingDocumentEmbedding实例
+         */
+        public CachingDocumentEmbedding build() {
+            return new CachingDocumentEmbedding(this);
+        }
+    }
+}
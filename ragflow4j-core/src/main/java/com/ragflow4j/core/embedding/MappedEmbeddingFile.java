@@ -0,0 +1,173 @@
+package com.ragflow4j.core.embedding;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * 以内存映射文件保存的定长向量环形缓冲区，是 {@link CachingDocumentEmbedding} 的磁盘层
+ * <p>
+ * 文件由头部和 capacity 条记录组成，每条记录是 32 字节的键加上原始的 {@code float[]}。写满后从头覆盖最早的记录。
+ * 键到槽位的索引只保存在内存中，打开时扫描全部记录重建。覆盖一条记录时先清零键、再写向量、最后写键，
+ * 进程中途退出只会丢失这条记录，不会读到新旧混合的向量。
+ */
+final class MappedEmbeddingFile implements AutoCloseable {
+    static final int KEY_BYTES = 32;
+    private static final int MAGIC = 0x45434631; // "ECF1"
+    // magic、dimension、capacity、next、size
+    private static final int HEADER_BYTES = 20;
+    // 单个映射区域的上限
+    private static final int MAX_REGION_BYTES = 1 << 30;
+    private static final byte[] EMPTY_KEY = new byte[KEY_BYTES];
+
+    private final FileChannel channel;
+    private final int dimension;
+    private final int capacity;
+    private final int recordBytes;
+    private final int recordsPerRegion;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer[] regions;
+    private final Map<ByteBuffer, Integer> index = new HashMap<>();
+    private final ByteBuffer[] slots;
+    private int next;
+    private int size;
+
+    private MappedEmbeddingFile(FileChannel channel, int dimension, int capacity) throws IOException {
+        this.channel = channel;
+        this.dimension = dimension;
+        this.capacity = capacity;
+        this.recordBytes = KEY_BYTES + dimension * Float.BYTES;
+        this.recordsPerRegion = Math.max(1, MAX_REGION_BYTES / recordBytes);
+        this.header = map(0, HEADER_BYTES);
+        this.regions = new MappedByteBuffer[(capacity + recordsPerRegion - 1) / recordsPerRegion];
+        for (int r = 0; r < regions.length; r++) {
+            int records = Math.min(recordsPerRegion, capacity - r * recordsPerRegion);
+            regions[r] = map(HEADER_BYTES + (long) r * recordsPerRegion * recordBytes, (long) records * recordBytes);
+        }
+        this.slots = new ByteBuffer[capacity];
+    }
+
+    /**
+     * 打开或创建缓存文件，已有文件的维度和容量必须与参数一致
+     */
+    static MappedEmbeddingFile open(Path path, int dimension, int capacity) {
+        ensureGreaterThanZero(dimension, "dimension");
+        ensureGreaterThanZero(capacity, "capacity");
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+            try {
+                boolean exists = channel.size() > 0;
+                MappedEmbeddingFile file = new MappedEmbeddingFile(channel, dimension, capacity);
+                if (exists) {
+                    file.load();
+                } else {
+                    file.header.putInt(0, MAGIC).putInt(4, dimension).putInt(8, capacity);
+                    file.writePositions();
+                }
+                return file;
+            } catch (RuntimeException | IOException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void load() {
+        ensureTrue(header.getInt(0) == MAGIC, "not an embedding cache file");
+        ensureTrue(header.getInt(4) == dimension, "cache file dimension is " + header.getInt(4) + ", expected " + dimension);
+        ensureTrue(header.getInt(8) == capacity, "cache file capacity is " + header.getInt(8) + ", expected " + capacity);
+        next = header.getInt(12);
+        size = header.getInt(16);
+        for (int slot = 0; slot < size; slot++) {
+            byte[] key = new byte[KEY_BYTES];
+            ByteBuffer record = record(slot);
+            record.get(key);
+            if (!ByteBuffer.wrap(key).equals(ByteBuffer.wrap(EMPTY_KEY))) {
+                slots[slot] = ByteBuffer.wrap(key);
+                index.put(slots[slot], slot);
+            }
+        }
+    }
+
+    synchronized float[] get(ByteBuffer key) {
+        Integer slot = index.get(key);
+        if (slot == null) {
+            return null;
+        }
+        ByteBuffer record = record(slot);
+        record.position(record.position() + KEY_BYTES);
+        float[] vector = new float[dimension];
+        record.asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    synchronized void put(ByteBuffer key, float[] vector) {
+        ensureTrue(vector.length == dimension, "vector dimension must be " + dimension);
+        if (index.containsKey(key)) {
+            return;
+        }
+        int slot = next;
+        if (slots[slot] != null) {
+            index.remove(slots[slot]);
+        }
+        ByteBuffer record = record(slot);
+        int start = record.position();
+        record.put(EMPTY_KEY);
+        record.asFloatBuffer().put(vector);
+        record.position(start);
+        record.put(key.duplicate());
+        slots[slot] = key;
+        index.put(key, slot);
+        next = (slot + 1) % capacity;
+        size = Math.min(size + 1, capacity);
+        writePositions();
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    private void writePositions() {
+        header.putInt(12, next).putInt(16, size);
+    }
+
+    /**
+     * @return 位置指向记录开头的视图
+     */
+    private ByteBuffer record(int slot) {
+        ByteBuffer record = regions[slot / recordsPerRegion].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        record.position((slot % recordsPerRegion) * recordBytes);
+        return record;
+    }
+
+    private MappedByteBuffer map(long position, long length) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    @Override
+    public synchronized void close() {
+        try {
+            header.force();
+            for (MappedByteBuffer region : regions) {
+                region.force();
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
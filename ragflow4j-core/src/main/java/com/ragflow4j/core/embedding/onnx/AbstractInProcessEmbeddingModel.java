@@ -1,10 +1,13 @@
 package com.ragflow4j.core.embedding.onnx;
 
+import ai.onnxruntime.OrtSession;
 import com.ragflow4j.core.embedding.DocumentEmbedding;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.*;
 
@@ -14,7 +17,6 @@ import static java.nio.file.Files.newInputStream;
 import static java.util.Collections.singletonList;
 import static java.util.concurrent.CompletableFuture.supplyAsync;
 import static java.util.concurrent.TimeUnit.SECONDS;
-import static java.util.stream.Collectors.toList;
 
 public abstract class AbstractInProcessEmbeddingModel implements DocumentEmbedding {
 
@@ -25,7 +27,10 @@ public abstract class AbstractInProcessEmbeddingModel implements DocumentEmbeddi
     }
 
     private Executor createDefaultExecutor() {
-        int threadPoolSize = Runtime.getRuntime().availableProcessors();
+        return createExecutor(Runtime.getRuntime().availableProcessors());
+    }
+
+    static Executor createExecutor(int threadPoolSize) {
         ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
                 threadPoolSize, threadPoolSize,
                 1, SECONDS,
@@ -49,6 +54,15 @@ public abstract class AbstractInProcessEmbeddingModel implements DocumentEmbeddi
         }
     }
 
+    protected static OnnxBertBiEncoder loadFromFileSystem(Path pathToModel, OrtSession.SessionOptions options,
+                                                          Path pathToTokenizer, PoolingMode poolingMode) {
+        try {
+            return new OnnxBertBiEncoder(newInputStream(pathToModel), options, newInputStream(pathToTokenizer), poolingMode);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     static OnnxBertBiEncoder loadFromFileSystem(Path pathToModel, InputStream tokenizer, PoolingMode poolingMode) {
         try {
             return new OnnxBertBiEncoder(newInputStream(pathToModel), tokenizer, poolingMode);
@@ -91,23 +105,39 @@ public abstract class AbstractInProcessEmbeddingModel implements DocumentEmbeddi
         return singletonList(embeddingAndTokenCount.embedding);
     }
 
+    /**
+     * Texts are ordered by length and cut into slices of at most {@code maxBatchSize} texts, so that
+     * each slice is embedded with few padded inference calls; slices run concurrently on the executor.
+     */
     private List<float[]> parallelizeEmbedding(List<String> texts) {
-        List<CompletableFuture<OnnxBertBiEncoder.EmbeddingAndTokenCount>> futures = texts.stream()
-                .map(text -> supplyAsync(() -> model().embed(text), executor))
-                .collect(toList());
-
-        int inputTokenCount = 0;
-        List<float[]> embeddings = new ArrayList<>();
+        Integer[] order = new Integer[texts.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt(i -> texts.get(i).length()));
+
+        int batchSize = model().maxBatchSize();
+        List<CompletableFuture<List<OnnxBertBiEncoder.EmbeddingAndTokenCount>>> futures = new ArrayList<>();
+        for (int from = 0; from < order.length; from += batchSize) {
+            List<String> slice = new ArrayList<>();
+            for (int i = from; i < Math.min(from + batchSize, order.length); i++) {
+                slice.add(texts.get(order[i]));
+            }
+            futures.add(supplyAsync(() -> model().embedAll(slice), executor));
+        }
 
-        for (CompletableFuture<OnnxBertBiEncoder.EmbeddingAndTokenCount> future : futures) {
+        float[][] embeddings = new float[texts.size()][];
+        int next = 0;
+        for (CompletableFuture<List<OnnxBertBiEncoder.EmbeddingAndTokenCount>> future : futures) {
             try {
-                OnnxBertBiEncoder.EmbeddingAndTokenCount embeddingAndTokenCount = future.get();
-                embeddings.add(embeddingAndTokenCount.embedding);
+                for (OnnxBertBiEncoder.EmbeddingAndTokenCount embeddingAndTokenCount : future.get()) {
+                    embeddings[order[next++]] = embeddingAndTokenCount.embedding;
+                }
             } catch (InterruptedException | ExecutionException e) {
                 throw new RuntimeException(e);
             }
         }
 
-        return embeddings;
+        return Arrays.asList(embeddings);
     }
 }
@@ -15,26 +15,45 @@ import java.io.InputStream;
 import java.util.*;
 
 import static ai.onnxruntime.OnnxTensor.createTensor;
-import static java.nio.LongBuffer.wrap;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static java.util.Collections.singletonList;
 import static java.util.Collections.singletonMap;
-import static java.util.stream.Collectors.toList;
 
 public class OnnxBertBiEncoder {
 
     private static final int MAX_SEQUENCE_LENGTH = 510; // 512 - 2 (special tokens [CLS] and [SEP])
+    static final int DEFAULT_MAX_BATCH_SIZE = 32;
+    static final int DEFAULT_MAX_BATCH_TOKENS = 16384;
 
     private final OrtEnvironment environment;
     private final OrtSession session;
     private final Set<String> expectedInputs;
     private final HuggingFaceTokenizer tokenizer;
     private final PoolingMode poolingMode;
+    private final long clsId;
+    private final long sepId;
+    private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+    private int maxBatchTokens = DEFAULT_MAX_BATCH_TOKENS;
 
     public OnnxBertBiEncoder(InputStream model, InputStream tokenizer, PoolingMode poolingMode) {
+        this(model, null, tokenizer, poolingMode);
+    }
+
+    /**
+     * @param options The session options, or {@code null} for the ONNX Runtime defaults.
+     *                They are only read while the session is created; the caller keeps ownership and may close them afterwards.
+     */
+    public OnnxBertBiEncoder(InputStream model, OrtSession.SessionOptions options, InputStream tokenizer, PoolingMode poolingMode) {
         try {
             this.environment = OrtEnvironment.getEnvironment();
-            this.session = environment.createSession(loadModel(model));
+            this.session = options == null
+                    ? environment.createSession(loadModel(model))
+                    : environment.createSession(loadModel(model), options);
             this.expectedInputs = session.getInputNames();
             this.tokenizer = HuggingFaceTokenizer.newInstance(tokenizer, singletonMap("padding", "false"));
+            long[] specialIds = specialTokenIds(this.tokenizer);
+            this.clsId = specialIds[0];
+            this.sepId = specialIds[1];
             if (poolingMode == null) {
                 throw new IllegalArgumentException("poolingMode cannot be null");
             }
@@ -50,6 +69,9 @@ public class OnnxBertBiEncoder {
             this.session = session;
             this.expectedInputs = session.getInputNames();
             this.tokenizer = HuggingFaceTokenizer.newInstance(tokenizer, singletonMap("padding", "false"));
+            long[] specialIds = specialTokenIds(this.tokenizer);
+            this.clsId = specialIds[0];
+            this.sepId = specialIds[1];
             if (poolingMode == null) {
                 throw new IllegalArgumentException("poolingMode cannot be null");
             }
@@ -59,6 +81,17 @@ public class OnnxBertBiEncoder {
         }
     }
 
+    /**
+     * Returns the ids of the [CLS] and [SEP] tokens, which the tokenizer adds around an empty text.
+     */
+    private static long[] specialTokenIds(HuggingFaceTokenizer tokenizer) {
+        long[] ids = tokenizer.encode("", true, false).getIds();
+        if (ids.length != 2) {
+            throw new IllegalArgumentException("tokenizer must add exactly [CLS] and [SEP] as special tokens");
+        }
+        return ids;
+    }
+
     static class EmbeddingAndTokenCount {
 
         float[] embedding;
@@ -70,47 +103,131 @@ public class OnnxBertBiEncoder {
         }
     }
 
+    /**
+     * Sets the limits of a single inference call: at most {@code maxBatchSize} sequences,
+     * and at most {@code maxBatchTokens} padded tokens (batch size times the longest sequence).
+     * A single sequence longer than the token budget still runs alone.
+     */
+    void batchLimits(int maxBatchSize, int maxBatchTokens) {
+        this.maxBatchSize = ensureGreaterThanZero(maxBatchSize, "maxBatchSize");
+        this.maxBatchTokens = ensureGreaterThanZero(maxBatchTokens, "maxBatchTokens");
+    }
+
+    int maxBatchSize() {
+        return maxBatchSize;
+    }
+
     EmbeddingAndTokenCount embed(String text) {
+        return embedAll(singletonList(text)).get(0);
+    }
 
-        List<String> tokens = tokenizer.tokenize(text);
-        List<List<String>> partitions = partition(tokens, MAX_SEQUENCE_LENGTH);
+    /**
+     * Embeds all texts with as few inference calls as possible. Each text is tokenized once into ids;
+     * texts longer than the model limit are split into partitions of those ids, which are fed to the model
+     * between [CLS] and [SEP]. Partitions of similar length are padded into one {@code [B, maxLen]}
+     * batch with an attention mask, and each row is pooled over its own tokens only.
+     */
+    List<EmbeddingAndTokenCount> embedAll(List<String> texts) {
+
+        List<Sequence> sequences = new ArrayList<>();
+        int[] tokenCounts = new int[texts.size()];
+        for (int i = 0; i < texts.size(); i++) {
+            Encoding encoding = tokenizer.encode(texts.get(i), false, false);
+            long[] ids = encoding.getIds();
+            tokenCounts[i] = ids.length + 2; // count [CLS] and [SEP], like countTokens
+            for (int[] range : partition(encoding.getTokens(), MAX_SEQUENCE_LENGTH)) {
+                sequences.add(new Sequence(i, ids, range[0], range[1]));
+            }
+        }
 
-        List<float[]> embeddings = new ArrayList<>();
-        for (List<String> partition : partitions) {
-            try (Result result = encode(partition)) {
-                float[] embedding = toEmbedding(result);
-                embeddings.add(embedding);
+        // sorting by length keeps the padding inside each batch small
+        List<Sequence> byLength = new ArrayList<>(sequences);
+        byLength.sort(Comparator.comparingInt(sequence -> sequence.length()));
+        int from = 0;
+        while (from < byLength.size()) {
+            int to = from + 1;
+            while (to < byLength.size() && to - from < maxBatchSize
+                    && (long) (to - from + 1) * byLength.get(to).length() <= maxBatchTokens) {
+                to++;
+            }
+            try {
+                run(byLength.subList(from, to));
             } catch (OrtException e) {
                 throw new RuntimeException(e);
             }
+            from = to;
+        }
+
+        List<List<float[]>> embeddings = new ArrayList<>();
+        List<List<Integer>> weights = new ArrayList<>();
+        for (int i = 0; i < texts.size(); i++) {
+            embeddings.add(new ArrayList<>());
+            weights.add(new ArrayList<>());
+        }
+        for (Sequence sequence : sequences) {
+            embeddings.get(sequence.text).add(sequence.embedding);
+            weights.get(sequence.text).add(sequence.weight());
         }
 
-        List<Integer> weights = partitions.stream()
-                .map(List::size)
-                .collect(toList());
+        List<EmbeddingAndTokenCount> results = new ArrayList<>(texts.size());
+        for (int i = 0; i < texts.size(); i++) {
+            float[] embedding = normalize(weightedAverage(embeddings.get(i), weights.get(i)));
+            results.add(new EmbeddingAndTokenCount(embedding, tokenCounts[i]));
+        }
+        return results;
+    }
 
-        float[] embedding = normalize(weightedAverage(embeddings, weights));
+    /**
+     * One partition of a text: the ids {@code [from, to)} of the text, without special tokens.
+     */
+    private static class Sequence {
+
+        final int text;
+        final long[] ids;
+        final int from;
+        final int to;
+        float[] embedding;
 
-        return new EmbeddingAndTokenCount(embedding, tokens.size());
+        Sequence(int text, long[] ids, int from, int to) {
+            this.text = text;
+            this.ids = ids;
+            this.from = from;
+            this.to = to;
+        }
+
+        int weight() {
+            return to - from;
+        }
+
+        int length() {
+            return to - from + 2; // [CLS] and [SEP]
+        }
     }
 
-    static List<List<String>> partition(List<String> tokens, int partitionSize) {
-        List<List<String>> partitions = new ArrayList<>();
-        int from = 1; // Skip the first (CLS) token
+    /**
+     * Splits tokens without special tokens into ranges {@code [from, to)} of at most {@code partitionSize} tokens.
+     */
+    static List<int[]> partition(String[] tokens, int partitionSize) {
+        List<int[]> partitions = new ArrayList<>();
+        int from = 0;
 
-        while (from < tokens.size() - 1) { // Skip the last (SEP) token
+        while (from < tokens.length) {
             int to = from + partitionSize;
 
-            if (to >= tokens.size() - 1) {
-                to = tokens.size() - 1;
+            if (to >= tokens.length) {
+                to = tokens.length;
             } else {
-                // ensure we don't split word across partitions
-                while (tokens.get(to).startsWith("##")) {
-                    to--;
+                // ensure we don't split word across partitions, unless the word alone fills the partition
+                int end = to;
+                while (end > from && tokens[end].startsWith("##")) {
+                    end--;
+                }
+                if (end > from) {
+                    to = end;
                 }
             }
 
-            partitions.add(tokens.subList(from, to));
+            partitions.add(new int[]{from, to});
 
             from = to;
         }
@@ -118,20 +235,44 @@ public class OnnxBertBiEncoder {
         return partitions;
     }
 
-    private Result encode(List<String> tokens) throws OrtException {
+    /**
+     * Runs one inference call over the batch and stores the pooled embedding of every sequence.
+     */
+    private void run(List<Sequence> batch) throws OrtException {
 
-        Encoding encoding = tokenizer.encode(toText(tokens), true, false);
+        int maxLength = 0;
+        for (Sequence sequence : batch) {
+            maxLength = Math.max(maxLength, sequence.length());
+        }
 
-        long[] inputIds = encoding.getIds();
-        long[] attentionMask = encoding.getAttentionMask();
-        long[] tokenTypeIds = encoding.getTypeIds();
+        // padding positions keep id 0 and mask 0, so attention ignores them; all token types are 0
+        long[][] inputIds = new long[batch.size()][maxLength];
+        long[][] attentionMask = new long[batch.size()][maxLength];
+        long[][] tokenTypeIds = new long[batch.size()][maxLength];
+        for (int row = 0; row < batch.size(); row++) {
+            Sequence sequence = batch.get(row);
+            int length = sequence.length();
+            inputIds[row][0] = clsId;
+            System.arraycopy(sequence.ids, sequence.from, inputIds[row], 1, sequence.weight());
+            inputIds[row][length - 1] = sepId;
+            Arrays.fill(attentionMask[row], 0, length, 1L);
+        }
+
+        try (Result result = encode(inputIds, attentionMask, tokenTypeIds)) {
+            float[][][] hiddenStates = (float[][][]) result.get(0).getValue();
+            for (int row = 0; row < batch.size(); row++) {
+                Sequence sequence = batch.get(row);
+                sequence.embedding = pool(hiddenStates[row], sequence.length());
+            }
+        }
+    }
 
-        long[] shape = {1, inputIds.length};
+    private Result encode(long[][] inputIds, long[][] attentionMask, long[][] tokenTypeIds) throws OrtException {
 
         try (
-                OnnxTensor inputIdsTensor = createTensor(environment, wrap(inputIds), shape);
-                OnnxTensor attentionMaskTensor = createTensor(environment, wrap(attentionMask), shape);
-                OnnxTensor tokenTypeIdsTensor = createTensor(environment, wrap(tokenTypeIds), shape)
+                OnnxTensor inputIdsTensor = createTensor(environment, inputIds);
+                OnnxTensor attentionMaskTensor = createTensor(environment, attentionMask);
+                OnnxTensor tokenTypeIdsTensor = createTensor(environment, tokenTypeIds)
         ) {
             Map<String, OnnxTensor> inputs = new HashMap<>();
             inputs.put("input_ids", inputIdsTensor);
@@ -145,33 +286,12 @@ public class OnnxBertBiEncoder {
         }
     }
 
-    private String toText(List<String> tokens) {
-
-        String text = tokenizer.buildSentence(tokens);
-
-        List<String> tokenized = tokenizer.tokenize(text);
-        List<String> tokenizedWithoutSpecialTokens = new LinkedList<>(tokenized);
-        tokenizedWithoutSpecialTokens.remove(0);
-        tokenizedWithoutSpecialTokens.remove(tokenizedWithoutSpecialTokens.size() - 1);
-
-        if (tokenizedWithoutSpecialTokens.equals(tokens)) {
-            return text;
-        } else {
-            return String.join("", tokens);
-        }
-    }
-
-    private float[] toEmbedding(Result result) throws OrtException {
-        float[][] vectors = ((float[][][]) result.get(0).getValue())[0];
-        return pool(vectors);
-    }
-
-    private float[] pool(float[][] vectors) {
+    private float[] pool(float[][] vectors, int length) {
         switch (poolingMode) {
             case CLS:
                 return clsPool(vectors);
             case MEAN:
-                return meanPool(vectors);
+                return meanPool(vectors, length);
             default:
                 throw new IllegalArgumentException("Unknown pooling mode: " + poolingMode);
         }
@@ -181,14 +301,17 @@ public class OnnxBertBiEncoder {
         return vectors[0];
     }
 
-    private static float[] meanPool(float[][] vectors) {
+    /**
+     * Averages the first {@code numVectors} token vectors; the rest of the row is padding.
+     */
+    private static float[] meanPool(float[][] vectors, int numVectors) {
 
-        int numVectors = vectors.length;
         int vectorLength = vectors[0].length;
 
         float[] averagedVector = new float[vectorLength];
 
-        for (float[] vector : vectors) {
+        for (int i = 0; i < numVectors; i++) {
+            float[] vector = vectors[i];
             for (int j = 0; j < vectorLength; j++) {
                 averagedVector[j] += vector[j];
             }
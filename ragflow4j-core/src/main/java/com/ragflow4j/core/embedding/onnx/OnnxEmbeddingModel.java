@@ -1,11 +1,16 @@
 package com.ragflow4j.core.embedding.onnx;
 
 
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.concurrent.Executor;
 
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
 import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
 
 
 /**
@@ -19,6 +24,10 @@ import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
  * <a href="https://huggingface.co/docs/optimum/exporters/onnx/usage_guides/export_a_model">here</a>.
  * <br>
  * Many models already converted to ONNX format are available <a href="https://huggingface.co/Xenova">here</a>.
+ * <br>
+ * ONNX Runtime session options (threads, graph optimization, memory arena) can be set with {@link #builder()}.
+ * Each executor thread runs its own inference calls, and each call uses up to the intra-op thread count,
+ * so the two together should not exceed the number of cores; {@link Builder#autoThreads()} sizes them together.
  */
 public class OnnxEmbeddingModel extends AbstractInProcessEmbeddingModel {
     @Override
@@ -58,6 +67,49 @@ public class OnnxEmbeddingModel extends AbstractInProcessEmbeddingModel {
         this.onnxBertBiEncoder = loadFromFileSystem(pathToModel, pathToTokenizer, poolingMode);
     }
 
+    /**
+     * Texts passed to {@link #embedBatch(java.util.List)} are padded into shared inference calls,
+     * limited by {@code maxBatchSize} and {@code maxBatchTokens}.
+     * The other constructors use at most 32 sequences and 16384 padded tokens per call.
+     *
+     * @param pathToModel     The path to the modelPath file (e.g., "/path/to/model.onnx")
+     * @param pathToTokenizer The path to the tokenizer file (e.g., "/path/to/tokenizer.json")
+     * @param poolingMode     The pooling model to use. Can be found in the ".../1_Pooling/config.json" file on HuggingFace.
+     *                        {@code "pooling_mode_mean_tokens": true} means that {@link PoolingMode#MEAN} should be used.
+     * @param executor        The executor to use to parallelize the embedding process, or {@code null} for a default one.
+     * @param maxBatchSize    The maximum number of sequences in one inference call.
+     * @param maxBatchTokens  The maximum number of tokens in one inference call, counting padding.
+     */
+    public OnnxEmbeddingModel(Path pathToModel, Path pathToTokenizer, PoolingMode poolingMode, Executor executor,
+                              int maxBatchSize, int maxBatchTokens) {
+        super(executor);
+        this.onnxBertBiEncoder = loadFromFileSystem(pathToModel, pathToTokenizer, poolingMode);
+        this.onnxBertBiEncoder.batchLimits(maxBatchSize, maxBatchTokens);
+    }
+
+    /**
+     * @param pathToModel     The path to the modelPath file (e.g., "/path/to/model.onnx")
+     * @param options         The ONNX Runtime session options, as accepted by {@code OnnxScoringService}.
+     *                        They are neither modified nor closed; the caller may close them once the constructor returns.
+     * @param pathToTokenizer The path to the tokenizer file (e.g., "/path/to/tokenizer.json")
+     * @param poolingMode     The pooling model to use. Can be found in the ".../1_Pooling/config.json" file on HuggingFace.
+     *                        {@code "pooling_mode_mean_tokens": true} means that {@link PoolingMode#MEAN} should be used.
+     */
+    public OnnxEmbeddingModel(Path pathToModel, OrtSession.SessionOptions options, Path pathToTokenizer, PoolingMode poolingMode) {
+        super(null);
+        this.onnxBertBiEncoder = loadFromFileSystem(pathToModel, ensureNotNull(options, "options"), pathToTokenizer, poolingMode);
+    }
+
+    private OnnxEmbeddingModel(Builder builder, OrtSession.SessionOptions options, Executor executor) {
+        super(executor);
+        this.onnxBertBiEncoder = loadFromFileSystem(builder.pathToModel, options, builder.pathToTokenizer, builder.poolingMode);
+        this.onnxBertBiEncoder.batchLimits(builder.maxBatchSize, builder.maxBatchTokens);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
     /**
      * @param pathToModel     The path to the model file (e.g., "/home/me/model.onnx")
      * @param pathToTokenizer The path to the tokenizer file (e.g., "/path/to/tokenizer.json")
@@ -110,4 +162,190 @@ public class OnnxEmbeddingModel extends AbstractInProcessEmbeddingModel {
     protected OnnxBertBiEncoder model() {
         return onnxBertBiEncoder;
     }
+
+    /**
+     * Splits the cores between executor threads and intra-op threads for {@link Builder#autoThreads()}:
+     * a BERT-sized model gains little from more than a few intra-op threads per call, so the remaining
+     * cores run further calls in parallel.
+     *
+     * @return {executor threads, intra-op threads}
+     */
+    static int[] splitThreads(int cores) {
+        int intraOpThreads = Math.max(1, Math.min(cores, Builder.AUTO_INTRA_OP_THREADS));
+        return new int[]{Math.max(1, cores / intraOpThreads), intraOpThreads};
+    }
+
+    public static class Builder {
+        static final int AUTO_INTRA_OP_THREADS = 4;
+
+        private Path pathToModel;
+        private Path pathToTokenizer;
+        private PoolingMode poolingMode;
+        private Executor executor;
+        private OrtSession.SessionOptions sessionOptions;
+        private int intraOpThreads;
+        private int interOpThreads;
+        private OrtSession.SessionOptions.OptLevel optimizationLevel;
+        private Boolean memoryPatternOptimization;
+        private Boolean cpuArenaAllocator;
+        private boolean autoThreads;
+        private int maxBatchSize = OnnxBertBiEncoder.DEFAULT_MAX_BATCH_SIZE;
+        private int maxBatchTokens = OnnxBertBiEncoder.DEFAULT_MAX_BATCH_TOKENS;
+
+        /**
+         * @param pathToModel The path to the model file (e.g., "/path/to/model.onnx")
+         */
+        public Builder pathToModel(Path pathToModel) {
+            this.pathToModel = pathToModel;
+            return this;
+        }
+
+        /**
+         * @param pathToTokenizer The path to the tokenizer file (e.g., "/path/to/tokenizer.json")
+         */
+        public Builder pathToTokenizer(Path pathToTokenizer) {
+            this.pathToTokenizer = pathToTokenizer;
+            return this;
+        }
+
+        /**
+         * @param poolingMode The pooling mode to use, see {@link OnnxEmbeddingModel#OnnxEmbeddingModel(Path, Path, PoolingMode)}.
+         */
+        public Builder poolingMode(PoolingMode poolingMode) {
+            this.poolingMode = poolingMode;
+            return this;
+        }
+
+        /**
+         * @param executor The executor to use to parallelize the embedding process. Cannot be combined with {@link #autoThreads()}.
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * @param sessionOptions Session options to start from. The settings of this builder are written into them by
+         *                       {@link #build()}, so do not share them with sessions that need other settings.
+         *                       The caller keeps ownership and may close them once {@link #build()} returns.
+         */
+        public Builder sessionOptions(OrtSession.SessionOptions sessionOptions) {
+            this.sessionOptions = sessionOptions;
+            return this;
+        }
+
+        /**
+         * @param intraOpThreads The number of threads used within one operator. ONNX Runtime uses all cores by default.
+         */
+        public Builder intraOpThreads(int intraOpThreads) {
+            this.intraOpThreads = intraOpThreads;
+            return this;
+        }
+
+        /**
+         * @param interOpThreads The number of threads used to run independent operators in parallel.
+         */
+        public Builder interOpThreads(int interOpThreads) {
+            this.interOpThreads = interOpThreads;
+            return this;
+        }
+
+        /**
+         * @param optimizationLevel The graph optimization level, {@code ALL_OPT} by default.
+         */
+        public Builder optimizationLevel(OrtSession.SessionOptions.OptLevel optimizationLevel) {
+            this.optimizationLevel = optimizationLevel;
+            return this;
+        }
+
+        /**
+         * @param memoryPatternOptimization Whether to pre-plan memory for repeated input shapes. Enabled by default;
+         *                                  padded batches of varying length benefit less from it.
+         */
+        public Builder memoryPatternOptimization(boolean memoryPatternOptimization) {
+            this.memoryPatternOptimization = memoryPatternOptimization;
+            return this;
+        }
+
+        /**
+         * @param cpuArenaAllocator Whether to use the CPU memory arena. Enabled by default.
+         */
+        public Builder cpuArenaAllocator(boolean cpuArenaAllocator) {
+            this.cpuArenaAllocator = cpuArenaAllocator;
+            return this;
+        }
+
+        /**
+         * Sizes the executor and the intra-op threads together so that their product does not exceed the cores
+         * available to the JVM, and runs operators sequentially within each call.
+         */
+        public Builder autoThreads() {
+            this.autoThreads = true;
+            return this;
+        }
+
+        /**
+         * @param maxBatchSize The maximum number of sequences in one inference call.
+         */
+        public Builder maxBatchSize(int maxBatchSize) {
+            this.maxBatchSize = maxBatchSize;
+            return this;
+        }
+
+        /**
+         * @param maxBatchTokens The maximum number of tokens in one inference call, counting padding.
+         */
+        public Builder maxBatchTokens(int maxBatchTokens) {
+            this.maxBatchTokens = maxBatchTokens;
+            return this;
+        }
+
+        public OnnxEmbeddingModel build() {
+            ensureNotNull(pathToModel, "pathToModel");
+            ensureNotNull(pathToTokenizer, "pathToTokenizer");
+            ensureNotNull(poolingMode, "poolingMode");
+            ensureGreaterThanZero(maxBatchSize, "maxBatchSize");
+            ensureGreaterThanZero(maxBatchTokens, "maxBatchTokens");
+            ensureTrue(intraOpThreads >= 0, "intraOpThreads must not be negative");
+            ensureTrue(interOpThreads >= 0, "interOpThreads must not be negative");
+            int intraOp = intraOpThreads;
+            int interOp = interOpThreads;
+            Executor modelExecutor = executor;
+            if (autoThreads) {
+                ensureTrue(executor == null && intraOpThreads == 0 && interOpThreads == 0,
+                        "autoThreads cannot be combined with executor, intraOpThreads or interOpThreads");
+                int[] threads = splitThreads(Runtime.getRuntime().availableProcessors());
+                modelExecutor = createExecutor(threads[0]);
+                intraOp = threads[1];
+                interOp = 1;
+            }
+            // ONNX Runtime cannot copy session options, so caller-provided ones are modified in place
+            OrtSession.SessionOptions options = sessionOptions != null ? sessionOptions : new OrtSession.SessionOptions();
+            try {
+                if (intraOp > 0) {
+                    options.setIntraOpNumThreads(intraOp);
+                }
+                if (interOp > 0) {
+                    options.setInterOpNumThreads(interOp);
+                }
+                if (optimizationLevel != null) {
+                    options.setOptimizationLevel(optimizationLevel);
+                }
+                if (memoryPatternOptimization != null) {
+                    options.setMemoryPatternOptimization(memoryPatternOptimization);
+                }
+                if (cpuArenaAllocator != null) {
+                    options.setCPUArenaAllocator(cpuArenaAllocator);
+                }
+                return new OnnxEmbeddingModel(this, options, modelExecutor);
+            } catch (OrtException e) {
+                throw new RuntimeException(e);
+            } finally {
+                // the session no longer needs the options once it is created
+                if (sessionOptions == null) {
+                    options.close();
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,336 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+
+/**
+ * 流式批量写入向量
+ * <p>
+ * 条目按需从 Iterator 或 Stream 中拉取并切分为批次，同时在途的写入请求不超过 maxInFlight 个。
+ * 只有某个批次完成、空出窗口后才会继续拉取下一批，生产方（例如边读文件边向量化的流）因此受到反压，
+ * 内存中最多只有 maxInFlight 个批次。每个批次完成后通过监听器报告进度，失败的批次不会中断后续写入，
+ * 最终在 {@link Result} 中汇总。
+ */
+public final class BulkLoader {
+    private final VectorStore vectorStore;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final Consumer<BatchResult> listener;
+
+    private BulkLoader(Builder builder) {
+        this.vectorStore = ensureNotNull(builder.vectorStore, "vectorStore");
+        this.batchSize = ensureGreaterThanZero(builder.batchSize, "batchSize");
+        this.maxInFlight = ensureGreaterThanZero(builder.maxInFlight, "maxInFlight");
+        this.listener = builder.listener;
+    }
+
+    /**
+     * 创建一个新的Builder实例
+     *
+     * @return Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 写入迭代器中的所有条目
+     * <p>
+     * 迭代器只会被串行访问，但可能在完成上一个批次的线程上被调用。
+     *
+     * @param entries 待写入的条目
+     * @return 所有批次结束后完成；迭代器抛出异常时以该异常结束
+     */
+    public CompletableFuture<Result> load(Iterator<VectorEntry> entries) {
+        Run run = new Run(ensureNotNull(entries, "entries"));
+        run.pump();
+        return run.result;
+    }
+
+    /**
+     * 写入流中的所有条目，结束后关闭流
+     *
+     * @param entries 待写入的条目
+     * @return 所有批次结束后完成
+     */
+    public CompletableFuture<Result> load(Stream<VectorEntry> entries) {
+        return load(entries.iterator()).whenComplete((result, ex) -> entries.close());
+    }
+
+    private CompletableFuture<Boolean> write(List<VectorEntry> batch) {
+        List<float[]> vectors = new ArrayList<>(batch.size());
+        List<String> metadata = new ArrayList<>(batch.size());
+        boolean identified = false;
+        for (VectorEntry entry : batch) {
+            vectors.add(entry.vector);
+            metadata.add(entry.metadata);
+            identified |= entry.id != null;
+        }
+        if (!identified) {
+            return vectorStore.addVectors(vectors, metadata);
+        }
+        List<String> ids = new ArrayList<>(batch.size());
+        for (VectorEntry entry : batch) {
+            ids.add(entry.id != null ? entry.id : UUID.randomUUID().toString());
+        }
+        return vectorStore.upsertVectors(ids, vectors, metadata);
+    }
+
+    /**
+     * 一次 load 调用的状态
+     */
+    private final class Run {
+        final Iterator<VectorEntry> entries;
+        final CompletableFuture<Result> result = new CompletableFuture<>();
+        // 同步完成的批次会在 pump 内部再次触发 pump，计数器把递归调用转为外层循环的下一轮
+        final AtomicInteger pumping = new AtomicInteger();
+        final Object listenerLock = new Object();
+        final List<BatchResult> failures = new ArrayList<>();
+        int batches;
+        int inFlight;
+        long offset;
+        long succeeded;
+        long failed;
+        boolean exhausted;
+        Throwable error;
+
+        Run(Iterator<VectorEntry> entries) {
+            this.entries = entries;
+        }
+
+        void pump() {
+            if (pumping.getAndIncrement() != 0) {
+                return;
+            }
+            do {
+                while (true) {
+                    int index;
+                    long start;
+                    // 先占住一个在途名额再拉取：拉取可能很慢（例如边拉取边向量化），不能持锁，
+                    // 否则完成批次的线程在 finish 中都会被阻塞；占住的名额也使整次写入不会提前结束
+                    synchronized (this) {
+                        if (exhausted || inFlight >= maxInFlight) {
+                            break;
+                        }
+                        inFlight++;
+                    }
+                    // 只有持有 pumping 的线程会执行到这里，迭代器仍是串行访问
+                    List<VectorEntry> batch = pull();
+                    synchronized (this) {
+                        if (batch.isEmpty()) {
+                            inFlight--;
+                            exhausted = true;
+                            break;
+                        }
+                        index = batches++;
+                        start = offset;
+                        offset += batch.size();
+                    }
+                    submit(index, start, batch);
+                }
+                completeIfDone();
+            } while (pumping.decrementAndGet() != 0);
+        }
+
+        private List<VectorEntry> pull() {
+            List<VectorEntry> batch = new ArrayList<>(batchSize);
+            try {
+                while (batch.size() < batchSize && entries.hasNext()) {
+                    batch.add(entries.next());
+                }
+            } catch (RuntimeException e) {
+                // 已拉取的半个批次丢弃，等在途批次结束后以该异常结束；随后进入的同步块发布该字段
+                error = e;
+                return Collections.emptyList();
+            }
+            return batch;
+        }
+
+        private void submit(int index, long start, List<VectorEntry> batch) {
+            CompletableFuture<Boolean> future;
+            try {
+                future = write(batch);
+            } catch (RuntimeException e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            future.whenComplete((success, ex) -> {
+                Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                finish(new BatchResult(index, start, batch.size(), cause == null && Boolean.TRUE.equals(success), cause));
+            });
+        }
+
+        private void finish(BatchResult batch) {
+            try {
+                if (listener != null) {
+                    synchronized (listenerLock) {
+                        listener.accept(batch);
+                    }
+                }
+            } catch (RuntimeException e) {
+                // 监听器的异常不影响写入
+            } finally {
+                synchronized (this) {
+                    inFlight--;
+                    if (batch.success) {
+                        succeeded += batch.size;
+                    } else {
+                        failed += batch.size;
+                        failures.add(batch);
+                    }
+                }
+                pump();
+            }
+        }
+
+        private void completeIfDone() {
+            Result done;
+            Throwable cause;
+            synchronized (this) {
+                if (!exhausted || inFlight > 0 || result.isDone()) {
+                    return;
+                }
+                cause = error;
+                failures.sort((a, b) -> Integer.compare(a.index, b.index));
+                done = new Result(batches, succeeded, failed, Collections.unmodifiableList(new ArrayList<>(failures)));
+            }
+            if (cause != null) {
+                result.completeExceptionally(cause);
+            } else {
+                result.complete(done);
+            }
+        }
+    }
+
+    /**
+     * 单个批次的写入结果
+     */
+    public static final class BatchResult {
+        /**
+         * 批次序号，从 0 开始
+         */
+        public final int index;
+        /**
+         * 批次第一条在输入中的位置
+         */
+        public final long offset;
+        public final int size;
+        public final boolean success;
+        /**
+         * 写入抛出的异常，存储只返回 false 时为 null
+         */
+        public final Throwable error;
+
+        BatchResult(int index, long offset, int size, boolean success, Throwable error) {
+            this.index = index;
+            this.offset = offset;
+            this.size = size;
+            this.success = success;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return "BatchResult{index=" + index + ", offset=" + offset + ", size=" + size + ", success=" + success
+                + (error != null ? ", error=" + error : "") + "}";
+        }
+    }
+
+    /**
+     * 整次写入的汇总
+     */
+    public static final class Result {
+        public final int batches;
+        public final long succeeded;
+        public final long failed;
+        /**
+         * 失败的批次，按序号排列
+         */
+        public final List<BatchResult> failures;
+
+        Result(int batches, long succeeded, long failed, List<BatchResult> failures) {
+            this.batches = batches;
+            this.succeeded = succeeded;
+            this.failed = failed;
+            this.failures = failures;
+        }
+
+        public boolean isSuccess() {
+            return failures.isEmpty();
+        }
+    }
+
+    /**
+     * BulkLoader的构建器
+     */
+    public static class Builder {
+        private VectorStore vectorStore;
+        private int batchSize = 1000;
+        private int maxInFlight = 4;
+        private Consumer<BatchResult> listener;
+
+        /**
+         * 设置写入的目标存储
+         *
+         * @param vectorStore 向量存储
+         * @return Builder实例
+         */
+        public Builder vectorStore(VectorStore vectorStore) {
+            this.vectorStore = vectorStore;
+            return this;
+        }
+
+        /**
+         * 设置每个批次的条目数
+         *
+         * @param batchSize 批次大小
+         * @return Builder实例
+         */
+        public Builder batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
+        /**
+         * 设置同时在途的批次数上限
+         *
+         * @param maxInFlight 在途批次上限
+         * @return Builder实例
+         */
+        public Builder maxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * 设置批次完成时的回调，回调按完成顺序串行调用
+         *
+         * @param listener 回调
+         * @return Builder实例
+         */
+        public Builder listener(Consumer<BatchResult> listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * 构建BulkLoader实例
+         *
+         * @return BulkLoader实例
+         */
+        public BulkLoader build() {
+            return new BulkLoader(this);
+        }
+    }
+}
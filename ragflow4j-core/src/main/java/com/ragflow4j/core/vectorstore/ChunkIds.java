@@ -0,0 +1,60 @@
+package com.ragflow4j.core.vectorstore;
+
+import com.ragflow4j.core.utils.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 由文档分块内容推导确定性的向量 ID
+ * <p>
+ * ID 由 documentId、chunkIndex 和分块内容的 SHA-256 共同决定：同一分块重复写入得到同一个 ID，
+ * 内容变化后得到新的 ID。重新索引时已存在的 ID 可以直接跳过，失败重试也不会产生重复数据。
+ */
+public final class ChunkIds {
+    private static final char SEPARATOR = '\u0000';
+
+    private ChunkIds() {
+    }
+
+    /**
+     * 计算分块的 ID
+     *
+     * @param documentId 文档ID
+     * @param chunkIndex 分块序号
+     * @param content 分块内容
+     * @return 确定性的 UUID
+     */
+    public static String of(String documentId, int chunkIndex, String content) {
+        return Utils.generateUUIDFrom(documentId + SEPARATOR + chunkIndex + SEPARATOR + (content == null ? "" : content));
+    }
+
+    /**
+     * 从元数据 JSON 中读取 documentId、chunkIndex 和 content 计算分块 ID，
+     * 元数据缺少 documentId 时以完整的元数据文本作为内容计算
+     *
+     * @param metadata 元数据
+     * @return 确定性的 UUID
+     */
+    public static String of(String metadata) {
+        VectorMetadata parsed = VectorMetadata.parse(metadata);
+        if (parsed.documentId == null) {
+            return Utils.generateUUIDFrom(metadata == null ? "" : metadata);
+        }
+        return of(parsed.documentId, parsed.chunkIndex, parsed.content());
+    }
+
+    /**
+     * 批量计算分块 ID
+     *
+     * @param metadata 元数据列表
+     * @return 与元数据一一对应的 ID
+     */
+    public static List<String> of(List<String> metadata) {
+        List<String> ids = new ArrayList<>(metadata.size());
+        for (String raw : metadata) {
+            ids.add(of(raw));
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,39 @@
+package com.ragflow4j.core.vectorstore;
+
+/**
+ * 向量距离计算的基础算子，进程内所有 VectorStore 的暴力扫描、图遍历和重排都经过这里
+ * <p>
+ * 实现在类加载时选定：Java 8 上使用循环展开的标量实现；打包为 multi-release jar 后，
+ * 在 JDK 17+ 且加载了 {@code jdk.incubator.vector} 模块时使用 Vector API 实现，见 {@link KernelLoader}。
+ */
+abstract class DistanceKernels {
+    /**
+     * 当前运行时选用的实现，static final 字段便于 JIT 内联
+     */
+    static final DistanceKernels INSTANCE = KernelLoader.load();
+
+    /**
+     * 内积
+     */
+    abstract float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * 平方欧氏距离
+     */
+    abstract float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * 余弦相似度，任一向量为零向量时返回 0
+     */
+    abstract float cosine(float[] a, int aOffset, float[] b, int bOffset, int length);
+
+    /**
+     * float 向量与 int8 编码的内积，编码按有符号字节解释
+     */
+    abstract float dot(float[] a, int aOffset, byte[] codes, int codeOffset, int length);
+
+    /**
+     * float 向量与 int8 编码还原值 scale * codes[i] 之间的平方欧氏距离
+     */
+    abstract float squareDistance(float[] a, int aOffset, byte[] codes, int codeOffset, float scale, int length);
+}
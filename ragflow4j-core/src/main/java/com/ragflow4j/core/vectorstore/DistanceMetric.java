@@ -0,0 +1,144 @@
+package com.ragflow4j.core.vectorstore;
+
+/**
+ * 进程内向量存储使用的距离度量
+ * <p>
+ * 内部统一使用"越小越相似"的距离进行比较，对外返回的分数与 Milvus 的语义保持一致：
+ * L2 返回平方欧氏距离，INNER_PRODUCT 返回内积，COSINE 返回余弦相似度。
+ */
+public enum DistanceMetric {
+    /**
+     * 平方欧氏距离
+     */
+    L2 {
+        @Override
+        float distance(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+            return DistanceKernels.INSTANCE.squareDistance(a, aOffset, b, bOffset, dimension);
+        }
+
+        @Override
+        float distance(float[] query, int queryOffset, byte[] codes, int codeOffset, float scale, int dimension) {
+            return DistanceKernels.INSTANCE.squareDistance(query, queryOffset, codes, codeOffset, scale, dimension);
+        }
+
+        @Override
+        public double toScore(float distance) {
+            return distance;
+        }
+    },
+
+    /**
+     * 内积
+     */
+    INNER_PRODUCT {
+        @Override
+        float distance(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+            return -DistanceKernels.INSTANCE.dot(a, aOffset, b, bOffset, dimension);
+        }
+
+        @Override
+        float distance(float[] query, int queryOffset, byte[] codes, int codeOffset, float scale, int dimension) {
+            return -scale * DistanceKernels.INSTANCE.dot(query, queryOffset, codes, codeOffset, dimension);
+        }
+
+        @Override
+        public double toScore(float distance) {
+            return -distance;
+        }
+    },
+
+    /**
+     * 余弦相似度，写入和查询时向量会先做归一化，距离退化为 1 - 内积
+     */
+    COSINE {
+        @Override
+        float distance(float[] a, int aOffset, float[] b, int bOffset, int dimension) {
+            return 1f - DistanceKernels.INSTANCE.dot(a, aOffset, b, bOffset, dimension);
+        }
+
+        @Override
+        float distance(float[] query, int queryOffset, byte[] codes, int codeOffset, float scale, int dimension) {
+            return 1f - scale * DistanceKernels.INSTANCE.dot(query, queryOffset, codes, codeOffset, dimension);
+        }
+
+        @Override
+        public double toScore(float distance) {
+            return 1d - distance;
+        }
+
+        @Override
+        public boolean requiresNormalization() {
+            return true;
+        }
+    };
+
+    /**
+     * 计算两个向量之间的距离，值越小越相似
+     *
+     * @param a 向量 a 所在数组
+     * @param aOffset 向量 a 的起始位置
+     * @param b 向量 b 所在数组
+     * @param bOffset 向量 b 的起始位置
+     * @param dimension 向量维度
+     * @return 距离
+     */
+    abstract float distance(float[] a, int aOffset, float[] b, int bOffset, int dimension);
+
+    /**
+     * 计算 float 查询向量与 int8 量化向量之间的距离（非对称距离），量化向量的第 i 维还原为 scale * codes[i]
+     *
+     * @param query 查询向量所在数组
+     * @param queryOffset 查询向量的起始位置
+     * @param codes 量化编码所在数组
+     * @param codeOffset 量化向量的起始位置
+     * @param scale 量化向量的缩放系数
+     * @param dimension 向量维度
+     * @return 距离
+     */
+    abstract float distance(float[] query, int queryOffset, byte[] codes, int codeOffset, float scale, int dimension);
+
+    /**
+     * 将内部距离转换为对外暴露的分数
+     *
+     * @param distance 内部距离
+     * @return 分数
+     */
+    public abstract double toScore(float distance);
+
+    /**
+     * 是否需要在写入和查询前对向量做归一化
+     *
+     * @return 需要归一化时返回 true
+     */
+    public boolean requiresNormalization() {
+        return false;
+    }
+
+    /**
+     * 结果是否按分数升序排列（距离类度量），否则按降序排列（相似度类度量）
+     *
+     * @return 分数越小越相似时返回 true
+     */
+    public boolean isAscending() {
+        return this == L2;
+    }
+
+    /**
+     * 返回归一化后的向量副本，零向量原样返回副本
+     *
+     * @param vector 原始向量
+     * @return 归一化后的向量
+     */
+    static float[] normalize(float[] vector) {
+        float sumSquare = DistanceKernels.INSTANCE.dot(vector, 0, vector, 0, vector.length);
+        float[] normalized = new float[vector.length];
+        if (sumSquare == 0f) {
+            return normalized;
+        }
+        float norm = (float) Math.sqrt(sumSquare);
+        for (int i = 0; i < vector.length; i++) {
+            normalized[i] = vector[i] / norm;
+        }
+        return normalized;
+    }
+}
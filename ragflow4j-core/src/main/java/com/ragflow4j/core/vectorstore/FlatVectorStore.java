@@ -0,0 +1,735 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * 精确检索的进程内 VectorStore，对全部向量做暴力扫描
+ * <p>
+ * 向量连续存放在一个 {@link VectorSlab} 中，按槽位顺序追加，容量不足时整体扩容。
+ * 查询把槽位区间切分为若干段交给 fork/join 线程池并行扫描，每段维护自己的有界最大堆，在任务归并时两两合并为最终的 topK。
+ * 批量查询在同一次扫描中对所有查询计分，每个向量只从内存读取一次。
+ * <p>
+ * 小规模知识库上精确检索的召回率和构建时间都优于近似索引；同时可以作为基准，
+ * 通过 {@link #measureRecall(VectorStore, List, int)} 衡量任意近似索引的召回率。
+ * <p>
+ * 通过 {@link Builder#encoding(VectorEncoding)} 可以改为 int8 存储，内存约为 float 的四分之一，
+ * 距离按量化后的向量计算，结果不再是严格精确的，{@link #getVectors(List)} 等返回的也是还原后的近似向量。
+ * <p>
+ * 删除只在位图中置位，扫描时跳过，代价是 O(1)。被删除的槽位比例超过阈值后，后台把存活的向量复制到新的数组中再整体替换，
+ * 复制期间查询继续读取旧数组，不受影响。
+ * <p>
+ * 对支持截断维度的嵌入模型（Matryoshka 表示）可以通过 {@link Builder#prefixDimension(int)} 启用两阶段检索：
+ * 每个向量的前若干维另存在一个紧凑的数组中，先在前缀上扫描出 topK 若干倍的候选，再用完整向量精确重排。
+ * 扫描读取的数据量按维度比例减少，代价是额外一份前缀的内存。
+ */
+public class FlatVectorStore implements VectorStore, AutoCloseable {
+    private static final int SCAN_BATCH = 4096;
+    // 删除数量少于此值时不压缩，避免小规模数据反复复制
+    private static final int MIN_COMPACTION_DEAD = 64;
+
+    private final int dimension;
+    private final int prefixDimension;
+    private final int prefixFetchFactor;
+    private final DistanceMetric metric;
+    private final VectorEncoding encoding;
+    private final ForkJoinPool pool;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private final int initialCapacity;
+    private final double compactionThreshold;
+
+    private final Object writeLock = new Object();
+    private final Map<String, Integer> idToSlot = new HashMap<>();
+    private final AtomicInteger liveCount = new AtomicInteger();
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    private volatile Arena arena;
+
+    private FlatVectorStore(Builder builder) {
+        this.dimension = ensureGreaterThanZero(builder.dimension, "dimension");
+        this.metric = ensureNotNull(builder.metric, "metric");
+        this.encoding = ensureNotNull(builder.encoding, "encoding");
+        this.pool = builder.pool != null ? builder.pool : ForkJoinPool.commonPool();
+        ensureTrue(builder.prefixDimension >= 0 && builder.prefixDimension < dimension,
+            "prefixDimension must be between 0 and " + (dimension - 1));
+        this.prefixDimension = builder.prefixDimension;
+        this.prefixFetchFactor = ensureGreaterThanZero(builder.prefixFetchFactor, "prefixFetchFactor");
+        this.initialCapacity = ensureGreaterThanZero(builder.initialCapacity, "initialCapacity");
+        this.arena = new Arena(initialCapacity, dimension, prefixDimension, encoding);
+        ensureTrue(builder.compactionThreshold > 0 && builder.compactionThreshold <= 1,
+            "compactionThreshold must be in (0, 1]");
+        this.compactionThreshold = builder.compactionThreshold;
+        if (builder.executor != null) {
+            this.executor = builder.executor;
+            this.ownsExecutor = false;
+        } else {
+            this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            this.ownsExecutor = true;
+        }
+    }
+
+    /**
+     * 创建一个新的Builder实例
+     *
+     * @return Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addVectors(List<float[]> vectors, List<String> metadata) {
+        return CompletableFuture.supplyAsync(() -> {
+            ensureTrue(vectors.size() == metadata.size(), "vectors and metadata must have the same size");
+            for (int i = 0; i < vectors.size(); i++) {
+                insert(UUID.randomUUID().toString(), vectors.get(i), metadata.get(i));
+            }
+            maybeCompact();
+            return true;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK) {
+        return search(queryVector, topK, null);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK, MetadataFilter filter) {
+        MetadataFilter effective = filter == null || filter.isEmpty() ? null : filter;
+        return CompletableFuture.supplyAsync(
+            () -> searchNow(new float[][]{queryVector}, topK, effective).get(0), executor);
+    }
+
+    /**
+     * 所有查询共享同一次扫描
+     */
+    @Override
+    public CompletableFuture<List<List<SearchResult>>> searchBatch(List<float[]> queryVectors, int topK) {
+        return CompletableFuture.supplyAsync(
+            () -> searchNow(queryVectors.toArray(new float[0][]), topK, null), executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteVectors(List<String> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            for (String id : ids) {
+                delete(id);
+            }
+            maybeCompact();
+            return true;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateVector(String id, float[] vector, String metadata) {
+        return CompletableFuture.supplyAsync(() -> {
+            insert(id, vector, metadata);
+            // 替换已有 ID 同样留下被删除的槽位
+            maybeCompact();
+            return true;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> upsertVectors(List<String> ids, List<float[]> vectors, List<String> metadata) {
+        return CompletableFuture.supplyAsync(() -> {
+            ensureTrue(ids.size() == vectors.size() && ids.size() == metadata.size(),
+                "ids, vectors and metadata must have the same size");
+            for (int i = 0; i < ids.size(); i++) {
+                insert(ids.get(i), vectors.get(i), metadata.get(i));
+            }
+            maybeCompact();
+            return true;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> existingIds(List<String> ids) {
+        Set<String> existing = new HashSet<>();
+        synchronized (writeLock) {
+            for (String id : ids) {
+                if (idToSlot.containsKey(id)) {
+                    existing.add(id);
+                }
+            }
+        }
+        return CompletableFuture.completedFuture(existing);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, float[]>> getVectors(List<String> ids) {
+        Map<String, float[]> vectors = new HashMap<>();
+        synchronized (writeLock) {
+            Arena current = arena;
+            for (String id : ids) {
+                Integer slot = idToSlot.get(id);
+                if (slot != null) {
+                    float[] vector = new float[dimension];
+                    current.vectors.decode(slot, vector, 0);
+                    vectors.put(id, vector);
+                }
+            }
+        }
+        return CompletableFuture.completedFuture(vectors);
+    }
+
+    @Override
+    public CompletableFuture<List<VectorEntry>> listEntries(MetadataFilter filter) {
+        List<VectorEntry> entries = new ArrayList<>();
+        return scanEntries(filter, Integer.MAX_VALUE, entries::addAll).thenApply(v -> entries);
+    }
+
+    /**
+     * 在读取开始时的数组快照上扫描，期间的写入和压缩不影响本次读取
+     */
+    @Override
+    public CompletableFuture<Void> scanEntries(MetadataFilter filter, int batchSize,
+                                               Consumer<List<VectorEntry>> consumer) {
+        ensureGreaterThanZero(batchSize, "batchSize");
+        MetadataFilter effective = filter == null || filter.isEmpty() ? null : filter;
+        return CompletableFuture.runAsync(() -> {
+            Arena current = arena;
+            int count = current.size;
+            List<VectorEntry> batch = new ArrayList<>();
+            for (int slot = 0; slot < count; slot++) {
+                String id = current.ids[slot];
+                if (current.dead.get(slot) || effective != null && !effective.test(current.metadata[slot])) {
+                    continue;
+                }
+                float[] vector = new float[dimension];
+                current.vectors.decode(slot, vector, 0);
+                batch.add(VectorEntry.of(id, vector, current.metadata[slot].raw));
+                if (batch.size() == batchSize) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+            if (!batch.isEmpty()) {
+                consumer.accept(batch);
+            }
+        }, executor);
+    }
+
+    @Override
+    public boolean supportsListEntries() {
+        return true;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> retainChunks(String documentId, Collection<String> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            ensureNotNull(documentId, "documentId");
+            Set<String> keep = new HashSet<>(ids);
+            synchronized (writeLock) {
+                Arena current = arena;
+                for (int slot = 0; slot < current.size; slot++) {
+                    if (!current.dead.get(slot) && documentId.equals(current.metadata[slot].documentId)
+                        && !keep.contains(current.ids[slot])) {
+                        delete(current.ids[slot]);
+                    }
+                }
+            }
+            maybeCompact();
+            return true;
+        }, executor);
+    }
+
+    /**
+     * 以本存储的精确结果为基准，计算另一个索引在同一批查询上的 recall@topK
+     * <p>
+     * 两个存储需要以相同的 ID 写入相同的数据。
+     *
+     * @param index 被衡量的索引
+     * @param queryVectors 查询向量
+     * @param topK 返回数量
+     * @return 索引结果中命中精确 topK 的比例
+     */
+    public CompletableFuture<Double> measureRecall(VectorStore index, List<float[]> queryVectors, int topK) {
+        return searchBatch(queryVectors, topK).thenCombine(index.searchBatch(queryVectors, topK), (exact, approximate) -> {
+            int expected = 0;
+            int hits = 0;
+            for (int q = 0; q < exact.size(); q++) {
+                Set<String> truth = new HashSet<>();
+                for (SearchResult result : exact.get(q)) {
+                    truth.add(result.id);
+                }
+                expected += truth.size();
+                for (SearchResult result : approximate.get(q)) {
+                    if (truth.contains(result.id)) {
+                        hits++;
+                    }
+                }
+            }
+            return expected == 0 ? 1d : hits / (double) expected;
+        });
+    }
+
+    /**
+     * 当前可被检索到的向量数量
+     *
+     * @return 向量数量
+     */
+    public int size() {
+        return liveCount.get();
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public VectorEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * 已删除但仍占用槽位的向量数量
+     *
+     * @return 槽位数量
+     */
+    public int deadCount() {
+        return arena.dead.count();
+    }
+
+    /**
+     * 把存活的向量复制到新的数组中，释放被删除的槽位
+     * <p>
+     * 复制期间持有写锁，写入会等待；查询读取的是复制前的数组，不受影响。
+     */
+    public void compact() {
+        synchronized (writeLock) {
+            Arena current = arena;
+            int live = liveCount.get();
+            Arena compacted = new Arena(Math.max(initialCapacity, live + (live >>> 1)), dimension, prefixDimension,
+                encoding);
+            int target = 0;
+            for (int slot = 0; slot < current.size; slot++) {
+                if (current.dead.get(slot)) {
+                    continue;
+                }
+                current.vectors.copyTo(slot, compacted.vectors, target, 1);
+                if (prefixDimension > 0) {
+                    System.arraycopy(current.prefixes, slot * prefixDimension,
+                        compacted.prefixes, target * prefixDimension, prefixDimension);
+                }
+                compacted.ids[target] = current.ids[slot];
+                compacted.metadata[target] = current.metadata[slot];
+                idToSlot.put(current.ids[slot], target);
+                target++;
+            }
+            compacted.size = target;
+            arena = compacted;
+        }
+    }
+
+    public DistanceMetric getMetric() {
+        return metric;
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    /**
+     * 删除比例超过阈值时在后台压缩
+     */
+    private void maybeCompact() {
+        Arena current = arena;
+        int dead = current.dead.count();
+        if (dead >= MIN_COMPACTION_DEAD && dead >= current.size * compactionThreshold
+            && compactionScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    compact();
+                } finally {
+                    compactionScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * 写入一个向量，已存在的 ID 会被替换
+     */
+    void insert(String id, float[] vector, String metadata) {
+        ensureNotNull(id, "id");
+        ensureTrue(vector != null && vector.length == dimension,
+            "vector dimension must be " + dimension);
+        float[] source = metric.requiresNormalization() ? DistanceMetric.normalize(vector) : vector;
+        VectorMetadata parsed = VectorMetadata.parse(metadata);
+        synchronized (writeLock) {
+            delete(id);
+            Arena current = arena;
+            int slot = current.size;
+            if (slot == current.capacity) {
+                current = current.grow(slot + 1, dimension, prefixDimension, encoding);
+                arena = current;
+            }
+            current.vectors.set(slot, source, 0);
+            if (prefixDimension > 0) {
+                System.arraycopy(prefix(source), 0, current.prefixes, slot * prefixDimension, prefixDimension);
+            }
+            current.ids[slot] = id;
+            current.metadata[slot] = parsed;
+            idToSlot.put(id, slot);
+            // 最后发布 size，读到新 size 的查询一定能读到上面写入的槽位
+            current.size = slot + 1;
+            liveCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * 按 ID 标记删除
+     *
+     * @return ID 存在时返回 true
+     */
+    boolean delete(String id) {
+        synchronized (writeLock) {
+            Integer slot = idToSlot.remove(id);
+            if (slot == null) {
+                return false;
+            }
+            arena.dead.set(slot);
+            liveCount.decrementAndGet();
+            return true;
+        }
+    }
+
+    List<List<SearchResult>> searchNow(float[][] queryVectors, int topK, MetadataFilter filter) {
+        float[][] queries = new float[queryVectors.length][];
+        for (int q = 0; q < queries.length; q++) {
+            ensureTrue(queryVectors[q] != null && queryVectors[q].length == dimension,
+                "query vector dimension must be " + dimension);
+            queries[q] = metric.requiresNormalization() ? DistanceMetric.normalize(queryVectors[q]) : queryVectors[q];
+        }
+        List<List<SearchResult>> results = new ArrayList<>(queries.length);
+        // 数组和 size 来自同一个 Arena，压缩替换数组时查询看到的仍是一致的快照
+        Arena current = arena;
+        int count = current.size;
+        if (topK <= 0 || count == 0) {
+            for (int q = 0; q < queries.length; q++) {
+                results.add(new ArrayList<>());
+            }
+            return results;
+        }
+
+        NodeHeap[] heaps;
+        int candidates = (int) Math.min(Integer.MAX_VALUE - 1, (long) topK * prefixFetchFactor);
+        if (prefixDimension > 0 && candidates < count) {
+            float[][] prefixQueries = new float[queries.length][];
+            for (int q = 0; q < queries.length; q++) {
+                prefixQueries[q] = prefix(queries[q]);
+            }
+            heaps = pool.invoke(new ScanTask(current, prefixQueries, candidates, filter, 0, count, true));
+            for (int q = 0; q < heaps.length; q++) {
+                heaps[q] = rerank(current, queries[q], heaps[q], topK);
+            }
+        } else {
+            heaps = pool.invoke(new ScanTask(current, queries, topK, filter, 0, count, false));
+        }
+        for (NodeHeap heap : heaps) {
+            SearchResult[] ordered = new SearchResult[heap.size()];
+            int found = 0;
+            while (!heap.isEmpty()) {
+                float distance = heap.topDistance();
+                int slot = heap.pop();
+                if (!current.dead.get(slot)) {
+                    VectorMetadata metadata = current.metadata[slot];
+                    ordered[found++] = new SearchResult(current.ids[slot], metric.toScore(distance), metadata.raw,
+                        metadata.content());
+                }
+            }
+            List<SearchResult> list = new ArrayList<>(found);
+            for (int i = found - 1; i >= 0; i--) {
+                list.add(ordered[i]);
+            }
+            results.add(list);
+        }
+        return results;
+    }
+
+    /**
+     * 取向量的前 prefixDimension 维，余弦度量下重新归一化
+     */
+    private float[] prefix(float[] vector) {
+        float[] prefix = Arrays.copyOf(vector, prefixDimension);
+        return metric.requiresNormalization() ? DistanceMetric.normalize(prefix) : prefix;
+    }
+
+    /**
+     * 用完整向量重新计算前缀扫描得到的候选的距离，保留最近的 topK 个
+     */
+    private NodeHeap rerank(Arena current, float[] query, NodeHeap candidates, int topK) {
+        NodeHeap heap = NodeHeap.maxHeap(topK + 1);
+        for (int i = 0; i < candidates.size(); i++) {
+            int slot = candidates.nodeAt(i);
+            heap.offer(slot, current.vectors.distance(metric, query, 0, slot), topK);
+        }
+        return heap;
+    }
+
+    /**
+     * 连续存放的向量及其 ID、元数据和删除标记，扩容时整体复制；size 之前的槽位写入后不再改变，只会被标记删除
+     */
+    private static final class Arena {
+        final int capacity;
+        final VectorSlab vectors;
+        // 每个向量的前缀，未启用两阶段检索时为 null
+        final float[] prefixes;
+        final String[] ids;
+        final VectorMetadata[] metadata;
+        final Tombstones dead;
+        volatile int size;
+
+        Arena(int capacity, int dimension, int prefixDimension, VectorEncoding encoding) {
+            this(capacity, dimension, prefixDimension, encoding, new Tombstones(capacity));
+        }
+
+        private Arena(int capacity, int dimension, int prefixDimension, VectorEncoding encoding, Tombstones dead) {
+            this.capacity = capacity;
+            this.vectors = VectorSlab.create(encoding, capacity, dimension);
+            this.prefixes = prefixDimension > 0 ? new float[capacity * prefixDimension] : null;
+            this.ids = new String[capacity];
+            this.metadata = new VectorMetadata[capacity];
+            this.dead = dead;
+        }
+
+        Arena grow(int required, int dimension, int prefixDimension, VectorEncoding encoding) {
+            long maxCapacity = Integer.MAX_VALUE / dimension;
+            ensureTrue(required <= maxCapacity, "FlatVectorStore can hold at most " + maxCapacity + " vectors");
+            int grownCapacity = (int) Math.min(maxCapacity, Math.max(required, (long) capacity << 1));
+            Arena grown = new Arena(grownCapacity, dimension, prefixDimension, encoding, dead.copy(grownCapacity));
+            vectors.copyTo(0, grown.vectors, 0, capacity);
+            if (prefixes != null) {
+                System.arraycopy(prefixes, 0, grown.prefixes, 0, prefixes.length);
+            }
+            System.arraycopy(ids, 0, grown.ids, 0, capacity);
+            System.arraycopy(metadata, 0, grown.metadata, 0, capacity);
+            grown.size = size;
+            return grown;
+        }
+    }
+
+    /**
+     * 扫描一段槽位，为每个查询返回以最大距离为堆顶、最多 topK 个元素的结果堆；子任务的堆在归并时合并。
+     * prefix 为 true 时扫描前缀数组，查询也应是前缀
+     */
+    private final class ScanTask extends RecursiveTask<NodeHeap[]> {
+        private final Arena arena;
+        private final float[][] queries;
+        private final int topK;
+        private final MetadataFilter filter;
+        private final int from;
+        private final int to;
+        private final boolean prefix;
+
+        ScanTask(Arena arena, float[][] queries, int topK, MetadataFilter filter, int from, int to, boolean prefix) {
+            this.arena = arena;
+            this.queries = queries;
+            this.topK = topK;
+            this.filter = filter;
+            this.from = from;
+            this.to = to;
+            this.prefix = prefix;
+        }
+
+        @Override
+        protected NodeHeap[] compute() {
+            if (to - from <= SCAN_BATCH) {
+                return scan();
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(arena, queries, topK, filter, from, middle, prefix);
+            left.fork();
+            NodeHeap[] merged = new ScanTask(arena, queries, topK, filter, middle, to, prefix).compute();
+            NodeHeap[] other = left.join();
+            for (int q = 0; q < merged.length; q++) {
+                NodeHeap heap = merged[q];
+                for (int i = 0; i < other[q].size(); i++) {
+                    heap.offer(other[q].nodeAt(i), other[q].distanceAt(i), topK);
+                }
+            }
+            return merged;
+        }
+
+        private NodeHeap[] scan() {
+            NodeHeap[] heaps = new NodeHeap[queries.length];
+            for (int q = 0; q < heaps.length; q++) {
+                heaps[q] = NodeHeap.maxHeap(topK + 1);
+            }
+            for (int slot = from; slot < to; slot++) {
+                if (arena.dead.get(slot)) {
+                    continue;
+                }
+                int offset = slot * prefixDimension;
+                // 0：尚未判断过滤条件，1：通过，-1：不通过；只在向量可能进入某个结果堆时才判断
+                int accepted = filter == null ? 1 : 0;
+                for (int q = 0; q < queries.length; q++) {
+                    NodeHeap heap = heaps[q];
+                    float distance = prefix
+                        ? metric.distance(queries[q], 0, arena.prefixes, offset, prefixDimension)
+                        : arena.vectors.distance(metric, queries[q], 0, slot);
+                    if (heap.size() >= topK && distance >= heap.topDistance()) {
+                        continue;
+                    }
+                    if (accepted == 0) {
+                        accepted = filter.test(arena.metadata[slot]) ? 1 : -1;
+                    }
+                    if (accepted < 0) {
+                        break;
+                    }
+                    heap.offer(slot, distance, topK);
+                }
+            }
+            return heaps;
+        }
+    }
+
+    /**
+     * FlatVectorStore的构建器
+     */
+    public static class Builder {
+        private int dimension;
+        private DistanceMetric metric = DistanceMetric.L2;
+        private VectorEncoding encoding = VectorEncoding.FLOAT32;
+        private int initialCapacity = 1024;
+        private int prefixDimension;
+        private int prefixFetchFactor = 8;
+        private double compactionThreshold = 0.3;
+        private ForkJoinPool pool;
+        private Executor executor;
+
+        /**
+         * 设置向量维度
+         *
+         * @param dimension 向量维度
+         * @return Builder实例
+         */
+        public Builder dimension(int dimension) {
+            this.dimension = dimension;
+            return this;
+        }
+
+        /**
+         * 设置距离度量
+         *
+         * @param metric 距离度量
+         * @return Builder实例
+         */
+        public Builder metric(DistanceMetric metric) {
+            this.metric = metric;
+            return this;
+        }
+
+        /**
+         * 设置向量的存储编码，默认 FLOAT32；INT8 内存约为四分之一，距离按量化后的向量计算
+         *
+         * @param encoding 存储编码
+         * @return Builder实例
+         */
+        public Builder encoding(VectorEncoding encoding) {
+            this.encoding = encoding;
+            return this;
+        }
+
+        /**
+         * 设置初始可容纳的向量数，已知数据规模时可以避免扩容复制
+         *
+         * @param initialCapacity 初始容量
+         * @return Builder实例
+         */
+        public Builder initialCapacity(int initialCapacity) {
+            this.initialCapacity = initialCapacity;
+            return this;
+        }
+
+        /**
+         * 启用两阶段检索，先在向量的前若干维上粗筛候选，再用完整向量重排；默认 0 表示不启用
+         * <p>
+         * 只适用于前缀本身就是有效表示的嵌入模型，例如以 Matryoshka 方式训练、允许截断到 128 或 256 维的模型。
+         *
+         * @param prefixDimension 粗筛使用的维数，小于向量维度
+         * @return Builder实例
+         */
+        public Builder prefixDimension(int prefixDimension) {
+            this.prefixDimension = prefixDimension;
+            return this;
+        }
+
+        /**
+         * 设置两阶段检索中候选数量相对 topK 的倍数，默认 8
+         *
+         * @param prefixFetchFactor 候选倍数
+         * @return Builder实例
+         */
+        public Builder prefixFetchFactor(int prefixFetchFactor) {
+            this.prefixFetchFactor = prefixFetchFactor;
+            return this;
+        }
+
+        /**
+         * 设置触发后台压缩的删除比例，默认 0.3
+         *
+         * @param compactionThreshold 被删除槽位占已用槽位的比例，取值 (0, 1]
+         * @return Builder实例
+         */
+        public Builder compactionThreshold(double compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        /**
+         * 设置并行扫描使用的 fork/join 线程池，默认为公共线程池
+         *
+         * @param pool 线程池
+         * @return Builder实例
+         */
+        public Builder pool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * 设置执行异步操作的线程池，未设置时内部创建并在 close 时关闭
+         *
+         * @param executor 线程池
+         * @return Builder实例
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * 构建FlatVectorStore实例
+         *
+         * @return FlatVectorStore实例
+         */
+        public FlatVectorStore build() {
+            return new FlatVectorStore(this);
+        }
+    }
+}
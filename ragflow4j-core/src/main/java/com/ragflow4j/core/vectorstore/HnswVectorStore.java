@@ -0,0 +1,924 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * 基于 HNSW 图的进程内 VectorStore 实现
+ * <p>
+ * 向量按页存放在连续的 {@code float[]} 中，每一层的邻居表都是不可变的 {@code int[]}，
+ * 更新时在节点锁内复制后整体发布。写入之间只在同一节点上互斥，查询只读取 volatile 发布的数据，全程无锁。
+ * 同一 ID 的替换和删除在按 ID 分段的锁内完成，并发写入同一 ID 时只会留下一个可见节点。
+ * <p>
+ * 删除采用标记方式：被删除的节点仍保留在图中用于导航，但不会出现在搜索结果里。
+ * 被删除和被替换的节点比例超过阈值后，在后台用可见节点重建整张图并整体替换（见 {@link #compact()}），
+ * 回收它们占用的向量、邻居表和原始向量文件。
+ * <p>
+ * 使用 {@link VectorEncoding#INT8} 时图的构建和遍历都在量化向量上进行，内存约为 float 的四分之一；
+ * 设置了重排候选数时，原始向量另存于内存映射文件，查询最后用全精度距离对候选重新排序。
+ */
+public class HnswVectorStore implements VectorStore, AutoCloseable {
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    private static final int LOCK_STRIPES = 1024;
+    private static final int[] NO_NEIGHBOURS = new int[0];
+    private static final int MIN_COMPACT_DEAD = 1024;
+    private static final double COMPACT_THRESHOLD = 0.3;
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final DistanceMetric metric;
+    private final VectorEncoding encoding;
+    private final int rerankCandidates;
+    private final Path rerankDirectory;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private volatile int efSearch;
+
+    private final Object[] nodeLocks = new Object[LOCK_STRIPES];
+    private final Object[] idLocks = new Object[LOCK_STRIPES];
+    private final Object growLock = new Object();
+    private final Object entryLock = new Object();
+    private final ThreadLocal<VisitedTable> visitedTables = ThreadLocal.withInitial(VisitedTable::new);
+    // 写入持有读锁，彼此不互斥；重建图时持有写锁
+    private final ReentrantReadWriteLock compactLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean compactScheduled = new AtomicBoolean();
+
+    private volatile Graph graph;
+
+    private HnswVectorStore(Builder builder) {
+        this.dimension = ensureGreaterThanZero(builder.dimension, "dimension");
+        this.m = ensureGreaterThanZero(builder.m, "m");
+        this.maxM0 = m * 2;
+        this.efConstruction = ensureGreaterThanZero(builder.efConstruction, "efConstruction");
+        this.efSearch = ensureGreaterThanZero(builder.efSearch, "efSearch");
+        this.metric = ensureNotNull(builder.metric, "metric");
+        this.encoding = ensureNotNull(builder.encoding, "encoding");
+        ensureTrue(builder.rerankCandidates >= 0, "rerankCandidates must not be negative");
+        // 只有量化存储才需要重排
+        this.rerankCandidates = encoding == VectorEncoding.INT8 ? builder.rerankCandidates : 0;
+        this.rerankDirectory = builder.rerankDirectory;
+        this.levelMultiplier = 1d / Math.log(Math.max(m, 2));
+        if (builder.executor != null) {
+            this.executor = builder.executor;
+            this.ownsExecutor = false;
+        } else {
+            this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            this.ownsExecutor = true;
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            nodeLocks[i] = new Object();
+            idLocks[i] = new Object();
+        }
+        this.graph = new Graph();
+    }
+
+    /**
+     * 创建一个新的Builder实例
+     *
+     * @return Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addVectors(List<float[]> vectors, List<String> metadata) {
+        return CompletableFuture.supplyAsync(() -> {
+            ensureTrue(vectors.size() == metadata.size(), "vectors and metadata must have the same size");
+            for (int i = 0; i < vectors.size(); i++) {
+                insert(UUID.randomUUID().toString(), vectors.get(i), metadata.get(i));
+            }
+            return true;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK) {
+        return CompletableFuture.supplyAsync(() -> searchNow(queryVector, topK), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK, MetadataFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            return search(queryVector, topK);
+        }
+        return CompletableFuture.supplyAsync(() -> searchNow(queryVector, topK, filter), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<List<SearchResult>>> searchBatch(List<float[]> queryVectors, int topK) {
+        // 进程内没有网络往返，各查询直接并行执行
+        List<CompletableFuture<List<SearchResult>>> futures = new ArrayList<>(queryVectors.size());
+        for (float[] queryVector : queryVectors) {
+            futures.add(search(queryVector, topK));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+            .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteVectors(List<String> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            for (String id : ids) {
+                delete(id);
+            }
+            return true;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateVector(String id, float[] vector, String metadata) {
+        return CompletableFuture.supplyAsync(() -> {
+            insert(id, vector, metadata);
+            return true;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> upsertVectors(List<String> ids, List<float[]> vectors, List<String> metadata) {
+        return CompletableFuture.supplyAsync(() -> {
+            ensureTrue(ids.size() == vectors.size() && ids.size() == metadata.size(),
+                "ids, vectors and metadata must have the same size");
+            for (int i = 0; i < ids.size(); i++) {
+                insert(ids.get(i), vectors.get(i), metadata.get(i));
+            }
+            return true;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> existingIds(List<String> ids) {
+        Graph current = graph;
+        Set<String> existing = new HashSet<>();
+        for (String id : ids) {
+            if (current.idToNode.containsKey(id)) {
+                existing.add(id);
+            }
+        }
+        return CompletableFuture.completedFuture(existing);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, float[]>> getVectors(List<String> ids) {
+        Graph current = graph;
+        Map<String, float[]> vectors = new HashMap<>();
+        for (String id : ids) {
+            Integer node = current.idToNode.get(id);
+            if (node != null) {
+                float[] vector = new float[dimension];
+                current.pageOf(node).vectors.decode(node & PAGE_MASK, vector, 0);
+                vectors.put(id, vector);
+            }
+        }
+        return CompletableFuture.completedFuture(vectors);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> retainChunks(String documentId, Collection<String> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            ensureNotNull(documentId, "documentId");
+            Set<String> keep = new HashSet<>(ids);
+            Graph current = graph;
+            for (Map.Entry<String, Integer> entry : current.idToNode.entrySet()) {
+                if (!keep.contains(entry.getKey())
+                    && documentId.equals(current.metadataOf(entry.getValue()).documentId)) {
+                    delete(entry.getKey());
+                }
+            }
+            return true;
+        }, executor);
+    }
+
+    /**
+     * 调整查询时的候选集大小，立即对后续查询生效
+     *
+     * @param efSearch 候选集大小
+     */
+    public void setEfSearch(int efSearch) {
+        this.efSearch = ensureGreaterThanZero(efSearch, "efSearch");
+    }
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public DistanceMetric getMetric() {
+        return metric;
+    }
+
+    public VectorEncoding getEncoding() {
+        return encoding;
+    }
+
+    /**
+     * 当前可被检索到的向量数量
+     *
+     * @return 向量数量
+     */
+    public int size() {
+        return graph.liveCount.get();
+    }
+
+    /**
+     * 已删除或被替换、但仍留在图中用于导航的节点数量
+     *
+     * @return 节点数量
+     */
+    public int deadCount() {
+        return graph.deadNodes.get();
+    }
+
+    /**
+     * 当前图中已分配的节点数量，包括被删除和被替换的节点
+     *
+     * @return 节点数量
+     */
+    public int allocatedCount() {
+        return graph.nodeCount.get();
+    }
+
+    /**
+     * 用可见节点重建整张图并整体替换，回收被删除和被替换的节点占用的向量、邻居表和原始向量
+     * <p>
+     * 节点沿用原来的层数按写入顺序重新插入。重建期间写入等待，查询继续读取替换前的图。
+     * 被删除的节点比例超过阈值时会在后台自动调用。
+     */
+    public void compact() {
+        compactLock.writeLock().lock();
+        try {
+            Graph current = graph;
+            if (current.deadNodes.get() == 0) {
+                return;
+            }
+            Graph rebuilt = new Graph();
+            try {
+                float[] vector = new float[dimension];
+                int count = current.nodeCount.get();
+                for (int node = 0; node < count; node++) {
+                    Page page = current.pageOf(node);
+                    int local = node & PAGE_MASK;
+                    String id = page.ids.get(local);
+                    if (id == null) {
+                        continue;
+                    }
+                    if (current.fullPrecision != null) {
+                        current.fullPrecision.read(node, vector, 0);
+                    } else {
+                        page.vectors.decode(local, vector, 0);
+                    }
+                    rebuilt.insert(id, vector, page.metadata.get(local), page.levels.get(local));
+                }
+            } catch (RuntimeException e) {
+                rebuilt.close();
+                throw e;
+            }
+            graph = rebuilt;
+            // 映射的页在文件关闭后仍然有效，进行中的查询不受影响
+            current.close();
+        } finally {
+            compactLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+        graph.close();
+    }
+
+    /**
+     * 写入一个向量，已存在的 ID 会被替换
+     */
+    void insert(String id, float[] vector, String metadata) {
+        ensureNotNull(id, "id");
+        ensureTrue(vector != null && vector.length == dimension,
+            "vector dimension must be " + dimension);
+
+        float[] source = metric.requiresNormalization() ? DistanceMetric.normalize(vector) : vector;
+        VectorMetadata parsed = VectorMetadata.parse(metadata);
+        int level = randomLevel();
+        compactLock.readLock().lock();
+        try {
+            graph.insert(id, source, parsed, level);
+        } finally {
+            compactLock.readLock().unlock();
+        }
+        maybeCompact();
+    }
+
+    /**
+     * 按 ID 标记删除
+     *
+     * @return ID 存在时返回 true
+     */
+    boolean delete(String id) {
+        boolean deleted;
+        compactLock.readLock().lock();
+        try {
+            deleted = graph.delete(id);
+        } finally {
+            compactLock.readLock().unlock();
+        }
+        if (deleted) {
+            maybeCompact();
+        }
+        return deleted;
+    }
+
+    private Object idLock(String id) {
+        int hash = id.hashCode();
+        return idLocks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+    }
+
+    List<SearchResult> searchNow(float[] queryVector, int topK) {
+        return searchNow(queryVector, topK, null);
+    }
+
+    List<SearchResult> searchNow(float[] queryVector, int topK, MetadataFilter filter) {
+        ensureTrue(queryVector != null && queryVector.length == dimension,
+            "query vector dimension must be " + dimension);
+        float[] query = metric.requiresNormalization() ? DistanceMetric.normalize(queryVector) : queryVector;
+        return graph.search(query, topK, filter);
+    }
+
+    /**
+     * 被删除的节点比例超过阈值时在后台重建图
+     */
+    private void maybeCompact() {
+        Graph current = graph;
+        int dead = current.deadNodes.get();
+        if (dead >= MIN_COMPACT_DEAD && dead >= current.nodeCount.get() * COMPACT_THRESHOLD
+            && compactScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    compact();
+                } finally {
+                    compactScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    private int randomLevel() {
+        double r = 1d - ThreadLocalRandom.current().nextDouble();
+        return (int) (-Math.log(r) * levelMultiplier);
+    }
+
+    /**
+     * 一代图的全部数据，重建时整体替换
+     * <p>
+     * 节点编号只在同一代图内有效：查询开始时读取一次当前的图，之后只访问这一代的数据，替换不影响进行中的查询。
+     */
+    private final class Graph {
+        final AtomicInteger nodeCount = new AtomicInteger();
+        final AtomicInteger liveCount = new AtomicInteger();
+        final AtomicInteger deadNodes = new AtomicInteger();
+        final ConcurrentHashMap<String, Integer> idToNode = new ConcurrentHashMap<>();
+        final MappedVectorFile fullPrecision;
+        volatile Page[] pages = new Page[0];
+        volatile EntryPoint entryPoint;
+
+        Graph() {
+            this.fullPrecision = rerankCandidates > 0
+                ? new MappedVectorFile(rerankDirectory, dimension, PAGE_BITS)
+                : null;
+        }
+
+        /**
+         * 写入一个已归一化的向量，已存在的 ID 会被替换
+         */
+        void insert(String id, float[] source, VectorMetadata metadata, int level) {
+            int node;
+            // 删除旧节点和发布新节点对同一 ID 是原子的，否则并发替换会留下不在 idToNode 中却仍可检索的节点
+            synchronized (idLock(id)) {
+                delete(id);
+
+                node = nodeCount.getAndIncrement();
+                Page page = ensurePage(node);
+                int local = node & PAGE_MASK;
+                page.vectors.set(local, source, 0);
+                if (fullPrecision != null) {
+                    fullPrecision.write(node, source, 0);
+                }
+
+                int[][] emptyLinks = new int[level + 1][];
+                Arrays.fill(emptyLinks, NO_NEIGHBOURS);
+                page.links.set(local, emptyLinks);
+                page.metadata.set(local, metadata);
+                page.ids.set(local, id);
+                // 发布节点：之后的 volatile 读都能看到上面写入的向量和邻居表
+                page.levels.set(local, level);
+                idToNode.put(id, node);
+                liveCount.incrementAndGet();
+            }
+
+            EntryPoint entry = entryPoint;
+            if (entry == null) {
+                synchronized (entryLock) {
+                    entry = entryPoint;
+                    if (entry == null) {
+                        entryPoint = new EntryPoint(node, level);
+                        return;
+                    }
+                }
+            }
+
+            // 用写入的原始向量作为查询，量化存储时即为非对称距离
+            float[] query = source;
+            int current = entry.node;
+            float currentDistance = distance(query, 0, current);
+            for (int layer = entry.level; layer > level; layer--) {
+                int[] greedy = greedyStep(query, 0, current, currentDistance, layer);
+                current = greedy[0];
+                currentDistance = Float.intBitsToFloat(greedy[1]);
+            }
+
+            for (int layer = Math.min(level, entry.level); layer >= 0; layer--) {
+                NodeHeap candidates = searchLayer(query, 0, current, currentDistance, efConstruction, layer, null);
+                int[] neighbours = selectNeighbours(candidates, m);
+                connect(node, layer, neighbours);
+                for (int neighbour : neighbours) {
+                    if (neighbour != node) {
+                        connect(neighbour, layer, new int[]{node});
+                    }
+                }
+                // 以本层最近的候选作为下一层的入口
+                int closest = current;
+                float closestDistance = currentDistance;
+                for (int i = 0; i < candidates.size(); i++) {
+                    if (candidates.distanceAt(i) < closestDistance) {
+                        closest = candidates.nodeAt(i);
+                        closestDistance = candidates.distanceAt(i);
+                    }
+                }
+                current = closest;
+                currentDistance = closestDistance;
+            }
+
+            if (level > entry.level) {
+                synchronized (entryLock) {
+                    if (level > entryPoint.level) {
+                        entryPoint = new EntryPoint(node, level);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 按 ID 标记删除
+         *
+         * @return ID 存在时返回 true
+         */
+        boolean delete(String id) {
+            synchronized (idLock(id)) {
+                Integer node = idToNode.remove(id);
+                if (node == null) {
+                    return false;
+                }
+                pageOf(node).ids.set(node & PAGE_MASK, null);
+                liveCount.decrementAndGet();
+                deadNodes.incrementAndGet();
+                return true;
+            }
+        }
+
+        /**
+         * 在第 0 层遍历时只把满足过滤条件的节点放入结果，不满足的节点仍用于导航
+         */
+        List<SearchResult> search(float[] query, int topK, MetadataFilter accept) {
+            EntryPoint entry = entryPoint;
+            if (entry == null || topK <= 0) {
+                return new ArrayList<>();
+            }
+
+            int current = entry.node;
+            float currentDistance = distance(query, 0, current);
+            for (int layer = entry.level; layer > 0; layer--) {
+                int[] greedy = greedyStep(query, 0, current, currentDistance, layer);
+                current = greedy[0];
+                currentDistance = Float.intBitsToFloat(greedy[1]);
+            }
+
+            IntPredicate live = node -> pageOf(node).ids.get(node & PAGE_MASK) != null;
+            IntPredicate filter = accept == null ? live : live.and(node -> accept.test(metadataOf(node)));
+            int candidates = Math.max(topK, rerankCandidates);
+            NodeHeap nearest = searchLayer(query, 0, current, currentDistance, Math.max(efSearch, candidates), 0, filter);
+            while (nearest.size() > candidates) {
+                nearest.pop();
+            }
+            if (fullPrecision != null) {
+                nearest = rerank(query, nearest, topK);
+            }
+            while (nearest.size() > topK) {
+                nearest.pop();
+            }
+
+            SearchResult[] ordered = new SearchResult[nearest.size()];
+            int count = 0;
+            while (!nearest.isEmpty()) {
+                float distance = nearest.topDistance();
+                int node = nearest.pop();
+                String id = pageOf(node).ids.get(node & PAGE_MASK);
+                if (id != null) {
+                    VectorMetadata metadata = metadataOf(node);
+                    ordered[count++] = new SearchResult(id, metric.toScore(distance), metadata.raw, metadata.content());
+                }
+            }
+            List<SearchResult> results = new ArrayList<>(count);
+            for (int i = count - 1; i >= 0; i--) {
+                results.add(ordered[i]);
+            }
+            return results;
+        }
+
+        /**
+         * 用原始向量重新计算候选的距离，返回以最大距离为堆顶、最多 topK 个元素的结果堆
+         */
+        private NodeHeap rerank(float[] query, NodeHeap candidates, int topK) {
+            NodeHeap exact = NodeHeap.maxHeap(topK + 1);
+            for (int i = 0; i < candidates.size(); i++) {
+                int node = candidates.nodeAt(i);
+                exact.offer(node, fullPrecision.distance(metric, query, node), topK);
+            }
+            return exact;
+        }
+
+        /**
+         * 在上层图中贪心地移动到距离查询最近的节点
+         *
+         * @return [节点编号, 距离的 float bits]
+         */
+        private int[] greedyStep(float[] query, int queryOffset, int current, float currentDistance, int layer) {
+            boolean changed = true;
+            while (changed) {
+                changed = false;
+                for (int neighbour : neighbours(current, layer)) {
+                    float d = distance(query, queryOffset, neighbour);
+                    if (d < currentDistance) {
+                        currentDistance = d;
+                        current = neighbour;
+                        changed = true;
+                    }
+                }
+            }
+            return new int[]{current, Float.floatToRawIntBits(currentDistance)};
+        }
+
+        /**
+         * HNSW 论文中的 SEARCH-LAYER，返回以最大距离为堆顶、最多 ef 个元素的结果堆
+         */
+        private NodeHeap searchLayer(float[] query, int queryOffset, int entry, float entryDistance,
+                                     int ef, int layer, IntPredicate accept) {
+            VisitedTable visited = visitedTables.get();
+            visited.reset(nodeCount.get());
+            visited.visit(entry);
+
+            NodeHeap candidates = NodeHeap.minHeap(ef * 2);
+            NodeHeap results = NodeHeap.maxHeap(ef + 1);
+            candidates.push(entry, entryDistance);
+            if (accept == null || accept.test(entry)) {
+                results.push(entry, entryDistance);
+            }
+
+            while (!candidates.isEmpty()) {
+                float candidateDistance = candidates.topDistance();
+                if (results.size() >= ef && candidateDistance > results.topDistance()) {
+                    break;
+                }
+                int candidate = candidates.pop();
+                for (int neighbour : neighbours(candidate, layer)) {
+                    if (!visited.visit(neighbour)) {
+                        continue;
+                    }
+                    float d = distance(query, queryOffset, neighbour);
+                    if (results.size() < ef || d < results.topDistance()) {
+                        candidates.push(neighbour, d);
+                        if (accept == null || accept.test(neighbour)) {
+                            results.offer(neighbour, d, ef);
+                        }
+                    }
+                }
+            }
+            return results;
+        }
+
+        /**
+         * HNSW 论文中的启发式邻居选择：只保留比已选邻居更靠近目标的候选，使图保持多方向的连通性
+         */
+        private int[] selectNeighbours(NodeHeap candidates, int limit) {
+            int size = candidates.size();
+            int[] nodes = new int[size];
+            float[] distances = new float[size];
+            NodeHeap ordered = NodeHeap.minHeap(size);
+            for (int i = 0; i < size; i++) {
+                ordered.push(candidates.nodeAt(i), candidates.distanceAt(i));
+            }
+            for (int i = 0; i < size; i++) {
+                distances[i] = ordered.topDistance();
+                nodes[i] = ordered.pop();
+            }
+            if (size <= limit) {
+                return nodes;
+            }
+
+            int[] selected = new int[limit];
+            int count = 0;
+            for (int i = 0; i < size && count < limit; i++) {
+                int candidate = nodes[i];
+                boolean keep = true;
+                for (int j = 0; j < count; j++) {
+                    if (distanceBetween(candidate, selected[j]) < distances[i]) {
+                        keep = false;
+                        break;
+                    }
+                }
+                if (keep) {
+                    selected[count++] = candidate;
+                }
+            }
+            return count == limit ? selected : Arrays.copyOf(selected, count);
+        }
+
+        /**
+         * 将 additions 合并进节点在某一层的邻居表，超过上限时用启发式裁剪
+         */
+        private void connect(int node, int layer, int[] additions) {
+            Page page = pageOf(node);
+            int local = node & PAGE_MASK;
+            int limit = layer == 0 ? maxM0 : m;
+            synchronized (nodeLocks[node & (LOCK_STRIPES - 1)]) {
+                int[][] links = page.links.get(local);
+                if (layer >= links.length) {
+                    return;
+                }
+                int[] existing = links[layer];
+                int[] merged = Arrays.copyOf(existing, existing.length + additions.length);
+                int size = existing.length;
+                for (int addition : additions) {
+                    if (addition != node && indexOf(merged, size, addition) < 0) {
+                        merged[size++] = addition;
+                    }
+                }
+                if (size == existing.length) {
+                    return;
+                }
+
+                int[] updated;
+                if (size <= limit) {
+                    updated = size == merged.length ? merged : Arrays.copyOf(merged, size);
+                } else {
+                    NodeHeap candidates = NodeHeap.maxHeap(size);
+                    for (int i = 0; i < size; i++) {
+                        candidates.push(merged[i], distanceBetween(node, merged[i]));
+                    }
+                    updated = selectNeighbours(candidates, limit);
+                }
+
+                int[][] copy = links.clone();
+                copy[layer] = updated;
+                page.links.set(local, copy);
+            }
+        }
+
+        private int[] neighbours(int node, int layer) {
+            int[][] links = pageOf(node).links.get(node & PAGE_MASK);
+            return links == null || layer >= links.length ? NO_NEIGHBOURS : links[layer];
+        }
+
+        private VectorMetadata metadataOf(int node) {
+            return pageOf(node).metadata.get(node & PAGE_MASK);
+        }
+
+        private float distance(float[] query, int queryOffset, int node) {
+            return pageOf(node).vectors.distance(metric, query, queryOffset, node & PAGE_MASK);
+        }
+
+        private float distanceBetween(int a, int b) {
+            return pageOf(a).vectors.distanceTo(metric, a & PAGE_MASK, pageOf(b).vectors, b & PAGE_MASK);
+        }
+
+        private Page pageOf(int node) {
+            return pages[node >>> PAGE_BITS];
+        }
+
+        private Page ensurePage(int node) {
+            int pageIndex = node >>> PAGE_BITS;
+            Page[] current = pages;
+            if (pageIndex < current.length) {
+                return current[pageIndex];
+            }
+            synchronized (growLock) {
+                current = pages;
+                if (pageIndex >= current.length) {
+                    Page[] grown = Arrays.copyOf(current, pageIndex + 1);
+                    for (int i = current.length; i < grown.length; i++) {
+                        grown[i] = new Page(VectorSlab.create(encoding, PAGE_SIZE, dimension));
+                    }
+                    pages = grown;
+                    current = grown;
+                }
+                return current[pageIndex];
+            }
+        }
+
+
+        void close() {
+            if (fullPrecision != null) {
+                fullPrecision.close();
+            }
+        }
+    }
+
+    private static int indexOf(int[] array, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 一页节点的数据，页一旦分配就不再移动，扩容只复制页表
+     */
+    private static final class Page {
+        final VectorSlab vectors;
+        final AtomicIntegerArray levels = new AtomicIntegerArray(PAGE_SIZE);
+        final AtomicReferenceArray<int[][]> links = new AtomicReferenceArray<>(PAGE_SIZE);
+        final AtomicReferenceArray<String> ids = new AtomicReferenceArray<>(PAGE_SIZE);
+        final AtomicReferenceArray<VectorMetadata> metadata = new AtomicReferenceArray<>(PAGE_SIZE);
+
+        Page(VectorSlab vectors) {
+            this.vectors = vectors;
+        }
+    }
+
+    private static final class EntryPoint {
+        final int node;
+        final int level;
+
+        EntryPoint(int node, int level) {
+            this.node = node;
+            this.level = level;
+        }
+    }
+
+    /**
+     * HnswVectorStore的Builder类
+     */
+    public static class Builder {
+        private Integer dimension;
+        private int m = 16;
+        private int efConstruction = 200;
+        private int efSearch = 64;
+        private DistanceMetric metric = DistanceMetric.L2;
+        private VectorEncoding encoding = VectorEncoding.FLOAT32;
+        private int rerankCandidates;
+        private Path rerankDirectory;
+        private Executor executor;
+
+        /**
+         * 设置向量维度
+         *
+         * @param dimension 向量维度
+         * @return Builder实例
+         */
+        public Builder dimension(int dimension) {
+            this.dimension = dimension;
+            return this;
+        }
+
+        /**
+         * 设置每个节点在上层的最大邻居数，第 0 层为其两倍
+         *
+         * @param m 最大邻居数
+         * @return Builder实例
+         */
+        public Builder m(int m) {
+            this.m = m;
+            return this;
+        }
+
+        /**
+         * 设置构建图时的候选集大小
+         *
+         * @param efConstruction 候选集大小
+         * @return Builder实例
+         */
+        public Builder efConstruction(int efConstruction) {
+            this.efConstruction = efConstruction;
+            return this;
+        }
+
+        /**
+         * 设置查询时的候选集大小
+         *
+         * @param efSearch 候选集大小
+         * @return Builder实例
+         */
+        public Builder efSearch(int efSearch) {
+            this.efSearch = efSearch;
+            return this;
+        }
+
+        /**
+         * 设置距离度量
+         *
+         * @param metric 距离度量
+         * @return Builder实例
+         */
+        public Builder metric(DistanceMetric metric) {
+            this.metric = metric;
+            return this;
+        }
+
+        /**
+         * 设置向量的存储编码，默认为 {@link VectorEncoding#FLOAT32}
+         *
+         * @param encoding 存储编码
+         * @return Builder实例
+         */
+        public Builder encoding(VectorEncoding encoding) {
+            this.encoding = encoding;
+            return this;
+        }
+
+        /**
+         * 设置量化存储下用全精度距离重排的候选数，为 0 时不重排，对 FLOAT32 存储无效
+         *
+         * @param rerankCandidates 重排候选数
+         * @return Builder实例
+         */
+        public Builder rerankCandidates(int rerankCandidates) {
+            this.rerankCandidates = rerankCandidates;
+            return this;
+        }
+
+        /**
+         * 设置重排所用原始向量文件的目录，未设置时使用系统临时目录
+         *
+         * @param rerankDirectory 文件目录
+         * @return Builder实例
+         */
+        public Builder rerankDirectory(Path rerankDirectory) {
+            this.rerankDirectory = rerankDirectory;
+            return this;
+        }
+
+        /**
+         * 设置执行异步操作的线程池，未设置时内部创建并在 close 时关闭
+         *
+         * @param executor 线程池
+         * @return Builder实例
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * 构建HnswVectorStore实例
+         *
+         * @return HnswVectorStore实例
+         */
+        public HnswVectorStore build() {
+            return new HnswVectorStore(this);
+        }
+    }
+}
@@ -0,0 +1,1306 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * 基于倒排文件和乘积量化（IVF-PQ）的进程内 VectorStore 实现
+ * <p>
+ * 向量先用 k-means 粗聚类分到 nlist 个倒排表中，再把与所属中心的残差做乘积量化，
+ * 每个向量只保存 subspaces 个字节的编码。查询时只扫描离查询最近的 nprobe 个倒排表，
+ * 距离通过预先计算的查找表累加得到；设置了重排深度时，用保存在内存映射文件中的原始向量对候选重新打分。
+ * <p>
+ * 向量的 ID 和元数据也保存在内存映射文件中，堆上每个向量只有编码、倒排表中的节点编号、记录位置、删除标记，
+ * 所属倒排表的编号，以及开放寻址的 ID 索引中的一个槽位，subspaces 为 32 时约 64 字节。按元数据过滤时，只有可能进入结果的候选才会读取并解析元数据。
+ * <p>
+ * 训练需要样本：写入的前 trainingSampleSize 个向量先以原始形式缓存并做精确搜索，
+ * 缓存满后在后台对当时缓存的向量快照训练聚类中心和码本，训练期间的写入和查询照常进行；
+ * 训练完成后补编码训练期间新写入的向量，再原子地切换到新索引，之后的写入直接编码。
+ * 也可以调用 {@link #train()} 用已缓存的向量提前训练。
+ * <p>
+ * 删除和替换只做标记，被删除的节点比例超过阈值后在后台把它们从倒排表中移除。
+ * 记录文件、原始向量文件和节点页只追加、不回收，持续替换和删除时它们会一直增长：
+ * 用 {@link #allocatedCount()} 与 {@link #size()} 的差距判断浪费的空间，需要时调用 {@link #rebuild()} 重建存储。
+ */
+public class IvfPqVectorStore implements VectorStore, AutoCloseable {
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    // 被删除的节点少于此值时不清理倒排表
+    private static final int MIN_PURGE_DEAD = 64;
+    private static final double PURGE_THRESHOLD = 0.2;
+
+    private final int dimension;
+    private final int nlist;
+    private final int subspaces;
+    private final DistanceMetric metric;
+    private final int trainingSampleSize;
+    private final int trainingIterations;
+    private final long seed;
+    private final ForkJoinPool pool;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+    private final Path rerankDirectory;
+    private final Path recordDirectory;
+    private final MappedVectorFile originals;
+    private final MappedRecordFile records;
+    private volatile int nprobe;
+    private volatile int rerankDepth;
+
+    private final AtomicInteger nodeCount = new AtomicInteger();
+    private final AtomicInteger liveCount = new AtomicInteger();
+    // 已标记删除、但仍留在倒排表或训练缓存中的节点数
+    private final AtomicInteger deadNodes = new AtomicInteger();
+    private final AtomicBoolean purgeScheduled = new AtomicBoolean();
+    // 写入和删除的次数，rebuild 用它检测并发写入
+    private final AtomicLong writes = new AtomicLong();
+    private final Object writeLock = new Object();
+    // 受 writeLock 保护
+    private final IdIndex idIndex = new IdIndex();
+    private final IntFunction<String> idOfNode = this::idOf;
+    private final Object growLock = new Object();
+    private volatile Page[] pages = new Page[0];
+
+    // 切换索引时持有，保证训练缓存中的向量在切换前都已编码
+    private final Object trainLock = new Object();
+    // 训练前缓存的原始向量，切换到索引后置为 null
+    private volatile PendingVectors pending;
+    private volatile Index index;
+    // 进行中或已完成的训练，受 trainLock 保护
+    private CompletableFuture<Void> training;
+
+    private IvfPqVectorStore(Builder builder) {
+        this.dimension = ensureGreaterThanZero(builder.dimension, "dimension");
+        this.nlist = ensureGreaterThanZero(builder.nlist, "nlist");
+        this.subspaces = ensureGreaterThanZero(builder.subspaces, "subspaces");
+        ensureTrue(dimension % subspaces == 0, "dimension must be divisible by subspaces");
+        this.metric = ensureNotNull(builder.metric, "metric");
+        this.nprobe = ensureGreaterThanZero(builder.nprobe, "nprobe");
+        ensureTrue(builder.rerankDepth >= 0, "rerankDepth must not be negative");
+        this.rerankDepth = builder.rerankDepth;
+        this.trainingSampleSize = ensureGreaterThanZero(builder.trainingSampleSize, "trainingSampleSize");
+        ensureTrue(trainingSampleSize >= nlist, "trainingSampleSize must not be smaller than nlist");
+        this.trainingIterations = ensureGreaterThanZero(builder.trainingIterations, "trainingIterations");
+        this.seed = builder.seed;
+        this.pool = builder.pool != null ? builder.pool : ForkJoinPool.commonPool();
+        this.pending = new PendingVectors(dimension);
+        this.rerankDirectory = builder.rerankDirectory;
+        this.recordDirectory = builder.recordDirectory;
+        // 只有在构建时开启了重排才保存原始向量
+        this.originals = builder.rerankDepth > 0
+            ? new MappedVectorFile(builder.rerankDirectory, dimension, PAGE_BITS)
+            : null;
+        this.records = new MappedRecordFile(builder.recordDirectory);
+        if (builder.executor != null) {
+            this.executor = builder.executor;
+            this.ownsExecutor = false;
+        } else {
+            this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            this.ownsExecutor = true;
+        }
+    }
+
+    /**
+     * 创建一个新的Builder实例
+     *
+     * @return Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addVectors(List<float[]> vectors, List<String> metadata) {
+        return CompletableFuture.supplyAsync(() -> {
+            ensureTrue(vectors.size() == metadata.size(), "vectors and metadata must have the same size");
+            for (int i = 0; i < vectors.size(); i++) {
+                insert(UUID.randomUUID().toString(), vectors.get(i), metadata.get(i));
+            }
+            return true;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK) {
+        return search(queryVector, topK, nprobe, rerankDepth);
+    }
+
+    /**
+     * 指定本次查询的 nprobe 和重排深度
+     *
+     * @param queryVector 查询向量
+     * @param topK 返回结果数量
+     * @param nprobe 扫描的倒排表数量
+     * @param rerankDepth 用原始向量重排的候选数，构建时未开启重排则忽略
+     * @return 搜索结果
+     */
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK, int nprobe, int rerankDepth) {
+        return CompletableFuture.supplyAsync(() -> searchNow(queryVector, topK, nprobe, rerankDepth, null), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK, MetadataFilter filter) {
+        if (filter == null || filter.isEmpty()) {
+            return search(queryVector, topK);
+        }
+        return CompletableFuture.supplyAsync(() -> searchNow(queryVector, topK, nprobe, rerankDepth,
+            node -> filter.test(VectorMetadata.parse(records.metadata(recordOf(node))))), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<List<SearchResult>>> searchBatch(List<float[]> queryVectors, int topK) {
+        List<CompletableFuture<List<SearchResult>>> futures = new ArrayList<>(queryVectors.size());
+        for (float[] queryVector : queryVectors) {
+            futures.add(search(queryVector, topK));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+            .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteVectors(List<String> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            for (String id : ids) {
+                delete(id);
+            }
+            maybePurge();
+            return true;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateVector(String id, float[] vector, String metadata) {
+        return CompletableFuture.supplyAsync(() -> {
+            insert(id, vector, metadata);
+            maybePurge();
+            return true;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> upsertVectors(List<String> ids, List<float[]> vectors, List<String> metadata) {
+        return CompletableFuture.supplyAsync(() -> {
+            ensureTrue(ids.size() == vectors.size() && ids.size() == metadata.size(),
+                "ids, vectors and metadata must have the same size");
+            for (int i = 0; i < ids.size(); i++) {
+                insert(ids.get(i), vectors.get(i), metadata.get(i));
+            }
+            maybePurge();
+            return true;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> existingIds(List<String> ids) {
+        Set<String> existing = new HashSet<>();
+        synchronized (writeLock) {
+            for (String id : ids) {
+                if (idIndex.get(id, idOfNode) >= 0) {
+                    existing.add(id);
+                }
+            }
+        }
+        return CompletableFuture.completedFuture(existing);
+    }
+
+    /**
+     * 开启了重排时返回保存的原始向量；否则训练前返回缓存的原始向量，训练后返回所属中心加上解码的残差，是近似值
+     */
+    @Override
+    public CompletableFuture<Map<String, float[]>> getVectors(List<String> ids) {
+        Map<String, Integer> nodes = new LinkedHashMap<>();
+        synchronized (writeLock) {
+            for (String id : ids) {
+                int node = idIndex.get(id, idOfNode);
+                if (node >= 0) {
+                    nodes.put(id, node);
+                }
+            }
+        }
+        // 与查询相同，先读缓存再读索引
+        PendingVectors buffered = pending;
+        Index current = index;
+        Map<String, float[]> vectors = new HashMap<>();
+        for (Map.Entry<String, Integer> entry : nodes.entrySet()) {
+            int node = entry.getValue();
+            float[] vector = new float[dimension];
+            boolean found;
+            if (originals != null) {
+                originals.read(node, vector, 0);
+                found = true;
+            } else if (current != null) {
+                found = current.decode(node, vector);
+            } else {
+                found = buffered.copy(node, vector);
+            }
+            if (found) {
+                vectors.put(entry.getKey(), vector);
+            }
+        }
+        return CompletableFuture.completedFuture(vectors);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> retainChunks(String documentId, Collection<String> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            ensureNotNull(documentId, "documentId");
+            Set<String> keep = new HashSet<>(ids);
+            synchronized (writeLock) {
+                // 只遍历已分配页的节点，尚未发布的节点记录位置为 0，不可见
+                Page[] current = pages;
+                int count = (int) Math.min(nodeCount.get(), (long) current.length << PAGE_BITS);
+                for (int node = 0; node < count; node++) {
+                    if (!isVisible(node)) {
+                        continue;
+                    }
+                    long record = recordOf(node);
+                    String id = records.id(record);
+                    if (!keep.contains(id)
+                        && documentId.equals(VectorMetadata.parse(records.metadata(record)).documentId)) {
+                        delete(id);
+                    }
+                }
+            }
+            maybePurge();
+            return true;
+        }, executor);
+    }
+
+    /**
+     * 用当前缓存的向量立即训练；训练已在进行时返回进行中的训练，已训练或没有缓存的向量时立即完成
+     *
+     * @return 训练完成并切换到新索引的异步结果
+     */
+    public CompletableFuture<Void> train() {
+        synchronized (trainLock) {
+            PendingVectors current = pending;
+            if (index != null || current == null || current.size == 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return startTraining(current);
+        }
+    }
+
+    /**
+     * 是否已完成训练
+     *
+     * @return 已训练时返回 true
+     */
+    public boolean isTrained() {
+        return index != null;
+    }
+
+    /**
+     * 调整默认的 nprobe，立即对后续查询生效
+     *
+     * @param nprobe 扫描的倒排表数量
+     */
+    public void setNprobe(int nprobe) {
+        this.nprobe = ensureGreaterThanZero(nprobe, "nprobe");
+    }
+
+    public int getNprobe() {
+        return nprobe;
+    }
+
+    /**
+     * 调整默认的重排深度，立即对后续查询生效
+     *
+     * @param rerankDepth 重排候选数
+     */
+    public void setRerankDepth(int rerankDepth) {
+        ensureTrue(rerankDepth >= 0, "rerankDepth must not be negative");
+        this.rerankDepth = rerankDepth;
+    }
+
+    public int getRerankDepth() {
+        return rerankDepth;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public DistanceMetric getMetric() {
+        return metric;
+    }
+
+    /**
+     * 当前可被检索到的向量数量
+     *
+     * @return 向量数量
+     */
+    public int size() {
+        return liveCount.get();
+    }
+
+    /**
+     * 已删除但仍留在倒排表或训练缓存中的节点数量
+     *
+     * @return 节点数量
+     */
+    public int deadCount() {
+        return deadNodes.get();
+    }
+
+    /**
+     * 已分配的节点数量，包括被删除和被替换的节点，它们的记录和原始向量只有 {@link #rebuild()} 才会回收
+     *
+     * @return 节点数量
+     */
+    public int allocatedCount() {
+        return nodeCount.get();
+    }
+
+    /**
+     * 把被删除的节点从各倒排表中移除
+     * <p>
+     * 每个倒排表在自己的锁内重建并整体替换，查询继续读取替换前的数组，不受影响。训练前缓存中的节点在训练时跳过。
+     * 只清理倒排表，记录文件、原始向量文件和节点页由 {@link #rebuild()} 回收。
+     */
+    public void compact() {
+        Index current = index;
+        if (current == null) {
+            return;
+        }
+        IntPredicate dead = this::isDead;
+        int removed = 0;
+        for (InvertedList list : current.invertedLists) {
+            removed += list.purge(dead);
+        }
+        deadNodes.addAndGet(-removed);
+    }
+
+    /**
+     * 只复制仍可见的向量，得到一个配置相同的新存储，回收被删除和被替换的向量占用的记录文件、原始向量文件和节点页
+     * <p>
+     * 已训练时沿用当前的聚类中心和码本，直接复制编码，不重新训练。调用期间不能有写入，检测到并发写入时
+     * 抛出 {@link IllegalStateException}。调用方用返回的存储替换当前存储，再关闭当前存储。
+     *
+     * @return 只包含可见向量的新存储
+     */
+    public IvfPqVectorStore rebuild() {
+        long before = writes.get();
+        IvfPqVectorStore rebuilt = builder()
+            .dimension(dimension)
+            .nlist(nlist)
+            .subspaces(subspaces)
+            .nprobe(nprobe)
+            // 是否保存原始向量由构建时的重排深度决定
+            .rerankDepth(originals != null ? Math.max(1, rerankDepth) : 0)
+            .rerankDirectory(rerankDirectory)
+            .recordDirectory(recordDirectory)
+            .metric(metric)
+            .trainingSampleSize(trainingSampleSize)
+            .trainingIterations(trainingIterations)
+            .seed(seed)
+            .pool(pool)
+            .executor(ownsExecutor ? null : executor)
+            .build();
+        rebuilt.rerankDepth = rerankDepth;
+        try {
+            // 与查询相同，先读缓存再读索引
+            PendingVectors buffered = pending;
+            Index current = index;
+            if (current == null) {
+                int count = buffered.size;
+                float[] vectors = buffered.vectors;
+                int[] nodes = buffered.nodes;
+                for (int i = 0; i < count; i++) {
+                    if (isVisible(nodes[i])) {
+                        long record = recordOf(nodes[i]);
+                        rebuilt.insert(records.id(record), Arrays.copyOfRange(vectors, i * dimension, (i + 1) * dimension),
+                            records.metadata(record));
+                    }
+                }
+            } else {
+                Index copy = rebuilt.new Index(current.centroids, current.lists, current.quantizer);
+                synchronized (rebuilt.trainLock) {
+                    rebuilt.index = copy;
+                    rebuilt.pending = null;
+                }
+                float[] vector = originals != null ? new float[dimension] : null;
+                for (int list = 0; list < current.lists; list++) {
+                    Postings postings = current.invertedLists[list].postings;
+                    int size = postings.size;
+                    for (int i = 0; i < size; i++) {
+                        int node = postings.nodes[i];
+                        if (!isVisible(node)) {
+                            continue;
+                        }
+                        if (vector != null) {
+                            originals.read(node, vector, 0);
+                        }
+                        long record = recordOf(node);
+                        rebuilt.copy(records.id(record), records.metadata(record), list, postings.codes,
+                            i * subspaces, vector);
+                    }
+                }
+            }
+            ensureTrue(writes.get() == before, "vectors were written or deleted during rebuild");
+        } catch (RuntimeException e) {
+            rebuilt.close();
+            if (e instanceof IllegalArgumentException) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            throw e;
+        }
+        return rebuilt;
+    }
+
+    @Override
+    public void close() {
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+        if (originals != null) {
+            originals.close();
+        }
+        records.close();
+    }
+
+    /**
+     * 写入一个向量，已存在的 ID 会被替换
+     */
+    void insert(String id, float[] vector, String metadata) {
+        ensureNotNull(id, "id");
+        ensureTrue(vector != null && vector.length == dimension, "vector dimension must be " + dimension);
+        writes.incrementAndGet();
+
+        float[] source = metric.requiresNormalization() ? DistanceMetric.normalize(vector) : vector;
+        int node = nodeCount.getAndIncrement();
+        Page page = ensurePage(node);
+        long record = records.append(id, metadata);
+        if (originals != null) {
+            originals.write(node, source, 0);
+        }
+
+        // 节点先进入训练缓存或倒排表，发布之前查询看不到它
+        Index current = index;
+        if (current == null) {
+            synchronized (trainLock) {
+                current = index;
+                if (current == null) {
+                    PendingVectors buffered = pending;
+                    buffered.append(node, source);
+                    if (buffered.size >= trainingSampleSize) {
+                        startTraining(buffered);
+                    }
+                }
+            }
+        }
+        if (current != null) {
+            current.add(node, source, 0);
+        }
+        publish(page, node, id, record);
+    }
+
+    /**
+     * 按 ID 标记删除
+     *
+     * @return ID 存在时返回 true
+     */
+    boolean delete(String id) {
+        synchronized (writeLock) {
+            int node = idIndex.remove(id, idOfNode);
+            if (node < 0) {
+                return false;
+            }
+            markDead(node);
+            liveCount.decrementAndGet();
+            writes.incrementAndGet();
+            return true;
+        }
+    }
+
+    /**
+     * rebuild 时写入一个已编码的向量，编码属于与本存储相同的聚类中心和码本
+     */
+    private void copy(String id, String metadata, int list, byte[] codes, int codeOffset, float[] original) {
+        int node = nodeCount.getAndIncrement();
+        Page page = ensurePage(node);
+        long record = records.append(id, metadata);
+        if (original != null) {
+            originals.write(node, original, 0);
+        }
+        page.lists[node & PAGE_MASK] = list;
+        index.invertedLists[list].append(node, codes, codeOffset);
+        publish(page, node, id, record);
+    }
+
+    List<SearchResult> searchNow(float[] queryVector, int topK, int nprobe, int rerankDepth, IntPredicate accept) {
+        ensureTrue(queryVector != null && queryVector.length == dimension,
+            "query vector dimension must be " + dimension);
+        ensureGreaterThanZero(nprobe, "nprobe");
+        if (topK <= 0) {
+            return new ArrayList<>();
+        }
+        float[] query = metric.requiresNormalization() ? DistanceMetric.normalize(queryVector) : queryVector;
+        IntPredicate live = this::isVisible;
+        IntPredicate filter = accept == null ? live : live.and(accept);
+        int candidates = originals != null ? Math.max(topK, rerankDepth) : topK;
+
+        // 先读缓存再读索引：缓存只会在索引发布之后置为 null，读到 null 时索引一定已经可见
+        PendingVectors buffered = pending;
+        Index current = index;
+        NodeHeap nearest = current != null
+            ? current.search(query, Math.min(nprobe, nlist), candidates, filter)
+            : buffered.scan(metric, query, candidates, filter);
+
+        if (originals != null && candidates > topK) {
+            NodeHeap exact = NodeHeap.maxHeap(topK + 1);
+            for (int i = 0; i < nearest.size(); i++) {
+                int node = nearest.nodeAt(i);
+                exact.offer(node, originals.distance(metric, query, node), topK);
+            }
+            nearest = exact;
+        }
+        while (nearest.size() > topK) {
+            nearest.pop();
+        }
+
+        SearchResult[] ordered = new SearchResult[nearest.size()];
+        int count = 0;
+        while (!nearest.isEmpty()) {
+            float distance = nearest.topDistance();
+            int node = nearest.pop();
+            if (isVisible(node)) {
+                long record = recordOf(node);
+                String raw = records.metadata(record);
+                ordered[count++] = new SearchResult(records.id(record), metric.toScore(distance), raw,
+                    VectorMetadata.parse(raw).content());
+            }
+        }
+        List<SearchResult> results = new ArrayList<>(count);
+        for (int i = count - 1; i >= 0; i--) {
+            results.add(ordered[i]);
+        }
+        return results;
+    }
+
+    /**
+     * 对缓存向量的快照启动后台训练，调用方需持有 trainLock
+     */
+    private CompletableFuture<Void> startTraining(PendingVectors buffered) {
+        if (training == null) {
+            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> trainAndPublish(buffered), executor);
+            training = future;
+            future.whenComplete((ignored, error) -> {
+                if (error != null) {
+                    // 训练失败时允许下一次写入或 train() 重新训练
+                    synchronized (trainLock) {
+                        if (training == future) {
+                            training = null;
+                        }
+                    }
+                }
+            });
+        }
+        return training;
+    }
+
+    /**
+     * 在缓存向量的快照上训练聚类中心和码本并编码，不持有任何锁；
+     * 再补编码训练期间新缓存的向量，确认没有遗漏后在 trainLock 内发布索引
+     */
+    private void trainAndPublish(PendingVectors buffered) {
+        int count = buffered.size;
+        float[] sample = Arrays.copyOf(buffered.vectors, count * dimension);
+        int[] sampleNodes = Arrays.copyOf(buffered.nodes, count);
+
+        int lists = Math.min(nlist, count);
+        float[] centroids = KMeans.train(sample, count, dimension, 0, dimension, lists, trainingIterations, seed, pool);
+        int[] assignments = new int[count];
+        KMeans.assign(sample, count, dimension, 0, dimension, centroids, lists, assignments, pool);
+        // 乘积量化在与所属中心的残差上训练
+        float[] residuals = residuals(sample, count, centroids, assignments);
+        ProductQuantizer quantizer = ProductQuantizer.train(
+            residuals, count, dimension, subspaces, trainingIterations, seed, pool);
+        byte[] codes = new byte[count * subspaces];
+        quantizer.encodeAll(residuals, count, codes, pool);
+
+        Index trained = new Index(centroids, lists, quantizer);
+        for (int i = 0; i < count; i++) {
+            int node = sampleNodes[i];
+            if (isDead(node)) {
+                deadNodes.decrementAndGet();
+            } else {
+                pageOf(node).lists[node & PAGE_MASK] = assignments[i];
+                trained.invertedLists[assignments[i]].append(node, codes, i * subspaces);
+            }
+        }
+
+        int encoded = count;
+        while (true) {
+            int size = buffered.size;
+            float[] vectors = buffered.vectors;
+            int[] nodes = buffered.nodes;
+            for (int i = encoded; i < size; i++) {
+                if (isDead(nodes[i])) {
+                    deadNodes.decrementAndGet();
+                } else {
+                    trained.add(nodes[i], vectors, i * dimension);
+                }
+            }
+            encoded = size;
+            // 缓存只在 trainLock 内追加，锁内确认已全部编码后发布，之后的写入直接进入新索引
+            synchronized (trainLock) {
+                if (buffered.size == encoded) {
+                    index = trained;
+                    pending = null;
+                    return;
+                }
+            }
+        }
+    }
+
+    private float[] residuals(float[] data, int count, float[] centroids, int[] assignments) {
+        float[] residuals = new float[count * dimension];
+        for (int i = 0; i < count; i++) {
+            int base = i * dimension;
+            int centroid = assignments[i] * dimension;
+            for (int d = 0; d < dimension; d++) {
+                residuals[base + d] = data[base + d] - centroids[centroid + d];
+            }
+        }
+        return residuals;
+    }
+
+    /**
+     * 发布节点并在同一把锁内替换同 ID 的旧节点
+     */
+    private void publish(Page page, int node, String id, long record) {
+        synchronized (writeLock) {
+            // ID 索引按节点读取记录中的 ID 做比较，先写入记录位置
+            page.records.set(node & PAGE_MASK, record + 1);
+            int previous = idIndex.put(id, node, idOfNode);
+            if (previous >= 0) {
+                markDead(previous);
+            } else {
+                liveCount.incrementAndGet();
+            }
+        }
+    }
+
+    private void markDead(int node) {
+        if (pageOf(node).dead.set(node & PAGE_MASK)) {
+            deadNodes.incrementAndGet();
+        }
+    }
+
+    /**
+     * 被删除的节点比例超过阈值时在后台清理倒排表
+     */
+    private void maybePurge() {
+        int dead = deadNodes.get();
+        if (index != null && dead >= MIN_PURGE_DEAD && dead >= (liveCount.get() + dead) * PURGE_THRESHOLD
+            && purgeScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    compact();
+                } finally {
+                    purgeScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    private boolean isVisible(int node) {
+        Page page = pageOf(node);
+        int slot = node & PAGE_MASK;
+        return page.records.get(slot) != 0 && !page.dead.get(slot);
+    }
+
+    private boolean isDead(int node) {
+        return pageOf(node).dead.get(node & PAGE_MASK);
+    }
+
+    private long recordOf(int node) {
+        return pageOf(node).records.get(node & PAGE_MASK) - 1;
+    }
+
+    private String idOf(int node) {
+        return records.id(recordOf(node));
+    }
+
+    private Page pageOf(int node) {
+        return pages[node >>> PAGE_BITS];
+    }
+
+    private Page ensurePage(int node) {
+        int pageIndex = node >>> PAGE_BITS;
+        Page[] current = pages;
+        if (pageIndex < current.length) {
+            return current[pageIndex];
+        }
+        synchronized (growLock) {
+            current = pages;
+            if (pageIndex >= current.length) {
+                Page[] grown = Arrays.copyOf(current, pageIndex + 1);
+                for (int i = current.length; i < grown.length; i++) {
+                    grown[i] = new Page();
+                }
+                pages = grown;
+                current = grown;
+            }
+            return current[pageIndex];
+        }
+    }
+
+    /**
+     * 训练完成后不可变的聚类中心和码本，以及各倒排表
+     */
+    private final class Index {
+        final float[] centroids;
+        final int lists;
+        final ProductQuantizer quantizer;
+        final InvertedList[] invertedLists;
+
+        Index(float[] centroids, int lists, ProductQuantizer quantizer) {
+            this.centroids = centroids;
+            this.lists = lists;
+            this.quantizer = quantizer;
+            this.invertedLists = new InvertedList[lists];
+            for (int i = 0; i < lists; i++) {
+                invertedLists[i] = new InvertedList(subspaces);
+            }
+        }
+
+        void add(int node, float[] vector, int offset) {
+            int list = KMeans.nearest(centroids, lists, dimension, vector, offset);
+            float[] residual = new float[dimension];
+            int centroid = list * dimension;
+            for (int d = 0; d < dimension; d++) {
+                residual[d] = vector[offset + d] - centroids[centroid + d];
+            }
+            byte[] codes = new byte[subspaces];
+            quantizer.encode(residual, 0, codes, 0);
+            pageOf(node).lists[node & PAGE_MASK] = list;
+            invertedLists[list].append(node, codes, 0);
+        }
+
+        /**
+         * 在节点所属的倒排表中找到它的编码，解码为中心加残差
+         *
+         * @return 节点已被清理出倒排表时返回 false
+         */
+        boolean decode(int node, float[] out) {
+            int list = pageOf(node).lists[node & PAGE_MASK];
+            Postings postings = invertedLists[list].postings;
+            int size = postings.size;
+            int[] nodes = postings.nodes;
+            for (int i = 0; i < size; i++) {
+                if (nodes[i] == node) {
+                    quantizer.decode(postings.codes, i * subspaces, out, 0);
+                    int centroid = list * dimension;
+                    for (int d = 0; d < dimension; d++) {
+                        out[d] += centroids[centroid + d];
+                    }
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        NodeHeap search(float[] query, int nprobe, int limit, IntPredicate accept) {
+            // 选出离查询最近的 nprobe 个倒排表
+            NodeHeap probes = NodeHeap.maxHeap(nprobe + 1);
+            for (int c = 0; c < lists; c++) {
+                probes.offer(c, metric.distance(query, 0, centroids, c * dimension, dimension), nprobe);
+            }
+
+            int tableSize = subspaces * quantizer.codebookSize;
+            float[] table = new float[tableSize];
+            boolean l2 = metric == DistanceMetric.L2;
+            if (!l2) {
+                // 内积可以拆成 q·c + q·r，查找表与倒排表无关，只需计算一次
+                quantizer.innerProductTable(query, table);
+            }
+            float[] residual = l2 ? new float[dimension] : null;
+
+            NodeHeap nearest = NodeHeap.maxHeap(limit + 1);
+            for (int p = 0; p < probes.size(); p++) {
+                int list = probes.nodeAt(p);
+                int centroid = list * dimension;
+                float base;
+                if (l2) {
+                    for (int d = 0; d < dimension; d++) {
+                        residual[d] = query[d] - centroids[centroid + d];
+                    }
+                    quantizer.l2Table(residual, table);
+                    base = 0f;
+                } else {
+                    base = -DistanceMetric.INNER_PRODUCT.distance(query, 0, centroids, centroid, dimension);
+                }
+
+                Postings postings = invertedLists[list].postings;
+                int size = postings.size;
+                byte[] codes = postings.codes;
+                int[] nodes = postings.nodes;
+                for (int i = 0; i < size; i++) {
+                    float score = quantizer.score(table, codes, i * subspaces);
+                    float distance = l2 ? score : toDistance(base + score);
+                    if ((nearest.size() < limit || distance < nearest.topDistance()) && accept.test(nodes[i])) {
+                        nearest.offer(nodes[i], distance, limit);
+                    }
+                }
+            }
+            return nearest;
+        }
+
+        private float toDistance(float dot) {
+            return metric == DistanceMetric.COSINE ? 1f - dot : -dot;
+        }
+    }
+
+    /**
+     * 一个倒排表：编码和节点编号按写入顺序追加
+     * <p>
+     * 追加和清理在锁内完成。数组和 size 放在同一个 {@link Postings} 中，扩容和清理时整体替换，
+     * 查询读到的 Postings 中 size 之前的元素一定有效。
+     */
+    private static final class InvertedList {
+        private final int codeSize;
+        volatile Postings postings;
+
+        InvertedList(int codeSize) {
+            this.codeSize = codeSize;
+            this.postings = new Postings(16, codeSize);
+        }
+
+        synchronized void append(int node, byte[] source, int sourceOffset) {
+            Postings current = postings;
+            int size = current.size;
+            if (size == current.nodes.length) {
+                Postings grown = new Postings(size + (size >> 1) + 1, codeSize);
+                System.arraycopy(current.codes, 0, grown.codes, 0, size * codeSize);
+                System.arraycopy(current.nodes, 0, grown.nodes, 0, size);
+                grown.size = size;
+                postings = grown;
+                current = grown;
+            }
+            System.arraycopy(source, sourceOffset, current.codes, size * codeSize, codeSize);
+            current.nodes[size] = node;
+            current.size = size + 1;
+        }
+
+        /**
+         * 移除被删除的节点
+         *
+         * @return 移除的数量
+         */
+        synchronized int purge(IntPredicate dead) {
+            Postings current = postings;
+            int size = current.size;
+            int removed = 0;
+            for (int i = 0; i < size; i++) {
+                if (dead.test(current.nodes[i])) {
+                    removed++;
+                }
+            }
+            if (removed == 0) {
+                return 0;
+            }
+            int live = size - removed;
+            Postings compacted = new Postings(Math.max(16, live + (live >> 1)), codeSize);
+            int target = 0;
+            for (int i = 0; i < size; i++) {
+                int node = current.nodes[i];
+                if (!dead.test(node)) {
+                    System.arraycopy(current.codes, i * codeSize, compacted.codes, target * codeSize, codeSize);
+                    compacted.nodes[target++] = node;
+                }
+            }
+            // 两次遍历之间新删除的节点留到下一次清理
+            compacted.size = target;
+            postings = compacted;
+            return size - target;
+        }
+    }
+
+    /**
+     * 倒排表的编码、节点编号和已写入的数量
+     */
+    private static final class Postings {
+        final byte[] codes;
+        final int[] nodes;
+        volatile int size;
+
+        Postings(int capacity, int codeSize) {
+            this.codes = new byte[capacity * codeSize];
+            this.nodes = new int[capacity];
+        }
+    }
+
+    /**
+     * 训练前缓存的原始向量，只在 trainLock 内追加
+     * <p>
+     * 先写数据再发布 size；读取时先读 size 再读数组引用，读到的数组一定能容纳 size 个元素，查询不需要加锁。
+     */
+    private static final class PendingVectors {
+        private final int dimension;
+        volatile float[] vectors;
+        volatile int[] nodes;
+        volatile int size;
+
+        PendingVectors(int dimension) {
+            this.dimension = dimension;
+            this.vectors = new float[16 * dimension];
+            this.nodes = new int[16];
+        }
+
+        void append(int node, float[] vector) {
+            int current = size;
+            if (current == nodes.length) {
+                int capacity = current + (current >> 1) + 1;
+                vectors = Arrays.copyOf(vectors, capacity * dimension);
+                nodes = Arrays.copyOf(nodes, capacity);
+            }
+            System.arraycopy(vector, 0, vectors, current * dimension, dimension);
+            nodes[current] = node;
+            size = current + 1;
+        }
+
+        /**
+         * 复制缓存中节点的原始向量
+         *
+         * @return 节点不在缓存中时返回 false
+         */
+        boolean copy(int node, float[] out) {
+            int count = size;
+            float[] data = vectors;
+            int[] ids = nodes;
+            for (int i = 0; i < count; i++) {
+                if (ids[i] == node) {
+                    System.arraycopy(data, i * dimension, out, 0, dimension);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        NodeHeap scan(DistanceMetric metric, float[] query, int limit, IntPredicate accept) {
+            int count = size;
+            float[] data = vectors;
+            int[] ids = nodes;
+            NodeHeap nearest = NodeHeap.maxHeap(limit + 1);
+            for (int i = 0; i < count; i++) {
+                if (accept.test(ids[i])) {
+                    nearest.offer(ids[i], metric.distance(query, 0, data, i * dimension, dimension), limit);
+                }
+            }
+            return nearest;
+        }
+    }
+
+    /**
+     * ID 到节点编号的开放寻址哈希表，槽位中只保存节点编号和 ID 的哈希，比较 ID 时从记录文件中读取
+     * <p>
+     * 线性探测，删除时把后续槽位前移，不留删除标记。不是线程安全的，调用方需持有 writeLock。
+     */
+    private static final class IdIndex {
+        private static final int EMPTY = -1;
+
+        private int[] nodes = newTable(16);
+        private int[] hashes = new int[16];
+        private int size;
+
+        int get(String id, IntFunction<String> idOf) {
+            int hash = hash(id);
+            int mask = nodes.length - 1;
+            for (int i = hash & mask; nodes[i] != EMPTY; i = (i + 1) & mask) {
+                if (hashes[i] == hash && id.equals(idOf.apply(nodes[i]))) {
+                    return nodes[i];
+                }
+            }
+            return EMPTY;
+        }
+
+        /**
+         * @return 该 ID 之前对应的节点，不存在时返回 -1
+         */
+        int put(String id, int node, IntFunction<String> idOf) {
+            int hash = hash(id);
+            int mask = nodes.length - 1;
+            int i = hash & mask;
+            for (; nodes[i] != EMPTY; i = (i + 1) & mask) {
+                if (hashes[i] == hash && id.equals(idOf.apply(nodes[i]))) {
+                    int previous = nodes[i];
+                    nodes[i] = node;
+                    return previous;
+                }
+            }
+            nodes[i] = node;
+            hashes[i] = hash;
+            if (++size * 4 > nodes.length * 3) {
+                resize();
+            }
+            return EMPTY;
+        }
+
+        /**
+         * @return 被移除的节点，不存在时返回 -1
+         */
+        int remove(String id, IntFunction<String> idOf) {
+            int hash = hash(id);
+            int mask = nodes.length - 1;
+            int i = hash & mask;
+            while (nodes[i] != EMPTY && !(hashes[i] == hash && id.equals(idOf.apply(nodes[i])))) {
+                i = (i + 1) & mask;
+            }
+            int removed = nodes[i];
+            if (removed == EMPTY) {
+                return EMPTY;
+            }
+            // 把探测链上不能留在原位的槽位前移到空出的位置
+            int hole = i;
+            for (int j = (i + 1) & mask; nodes[j] != EMPTY; j = (j + 1) & mask) {
+                int home = hashes[j] & mask;
+                if (((j - home) & mask) >= ((j - hole) & mask)) {
+                    nodes[hole] = nodes[j];
+                    hashes[hole] = hashes[j];
+                    hole = j;
+                }
+            }
+            nodes[hole] = EMPTY;
+            size--;
+            return removed;
+        }
+
+        private void resize() {
+            int[] oldNodes = nodes;
+            int[] oldHashes = hashes;
+            nodes = newTable(oldNodes.length << 1);
+            hashes = new int[oldNodes.length << 1];
+            int mask = nodes.length - 1;
+            for (int j = 0; j < oldNodes.length; j++) {
+                if (oldNodes[j] != EMPTY) {
+                    int i = oldHashes[j] & mask;
+                    while (nodes[i] != EMPTY) {
+                        i = (i + 1) & mask;
+                    }
+                    nodes[i] = oldNodes[j];
+                    hashes[i] = oldHashes[j];
+                }
+            }
+        }
+
+        private static int[] newTable(int capacity) {
+            int[] table = new int[capacity];
+            Arrays.fill(table, EMPTY);
+            return table;
+        }
+
+        private static int hash(String id) {
+            int h = id.hashCode();
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * 一页节点在记录文件中的位置和删除标记
+     */
+    private static final class Page {
+        // 记录位置加一，0 表示节点尚未发布
+        final AtomicLongArray records = new AtomicLongArray(PAGE_SIZE);
+        final Tombstones dead = new Tombstones(PAGE_SIZE);
+        // 训练后节点所属的倒排表，在节点进入倒排表之前写入，随后发布记录位置或索引时对读取方可见
+        final int[] lists = new int[PAGE_SIZE];
+    }
+
+    /**
+     * IvfPqVectorStore的Builder类
+     */
+    public static class Builder {
+        private Integer dimension;
+        private int nlist = 1024;
+        private int subspaces = 32;
+        private int nprobe = 16;
+        private int rerankDepth;
+        private Path rerankDirectory;
+        private Path recordDirectory;
+        private DistanceMetric metric = DistanceMetric.L2;
+        private int trainingSampleSize = 65536;
+        private int trainingIterations = 10;
+        private long seed = 42L;
+        private ForkJoinPool pool;
+        private Executor executor;
+
+        /**
+         * 设置向量维度
+         *
+         * @param dimension 向量维度
+         * @return Builder实例
+         */
+        public Builder dimension(int dimension) {
+            this.dimension = dimension;
+            return this;
+        }
+
+        /**
+         * 设置粗聚类中心（倒排表）的数量
+         *
+         * @param nlist 倒排表数量
+         * @return Builder实例
+         */
+        public Builder nlist(int nlist) {
+            this.nlist = nlist;
+            return this;
+        }
+
+        /**
+         * 设置乘积量化的子空间数量，即每个向量的编码字节数，需要整除维度
+         *
+         * @param subspaces 子空间数量
+         * @return Builder实例
+         */
+        public Builder subspaces(int subspaces) {
+            this.subspaces = subspaces;
+            return this;
+        }
+
+        /**
+         * 设置默认扫描的倒排表数量
+         *
+         * @param nprobe 倒排表数量
+         * @return Builder实例
+         */
+        public Builder nprobe(int nprobe) {
+            this.nprobe = nprobe;
+            return this;
+        }
+
+        /**
+         * 设置默认的重排深度，大于 0 时会把原始向量保存到内存映射文件中
+         *
+         * @param rerankDepth 重排候选数
+         * @return Builder实例
+         */
+        public Builder rerankDepth(int rerankDepth) {
+            this.rerankDepth = rerankDepth;
+            return this;
+        }
+
+        /**
+         * 设置重排所用原始向量文件的目录，未设置时使用系统临时目录
+         *
+         * @param rerankDirectory 文件目录
+         * @return Builder实例
+         */
+        public Builder rerankDirectory(Path rerankDirectory) {
+            this.rerankDirectory = rerankDirectory;
+            return this;
+        }
+
+        /**
+         * 设置保存 ID 和元数据的内存映射文件的目录，未设置时使用系统临时目录
+         *
+         * @param recordDirectory 文件目录
+         * @return Builder实例
+         */
+        public Builder recordDirectory(Path recordDirectory) {
+            this.recordDirectory = recordDirectory;
+            return this;
+        }
+
+        /**
+         * 设置距离度量
+         *
+         * @param metric 距离度量
+         * @return Builder实例
+         */
+        public Builder metric(DistanceMetric metric) {
+            this.metric = metric;
+            return this;
+        }
+
+        /**
+         * 设置触发训练的样本数量
+         *
+         * @param trainingSampleSize 样本数量
+         * @return Builder实例
+         */
+        public Builder trainingSampleSize(int trainingSampleSize) {
+            this.trainingSampleSize = trainingSampleSize;
+            return this;
+        }
+
+        /**
+         * 设置 k-means 的迭代次数
+         *
+         * @param trainingIterations 迭代次数
+         * @return Builder实例
+         */
+        public Builder trainingIterations(int trainingIterations) {
+            this.trainingIterations = trainingIterations;
+            return this;
+        }
+
+        /**
+         * 设置训练使用的随机种子
+         *
+         * @param seed 随机种子
+         * @return Builder实例
+         */
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        /**
+         * 设置训练和编码使用的 fork/join 线程池，默认为公共线程池
+         *
+         * @param pool 线程池
+         * @return Builder实例
+         */
+        public Builder pool(ForkJoinPool pool) {
+            this.pool = pool;
+            return this;
+        }
+
+        /**
+         * 设置执行异步操作的线程池，未设置时内部创建并在 close 时关闭
+         *
+         * @param executor 线程池
+         * @return Builder实例
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * 构建IvfPqVectorStore实例
+         *
+         * @return IvfPqVectorStore实例
+         */
+        public IvfPqVectorStore build() {
+            return new IvfPqVectorStore(this);
+        }
+    }
+}
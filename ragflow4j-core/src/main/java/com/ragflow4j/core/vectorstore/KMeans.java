@@ -0,0 +1,175 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 基于平方欧氏距离的 k-means 聚类，分配步骤在 fork/join 线程池中并行执行
+ * <p>
+ * 数据以行优先方式存放在一个 {@code float[]} 中，第 i 个点位于 {@code [i * stride + offset, i * stride + offset + dimension)}，
+ * 这样乘积量化可以直接在原始数据上对某个子空间聚类，而不需要先拷贝出子向量。
+ */
+final class KMeans {
+    private static final int ASSIGN_BATCH = 256;
+
+    private KMeans() {}
+
+    /**
+     * 训练聚类中心
+     *
+     * @param data 数据
+     * @param count 点的数量
+     * @param stride 相邻两个点之间的间隔
+     * @param offset 点内参与聚类的起始位置
+     * @param dimension 参与聚类的维度
+     * @param k 聚类中心数，不超过点的数量
+     * @param iterations 迭代次数
+     * @param seed 随机种子
+     * @param pool 线程池
+     * @return 聚类中心，行优先存放 k * dimension 个值
+     */
+    static float[] train(float[] data, int count, int stride, int offset, int dimension,
+                         int k, int iterations, long seed, ForkJoinPool pool) {
+        Random random = new Random(seed);
+        float[] centroids = new float[k * dimension];
+        // 随机抽取 k 个不同的点作为初始中心
+        int[] permutation = new int[count];
+        for (int i = 0; i < count; i++) {
+            permutation[i] = i;
+        }
+        for (int c = 0; c < k; c++) {
+            int j = c + random.nextInt(count - c);
+            int tmp = permutation[c];
+            permutation[c] = permutation[j];
+            permutation[j] = tmp;
+            System.arraycopy(data, permutation[c] * stride + offset, centroids, c * dimension, dimension);
+        }
+
+        int[] assignments = new int[count];
+        double[] sums = new double[k * dimension];
+        int[] sizes = new int[k];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            assign(data, count, stride, offset, dimension, centroids, k, assignments, pool);
+
+            Arrays.fill(sums, 0d);
+            Arrays.fill(sizes, 0);
+            for (int i = 0; i < count; i++) {
+                int c = assignments[i];
+                sizes[c]++;
+                int base = i * stride + offset;
+                int target = c * dimension;
+                for (int d = 0; d < dimension; d++) {
+                    sums[target + d] += data[base + d];
+                }
+            }
+            for (int c = 0; c < k; c++) {
+                if (sizes[c] == 0) {
+                    // 空簇：从最大的簇中分裂出一个中心
+                    splitLargest(centroids, sizes, c, dimension, random);
+                    continue;
+                }
+                int target = c * dimension;
+                for (int d = 0; d < dimension; d++) {
+                    centroids[target + d] = (float) (sums[target + d] / sizes[c]);
+                }
+            }
+        }
+        return centroids;
+    }
+
+    /**
+     * 并行地为每个点分配最近的聚类中心
+     */
+    static void assign(float[] data, int count, int stride, int offset, int dimension,
+                       float[] centroids, int k, int[] assignments, ForkJoinPool pool) {
+        AssignTask task = new AssignTask(data, stride, offset, dimension, centroids, k, assignments, 0, count);
+        // 已经在 fork/join 任务中时（如乘积量化并行训练各子空间）直接在当前任务中展开
+        if (ForkJoinTask.inForkJoinPool()) {
+            task.invoke();
+        } else {
+            pool.invoke(task);
+        }
+    }
+
+    /**
+     * 返回距离给定点最近的聚类中心
+     */
+    static int nearest(float[] centroids, int k, int dimension, float[] point, int pointOffset) {
+        return nearest(centroids, 0, k, dimension, point, pointOffset);
+    }
+
+    /**
+     * 返回距离给定点最近的聚类中心，聚类中心从 centroidOffset 开始存放
+     */
+    static int nearest(float[] centroids, int centroidOffset, int k, int dimension, float[] point, int pointOffset) {
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < k; c++) {
+            float d = DistanceMetric.L2.distance(point, pointOffset, centroids, centroidOffset + c * dimension, dimension);
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static void splitLargest(float[] centroids, int[] sizes, int empty, int dimension, Random random) {
+        int largest = 0;
+        for (int c = 1; c < sizes.length; c++) {
+            if (sizes[c] > sizes[largest]) {
+                largest = c;
+            }
+        }
+        int source = largest * dimension;
+        int target = empty * dimension;
+        for (int d = 0; d < dimension; d++) {
+            float jitter = 1f + (random.nextFloat() - 0.5f) * 1e-3f;
+            centroids[target + d] = centroids[source + d] * jitter;
+        }
+        sizes[empty] = sizes[largest] / 2;
+        sizes[largest] -= sizes[empty];
+    }
+
+    private static final class AssignTask extends RecursiveAction {
+        private final float[] data;
+        private final int stride;
+        private final int offset;
+        private final int dimension;
+        private final float[] centroids;
+        private final int k;
+        private final int[] assignments;
+        private final int from;
+        private final int to;
+
+        AssignTask(float[] data, int stride, int offset, int dimension, float[] centroids, int k,
+                   int[] assignments, int from, int to) {
+            this.data = data;
+            this.stride = stride;
+            this.offset = offset;
+            this.dimension = dimension;
+            this.centroids = centroids;
+            this.k = k;
+            this.assignments = assignments;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ASSIGN_BATCH) {
+                for (int i = from; i < to; i++) {
+                    assignments[i] = nearest(centroids, k, dimension, data, i * stride + offset);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                new AssignTask(data, stride, offset, dimension, centroids, k, assignments, from, middle),
+                new AssignTask(data, stride, offset, dimension, centroids, k, assignments, middle, to));
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.ragflow4j.core.vectorstore;
+
+/**
+ * 选择 {@link DistanceKernels} 的实现
+ * <p>
+ * 这是 Java 8 版本，总是返回标量实现；multi-release jar 中 {@code META-INF/versions/17} 下的同名类会在 JDK 17+ 上替换它。
+ */
+final class KernelLoader {
+    private KernelLoader() {}
+
+    static DistanceKernels load() {
+        return new ScalarDistanceKernels();
+    }
+}
@@ -0,0 +1,140 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * 只追加的内存映射文件，保存每个向量的 ID 和元数据，使它们不占用 Java 堆
+ * <p>
+ * 每条记录依次是 ID 的字节数、ID 的 UTF-8 字节、元数据的字节数（没有元数据时为 -1）和元数据的 UTF-8 字节，
+ * 写入时返回记录的位置，调用方按位置读取。文件按固定大小的区域映射，记录不跨区域。
+ * 文件只在进程生命周期内使用，关闭时删除；被替换或删除的记录不回收。
+ */
+final class MappedRecordFile implements AutoCloseable {
+    private static final int REGION_BITS = 26;
+    private static final long REGION_SIZE = 1L << REGION_BITS;
+    private static final long REGION_MASK = REGION_SIZE - 1;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Object appendLock = new Object();
+    private volatile ByteBuffer[] regions = new ByteBuffer[0];
+    private long end;
+
+    /**
+     * @param directory 文件所在目录，为 null 时使用系统临时目录
+     */
+    MappedRecordFile(Path directory) {
+        try {
+            this.path = directory == null
+                ? Files.createTempFile("ragflow4j-records", ".rec")
+                : Files.createTempFile(directory, "ragflow4j-records", ".rec");
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param id 向量ID
+     * @param metadata 元数据，可以为 null
+     * @return 记录的位置
+     */
+    long append(String id, String metadata) {
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        byte[] metadataBytes = metadata == null ? null : metadata.getBytes(StandardCharsets.UTF_8);
+        long length = 2L * Integer.BYTES + idBytes.length + (metadataBytes == null ? 0 : metadataBytes.length);
+        ensureTrue(length <= REGION_SIZE, "record must not be larger than " + REGION_SIZE + " bytes");
+
+        long position;
+        ByteBuffer region;
+        synchronized (appendLock) {
+            position = end;
+            if ((position & REGION_MASK) + length > REGION_SIZE) {
+                // 当前区域放不下，从下一个区域开始
+                position = (position | REGION_MASK) + 1;
+            }
+            region = ensureRegion((int) (position >>> REGION_BITS));
+            end = position + length;
+        }
+        // 各条记录的区间互不重叠，写入不需要持锁
+        ByteBuffer out = region.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        out.position((int) (position & REGION_MASK));
+        out.putInt(idBytes.length);
+        out.put(idBytes);
+        if (metadataBytes == null) {
+            out.putInt(-1);
+        } else {
+            out.putInt(metadataBytes.length);
+            out.put(metadataBytes);
+        }
+        return position;
+    }
+
+    /**
+     * 读取记录中的 ID
+     */
+    String id(long position) {
+        ByteBuffer region = regions[(int) (position >>> REGION_BITS)];
+        int offset = (int) (position & REGION_MASK);
+        return read(region, offset + Integer.BYTES, region.getInt(offset));
+    }
+
+    /**
+     * 读取记录中的元数据，没有元数据时返回 null
+     */
+    String metadata(long position) {
+        ByteBuffer region = regions[(int) (position >>> REGION_BITS)];
+        int offset = (int) (position & REGION_MASK);
+        int metadataOffset = offset + Integer.BYTES + region.getInt(offset);
+        int length = region.getInt(metadataOffset);
+        return length < 0 ? null : read(region, metadataOffset + Integer.BYTES, length);
+    }
+
+    private static String read(ByteBuffer region, int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer in = region.duplicate();
+        in.position(offset);
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ByteBuffer ensureRegion(int regionIndex) {
+        ByteBuffer[] current = regions;
+        if (regionIndex < current.length) {
+            return current[regionIndex];
+        }
+        ByteBuffer[] grown = Arrays.copyOf(current, regionIndex + 1);
+        try {
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * REGION_SIZE, REGION_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        regions = grown;
+        return grown[regionIndex];
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 保存原始 float 向量的内存映射文件，供量化存储做全精度重排
+ * <p>
+ * 向量按页映射，数据在操作系统页缓存中而不是 Java 堆上，只有重排时访问的少量候选才会被读入。
+ * 文件只在进程生命周期内使用，关闭时删除。
+ */
+final class MappedVectorFile implements AutoCloseable {
+    private final int dimension;
+    private final int pageBits;
+    private final int pageMask;
+    private final Path path;
+    private final FileChannel channel;
+    private final Object growLock = new Object();
+    private volatile FloatBuffer[] pages = new FloatBuffer[0];
+
+    /**
+     * @param directory 文件所在目录，为 null 时使用系统临时目录
+     * @param dimension 向量维度
+     * @param pageBits 每页向量数的位数
+     */
+    MappedVectorFile(Path directory, int dimension, int pageBits) {
+        this.dimension = dimension;
+        this.pageBits = pageBits;
+        this.pageMask = (1 << pageBits) - 1;
+        try {
+            this.path = directory == null
+                ? Files.createTempFile("ragflow4j-vectors", ".f32")
+                : Files.createTempFile(directory, "ragflow4j-vectors", ".f32");
+            this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 写入第 index 个向量
+     */
+    void write(int index, float[] vector, int offset) {
+        FloatBuffer page = ensurePage(index >>> pageBits);
+        int base = (index & pageMask) * dimension;
+        for (int i = 0; i < dimension; i++) {
+            page.put(base + i, vector[offset + i]);
+        }
+    }
+
+    /**
+     * 读出第 index 个向量
+     */
+    void read(int index, float[] out, int offset) {
+        FloatBuffer page = pages[index >>> pageBits];
+        int base = (index & pageMask) * dimension;
+        for (int i = 0; i < dimension; i++) {
+            out[offset + i] = page.get(base + i);
+        }
+    }
+
+    /**
+     * 计算查询向量与第 index 个原始向量之间的距离
+     */
+    float distance(DistanceMetric metric, float[] query, int index) {
+        FloatBuffer page = pages[index >>> pageBits];
+        int base = (index & pageMask) * dimension;
+        float[] vector = VectorSlab.scratch(dimension);
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = page.get(base + i);
+        }
+        return metric.distance(query, 0, vector, 0, dimension);
+    }
+
+    private FloatBuffer ensurePage(int pageIndex) {
+        FloatBuffer[] current = pages;
+        if (pageIndex < current.length) {
+            return current[pageIndex];
+        }
+        synchronized (growLock) {
+            current = pages;
+            if (pageIndex >= current.length) {
+                FloatBuffer[] grown = Arrays.copyOf(current, pageIndex + 1);
+                long pageBytes = ((long) dimension << pageBits) * Float.BYTES;
+                try {
+                    for (int i = current.length; i < grown.length; i++) {
+                        grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, i * pageBytes, pageBytes)
+                            .order(ByteOrder.nativeOrder())
+                            .asFloatBuffer();
+                    }
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                pages = grown;
+                current = grown;
+            }
+            return current[pageIndex];
+        }
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
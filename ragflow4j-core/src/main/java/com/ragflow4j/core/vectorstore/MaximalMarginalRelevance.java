@@ -0,0 +1,97 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * 最大边际相关性（MMR）重选
+ * <p>
+ * 在多取回的候选结果上逐个贪心选择，每一步取 {@code lambda * 与查询的相似度 - (1 - lambda) * 与已选结果的最大相似度}
+ * 最大的候选，避免同一文档中高度重叠的分块占满结果。相似度统一用余弦计算，与存储的度量方式无关。
+ * lambda 为 1 时等价于按相关性排序，越小越偏向多样性。
+ */
+public final class MaximalMarginalRelevance {
+
+    private MaximalMarginalRelevance() {
+    }
+
+    /**
+     * 从候选结果中选出 topK 个
+     * <p>
+     * 没有向量的候选无法参与比较，按原有顺序排在选出的结果之后。
+     *
+     * @param query 查询向量
+     * @param candidates 按相关性排好序的候选结果
+     * @param vectors 候选结果ID到存储向量的映射，见 {@link VectorStore#getVectors(List)}
+     * @param topK 返回数量
+     * @param lambda 相关性与多样性的权衡，取值 [0, 1]
+     * @return 重选后的结果，保留原有分数
+     */
+    public static List<SearchResult> select(float[] query, List<SearchResult> candidates,
+                                            Map<String, float[]> vectors, int topK, double lambda) {
+        ensureNotNull(query, "query");
+        ensureNotNull(candidates, "candidates");
+        ensureNotNull(vectors, "vectors");
+        ensureGreaterThanZero(topK, "topK");
+        ensureTrue(lambda >= 0 && lambda <= 1, "lambda must be between 0 and 1");
+
+        List<SearchResult> comparable = new ArrayList<>();
+        List<float[]> normalized = new ArrayList<>();
+        List<SearchResult> rest = new ArrayList<>();
+        for (SearchResult candidate : candidates) {
+            float[] vector = vectors.get(candidate.id);
+            if (vector != null && vector.length == query.length) {
+                comparable.add(candidate);
+                normalized.add(DistanceMetric.normalize(vector));
+            } else {
+                rest.add(candidate);
+            }
+        }
+
+        int count = comparable.size();
+        float[] unitQuery = DistanceMetric.normalize(query);
+        float[] relevance = new float[count];
+        float[] maxSimilarity = new float[count];
+        boolean[] selected = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            relevance[i] = dot(unitQuery, normalized.get(i));
+        }
+
+        List<SearchResult> results = new ArrayList<>(Math.min(topK, candidates.size()));
+        int last = -1;
+        while (results.size() < topK && results.size() < count) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < count; i++) {
+                if (selected[i]) {
+                    continue;
+                }
+                if (last >= 0) {
+                    float similarity = dot(normalized.get(last), normalized.get(i));
+                    maxSimilarity[i] = results.size() == 1 ? similarity : Math.max(maxSimilarity[i], similarity);
+                }
+                double score = lambda * relevance[i] - (1 - lambda) * maxSimilarity[i];
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+            selected[best] = true;
+            results.add(comparable.get(best));
+            last = best;
+        }
+        for (int i = 0; i < rest.size() && results.size() < topK; i++) {
+            results.add(rest.get(i));
+        }
+        return results;
+    }
+
+    private static float dot(float[] a, float[] b) {
+        return DistanceKernels.INSTANCE.dot(a, 0, b, 0, a.length);
+    }
+}
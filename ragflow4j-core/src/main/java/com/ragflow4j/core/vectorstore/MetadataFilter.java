@@ -0,0 +1,224 @@
+package com.ragflow4j.core.vectorstore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotBlank;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * 向量搜索的元数据过滤条件
+ * <p>
+ * 元数据约定为 JSON 对象，knowledgeId、documentId、chunkIndex 是内置的类型化字段，
+ * 其他字段通过 {@link Builder#eq(String, Object)} 按值匹配。所有条件之间是"与"的关系，
+ * 同一字段给出多个取值时是"或"的关系。
+ */
+public final class MetadataFilter {
+    public static final String KNOWLEDGE_ID = "knowledgeId";
+    public static final String DOCUMENT_ID = "documentId";
+    public static final String CHUNK_INDEX = "chunkIndex";
+
+    private final Set<String> knowledgeIds;
+    private final Set<String> documentIds;
+    private final Integer minChunkIndex;
+    private final Integer maxChunkIndex;
+    private final Map<String, Object> attributes;
+
+    private MetadataFilter(Builder builder) {
+        this.knowledgeIds = Collections.unmodifiableSet(new LinkedHashSet<>(builder.knowledgeIds));
+        this.documentIds = Collections.unmodifiableSet(new LinkedHashSet<>(builder.documentIds));
+        this.minChunkIndex = builder.minChunkIndex;
+        this.maxChunkIndex = builder.maxChunkIndex;
+        this.attributes = Collections.unmodifiableMap(new LinkedHashMap<>(builder.attributes));
+    }
+
+    /**
+     * 创建一个新的Builder实例
+     *
+     * @return Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public Set<String> getKnowledgeIds() {
+        return knowledgeIds;
+    }
+
+    public Set<String> getDocumentIds() {
+        return documentIds;
+    }
+
+    public Integer getMinChunkIndex() {
+        return minChunkIndex;
+    }
+
+    public Integer getMaxChunkIndex() {
+        return maxChunkIndex;
+    }
+
+    public Map<String, Object> getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * 是否没有任何条件
+     *
+     * @return 没有条件时返回 true
+     */
+    public boolean isEmpty() {
+        return knowledgeIds.isEmpty() && documentIds.isEmpty()
+            && minChunkIndex == null && maxChunkIndex == null && attributes.isEmpty();
+    }
+
+    /**
+     * 判断一条 JSON 元数据是否满足过滤条件
+     *
+     * @param metadata JSON 格式的元数据
+     * @return 满足条件时返回 true
+     */
+    public boolean matches(String metadata) {
+        return test(VectorMetadata.parse(metadata));
+    }
+
+    boolean test(VectorMetadata metadata) {
+        if (metadata == null) {
+            metadata = VectorMetadata.EMPTY;
+        }
+        if (!knowledgeIds.isEmpty() && !knowledgeIds.contains(metadata.knowledgeId)) {
+            return false;
+        }
+        if (!documentIds.isEmpty() && !documentIds.contains(metadata.documentId)) {
+            return false;
+        }
+        if (minChunkIndex != null || maxChunkIndex != null) {
+            if (metadata.chunkIndex == VectorMetadata.NO_CHUNK_INDEX) {
+                return false;
+            }
+            if (minChunkIndex != null && metadata.chunkIndex < minChunkIndex) {
+                return false;
+            }
+            if (maxChunkIndex != null && metadata.chunkIndex > maxChunkIndex) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, Object> attribute : attributes.entrySet()) {
+            if (!valueMatches(metadata.get(attribute.getKey()), attribute.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按类型严格比较，数字只匹配数字、布尔值只匹配布尔值、字符串只匹配字符串，与 Milvus 的 JSON 字段比较一致
+     */
+    private static boolean valueMatches(JsonNode value, Object expected) {
+        if (value == null) {
+            return false;
+        }
+        if (expected instanceof Number) {
+            return value.isNumber() && value.doubleValue() == ((Number) expected).doubleValue();
+        }
+        if (expected instanceof Boolean) {
+            return value.isBoolean() && value.booleanValue() == (Boolean) expected;
+        }
+        return value.isTextual() && String.valueOf(expected).equals(value.textValue());
+    }
+
+    /**
+     * 复制其他条件，只替换知识库ID
+     */
+    MetadataFilter withKnowledgeIds(Collection<String> ids) {
+        Builder builder = builder();
+        builder.knowledgeIds.addAll(ids);
+        builder.documentIds.addAll(documentIds);
+        builder.minChunkIndex = minChunkIndex;
+        builder.maxChunkIndex = maxChunkIndex;
+        builder.attributes.putAll(attributes);
+        return builder.build();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MetadataFilter{knowledgeIds=%s, documentIds=%s, chunkIndex=[%s, %s], attributes=%s}",
+            knowledgeIds, documentIds, minChunkIndex, maxChunkIndex, attributes);
+    }
+
+    /**
+     * MetadataFilter的Builder类
+     */
+    public static class Builder {
+        private final Set<String> knowledgeIds = new LinkedHashSet<>();
+        private final Set<String> documentIds = new LinkedHashSet<>();
+        private Integer minChunkIndex;
+        private Integer maxChunkIndex;
+        private final Map<String, Object> attributes = new LinkedHashMap<>();
+
+        /**
+         * 限定知识库，多个取值之间为"或"
+         *
+         * @param knowledgeIds 知识库ID
+         * @return Builder实例
+         */
+        public Builder knowledgeId(String... knowledgeIds) {
+            this.knowledgeIds.addAll(Arrays.asList(knowledgeIds));
+            return this;
+        }
+
+        /**
+         * 限定文档，多个取值之间为"或"
+         *
+         * @param documentIds 文档ID
+         * @return Builder实例
+         */
+        public Builder documentId(String... documentIds) {
+            this.documentIds.addAll(Arrays.asList(documentIds));
+            return this;
+        }
+
+        /**
+         * 限定文档块序号范围，包含两端
+         *
+         * @param min 最小序号
+         * @param max 最大序号
+         * @return Builder实例
+         */
+        public Builder chunkIndexBetween(int min, int max) {
+            ensureTrue(min <= max, "min chunk index must not be greater than max chunk index");
+            this.minChunkIndex = min;
+            this.maxChunkIndex = max;
+            return this;
+        }
+
+        /**
+         * 要求任意元数据字段等于给定值，支持字符串、数字和布尔值；比较区分类型，字符串 "5" 不匹配数字 5
+         *
+         * @param key 字段名
+         * @param value 期望值
+         * @return Builder实例
+         */
+        public Builder eq(String key, Object value) {
+            ensureNotBlank(key, "key");
+            ensureTrue(value != null, "value cannot be null");
+            this.attributes.put(key, value);
+            return this;
+        }
+
+        /**
+         * 构建MetadataFilter实例
+         *
+         * @return MetadataFilter实例
+         */
+        public MetadataFilter build() {
+            return new MetadataFilter(this);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.ragflow4j.core.vectorstore;
+
+import io.milvus.param.IndexType;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * Milvus 向量索引参数，同时包含建索引和查询时使用的参数
+ * <p>
+ * 两组参数一起变化：例如 IVF 的 nprobe 不能超过 nlist，HNSW 的 ef 不能小于 topK，
+ * 因此由 {@link MilvusVectorStore} 在切换索引时一并切换。
+ */
+public final class MilvusIndexParams {
+    private final IndexType indexType;
+    private final Map<String, Integer> buildParams;
+    private final String searchKey;
+    private final int searchValue;
+
+    private MilvusIndexParams(IndexType indexType, Map<String, Integer> buildParams, String searchKey, int searchValue) {
+        this.indexType = indexType;
+        this.buildParams = buildParams;
+        this.searchKey = searchKey;
+        this.searchValue = searchValue;
+    }
+
+    /**
+     * 暴力检索，不需要训练，适合数据量很小的集合
+     *
+     * @return 索引参数
+     */
+    public static MilvusIndexParams flat() {
+        return new MilvusIndexParams(IndexType.FLAT, Collections.emptyMap(), null, 0);
+    }
+
+    /**
+     * IVF_FLAT 倒排索引
+     *
+     * @param nlist 聚类中心数量
+     * @param nprobe 查询时探查的聚类数量
+     * @return 索引参数
+     */
+    public static MilvusIndexParams ivfFlat(int nlist, int nprobe) {
+        ensureGreaterThanZero(nlist, "nlist");
+        ensureGreaterThanZero(nprobe, "nprobe");
+        ensureTrue(nprobe <= nlist, "nprobe must not exceed nlist");
+        return new MilvusIndexParams(IndexType.IVF_FLAT, Collections.singletonMap("nlist", nlist), "nprobe", nprobe);
+    }
+
+    /**
+     * HNSW 图索引
+     *
+     * @param m 每个节点的邻居数量
+     * @param efConstruction 建图时的候选集大小
+     * @param ef 查询时的候选集大小，小于 topK 时按 topK 取
+     * @return 索引参数
+     */
+    public static MilvusIndexParams hnsw(int m, int efConstruction, int ef) {
+        ensureGreaterThanZero(m, "m");
+        ensureGreaterThanZero(efConstruction, "efConstruction");
+        ensureGreaterThanZero(ef, "ef");
+        Map<String, Integer> buildParams = new LinkedHashMap<>();
+        buildParams.put("M", m);
+        buildParams.put("efConstruction", efConstruction);
+        return new MilvusIndexParams(IndexType.HNSW, buildParams, "ef", ef);
+    }
+
+    public IndexType getIndexType() {
+        return indexType;
+    }
+
+    /**
+     * @return 建索引的参数 JSON
+     */
+    String extraParam() {
+        StringBuilder json = new StringBuilder("{");
+        for (Map.Entry<String, Integer> param : buildParams.entrySet()) {
+            if (json.length() > 1) {
+                json.append(',');
+            }
+            json.append('"').append(param.getKey()).append("\":").append(param.getValue());
+        }
+        return json.append('}').toString();
+    }
+
+    /**
+     * @param topK 本次查询返回的数量
+     * @return 查询参数 JSON
+     */
+    String searchParam(int topK) {
+        if (searchKey == null) {
+            return "{}";
+        }
+        int value = indexType == IndexType.HNSW ? Math.max(searchValue, topK) : searchValue;
+        return "{\"" + searchKey + "\":" + value + "}";
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof MilvusIndexParams)) {
+            return false;
+        }
+        MilvusIndexParams that = (MilvusIndexParams) o;
+        return indexType == that.indexType && buildParams.equals(that.buildParams) && searchValue == that.searchValue;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(indexType, buildParams, searchValue);
+    }
+
+    @Override
+    public String toString() {
+        return indexType + extraParam() + searchParam(0);
+    }
+}
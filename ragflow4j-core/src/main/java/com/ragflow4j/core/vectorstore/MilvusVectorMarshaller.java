@@ -0,0 +1,149 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 将 float[] 向量转换为 Milvus SDK 需要的 {@code List<Float>} 参数
+ * <p>
+ * SDK 2.3 的 FloatVector 字段只接受 {@code List<Float>}，并且在校验和序列化时会逐个读取元素，
+ * 因此每个分量至少要装箱一次。这里保证只装箱一次：装箱结果写入从池中借出的定长 {@code Float[]}，
+ * 再以只读列表视图交给 SDK，省去了逐个 add 到 ArrayList 时的扩容拷贝。
+ * 调用结束后通过 {@link MarshalledVectors#close()} 清空并归还缓冲区。
+ */
+final class MilvusVectorMarshaller {
+    static final int DEFAULT_MAX_POOLED_BUFFERS = 2048;
+
+    private final int dimension;
+    private final int maxPooledBuffers;
+    private final Queue<Float[]> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+
+    MilvusVectorMarshaller(int dimension) {
+        this(dimension, DEFAULT_MAX_POOLED_BUFFERS);
+    }
+
+    MilvusVectorMarshaller(int dimension, int maxPooledBuffers) {
+        this.dimension = dimension;
+        this.maxPooledBuffers = maxPooledBuffers;
+    }
+
+    /**
+     * 转换一批向量，返回值需要在 SDK 调用结束后关闭
+     *
+     * @param vectors 向量列表
+     * @return 转换结果
+     */
+    MarshalledVectors marshal(List<float[]> vectors) {
+        List<List<Float>> views = new ArrayList<>(vectors.size());
+        for (float[] vector : vectors) {
+            views.add(box(vector));
+        }
+        return new MarshalledVectors(views);
+    }
+
+    /**
+     * 转换单个向量，返回值需要在 SDK 调用结束后关闭
+     *
+     * @param vector 向量
+     * @return 转换结果
+     */
+    MarshalledVectors marshal(float[] vector) {
+        return new MarshalledVectors(Collections.<List<Float>>singletonList(box(vector)));
+    }
+
+    /**
+     * 当前池中空闲缓冲区数量
+     */
+    int pooledBuffers() {
+        return pooled.get();
+    }
+
+    private BoxedVector box(float[] vector) {
+        Float[] buffer = vector.length == dimension ? borrow() : new Float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            buffer[i] = vector[i];
+        }
+        return new BoxedVector(buffer);
+    }
+
+    private Float[] borrow() {
+        Float[] buffer = pool.poll();
+        if (buffer == null) {
+            return new Float[dimension];
+        }
+        pooled.decrementAndGet();
+        return buffer;
+    }
+
+    private void release(Float[] buffer) {
+        if (buffer.length != dimension) {
+            return;
+        }
+        // 清空引用，避免池中的缓冲区持有已装箱的 Float
+        Arrays.fill(buffer, null);
+        if (pooled.incrementAndGet() <= maxPooledBuffers) {
+            pool.offer(buffer);
+        } else {
+            pooled.decrementAndGet();
+        }
+    }
+
+    /**
+     * 一次 SDK 调用使用的向量参数
+     */
+    final class MarshalledVectors implements AutoCloseable {
+        private final List<List<Float>> vectors;
+
+        private MarshalledVectors(List<List<Float>> vectors) {
+            this.vectors = vectors;
+        }
+
+        /**
+         * 传给 InsertParam/SearchParam 的向量列表
+         */
+        List<List<Float>> vectors() {
+            return vectors;
+        }
+
+        @Override
+        public void close() {
+            for (List<Float> vector : vectors) {
+                release(((BoxedVector) vector).buffer);
+            }
+        }
+    }
+
+    /**
+     * 定长 Float[] 上的只读列表视图
+     */
+    private static final class BoxedVector extends AbstractList<Float> implements RandomAccess {
+        private final Float[] buffer;
+
+        BoxedVector(Float[] buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public Float get(int index) {
+            return buffer[index];
+        }
+
+        @Override
+        public int size() {
+            return buffer.length;
+        }
+
+        @Override
+        public Object[] toArray() {
+            return Arrays.copyOf(buffer, buffer.length, Object[].class);
+        }
+    }
+}
@@ -1,57 +1,194 @@
 package com.ragflow4j.core.vectorstore;
 
+import com.alibaba.fastjson.JSONObject;
 import io.milvus.client.MilvusServiceClient;
+import io.milvus.common.clientenum.ConsistencyLevelEnum;
 import io.milvus.param.ConnectParam;
 import io.milvus.param.R;
 import io.milvus.param.MetricType; // 新增导入
+import io.milvus.param.alias.AlterAliasParam;
+import io.milvus.param.alias.CreateAliasParam;
 import io.milvus.param.collection.CreateCollectionParam;
+import io.milvus.param.collection.DescribeCollectionParam;
+import io.milvus.param.collection.DropCollectionParam;
 import io.milvus.param.collection.FieldType;
+import io.milvus.param.collection.FlushParam;
+import io.milvus.param.collection.GetCollectionStatisticsParam;
+import io.milvus.param.collection.LoadCollectionParam;
+import io.milvus.param.collection.ReleaseCollectionParam;
+import io.milvus.param.collection.ShowCollectionsParam;
 import io.milvus.param.dml.DeleteParam;
 import io.milvus.param.dml.InsertParam;
+import io.milvus.param.dml.QueryIteratorParam;
+import io.milvus.param.dml.QueryParam;
 import io.milvus.param.dml.SearchParam;
+import io.milvus.param.dml.UpsertParam;
+import io.milvus.param.index.CreateIndexParam;
+import io.milvus.param.index.DescribeIndexParam;
+import io.milvus.param.index.GetIndexBuildProgressParam;
 import io.milvus.grpc.DataType;
+import io.milvus.grpc.FieldSchema;
+import io.milvus.orm.iterator.QueryIterator;
+import io.milvus.response.GetCollStatResponseWrapper;
+import io.milvus.response.QueryResultsWrapper;
 import io.milvus.response.SearchResultsWrapper;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
 
 /**
  * Milvus 实现的 VectorStore 接口
+ * <p>
+ * 集合行数超过 {@link Builder#indexThreshold(long)}（默认 10000）时在后台为向量字段建索引，之前的小集合直接暴力检索。
+ * 已有索引时用新参数重建不会停止服务：先在影子集合上建好新索引并复制数据，复制期间的写入照常写入旧集合并记录下来，
+ * 追平后在写锁内原子地切换查询目标，再把与 collectionName 同名的别名指向新集合，其他客户端随之切换。
+ * 旧版本直接以 collectionName 创建的集合需要先删除才能建立同名别名，这一步在切换的写锁内进行，其他客户端会短暂不可用。
+ * 任何旧集合都要等切换前已经开始的查询结束后才会删除。
+ * <p>
+ * 过滤条件中的 knowledgeId、documentId、chunkIndex 下推到同名的标量列，任意元数据字段下推到 JSON 字段 attributes。
+ * 打开已有集合时按实际的字段决定写入哪些列：旧版本创建的集合缺少这些字段时只写入原有的列，
+ * 无法下推的条件在本地过滤，并逐步扩大召回直到凑满 topK 或没有更多结果。在影子集合上重建索引后集合升级为新的字段。
  */
 public class MilvusVectorStore implements VectorStore {
+    // 单次搜索 topK 的上限，与 Milvus 服务端保持一致
+    private static final int MAX_TOP_K = 16384;
+    // 过滤条件无法完全下推时，每轮扩大召回的倍数
+    private static final int ATTRIBUTE_OVER_FETCH = 4;
+    // 单次查询表达式中 ID 的数量上限，避免表达式过长
+    private static final int ID_QUERY_BATCH = 1000;
+    // 读出全部数据时每批返回的行数
+    private static final int LIST_BATCH = 1000;
+    // 创建别名失败时的重试次数
+    private static final int ALIAS_ATTEMPTS = 3;
+    // 每写入这么多行检查一次是否需要建索引
+    private static final long INDEX_CHECK_ROWS = 1000;
+    // 轮询索引构建进度的间隔
+    private static final long INDEX_POLL_MILLIS = 500;
+    private static final String INDEX_NAME = "vector_index";
+
     private final MilvusServiceClient milvusClient;
     private final String collectionName;
     private final int dimension;
     private final ExecutorService executor = Executors.newFixedThreadPool(4); // 用于异步操作的线程池
+    // 建索引和重建在单独的线程上进行，轮询构建进度时不占用读写请求的线程
+    private final ExecutorService indexExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "ragflow4j-milvus-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final MilvusVectorMarshaller marshaller;
+    private final MilvusIndexParams indexParams;
+    private final long indexThreshold;
+    // 读写方持有读锁，切换查询目标时持有写锁，保证切换时没有写入仍在途
+    private final ReentrantReadWriteLock switchLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean indexing = new AtomicBoolean();
+    private final AtomicLong rowsSinceCheck = new AtomicLong();
+    private volatile Target active;
+    private volatile Rebuild rebuild;
+    private volatile IndexStatus indexStatus = new IndexStatus(IndexStatus.State.NONE, null, 0, 0, 0, null);
 
     // 构造函数
     public MilvusVectorStore(String host, int port, String collectionName, int dimension) {
-        ConnectParam connectParam = ConnectParam.newBuilder()
+        this(new MilvusServiceClient(ConnectParam.newBuilder()
             .withHost(host)
             .withPort(port)
-            .build();
-        milvusClient = new MilvusServiceClient(connectParam);
-        this.collectionName = collectionName;
-        this.dimension = dimension;
-
-        if (!collectionExists()) {
-            createCollection();
-        }
+            .build()), collectionName, dimension);
     }
 
-    // 新增构造函数，用于测试注入
+    // 新增构造函数，用于测试注入；行数超过默认阈值时自动建索引，其他阈值通过 builder 设置
     public MilvusVectorStore(MilvusServiceClient milvusClient, String collectionName, int dimension) {
+        this(milvusClient, collectionName, dimension, Builder.DEFAULT_INDEX, Builder.DEFAULT_INDEX_THRESHOLD);
+    }
+
+    private MilvusVectorStore(MilvusServiceClient milvusClient, String collectionName, int dimension,
+                              MilvusIndexParams indexParams, long indexThreshold) {
         this.milvusClient = milvusClient;
         this.collectionName = collectionName;
         this.dimension = dimension;
+        this.marshaller = new MilvusVectorMarshaller(dimension);
+        this.indexParams = indexParams;
+        this.indexThreshold = indexThreshold;
+
+        Schema schema;
+        if (collectionExists() || recoverAlias()) {
+            schema = describeSchema(collectionName);
+        } else {
+            createCollection(collectionName);
+            schema = Schema.CURRENT;
+        }
+        // 索引状态未知，第一次检查时再查询
+        this.active = new Target(collectionName, null, schema);
+    }
+
+    /**
+     * 创建一个新的Builder实例
+     *
+     * @return Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    // 读取已有集合的字段，判断是否是旧版本创建的
+    private Schema describeSchema(String collection) {
+        R<io.milvus.grpc.DescribeCollectionResponse> response = milvusClient.describeCollection(
+            DescribeCollectionParam.newBuilder()
+                .withCollectionName(collection)
+                .build());
+        check(response, "describe collection");
+        Set<String> fields = new HashSet<>();
+        for (FieldSchema field : response.getData().getSchema().getFieldsList()) {
+            fields.add(field.getName());
+        }
+        return Schema.of(fields);
+    }
 
-        if (!collectionExists()) {
-            createCollection();
+    /**
+     * 重建旧版本集合时在删除旧集合之后、建好别名之前失败，数据只在影子集合中；把别名补建到最新的影子集合上
+     *
+     * @return 找到影子集合并建好别名时返回 true
+     */
+    private boolean recoverAlias() {
+        R<io.milvus.grpc.ShowCollectionsResponse> response = milvusClient.showCollections(
+            ShowCollectionsParam.newBuilder().build());
+        if (response == null || response.getStatus() != R.Status.Success.getCode()) {
+            return false;
+        }
+        String prefix = collectionName + "_";
+        String latest = null;
+        for (String name : response.getData().getCollectionNamesList()) {
+            String suffix = name.startsWith(prefix) ? name.substring(prefix.length()) : "";
+            if (!suffix.isEmpty() && suffix.chars().allMatch(Character::isDigit)
+                && (latest == null || Long.parseLong(suffix) > Long.parseLong(latest.substring(prefix.length())))) {
+                latest = name;
+            }
+        }
+        if (latest == null) {
+            return false;
         }
+        createAlias(latest);
+        return true;
     }
 
     // 检查集合是否存在
@@ -69,7 +206,7 @@ public class MilvusVectorStore implements VectorStore {
     }
 
     // 创建集合
-    private void createCollection() {
+    private R<io.milvus.param.RpcStatus> createCollection(String name) {
         FieldType idField = FieldType.newBuilder()
             .withName("id")
             .withDataType(DataType.VarChar)
@@ -89,14 +226,42 @@ public class MilvusVectorStore implements VectorStore {
             .withMaxLength(65535)
             .build();
 
+        // 从元数据中提取的标量字段，用于过滤条件下推
+        FieldType knowledgeIdField = FieldType.newBuilder()
+            .withName("knowledge_id")
+            .withDataType(DataType.VarChar)
+            .withMaxLength(256)
+            .build();
+
+        FieldType documentIdField = FieldType.newBuilder()
+            .withName("document_id")
+            .withDataType(DataType.VarChar)
+            .withMaxLength(256)
+            .build();
+
+        FieldType chunkIndexField = FieldType.newBuilder()
+            .withName("chunk_index")
+            .withDataType(DataType.Int64)
+            .build();
+
+        // 元数据中的其他标量字段，用于任意字段的过滤下推
+        FieldType attributesField = FieldType.newBuilder()
+            .withName("attributes")
+            .withDataType(DataType.JSON)
+            .build();
+
         CreateCollectionParam createParam = CreateCollectionParam.newBuilder()
-            .withCollectionName(collectionName)
+            .withCollectionName(name)
             .addFieldType(idField)
             .addFieldType(vectorField)
             .addFieldType(metadataField)
+            .addFieldType(knowledgeIdField)
+            .addFieldType(documentIdField)
+            .addFieldType(chunkIndexField)
+            .addFieldType(attributesField)
             .build();
 
-        milvusClient.createCollection(createParam);
+        return milvusClient.createCollection(createParam);
     }
 
     // 生成唯一 ID
@@ -107,142 +272,1172 @@ public class MilvusVectorStore implements VectorStore {
     @Override
     public CompletableFuture<Boolean> addVectors(List<float[]> vectors, List<String> metadata) {
         List<String> ids = new ArrayList<>();
-        List<List<Float>> vectorList = new ArrayList<>();
-
         for (int i = 0; i < vectors.size(); i++) {
-            String generatedId = generateUniqueId();
-            ids.add(generatedId);
-            List<Float> vector = new ArrayList<>();
-            for (float v : vectors.get(i)) {
-                vector.add(v);
-            }
-            vectorList.add(vector);
+            ids.add(generateUniqueId());
         }
+        return insertRows(ids, vectors, metadata);
+    }
 
-        List<InsertParam.Field> fields = new ArrayList<>();
-        fields.add(new InsertParam.Field("id", ids));
-        fields.add(new InsertParam.Field("vector", vectorList));
-        fields.add(new InsertParam.Field("metadata", metadata));
+    /**
+     * 只查询 ID 列，每批 ID 一次 RPC
+     */
+    @Override
+    public CompletableFuture<Set<String>> existingIds(List<String> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            Set<String> existing = new HashSet<>();
+            Target target = acquire();
+            try {
+                for (int i = 0; i < ids.size(); i += ID_QUERY_BATCH) {
+                    List<String> batch = ids.subList(i, Math.min(i + ID_QUERY_BATCH, ids.size()));
+                    QueryParam queryParam = QueryParam.newBuilder()
+                        .withCollectionName(target.collection)
+                        .withExpr(inExpression("id", batch))
+                        .withOutFields(Collections.singletonList("id"))
+                        .build();
+                    R<io.milvus.grpc.QueryResults> response = milvusClient.query(queryParam);
+                    if (response.getStatus() != R.Status.Success.getCode()) {
+                        throw new IllegalStateException("Milvus query failed: " + response.getMessage());
+                    }
+                    for (Object id : new QueryResultsWrapper(response.getData()).getFieldWrapper("id").getFieldData()) {
+                        existing.add((String) id);
+                    }
+                }
+            } finally {
+                target.release();
+            }
+            return existing;
+        }, executor);
+    }
 
-        InsertParam insertParam = InsertParam.newBuilder()
-            .withCollectionName(collectionName)
-            .withFields(fields)
-            .build();
+    @Override
+    public CompletableFuture<Map<String, float[]>> getVectors(List<String> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, float[]> vectors = new HashMap<>();
+            Target target = acquire();
+            try {
+                for (int i = 0; i < ids.size(); i += ID_QUERY_BATCH) {
+                    List<String> batch = ids.subList(i, Math.min(i + ID_QUERY_BATCH, ids.size()));
+                    QueryParam queryParam = QueryParam.newBuilder()
+                        .withCollectionName(target.collection)
+                        .withExpr(inExpression("id", batch))
+                        .withOutFields(Arrays.asList("id", "vector"))
+                        .build();
+                    R<io.milvus.grpc.QueryResults> response = milvusClient.query(queryParam);
+                    if (response.getStatus() != R.Status.Success.getCode()) {
+                        throw new IllegalStateException("Milvus query failed: " + response.getMessage());
+                    }
+                    for (QueryResultsWrapper.RowRecord row : new QueryResultsWrapper(response.getData()).getRowRecords()) {
+                        vectors.put((String) row.get("id"), toVector(row.get("vector")));
+                    }
+                }
+            } finally {
+                target.release();
+            }
+            return vectors;
+        }, executor);
+    }
+
+    @Override
+    public CompletableFuture<List<VectorEntry>> listEntries(MetadataFilter filter) {
+        List<VectorEntry> entries = new ArrayList<>();
+        return scanEntries(filter, Integer.MAX_VALUE, entries::addAll).thenApply(v -> entries);
+    }
 
-        CompletableFuture<R<io.milvus.grpc.MutationResult>> future = CompletableFuture.supplyAsync(() -> {
-            return milvusClient.insert(insertParam);
+    /**
+     * 通过查询迭代器分批读出，不受单次查询 offset + limit 的上限约束；集合缺少对应字段、无法下推的条件在本地过滤
+     * <p>
+     * 扫描期间重建索引不会删除正在读取的集合；consumer 中不要同步等待本存储的写入，否则切换时会互相等待。
+     */
+    @Override
+    public CompletableFuture<Void> scanEntries(MetadataFilter filter, int batchSize,
+                                               Consumer<List<VectorEntry>> consumer) {
+        ensureGreaterThanZero(batchSize, "batchSize");
+        return CompletableFuture.runAsync(() -> {
+            Target target = acquire();
+            try {
+                Schema schema = target.schema;
+                String expr = toExpression(filter, schema);
+                boolean postFilter = !isPushedDown(filter, schema);
+                QueryIteratorParam param = QueryIteratorParam.newBuilder()
+                    .withCollectionName(target.collection)
+                    .withExpr(expr != null ? expr : "id != \"\"")
+                    .withOutFields(Arrays.asList("id", "vector", "metadata"))
+                    .withBatchSize((long) Math.min(batchSize, LIST_BATCH))
+                    .build();
+                R<QueryIterator> response = milvusClient.queryIterator(param);
+                if (response.getStatus() != R.Status.Success.getCode()) {
+                    throw new IllegalStateException("Milvus query failed: " + response.getMessage());
+                }
+                QueryIterator iterator = response.getData();
+                try {
+                    List<VectorEntry> batch = new ArrayList<>();
+                    List<QueryResultsWrapper.RowRecord> rows;
+                    while (!(rows = iterator.next()).isEmpty()) {
+                        for (QueryResultsWrapper.RowRecord row : rows) {
+                            String metadata = (String) row.get("metadata");
+                            if (postFilter && !filter.matches(metadata)) {
+                                continue;
+                            }
+                            batch.add(VectorEntry.of((String) row.get("id"), toVector(row.get("vector")), metadata));
+                            if (batch.size() == batchSize) {
+                                consumer.accept(batch);
+                                batch = new ArrayList<>();
+                            }
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        consumer.accept(batch);
+                    }
+                } finally {
+                    iterator.close();
+                }
+            } finally {
+                target.release();
+            }
         }, executor);
+    }
 
-        return future.thenApply(response -> response.getStatus() == R.Status.Success.getCode())
-            .exceptionally(ex -> false);
+    @Override
+    public boolean supportsListEntries() {
+        return true;
     }
 
+    /**
+     * 旧版本创建的集合没有 document_id 字段，无法按文档删除，返回 false
+     */
     @Override
-    public CompletableFuture<Boolean> addVectorsBatch(List<float[]> vectors, List<String> metadata, int batchSize) {
-        List<CompletableFuture<Boolean>> batchFutures = new ArrayList<>();
+    public CompletableFuture<Boolean> retainChunks(String documentId, Collection<String> ids) {
+        String expr = toExpression(MetadataFilter.builder().documentId(documentId).build(), active.schema);
+        if (expr == null) {
+            return CompletableFuture.completedFuture(false);
+        }
+        if (!ids.isEmpty()) {
+            expr += " && " + inExpression("id", "not in", ids);
+        }
+        String deleteExpr = expr;
+        return mutate(null, deleteExpr, 0, target -> milvusClient.delete(DeleteParam.newBuilder()
+            .withCollectionName(target.collection)
+            .withExpr(deleteExpr)
+            .build()));
+    }
 
-        for (int i = 0; i < vectors.size(); i += batchSize) {
-            int end = Math.min(i + batchSize, vectors.size());
-            List<float[]> batchVectors = vectors.subList(i, end);
-            List<String> batchMetadata = metadata.subList(i, end);
-            CompletableFuture<Boolean> batchFuture = addVectors(batchVectors, batchMetadata);
-            batchFutures.add(batchFuture);
+    /**
+     * 以新的参数为向量字段建索引，完成后返回
+     * <p>
+     * 集合还没有索引时直接在原集合上建；已有索引时在影子集合上重建，建好后原子地切换查询目标，期间读写照常进行。
+     * 同一时间只允许一个构建任务，已有任务进行中时返回 false。
+     *
+     * @param params 索引参数
+     * @return 构建并切换成功时为 true
+     */
+    public CompletableFuture<Boolean> rebuildIndex(MilvusIndexParams params) {
+        ensureNotNull(params, "params");
+        if (!indexing.compareAndSet(false, true)) {
+            return CompletableFuture.completedFuture(false);
         }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                if (hasIndex(active.collection)) {
+                    rebuildInShadow(params);
+                } else {
+                    buildInPlace(params);
+                }
+                return true;
+            } catch (RuntimeException e) {
+                IndexStatus current = indexStatus;
+                indexStatus = new IndexStatus(IndexStatus.State.FAILED, params, current.copiedRows,
+                    current.indexedRows, current.totalRows, e);
+                throw e;
+            } finally {
+                indexing.set(false);
+            }
+        }, indexExecutor).exceptionally(ex -> false);
+    }
+
+    /**
+     * 当前或最近一次索引构建的状态
+     *
+     * @return 索引状态
+     */
+    public IndexStatus getIndexStatus() {
+        return indexStatus;
+    }
 
-        CompletableFuture<Void> allFutures = CompletableFuture.allOf(batchFutures.toArray(new CompletableFuture[0]));
-        return allFutures.thenApply(v -> {
-            return batchFutures.stream().map(CompletableFuture::join).allMatch(Boolean::booleanValue);
+    /**
+     * 写入成功后累计行数，每 {@link #INDEX_CHECK_ROWS} 行检查一次集合是否已超过建索引的阈值
+     */
+    private void afterWrite(int rows) {
+        if (indexThreshold <= 0 || active.index != null || rowsSinceCheck.addAndGet(rows) < INDEX_CHECK_ROWS) {
+            return;
+        }
+        rowsSinceCheck.set(0);
+        if (indexing.get()) {
+            return;
+        }
+        indexExecutor.execute(() -> {
+            try {
+                Target current = active;
+                if (current.index != null) {
+                    return;
+                }
+                if (hasIndex(current.collection)) {
+                    // 之前的进程已经建好了索引，视为按当前配置创建
+                    activate(new Target(current.collection, indexParams, current.schema));
+                } else if (rowCount(current.collection) >= indexThreshold) {
+                    rebuildIndex(indexParams);
+                }
+            } catch (RuntimeException e) {
+                // 检查失败时等下一批写入再试
+            }
         });
     }
 
-    @Override
-    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK) {
-        List<Float> queryVectorList = new ArrayList<>();
-        for (float v : queryVector) {
-            queryVectorList.add(v);
+    private void buildInPlace(MilvusIndexParams params) {
+        Target current = active;
+        String collection = current.collection;
+        indexStatus = new IndexStatus(IndexStatus.State.BUILDING, params, 0, 0, 0, null);
+        check(milvusClient.createIndex(indexParam(collection, params)), "create index");
+        flush(collection);
+        awaitIndex(collection, params, -1);
+        check(milvusClient.loadCollection(LoadCollectionParam.newBuilder()
+            .withCollectionName(collection)
+            .build()), "load collection");
+        activate(new Target(collection, params, current.schema));
+        IndexStatus done = indexStatus;
+        indexStatus = new IndexStatus(IndexStatus.State.READY, params, done.totalRows, done.totalRows,
+            done.totalRows, null);
+    }
+
+    private void rebuildInShadow(MilvusIndexParams params) {
+        String source = active.collection;
+        String physical = physicalName(source);
+        String shadow = collectionName + "_" + System.currentTimeMillis();
+        long total = rowCount(source);
+        indexStatus = new IndexStatus(IndexStatus.State.BUILDING, params, 0, 0, total, null);
+
+        check(createCollection(shadow), "create collection");
+        Rebuild current = new Rebuild(shadow);
+        // 旧版本直接以 collectionName 创建的集合无法改成别名，只能删除后再建同名别名
+        boolean legacy = physical.equals(collectionName);
+        boolean sourceDropped = false;
+        Target previous = null;
+        Target switched = null;
+        try {
+            check(milvusClient.createIndex(indexParam(shadow, params)), "create index");
+            check(milvusClient.loadCollection(LoadCollectionParam.newBuilder()
+                .withCollectionName(shadow)
+                .build()), "load collection");
+            switchLock.writeLock().lock();
+            try {
+                rebuild = current;
+            } finally {
+                switchLock.writeLock().unlock();
+            }
+
+            copyAll(source, shadow, params, total);
+            // 复制期间的写入先在锁外追平，只把最后一小部分留到切换时处理
+            while (current.pending() > ID_QUERY_BATCH) {
+                catchUp(current, source);
+            }
+            flush(shadow);
+            awaitIndex(shadow, params, total);
+
+            switchLock.writeLock().lock();
+            try {
+                catchUp(current, source);
+                previous = active;
+                switched = new Target(shadow, params, Schema.CURRENT);
+                activate(switched);
+                if (legacy) {
+                    // 写入暂停期间删除旧集合：新的查询已经发往影子集合，先等仍在旧集合上的查询结束；
+                    // 删除失败时切回旧集合，旧集合保持完整；删除之后数据只在影子集合中，
+                    // 别名建立失败也要保持切换，下次打开时由 recoverAlias 补建别名
+                    try {
+                        previous.awaitReaders();
+                        drop(physical);
+                    } catch (RuntimeException e) {
+                        activate(previous);
+                        throw e;
+                    }
+                    sourceDropped = true;
+                    createAlias(shadow);
+                }
+                rebuild = null;
+            } finally {
+                switchLock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            switchLock.writeLock().lock();
+            try {
+                rebuild = null;
+                if (sourceDropped) {
+                    activate(new Target(shadow, params, Schema.CURRENT));
+                }
+            } finally {
+                switchLock.writeLock().unlock();
+            }
+            if (!sourceDropped) {
+                // 切回旧集合之前可能已有查询发往影子集合
+                dropAfterReaders(switched, shadow);
+            }
+            throw e;
+        }
+
+        if (!legacy) {
+            check(milvusClient.alterAlias(AlterAliasParam.newBuilder()
+                .withCollectionName(shadow)
+                .withAlias(collectionName)
+                .build()), "alter alias");
+            dropAfterReaders(previous, physical);
+        }
+        IndexStatus done = indexStatus;
+        indexStatus = new IndexStatus(IndexStatus.State.READY, params, done.copiedRows, done.indexedRows,
+            done.totalRows, null);
+    }
+
+    /**
+     * 用查询迭代器把源集合的全部数据复制到目标集合
+     */
+    private void copyAll(String source, String target, MilvusIndexParams params, long total) {
+        R<QueryIterator> response = milvusClient.queryIterator(QueryIteratorParam.newBuilder()
+            .withCollectionName(source)
+            .withExpr("id != \"\"")
+            .withOutFields(Arrays.asList("id", "vector", "metadata"))
+            .withBatchSize((long) LIST_BATCH)
+            .build());
+        check(response, "query");
+        QueryIterator iterator = response.getData();
+        long copied = 0;
+        try {
+            List<QueryResultsWrapper.RowRecord> rows;
+            while (!(rows = iterator.next()).isEmpty()) {
+                copyRows(target, rows);
+                copied += rows.size();
+                indexStatus = new IndexStatus(IndexStatus.State.BUILDING, params, copied, 0, Math.max(total, copied),
+                    null);
+            }
+        } finally {
+            iterator.close();
+        }
+    }
+
+    /**
+     * 把复制开始后被修改过的数据同步到新集合：先重放按表达式的删除，再按 ID 读出源集合中的最新版本写入，源集合中已不存在的删除
+     */
+    private void catchUp(Rebuild current, String source) {
+        for (String expr : current.drainDeletions()) {
+            check(milvusClient.delete(DeleteParam.newBuilder()
+                .withCollectionName(current.collection)
+                .withExpr(expr)
+                .build()), "delete");
+        }
+        List<String> ids = new ArrayList<>(current.drainTouched());
+        for (int i = 0; i < ids.size(); i += ID_QUERY_BATCH) {
+            List<String> batch = ids.subList(i, Math.min(i + ID_QUERY_BATCH, ids.size()));
+            R<io.milvus.grpc.QueryResults> response = milvusClient.query(QueryParam.newBuilder()
+                .withCollectionName(source)
+                .withExpr(inExpression("id", batch))
+                .withOutFields(Arrays.asList("id", "vector", "metadata"))
+                .withConsistencyLevel(ConsistencyLevelEnum.STRONG)
+                .build());
+            check(response, "query");
+            List<QueryResultsWrapper.RowRecord> rows = new QueryResultsWrapper(response.getData()).getRowRecords();
+            Set<String> missing = new HashSet<>(batch);
+            for (QueryResultsWrapper.RowRecord row : rows) {
+                missing.remove((String) row.get("id"));
+            }
+            if (!rows.isEmpty()) {
+                copyRows(current.collection, rows);
+            }
+            if (!missing.isEmpty()) {
+                check(milvusClient.delete(DeleteParam.newBuilder()
+                    .withCollectionName(current.collection)
+                    .withExpr(inExpression("id", missing))
+                    .build()), "delete");
+            }
+        }
+    }
+
+    private void copyRows(String target, List<QueryResultsWrapper.RowRecord> rows) {
+        List<String> ids = new ArrayList<>(rows.size());
+        List<float[]> vectors = new ArrayList<>(rows.size());
+        List<String> metadata = new ArrayList<>(rows.size());
+        for (QueryResultsWrapper.RowRecord row : rows) {
+            ids.add((String) row.get("id"));
+            vectors.add(toVector(row.get("vector")));
+            metadata.add((String) row.get("metadata"));
+        }
+        // 影子集合总是以当前的字段创建，旧集合的数据在复制时补齐过滤字段
+        check(upsertRows(target, Schema.CURRENT, ids, vectors, metadata), "upsert");
+    }
+
+    /**
+     * 轮询直到索引覆盖全部已落盘的行
+     *
+     * @param expectedRows 复制阶段的总行数，用于计算进度；原地建索引时为 -1
+     */
+    private void awaitIndex(String collection, MilvusIndexParams params, long expectedRows) {
+        while (true) {
+            R<io.milvus.grpc.GetIndexBuildProgressResponse> response = milvusClient.getIndexBuildProgress(
+                GetIndexBuildProgressParam.newBuilder()
+                    .withCollectionName(collection)
+                    .withIndexName(INDEX_NAME)
+                    .build());
+            check(response, "get index build progress");
+            long indexed = response.getData().getIndexedRows();
+            long total = response.getData().getTotalRows();
+            long copied = expectedRows < 0 ? total : indexStatus.copiedRows;
+            indexStatus = new IndexStatus(IndexStatus.State.BUILDING, params, copied, indexed,
+                Math.max(total, expectedRows), null);
+            if (indexed >= total) {
+                return;
+            }
+            try {
+                Thread.sleep(INDEX_POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for index build", e);
+            }
+        }
+    }
+
+    /**
+     * 登记一次对当前查询目标的读取，读取结束后必须调用 {@link Target#release()}
+     */
+    private Target acquire() {
+        while (true) {
+            Target target = active;
+            target.readers.incrementAndGet();
+            // 登记之后目标没有被切换，切换方等待读取结束时一定能看到这次登记
+            if (target == active) {
+                return target;
+            }
+            target.release();
         }
+    }
 
-        SearchParam searchParam = SearchParam.newBuilder()
-            .withCollectionName(collectionName)
+    private void activate(Target target) {
+        switchLock.writeLock().lock();
+        try {
+            active = target;
+        } finally {
+            switchLock.writeLock().unlock();
+        }
+    }
+
+    private CreateIndexParam indexParam(String collection, MilvusIndexParams params) {
+        return CreateIndexParam.newBuilder()
+            .withCollectionName(collection)
+            .withFieldName("vector")
+            .withIndexName(INDEX_NAME)
+            .withIndexType(params.getIndexType())
             .withMetricType(MetricType.L2)
-            .withTopK(topK)
-            .withVectors(Collections.singletonList(queryVectorList))
-            .withVectorFieldName("vector")
+            .withExtraParam(params.extraParam())
+            .withSyncMode(false)
             .build();
+    }
 
-        CompletableFuture<R<io.milvus.grpc.SearchResults>> future = CompletableFuture.supplyAsync(() -> {
-            return milvusClient.search(searchParam);
-        }, executor);
+    private boolean hasIndex(String collection) {
+        R<io.milvus.grpc.DescribeIndexResponse> response = milvusClient.describeIndex(DescribeIndexParam.newBuilder()
+            .withCollectionName(collection)
+            .withFieldName("vector")
+            .build());
+        // 没有索引时服务端返回错误状态
+        return response.getStatus() == R.Status.Success.getCode()
+            && response.getData().getIndexDescriptionsCount() > 0;
+    }
+
+    private long rowCount(String collection) {
+        R<io.milvus.grpc.GetCollectionStatisticsResponse> response = milvusClient.getCollectionStatistics(
+            GetCollectionStatisticsParam.newBuilder()
+                .withCollectionName(collection)
+                .build());
+        check(response, "get collection statistics");
+        return new GetCollStatResponseWrapper(response.getData()).getRowCount();
+    }
+
+    /**
+     * @return 别名指向的实际集合名，不是别名时返回原名
+     */
+    private String physicalName(String collection) {
+        R<io.milvus.grpc.DescribeCollectionResponse> response = milvusClient.describeCollection(
+            DescribeCollectionParam.newBuilder()
+                .withCollectionName(collection)
+                .build());
+        check(response, "describe collection");
+        return response.getData().getCollectionName();
+    }
+
+    private void flush(String collection) {
+        check(milvusClient.flush(FlushParam.newBuilder()
+            .withCollectionNames(Collections.singletonList(collection))
+            .withSyncFlush(true)
+            .build()), "flush");
+    }
 
-        return future.thenApply(response -> {
-            if (response.getStatus() != R.Status.Success.getCode()) {
-                return new ArrayList<SearchResult>(); // 返回空的 SearchResult 列表
+    private void createAlias(String collection) {
+        R<io.milvus.param.RpcStatus> response = null;
+        for (int attempt = 0; attempt < ALIAS_ATTEMPTS; attempt++) {
+            response = milvusClient.createAlias(CreateAliasParam.newBuilder()
+                .withCollectionName(collection)
+                .withAlias(collectionName)
+                .build());
+            if (response.getStatus() == R.Status.Success.getCode()) {
+                return;
             }
-            SearchResultsWrapper wrapper = new SearchResultsWrapper(response.getData().getResults());
-            List<SearchResult> results = new ArrayList<>();
-            List<SearchResultsWrapper.IDScore> scores = wrapper.getIDScore(0);
-            for (SearchResultsWrapper.IDScore score : scores) {
-                results.add(new SearchResult(score.getStrID(), (double) score.getScore()));
+        }
+        check(response, "create alias");
+    }
+
+    private void drop(String collection) {
+        try {
+            milvusClient.releaseCollection(ReleaseCollectionParam.newBuilder()
+                .withCollectionName(collection)
+                .build());
+        } catch (RuntimeException e) {
+            // 未加载的集合释放失败不影响删除
+        }
+        check(milvusClient.dropCollection(DropCollectionParam.newBuilder()
+            .withCollectionName(collection)
+            .build()), "drop collection");
+    }
+
+    /**
+     * 等仍在 target 上的读取结束后删除集合，等待被中断时保留集合
+     *
+     * @param target 读取方持有的查询目标，为 null 时直接删除
+     * @param collection 实际集合名
+     */
+    private void dropAfterReaders(Target target, String collection) {
+        if (target != null) {
+            try {
+                target.awaitReaders();
+            } catch (IllegalStateException e) {
+                return;
+            }
+        }
+        dropQuietly(collection);
+    }
+
+    private void dropQuietly(String collection) {
+        try {
+            milvusClient.releaseCollection(ReleaseCollectionParam.newBuilder()
+                .withCollectionName(collection)
+                .build());
+            milvusClient.dropCollection(DropCollectionParam.newBuilder()
+                .withCollectionName(collection)
+                .build());
+        } catch (RuntimeException e) {
+            // 清理失败只留下一个孤立集合，不影响已经完成的切换
+        }
+    }
+
+    private static void check(R<?> response, String operation) {
+        if (response.getStatus() != R.Status.Success.getCode()) {
+            throw new IllegalStateException("Milvus " + operation + " failed: " + response.getMessage());
+        }
+    }
+
+    private CompletableFuture<Boolean> insertRows(List<String> ids, List<float[]> vectors, List<String> metadata) {
+        return mutate(ids, null, ids.size(), target -> {
+            // 装箱后的向量只在本次 RPC 内有效，调用结束后归还缓冲区
+            try (MilvusVectorMarshaller.MarshalledVectors marshalled = marshaller.marshal(vectors)) {
+                InsertParam insertParam = InsertParam.newBuilder()
+                    .withCollectionName(target.collection)
+                    .withFields(rowFields(target.schema, ids, marshalled, metadata))
+                    .build();
+                return milvusClient.insert(insertParam);
             }
-            return results;
-        }).exceptionally(ex -> {
-            return new ArrayList<SearchResult>(); // 异常时返回空的 SearchResult 列表
         });
     }
 
+    /**
+     * 在当前查询目标上执行一次写入。重建索引期间记录受影响的 ID 或删除表达式，切换前由 {@link #catchUp} 同步到新集合
+     *
+     * @param ids 受影响的 ID，按表达式删除时为 null
+     * @param deleteExpr 删除表达式，没有时为 null
+     * @param rows 新写入的行数，用于判断是否需要建索引
+     * @param rpc 在查询目标上执行写入
+     * @return 写入结果
+     */
+    private CompletableFuture<Boolean> mutate(Collection<String> ids, String deleteExpr, int rows,
+                                              Function<Target, R<io.milvus.grpc.MutationResult>> rpc) {
+        return CompletableFuture.supplyAsync(() -> {
+            R<io.milvus.grpc.MutationResult> response;
+            switchLock.readLock().lock();
+            try {
+                Rebuild current = rebuild;
+                if (current != null) {
+                    current.record(ids, deleteExpr);
+                }
+                response = rpc.apply(active);
+            } finally {
+                switchLock.readLock().unlock();
+            }
+            boolean success = response.getStatus() == R.Status.Success.getCode();
+            if (success && rows > 0) {
+                afterWrite(rows);
+            }
+            return success;
+        }, executor).exceptionally(ex -> false);
+    }
+
+    static List<InsertParam.Field> rowFields(Schema schema, List<String> ids,
+                                             MilvusVectorMarshaller.MarshalledVectors marshalled, List<String> metadata) {
+        List<InsertParam.Field> fields = new ArrayList<>();
+        fields.add(new InsertParam.Field("id", ids));
+        fields.add(new InsertParam.Field("vector", marshalled.vectors()));
+        fields.add(new InsertParam.Field("metadata", metadata));
+        addFilterFields(fields, schema, metadata);
+        return fields;
+    }
 
     @Override
-    public CompletableFuture<Boolean> deleteVectors(List<String> ids) {
-        DeleteParam deleteParam = DeleteParam.newBuilder()
-            .withCollectionName(collectionName)
-            .withExpr("id in [" + String.join(",", ids.stream().map(id -> "\"" + id + "\"").toArray(String[]::new)) + "]")
-            .build();
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK) {
+        return search(queryVector, topK, null);
+    }
 
-        CompletableFuture<R<io.milvus.grpc.MutationResult>> future = CompletableFuture.supplyAsync(() -> {
-            return milvusClient.delete(deleteParam);
-        }, executor);
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK, MetadataFilter filter) {
+        return searchVectors(Collections.singletonList(queryVector), topK, filter)
+            .thenApply(results -> results.get(0));
+    }
+
+    @Override
+    public CompletableFuture<List<List<SearchResult>>> searchBatch(List<float[]> queryVectors, int topK) {
+        if (queryVectors.isEmpty()) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+        return searchVectors(queryVectors, topK, null);
+    }
+
+    /**
+     * 所有查询向量放进同一个 SearchParam，一次 RPC 返回每个查询各自的结果
+     * <p>
+     * 过滤条件无法完全下推时多取一些结果在本地过滤，仍有查询不足 topK 且服务端还有更多结果时扩大召回重新检索。
+     */
+    private CompletableFuture<List<List<SearchResult>>> searchVectors(List<float[]> queryVectors, int topK,
+                                                                      MetadataFilter filter) {
+        return CompletableFuture.supplyAsync(() -> {
+            // 查询参数、过滤表达式与目标集合必须来自同一次读取，切换索引时三者一起变化
+            Target target = acquire();
+            try (MilvusVectorMarshaller.MarshalledVectors marshalled = marshaller.marshal(queryVectors)) {
+                String expr = toExpression(filter, target.schema);
+                boolean postFilter = !isPushedDown(filter, target.schema);
+                int limit = postFilter ? Math.min(topK * ATTRIBUTE_OVER_FETCH, MAX_TOP_K) : topK;
+                while (true) {
+                    SearchParam.Builder builder = SearchParam.newBuilder()
+                        .withCollectionName(target.collection)
+                        .withMetricType(MetricType.L2)
+                        .withTopK(limit)
+                        .withVectors(marshalled.vectors())
+                        .withVectorFieldName("vector");
+                    if (expr != null) {
+                        builder.withExpr(expr);
+                    }
+                    if (target.index != null) {
+                        builder.withParams(target.index.searchParam(limit));
+                    }
+                    // 带回元数据，调用方不需要再按ID回查
+                    builder.withOutFields(Collections.singletonList("metadata"));
+                    R<io.milvus.grpc.SearchResults> response = milvusClient.search(builder.build());
+                    if (response.getStatus() != R.Status.Success.getCode()) {
+                        return emptyResults(queryVectors.size()); // 返回空的 SearchResult 列表
+                    }
+
+                    SearchResultsWrapper wrapper = new SearchResultsWrapper(response.getData().getResults());
+                    List<List<SearchResult>> results = new ArrayList<>(queryVectors.size());
+                    boolean expand = false;
+                    for (int q = 0; q < queryVectors.size(); q++) {
+                        List<SearchResult> queryResults = new ArrayList<>();
+                        List<SearchResultsWrapper.IDScore> scores = wrapper.getIDScore(q);
+                        List<?> metadata = wrapper.getFieldData("metadata", q);
+                        for (int i = 0; i < scores.size() && queryResults.size() < topK; i++) {
+                            VectorMetadata parsed = VectorMetadata.parse((String) metadata.get(i));
+                            if (postFilter && !filter.test(parsed)) {
+                                continue;
+                            }
+                            SearchResultsWrapper.IDScore score = scores.get(i);
+                            queryResults.add(new SearchResult(score.getStrID(), score.getScore(), parsed.raw,
+                                parsed.content()));
+                        }
+                        // 返回数量达到 limit 说明服务端可能还有满足条件的结果
+                        expand |= queryResults.size() < topK && scores.size() >= limit;
+                        results.add(queryResults);
+                    }
+                    if (!postFilter || !expand || limit >= MAX_TOP_K) {
+                        return results;
+                    }
+                    limit = (int) Math.min((long) limit * ATTRIBUTE_OVER_FETCH, MAX_TOP_K);
+                }
+            } finally {
+                target.release();
+            }
+        }, executor).exceptionally(ex -> {
+            return emptyResults(queryVectors.size()); // 异常时返回空的 SearchResult 列表
+        });
+    }
+
+    private static List<List<SearchResult>> emptyResults(int queries) {
+        List<List<SearchResult>> results = new ArrayList<>(queries);
+        for (int i = 0; i < queries; i++) {
+            results.add(new ArrayList<>());
+        }
+        return results;
+    }
+
+    /**
+     * 将过滤条件转换为 Milvus 布尔表达式，集合缺少对应字段的条件不下推，没有可下推的条件时返回 null
+     *
+     * @param filter 过滤条件
+     * @param schema 集合中可用于过滤的字段
+     * @return Milvus 表达式
+     */
+    static String toExpression(MetadataFilter filter, Schema schema) {
+        if (filter == null) {
+            return null;
+        }
+        List<String> clauses = new ArrayList<>();
+        if (!filter.getKnowledgeIds().isEmpty() && schema.scalarFields) {
+            clauses.add(inExpression("knowledge_id", filter.getKnowledgeIds()));
+        } else if (!filter.getKnowledgeIds().isEmpty() && schema.attributes) {
+            clauses.add(inExpression(attribute(MetadataFilter.KNOWLEDGE_ID), filter.getKnowledgeIds()));
+        }
+        if (!filter.getDocumentIds().isEmpty() && schema.scalarFields) {
+            clauses.add(inExpression("document_id", filter.getDocumentIds()));
+        } else if (!filter.getDocumentIds().isEmpty() && schema.attributes) {
+            clauses.add(inExpression(attribute(MetadataFilter.DOCUMENT_ID), filter.getDocumentIds()));
+        }
+        String chunkIndex = schema.scalarFields ? "chunk_index"
+            : schema.attributes ? attribute(MetadataFilter.CHUNK_INDEX) : null;
+        if (filter.getMinChunkIndex() != null && chunkIndex != null) {
+            clauses.add(chunkIndex + " >= " + filter.getMinChunkIndex());
+        }
+        if (filter.getMaxChunkIndex() != null && chunkIndex != null) {
+            clauses.add(chunkIndex + " <= " + filter.getMaxChunkIndex());
+        }
+        if (schema.attributes) {
+            for (Map.Entry<String, Object> entry : filter.getAttributes().entrySet()) {
+                clauses.add(attribute(entry.getKey()) + " == " + literal(entry.getValue()));
+            }
+        }
+        return clauses.isEmpty() ? null : String.join(" && ", clauses);
+    }
+
+    /**
+     * @return 过滤条件能否全部由 {@link #toExpression(MetadataFilter, Schema)} 下推
+     */
+    static boolean isPushedDown(MetadataFilter filter, Schema schema) {
+        if (filter == null || filter.isEmpty() || schema.attributes) {
+            return true;
+        }
+        return schema.scalarFields && filter.getAttributes().isEmpty();
+    }
+
+    private static String attribute(String key) {
+        return "attributes[" + quote(key) + "]";
+    }
+
+    private static String literal(Object value) {
+        if (value instanceof Boolean) {
+            return value.toString();
+        }
+        if (value instanceof Number) {
+            // 避免科学计数法
+            return new java.math.BigDecimal(value.toString()).toPlainString();
+        }
+        return quote(String.valueOf(value));
+    }
+
+    private static String inExpression(String field, Collection<String> values) {
+        return inExpression(field, "in", values);
+    }
+
+    private static String inExpression(String field, String operator, Collection<String> values) {
+        StringBuilder expr = new StringBuilder(field).append(' ').append(operator).append(" [");
+        Iterator<String> iterator = values.iterator();
+        while (iterator.hasNext()) {
+            expr.append(quote(iterator.next()));
+            if (iterator.hasNext()) {
+                expr.append(",");
+            }
+        }
+        return expr.append("]").toString();
+    }
 
-        return future.thenApply(response -> response.getStatus() == R.Status.Success.getCode())
-            .exceptionally(ex -> false);
+    private static float[] toVector(Object field) {
+        List<?> values = (List<?>) field;
+        float[] vector = new float[values.size()];
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] = ((Number) values.get(i)).floatValue();
+        }
+        return vector;
     }
 
+    private static String quote(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    // 从 JSON 元数据中提取用于过滤的标量列和 JSON 字段，集合中没有的字段不写入
+    private static void addFilterFields(List<InsertParam.Field> fields, Schema schema, List<String> metadata) {
+        if (!schema.scalarFields && !schema.attributes) {
+            return;
+        }
+        List<String> knowledgeIds = new ArrayList<>(metadata.size());
+        List<String> documentIds = new ArrayList<>(metadata.size());
+        List<Long> chunkIndexes = new ArrayList<>(metadata.size());
+        List<JSONObject> attributes = new ArrayList<>(metadata.size());
+        for (String raw : metadata) {
+            VectorMetadata parsed = VectorMetadata.parse(raw);
+            knowledgeIds.add(parsed.knowledgeId == null ? "" : parsed.knowledgeId);
+            documentIds.add(parsed.documentId == null ? "" : parsed.documentId);
+            chunkIndexes.add((long) parsed.chunkIndex);
+            if (schema.attributes) {
+                // SDK 2.3 的 JSON 字段只接受 fastjson 的 JSONObject
+                attributes.add(JSONObject.parseObject(parsed.attributesJson()));
+            }
+        }
+        if (schema.scalarFields) {
+            fields.add(new InsertParam.Field("knowledge_id", knowledgeIds));
+            fields.add(new InsertParam.Field("document_id", documentIds));
+            fields.add(new InsertParam.Field("chunk_index", chunkIndexes));
+        }
+        if (schema.attributes) {
+            fields.add(new InsertParam.Field("attributes", attributes));
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteVectors(List<String> ids) {
+        return mutate(ids, null, 0, target -> milvusClient.delete(DeleteParam.newBuilder()
+            .withCollectionName(target.collection)
+            .withExpr(inExpression("id", ids))
+            .build()));
+    }
+
+    /**
+     * 单条更新也走 upsert，一次 RPC 完成替换
+     */
     @Override
     public CompletableFuture<Boolean> updateVector(String id, float[] vector, String metadata) {
-        DeleteParam deleteParam = DeleteParam.newBuilder()
-            .withCollectionName(collectionName)
-            .withExpr("id in [\"" + id + "\"]")
-            .build();
+        return upsertVectors(Collections.singletonList(id), Collections.singletonList(vector),
+            Collections.singletonList(metadata));
+    }
 
-        CompletableFuture<R<io.milvus.grpc.MutationResult>> deleteFuture = CompletableFuture.supplyAsync(() -> {
-            return milvusClient.delete(deleteParam);
-        }, executor);
+    /**
+     * 整批数据放进一个 UpsertParam，服务端按主键原子地替换旧数据，每批只需一次 RPC
+     */
+    @Override
+    public CompletableFuture<Boolean> upsertVectors(List<String> ids, List<float[]> vectors, List<String> metadata) {
+        if (ids.isEmpty()) {
+            return CompletableFuture.completedFuture(true);
+        }
+        return mutate(ids, null, ids.size(),
+            target -> upsertRows(target.collection, target.schema, ids, vectors, metadata));
+    }
 
-        List<Float> vectorList = new ArrayList<>();
-        for (float v : vector) {
-            vectorList.add(v);
+    private R<io.milvus.grpc.MutationResult> upsertRows(String collection, Schema schema, List<String> ids,
+                                                        List<float[]> vectors, List<String> metadata) {
+        try (MilvusVectorMarshaller.MarshalledVectors marshalled = marshaller.marshal(vectors)) {
+            UpsertParam upsertParam = UpsertParam.newBuilder()
+                .withCollectionName(collection)
+                .withFields(rowFields(schema, ids, marshalled, metadata))
+                .build();
+            return milvusClient.upsert(upsertParam);
         }
+    }
 
-        List<InsertParam.Field> fields = new ArrayList<>();
-        fields.add(new InsertParam.Field("id", Collections.singletonList(id)));
-        fields.add(new InsertParam.Field("vector", Collections.singletonList(vectorList)));
-        fields.add(new InsertParam.Field("metadata", Collections.singletonList(metadata)));
+    /**
+     * 查询目标：集合名、集合的字段及其上的索引参数，索引未知时为 null
+     * <p>
+     * 读取方不持有切换锁，而是在目标上计数：删除切换前的集合之前先等它上面的读取全部结束。
+     */
+    private static final class Target {
+        final String collection;
+        final MilvusIndexParams index;
+        final Schema schema;
+        private final AtomicInteger readers = new AtomicInteger();
 
-        InsertParam insertParam = InsertParam.newBuilder()
-            .withCollectionName(collectionName)
-            .withFields(fields)
-            .build();
+        Target(String collection, MilvusIndexParams index, Schema schema) {
+            this.collection = collection;
+            this.index = index;
+            this.schema = schema;
+        }
 
-        CompletableFuture<R<io.milvus.grpc.MutationResult>> insertFuture = CompletableFuture.supplyAsync(() -> {
-            return milvusClient.insert(insertParam);
-        }, executor);
+        void release() {
+            if (readers.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        /**
+         * 等待已经开始的读取结束，调用前查询目标必须已经切换，之后不会再有新的读取
+         */
+        synchronized void awaitReaders() {
+            while (readers.get() > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for searches on " + collection, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 集合中可用于过滤下推的字段，旧版本创建的集合可能缺少其中一部分
+     */
+    static final class Schema {
+        /**
+         * 当前版本创建的集合
+         */
+        static final Schema CURRENT = new Schema(true, true);
+
+        /**
+         * knowledge_id、document_id、chunk_index 标量列
+         */
+        final boolean scalarFields;
+        /**
+         * 元数据标量字段组成的 JSON 字段 attributes
+         */
+        final boolean attributes;
 
-        return deleteFuture.thenCompose(deleteResponse -> {
-            if (deleteResponse.getStatus() == R.Status.Success.getCode()) {
-                return insertFuture.thenApply(insertResponse ->
-                    insertResponse.getStatus() == R.Status.Success.getCode());
-            } else {
-                return CompletableFuture.completedFuture(false);
+        Schema(boolean scalarFields, boolean attributes) {
+            this.scalarFields = scalarFields;
+            this.attributes = attributes;
+        }
+
+        static Schema of(Set<String> fields) {
+            return new Schema(
+                fields.contains("knowledge_id") && fields.contains("document_id") && fields.contains("chunk_index"),
+                fields.contains("attributes"));
+        }
+    }
+
+    /**
+     * 进行中的影子集合重建，记录复制开始后被修改的 ID 和按表达式执行的删除
+     */
+    private static final class Rebuild {
+        final String collection;
+        private Set<String> touched = new HashSet<>();
+        private List<String> deletions = new ArrayList<>();
+
+        Rebuild(String collection) {
+            this.collection = collection;
+        }
+
+        synchronized void record(Collection<String> ids, String deleteExpr) {
+            if (ids != null) {
+                touched.addAll(ids);
+            }
+            if (deleteExpr != null) {
+                deletions.add(deleteExpr);
             }
-        }).exceptionally(ex -> false);
+        }
+
+        synchronized int pending() {
+            return touched.size() + deletions.size();
+        }
+
+        synchronized Set<String> drainTouched() {
+            Set<String> drained = touched;
+            touched = new HashSet<>();
+            return drained;
+        }
+
+        synchronized List<String> drainDeletions() {
+            List<String> drained = deletions;
+            deletions = new ArrayList<>();
+            return drained;
+        }
+    }
+
+    /**
+     * 索引构建状态，每次更新都替换为新的实例
+     */
+    public static final class IndexStatus {
+        public enum State {
+            /**
+             * 还没有开始构建
+             */
+            NONE,
+            /**
+             * 正在复制数据或建索引
+             */
+            BUILDING,
+            /**
+             * 已切换到新索引
+             */
+            READY,
+            /**
+             * 构建失败，查询仍使用原来的索引
+             */
+            FAILED
+        }
+
+        public final State state;
+        /**
+         * 目标索引参数
+         */
+        public final MilvusIndexParams params;
+        /**
+         * 已复制到影子集合的行数，原地建索引时与 totalRows 相同
+         */
+        public final long copiedRows;
+        public final long indexedRows;
+        public final long totalRows;
+        /**
+         * 失败原因，没有失败时为 null
+         */
+        public final Throwable error;
+
+        IndexStatus(State state, MilvusIndexParams params, long copiedRows, long indexedRows, long totalRows,
+                    Throwable error) {
+            this.state = state;
+            this.params = params;
+            this.copiedRows = copiedRows;
+            this.indexedRows = indexedRows;
+            this.totalRows = totalRows;
+            this.error = error;
+        }
+
+        /**
+         * @return 0 到 1 之间的进度，复制和建索引各占一半
+         */
+        public double getProgress() {
+            if (state == State.READY) {
+                return 1.0;
+            }
+            if (totalRows <= 0) {
+                return 0.0;
+            }
+            return Math.min(1.0, (copiedRows + indexedRows) / (2.0 * totalRows));
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("IndexStatus{state=%s, params=%s, progress=%.2f}", state, params, getProgress());
+        }
+    }
+
+    /**
+     * MilvusVectorStore的Builder类
+     */
+    public static class Builder {
+        static final MilvusIndexParams DEFAULT_INDEX = MilvusIndexParams.hnsw(16, 200, 64);
+        static final long DEFAULT_INDEX_THRESHOLD = 10000;
+
+        private MilvusServiceClient client;
+        private String host;
+        private int port = 19530;
+        private String collectionName;
+        private Integer dimension;
+        private MilvusIndexParams index = DEFAULT_INDEX;
+        private long indexThreshold = DEFAULT_INDEX_THRESHOLD;
+
+        /**
+         * 设置已创建的客户端，设置后忽略 host 和 port
+         *
+         * @param client Milvus 客户端
+         * @return Builder实例
+         */
+        public Builder client(MilvusServiceClient client) {
+            this.client = client;
+            return this;
+        }
+
+        /**
+         * 设置服务地址
+         *
+         * @param host 主机名
+         * @return Builder实例
+         */
+        public Builder host(String host) {
+            this.host = host;
+            return this;
+        }
+
+        /**
+         * 设置服务端口，默认 19530
+         *
+         * @param port 端口
+         * @return Builder实例
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * 设置集合名，重建索引后它是指向实际集合的别名
+         *
+         * @param collectionName 集合名
+         * @return Builder实例
+         */
+        public Builder collectionName(String collectionName) {
+            this.collectionName = collectionName;
+            return this;
+        }
+
+        /**
+         * 设置向量维度
+         *
+         * @param dimension 向量维度
+         * @return Builder实例
+         */
+        public Builder dimension(int dimension) {
+            this.dimension = dimension;
+            return this;
+        }
+
+        /**
+         * 设置自动建索引时使用的参数，默认 HNSW(M=16, efConstruction=200, ef=64)
+         *
+         * @param index 索引参数
+         * @return Builder实例
+         */
+        public Builder index(MilvusIndexParams index) {
+            this.index = index;
+            return this;
+        }
+
+        /**
+         * 设置自动建索引的行数阈值，默认 10000，更小的集合暴力检索已经足够快；设为 0 时不自动建索引
+         *
+         * @param indexThreshold 行数阈值
+         * @return Builder实例
+         */
+        public Builder indexThreshold(long indexThreshold) {
+            this.indexThreshold = indexThreshold;
+            return this;
+        }
+
+        /**
+         * 构建MilvusVectorStore实例
+         *
+         * @return MilvusVectorStore实例
+         */
+        public MilvusVectorStore build() {
+            ensureNotNull(collectionName, "collectionName");
+            ensureNotNull(dimension, "dimension");
+            ensureNotNull(index, "index");
+            ensureTrue(indexThreshold >= 0, "indexThreshold must not be negative");
+            MilvusServiceClient milvusClient = client;
+            if (milvusClient == null) {
+                ensureNotNull(host, "host");
+                milvusClient = new MilvusServiceClient(ConnectParam.newBuilder()
+                    .withHost(host)
+                    .withPort(port)
+                    .build());
+            }
+            return new MilvusVectorStore(milvusClient, collectionName, dimension, index, indexThreshold);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,140 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * 以 (距离, 节点编号) 为元素的二叉堆，使用并行的原始数组存储，避免装箱
+ * <p>
+ * 非线程安全，供单次查询内部使用。
+ */
+final class NodeHeap {
+    private final boolean maxHeap;
+    private int[] nodes;
+    private float[] distances;
+    private int size;
+
+    private NodeHeap(boolean maxHeap, int initialCapacity) {
+        this.maxHeap = maxHeap;
+        int capacity = Math.max(initialCapacity, 4);
+        this.nodes = new int[capacity];
+        this.distances = new float[capacity];
+    }
+
+    /**
+     * 创建堆顶为最小距离的堆
+     */
+    static NodeHeap minHeap(int initialCapacity) {
+        return new NodeHeap(false, initialCapacity);
+    }
+
+    /**
+     * 创建堆顶为最大距离的堆
+     */
+    static NodeHeap maxHeap(int initialCapacity) {
+        return new NodeHeap(true, initialCapacity);
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int topNode() {
+        return nodes[0];
+    }
+
+    float topDistance() {
+        return distances[0];
+    }
+
+    int nodeAt(int index) {
+        return nodes[index];
+    }
+
+    float distanceAt(int index) {
+        return distances[index];
+    }
+
+    void push(int node, float distance) {
+        if (size == nodes.length) {
+            int capacity = nodes.length << 1;
+            nodes = Arrays.copyOf(nodes, capacity);
+            distances = Arrays.copyOf(distances, capacity);
+        }
+        int index = size++;
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(distance, distances[parent])) {
+                break;
+            }
+            nodes[index] = nodes[parent];
+            distances[index] = distances[parent];
+            index = parent;
+        }
+        nodes[index] = node;
+        distances[index] = distance;
+    }
+
+    /**
+     * 仅当堆未满或新元素优于堆顶时插入，保持堆大小不超过 capacity
+     * <p>
+     * 用于最大堆维护 topK 个最近邻。
+     *
+     * @return 元素是否被保留
+     */
+    boolean offer(int node, float distance, int capacity) {
+        if (size < capacity) {
+            push(node, distance);
+            return true;
+        }
+        if (before(distances[0], distance)) {
+            replaceTop(node, distance);
+            return true;
+        }
+        return false;
+    }
+
+    int pop() {
+        int top = nodes[0];
+        size--;
+        if (size > 0) {
+            siftDown(nodes[size], distances[size]);
+        }
+        return top;
+    }
+
+    private void replaceTop(int node, float distance) {
+        siftDown(node, distance);
+    }
+
+    private void siftDown(int node, float distance) {
+        int index = 0;
+        int half = size >>> 1;
+        while (index < half) {
+            int child = (index << 1) + 1;
+            int right = child + 1;
+            if (right < size && before(distances[right], distances[child])) {
+                child = right;
+            }
+            if (!before(distances[child], distance)) {
+                break;
+            }
+            nodes[index] = nodes[child];
+            distances[index] = distances[child];
+            index = child;
+        }
+        nodes[index] = node;
+        distances[index] = distance;
+    }
+
+    private boolean before(float a, float b) {
+        return maxHeap ? a > b : a < b;
+    }
+}
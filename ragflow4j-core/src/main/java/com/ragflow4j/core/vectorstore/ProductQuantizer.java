@@ -0,0 +1,168 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 乘积量化：把向量切成 m 个子空间，每个子空间用至多 256 个中心的码本量化为 1 字节
+ * <p>
+ * 查询时先为每个子空间计算查询子向量到全部码字的距离表，之后每个编码向量的距离只需要 m 次查表相加。
+ */
+final class ProductQuantizer {
+    static final int MAX_CODEBOOK_SIZE = 256;
+    private static final int ENCODE_BATCH = 512;
+
+    final int dimension;
+    final int subspaces;
+    final int subDimension;
+    final int codebookSize;
+    /**
+     * 码本，第 j 个子空间的第 k 个码字位于 {@code ((j * codebookSize) + k) * subDimension}
+     */
+    final float[] codebooks;
+
+    private ProductQuantizer(int dimension, int subspaces, int codebookSize, float[] codebooks) {
+        this.dimension = dimension;
+        this.subspaces = subspaces;
+        this.subDimension = dimension / subspaces;
+        this.codebookSize = codebookSize;
+        this.codebooks = codebooks;
+    }
+
+    /**
+     * 在样本上训练码本，各子空间的 k-means 并行执行
+     *
+     * @param data 样本数据，行优先存放
+     * @param count 样本数量
+     * @param dimension 向量维度
+     * @param subspaces 子空间数量，需要整除维度
+     * @param iterations k-means 迭代次数
+     * @param seed 随机种子
+     * @param pool 线程池
+     * @return 训练好的乘积量化器
+     */
+    static ProductQuantizer train(float[] data, int count, int dimension, int subspaces,
+                                  int iterations, long seed, ForkJoinPool pool) {
+        int subDimension = dimension / subspaces;
+        int codebookSize = Math.min(MAX_CODEBOOK_SIZE, count);
+        float[] codebooks = new float[subspaces * codebookSize * subDimension];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(subspaces);
+        for (int j = 0; j < subspaces; j++) {
+            int subspace = j;
+            tasks.add(ForkJoinTask.adapt(() -> {
+                float[] centroids = KMeans.train(data, count, dimension, subspace * subDimension, subDimension,
+                    codebookSize, iterations, seed + subspace, pool);
+                System.arraycopy(centroids, 0, codebooks, subspace * codebookSize * subDimension, centroids.length);
+            }));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+        return new ProductQuantizer(dimension, subspaces, codebookSize, codebooks);
+    }
+
+    /**
+     * 编码一个向量
+     */
+    void encode(float[] vector, int offset, byte[] codes, int codeOffset) {
+        for (int j = 0; j < subspaces; j++) {
+            int code = KMeans.nearest(codebooks, j * codebookSize * subDimension, codebookSize, subDimension,
+                vector, offset + j * subDimension);
+            codes[codeOffset + j] = (byte) code;
+        }
+    }
+
+    /**
+     * 并行编码一批向量
+     *
+     * @param data 向量数据，行优先存放
+     * @param count 向量数量
+     * @param codes 输出，每个向量 subspaces 字节
+     * @param pool 线程池
+     */
+    void encodeAll(float[] data, int count, byte[] codes, ForkJoinPool pool) {
+        pool.invoke(new EncodeTask(data, codes, 0, count));
+    }
+
+    /**
+     * 计算平方欧氏距离查表：table[j * codebookSize + k] = ||query_j - codeword_jk||²
+     */
+    void l2Table(float[] query, float[] table) {
+        for (int j = 0; j < subspaces; j++) {
+            int queryOffset = j * subDimension;
+            int codebookOffset = j * codebookSize * subDimension;
+            for (int k = 0; k < codebookSize; k++) {
+                table[j * codebookSize + k] = DistanceMetric.L2.distance(
+                    query, queryOffset, codebooks, codebookOffset + k * subDimension, subDimension);
+            }
+        }
+    }
+
+    /**
+     * 计算内积查表：table[j * codebookSize + k] = query_j · codeword_jk
+     */
+    void innerProductTable(float[] query, float[] table) {
+        for (int j = 0; j < subspaces; j++) {
+            int queryOffset = j * subDimension;
+            int codebookOffset = j * codebookSize * subDimension;
+            for (int k = 0; k < codebookSize; k++) {
+                table[j * codebookSize + k] = -DistanceMetric.INNER_PRODUCT.distance(
+                    query, queryOffset, codebooks, codebookOffset + k * subDimension, subDimension);
+            }
+        }
+    }
+
+    /**
+     * 用查表累加一个编码向量的距离
+     */
+    float score(float[] table, byte[] codes, int codeOffset) {
+        float sum = 0f;
+        for (int j = 0; j < subspaces; j++) {
+            sum += table[j * codebookSize + (codes[codeOffset + j] & 0xFF)];
+        }
+        return sum;
+    }
+
+    /**
+     * 将编码还原为近似向量
+     */
+    void decode(byte[] codes, int codeOffset, float[] out, int outOffset) {
+        for (int j = 0; j < subspaces; j++) {
+            int code = codes[codeOffset + j] & 0xFF;
+            System.arraycopy(codebooks, (j * codebookSize + code) * subDimension,
+                out, outOffset + j * subDimension, subDimension);
+        }
+    }
+
+    private final class EncodeTask extends RecursiveAction {
+        private final float[] data;
+        private final byte[] codes;
+        private final int from;
+        private final int to;
+
+        EncodeTask(float[] data, byte[] codes, int from, int to) {
+            this.data = data;
+            this.codes = codes;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= ENCODE_BATCH) {
+                for (int i = from; i < to; i++) {
+                    encode(data, i * dimension, codes, i * subspaces);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new EncodeTask(data, codes, from, middle), new EncodeTask(data, codes, middle, to));
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.ragflow4j.core.vectorstore;
+
+/**
+ * 标量实现，循环按 4 路展开并使用独立的累加器，打破累加的依赖链，便于 JIT 做超标量调度
+ */
+final class ScalarDistanceKernels extends DistanceKernels {
+
+    @Override
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            float d0 = a[aOffset + i] - b[bOffset + i];
+            float d1 = a[aOffset + i + 1] - b[bOffset + i + 1];
+            float d2 = a[aOffset + i + 2] - b[bOffset + i + 2];
+            float d3 = a[aOffset + i + 3] - b[bOffset + i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < length; i++) {
+            float d = a[aOffset + i] - b[bOffset + i];
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    float cosine(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float dot0 = 0f;
+        float dot1 = 0f;
+        float normA0 = 0f;
+        float normA1 = 0f;
+        float normB0 = 0f;
+        float normB1 = 0f;
+        int i = 0;
+        for (int bound = length & ~1; i < bound; i += 2) {
+            float a0 = a[aOffset + i];
+            float a1 = a[aOffset + i + 1];
+            float b0 = b[bOffset + i];
+            float b1 = b[bOffset + i + 1];
+            dot0 += a0 * b0;
+            dot1 += a1 * b1;
+            normA0 += a0 * a0;
+            normA1 += a1 * a1;
+            normB0 += b0 * b0;
+            normB1 += b1 * b1;
+        }
+        for (; i < length; i++) {
+            float a0 = a[aOffset + i];
+            float b0 = b[bOffset + i];
+            dot0 += a0 * b0;
+            normA0 += a0 * a0;
+            normB0 += b0 * b0;
+        }
+        return cosine(dot0 + dot1, normA0 + normA1, normB0 + normB1);
+    }
+
+    @Override
+    float dot(float[] a, int aOffset, byte[] codes, int codeOffset, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            s0 += a[aOffset + i] * codes[codeOffset + i];
+            s1 += a[aOffset + i + 1] * codes[codeOffset + i + 1];
+            s2 += a[aOffset + i + 2] * codes[codeOffset + i + 2];
+            s3 += a[aOffset + i + 3] * codes[codeOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * codes[codeOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    float squareDistance(float[] a, int aOffset, byte[] codes, int codeOffset, float scale, int length) {
+        float s0 = 0f;
+        float s1 = 0f;
+        float s2 = 0f;
+        float s3 = 0f;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            float d0 = a[aOffset + i] - scale * codes[codeOffset + i];
+            float d1 = a[aOffset + i + 1] - scale * codes[codeOffset + i + 1];
+            float d2 = a[aOffset + i + 2] - scale * codes[codeOffset + i + 2];
+            float d3 = a[aOffset + i + 3] - scale * codes[codeOffset + i + 3];
+            s0 += d0 * d0;
+            s1 += d1 * d1;
+            s2 += d2 * d2;
+            s3 += d3 * d3;
+        }
+        for (; i < length; i++) {
+            float d = a[aOffset + i] - scale * codes[codeOffset + i];
+            s0 += d * d;
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    static float cosine(float dot, float normA, float normB) {
+        if (normA == 0f || normB == 0f) {
+            return 0f;
+        }
+        return (float) (dot / Math.sqrt((double) normA * normB));
+    }
+}
@@ -2,12 +2,59 @@ package com.ragflow4j.core.vectorstore;
 
 /**
  * 向量搜索结果
+ * <p>
+ * 除了ID和分数，还带回写入时保存的元数据；元数据中包含 content 字段时，
+ * 直接作为文本块内容返回，调用方不需要再按ID回查一次。
  */
 public class SearchResult {
-    public String id;
-    public Object data;
-    public SearchResult(String id, Object data) {
+    /**
+     * 元数据中保存文本块内容的字段名
+     */
+    public static final String CONTENT = "content";
+
+    public final String id;
+    /**
+     * 相似度分数，含义取决于度量方式：L2 为平方距离（越小越相似），内积和余弦为越大越相似
+     */
+    public final double score;
+    /**
+     * 写入时的原始元数据，可能为 null
+     */
+    public final String metadata;
+    /**
+     * 文本块内容，元数据中没有保存时为 null
+     */
+    public final String content;
+
+    public SearchResult(String id, double score) {
+        this(id, score, null, null);
+    }
+
+    public SearchResult(String id, double score, String metadata, String content) {
         this.id = id;
-        this.data = data;
+        this.score = score;
+        this.metadata = metadata;
+        this.content = content;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    public String getMetadata() {
+        return metadata;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SearchResult{id=%s, score=%s}", id, score);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,19 @@
+package com.ragflow4j.core.vectorstore;
+
+/**
+ * 一组按序号访问的向量条目的只读视图，既用于读取已有的段，也作为写入新段的数据来源
+ */
+interface SegmentEntries {
+    int size();
+
+    String id(int ordinal);
+
+    /**
+     * @return 原始元数据，没有时返回 null
+     */
+    String metadata(int ordinal);
+
+    void vector(int ordinal, float[] out, int offset);
+
+    boolean isDeleted(int ordinal);
+}
@@ -0,0 +1,1136 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * 持久化到本地目录的进程内 VectorStore，由若干不可变的段文件和一个内存中的可变尾部组成
+ * <p>
+ * 写入先进入内存尾部，尾部写满后被冻结，并在后台写成一个新的段文件；段文件数量超过合并因子时，
+ * 后台把较小的段合并为一个，同时丢弃已删除的条目；单个段中被删除的比例超过压缩阈值时，后台单独重写该段。目录中的 {@code segments.manifest} 记录当前有效的段，
+ * 新段和清单都是先写临时文件再原子替换，进程崩溃后不会读到写了一半的段。
+ * <p>
+ * 启动时只需要读取清单、映射段文件和读取删除位图，不重建任何索引，数据由操作系统页缓存而不是 Java 堆承载。
+ * 查询对所有段和尾部做精确扫描，并在无锁的快照上进行。
+ * <p>
+ * 默认启用预写日志：每次修改先应用到内存，再追加到 {@link WriteAheadLog}，异步接口返回的 future 在日志写盘后才完成，
+ * 并发的写入共享同一次 fsync。日志超过检查点阈值时在后台做检查点：切换日志文件、把尾部写成段、写回删除标记，
+ * 然后删除旧日志。启动时重放剩余的日志恢复尾部。关闭预写日志时，尾部数据只在 {@link #flush()} 或 {@link #close()} 之后落盘。
+ */
+public class SegmentedVectorStore implements VectorStore, AutoCloseable {
+    static final String MANIFEST = "segments.manifest";
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final int dimension;
+    private final DistanceMetric metric;
+    private final int tailCapacity;
+    private final int mergeFactor;
+    private final double compactionThreshold;
+    private final long maxSegmentBytes;
+    private final long checkpointBytes;
+    private final WriteAheadLog wal;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+
+    private final Object writeLock = new Object();
+    private final Object mergeLock = new Object();
+    private final Object checkpointLock = new Object();
+    private final AtomicInteger liveCount = new AtomicInteger();
+    private final AtomicBoolean mergeScheduled = new AtomicBoolean();
+    private final AtomicBoolean checkpointScheduled = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+    private volatile boolean closed;
+    private long nextGeneration;
+
+    private SegmentedVectorStore(Builder builder) {
+        this.directory = ensureNotNull(builder.directory, "directory");
+        this.dimension = ensureGreaterThanZero(builder.dimension, "dimension");
+        this.metric = ensureNotNull(builder.metric, "metric");
+        this.tailCapacity = ensureGreaterThanZero(builder.tailCapacity, "tailCapacity");
+        ensureTrue(builder.mergeFactor >= 2, "mergeFactor must be at least 2");
+        this.mergeFactor = builder.mergeFactor;
+        ensureTrue(builder.compactionThreshold > 0 && builder.compactionThreshold <= 1,
+            "compactionThreshold must be in (0, 1]");
+        this.compactionThreshold = builder.compactionThreshold;
+        ensureTrue(builder.maxSegmentBytes > 0 && builder.maxSegmentBytes <= VectorSegment.MAX_BYTES,
+            "maxSegmentBytes must be between 1 and " + VectorSegment.MAX_BYTES);
+        ensureTrue(VectorSegment.estimateBytes(tailCapacity, dimension) <= builder.maxSegmentBytes,
+            "tailCapacity does not fit into maxSegmentBytes");
+        this.maxSegmentBytes = builder.maxSegmentBytes;
+        ensureTrue(builder.syncIntervalMillis >= 0, "syncIntervalMillis must not be negative");
+        ensureTrue(builder.checkpointBytes > 0, "checkpointBytes must be greater than zero");
+        this.checkpointBytes = builder.checkpointBytes;
+        if (builder.executor != null) {
+            this.executor = builder.executor;
+            this.ownsExecutor = false;
+        } else {
+            this.executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            this.ownsExecutor = true;
+        }
+        this.snapshot = new Snapshot(open(), new Tail[0], new Tail(tailCapacity, dimension));
+        if (builder.writeAheadLog) {
+            long lastGeneration = WriteAheadLog.replay(directory, this::replay);
+            this.wal = new WriteAheadLog(directory, lastGeneration + 1, builder.fsync, builder.syncIntervalMillis);
+        } else {
+            this.wal = null;
+        }
+    }
+
+    /**
+     * 创建一个新的Builder实例
+     *
+     * @return Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addVectors(List<float[]> vectors, List<String> metadata) {
+        return CompletableFuture.supplyAsync(() -> {
+            ensureTrue(vectors.size() == metadata.size(), "vectors and metadata must have the same size");
+            for (int i = 0; i < vectors.size(); i++) {
+                insert(UUID.randomUUID().toString(), vectors.get(i), metadata.get(i));
+            }
+            return durable();
+        }, executor).thenCompose(commit -> commit).thenApply(v -> true);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK) {
+        return CompletableFuture.supplyAsync(() -> searchNow(queryVector, topK, null), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK, MetadataFilter filter) {
+        MetadataFilter effective = filter == null || filter.isEmpty() ? null : filter;
+        return CompletableFuture.supplyAsync(() -> searchNow(queryVector, topK, effective), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<List<SearchResult>>> searchBatch(List<float[]> queryVectors, int topK) {
+        // 进程内没有网络往返，各查询直接并行执行
+        List<CompletableFuture<List<SearchResult>>> futures = new ArrayList<>(queryVectors.size());
+        for (float[] queryVector : queryVectors) {
+            futures.add(search(queryVector, topK));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+            .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteVectors(List<String> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            for (String id : ids) {
+                delete(id);
+            }
+            scheduleMerge();
+            return durable();
+        }, executor).thenCompose(commit -> commit).thenApply(v -> true);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateVector(String id, float[] vector, String metadata) {
+        return CompletableFuture.supplyAsync(() -> {
+            insert(id, vector, metadata);
+            return durable();
+        }, executor).thenCompose(commit -> commit).thenApply(v -> true);
+    }
+
+    /**
+     * 整批写入共享一次日志提交
+     */
+    @Override
+    public CompletableFuture<Boolean> upsertVectors(List<String> ids, List<float[]> vectors, List<String> metadata) {
+        return CompletableFuture.supplyAsync(() -> {
+            ensureTrue(ids.size() == vectors.size() && ids.size() == metadata.size(),
+                "ids, vectors and metadata must have the same size");
+            for (int i = 0; i < ids.size(); i++) {
+                insert(ids.get(i), vectors.get(i), metadata.get(i));
+            }
+            return durable();
+        }, executor).thenCompose(commit -> commit).thenApply(v -> true);
+    }
+
+    @Override
+    public CompletableFuture<List<VectorEntry>> listEntries(MetadataFilter filter) {
+        List<VectorEntry> entries = new ArrayList<>();
+        return scanEntries(filter, Integer.MAX_VALUE, entries::addAll).thenApply(v -> entries);
+    }
+
+    /**
+     * 由新到旧依次读取内存尾部和各段，同一 ID 以最后写入的未删除记录为准；只在内存中保留已读过的 ID
+     */
+    @Override
+    public CompletableFuture<Void> scanEntries(MetadataFilter filter, int batchSize,
+                                               Consumer<List<VectorEntry>> consumer) {
+        ensureGreaterThanZero(batchSize, "batchSize");
+        MetadataFilter effective = filter == null || filter.isEmpty() ? null : filter;
+        return CompletableFuture.runAsync(() -> {
+            Snapshot current = snapshot;
+            EntryScan scan = new EntryScan(effective, batchSize, consumer);
+            scan.read(current.active);
+            for (int i = current.frozen.length - 1; i >= 0; i--) {
+                scan.read(current.frozen[i]);
+            }
+            for (int i = current.segments.length - 1; i >= 0; i--) {
+                scan.read(current.segments[i]);
+            }
+            scan.finish();
+        }, executor);
+    }
+
+    @Override
+    public boolean supportsListEntries() {
+        return true;
+    }
+
+    /**
+     * 被替换的旧版本在写入时已经标记删除，各段和尾部中未删除的记录都是当前版本
+     */
+    @Override
+    public CompletableFuture<Boolean> retainChunks(String documentId, Collection<String> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            ensureNotNull(documentId, "documentId");
+            Set<String> keep = new HashSet<>(ids);
+            synchronized (writeLock) {
+                Snapshot current = snapshot;
+                List<String> stale = new ArrayList<>();
+                for (VectorSegment segment : current.segments) {
+                    collectStale(stale, segment, documentId, keep);
+                }
+                for (Tail tail : current.frozen) {
+                    collectStale(stale, tail, documentId, keep);
+                }
+                collectStale(stale, current.active, documentId, keep);
+                for (String id : stale) {
+                    delete(id);
+                }
+            }
+            scheduleMerge();
+            return durable();
+        }, executor).thenCompose(commit -> commit).thenApply(v -> true);
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> existingIds(List<String> ids) {
+        Set<String> existing = new HashSet<>();
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            for (String id : ids) {
+                boolean found = current.active.contains(id);
+                for (int i = current.frozen.length - 1; i >= 0 && !found; i--) {
+                    found = current.frozen[i].contains(id);
+                }
+                for (int i = current.segments.length - 1; i >= 0 && !found; i--) {
+                    found = current.segments[i].find(id) >= 0;
+                }
+                if (found) {
+                    existing.add(id);
+                }
+            }
+        }
+        return CompletableFuture.completedFuture(existing);
+    }
+
+    /**
+     * 依次在活动尾部、冻结尾部和段中由新到旧查找，找到的第一条未删除记录就是当前版本
+     */
+    @Override
+    public CompletableFuture<Map<String, float[]>> getVectors(List<String> ids) {
+        Map<String, float[]> vectors = new HashMap<>();
+        synchronized (writeLock) {
+            Snapshot current = snapshot;
+            for (String id : ids) {
+                float[] vector = current.active.find(id);
+                for (int i = current.frozen.length - 1; i >= 0 && vector == null; i--) {
+                    vector = current.frozen[i].find(id);
+                }
+                for (int i = current.segments.length - 1; i >= 0 && vector == null; i--) {
+                    int ordinal = current.segments[i].find(id);
+                    if (ordinal >= 0) {
+                        vector = new float[dimension];
+                        current.segments[i].vector(ordinal, vector, 0);
+                    }
+                }
+                if (vector != null) {
+                    vectors.put(id, vector);
+                }
+            }
+        }
+        return CompletableFuture.completedFuture(vectors);
+    }
+
+    /**
+     * 做一次检查点：把内存尾部写成段文件，写回所有段的删除标记，并删除已被覆盖的日志，返回后已写入的数据都已落盘
+     */
+    public void flush() {
+        synchronized (checkpointLock) {
+            Tail[] pending;
+            long generation = -1;
+            synchronized (writeLock) {
+                freezeActive();
+                if (wal != null) {
+                    generation = wal.rotate();
+                }
+                pending = snapshot.frozen;
+            }
+            for (Tail tail : pending) {
+                seal(tail);
+            }
+            synchronized (writeLock) {
+                for (VectorSegment segment : snapshot.segments) {
+                    segment.saveTombstones();
+                }
+            }
+            if (wal != null) {
+                // 旧日志中排队的记录写完之后才能删除，否则同步线程会重新创建旧文件
+                wal.sync().join();
+                wal.deleteBefore(generation);
+            }
+        }
+    }
+
+    /**
+     * 当前可被检索到的向量数量
+     *
+     * @return 向量数量
+     */
+    public int size() {
+        return liveCount.get();
+    }
+
+    /**
+     * 当前已写成文件的段数量
+     *
+     * @return 段数量
+     */
+    public int segmentCount() {
+        return snapshot.segments.length;
+    }
+
+    public int getDimension() {
+        return dimension;
+    }
+
+    public DistanceMetric getMetric() {
+        return metric;
+    }
+
+    @Override
+    public void close() {
+        flush();
+        synchronized (mergeLock) {
+            closed = true;
+        }
+        if (wal != null) {
+            wal.close();
+        }
+        if (ownsExecutor) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    /**
+     * 写入一个向量，已存在的 ID 会被替换
+     */
+    void insert(String id, float[] vector, String metadata) {
+        ensureNotNull(id, "id");
+        ensureTrue(vector != null && vector.length == dimension,
+            "vector dimension must be " + dimension);
+        float[] source = metric.requiresNormalization() ? DistanceMetric.normalize(vector) : vector;
+        byte[] record = wal == null ? null : WriteAheadLog.upsert(id, source, metadata);
+        VectorMetadata parsed = VectorMetadata.parse(metadata);
+        Tail frozen;
+        synchronized (writeLock) {
+            ensureTrue(!closed, "store is closed");
+            frozen = applyInsert(id, source, parsed);
+            // 在同一把锁内追加日志，保证日志顺序与应用顺序一致
+            if (wal != null) {
+                wal.append(record);
+            }
+        }
+        if (frozen != null) {
+            executor.execute(() -> seal(frozen));
+        }
+        scheduleCheckpoint();
+    }
+
+    /**
+     * 按 ID 标记删除
+     *
+     * @return ID 存在时返回 true
+     */
+    boolean delete(String id) {
+        synchronized (writeLock) {
+            if (!applyDelete(id)) {
+                return false;
+            }
+            if (wal != null) {
+                wal.append(WriteAheadLog.delete(id));
+            }
+        }
+        scheduleCheckpoint();
+        return true;
+    }
+
+    /**
+     * 调用方需持有 writeLock
+     *
+     * @return 尾部写满被冻结时返回被冻结的尾部，否则返回 null
+     */
+    private Tail applyInsert(String id, float[] vector, VectorMetadata metadata) {
+        applyDelete(id);
+        Tail frozen = null;
+        Tail active = snapshot.active;
+        if (active.isFull()) {
+            frozen = active;
+            freezeActive();
+            active = snapshot.active;
+        }
+        active.append(id, vector, metadata);
+        liveCount.incrementAndGet();
+        return frozen;
+    }
+
+    /**
+     * 调用方需持有 writeLock
+     */
+    private boolean applyDelete(String id) {
+        Snapshot current = snapshot;
+        boolean deleted = current.active.delete(id);
+        for (int i = current.frozen.length - 1; i >= 0 && !deleted; i--) {
+            deleted = current.frozen[i].delete(id);
+        }
+        for (int i = current.segments.length - 1; i >= 0 && !deleted; i--) {
+            int ordinal = current.segments[i].find(id);
+            deleted = ordinal >= 0 && current.segments[i].delete(ordinal);
+        }
+        if (deleted) {
+            liveCount.decrementAndGet();
+        }
+        return deleted;
+    }
+
+    /**
+     * 启动时重放一条日志记录，日志中的向量已经归一化过
+     */
+    private void replay(WriteAheadLog.Record record) {
+        Tail frozen = null;
+        synchronized (writeLock) {
+            if (record.delete) {
+                applyDelete(record.id);
+            } else {
+                frozen = applyInsert(record.id, record.vector, VectorMetadata.parse(record.metadata));
+            }
+        }
+        if (frozen != null) {
+            Tail tail = frozen;
+            executor.execute(() -> seal(tail));
+        }
+    }
+
+    /**
+     * @return 目前为止的修改全部写入日志后完成的 future，未启用日志时立即完成
+     */
+    private CompletableFuture<Void> durable() {
+        return wal == null ? CompletableFuture.completedFuture(null) : wal.sync();
+    }
+
+    private void scheduleCheckpoint() {
+        if (wal != null && !closed && wal.bytesSinceRotate() > checkpointBytes
+            && checkpointScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    flush();
+                } finally {
+                    checkpointScheduled.set(false);
+                }
+            });
+        }
+    }
+
+    private static void collectStale(List<String> stale, SegmentEntries source, String documentId, Set<String> keep) {
+        int count = source.size();
+        for (int i = 0; i < count; i++) {
+            if (source.isDeleted(i)) {
+                continue;
+            }
+            String id = source.id(i);
+            if (!keep.contains(id) && documentId.equals(VectorMetadata.parse(source.metadata(i)).documentId)) {
+                stale.add(id);
+            }
+        }
+    }
+
+    List<SearchResult> searchNow(float[] queryVector, int topK, MetadataFilter filter) {
+        ensureTrue(queryVector != null && queryVector.length == dimension,
+            "query vector dimension must be " + dimension);
+        if (topK <= 0) {
+            return new ArrayList<>();
+        }
+        float[] query = metric.requiresNormalization() ? DistanceMetric.normalize(queryVector) : queryVector;
+        Snapshot current = snapshot;
+
+        List<Hit> hits = new ArrayList<>();
+        for (VectorSegment segment : current.segments) {
+            collect(hits, segment, segment.scan(query, topK, filter));
+        }
+        for (Tail tail : current.frozen) {
+            collect(hits, tail, tail.scan(metric, query, topK, filter));
+        }
+        collect(hits, current.active, current.active.scan(metric, query, topK, filter));
+        hits.sort(Comparator.comparingDouble(hit -> hit.distance));
+
+        List<SearchResult> results = new ArrayList<>(Math.min(topK, hits.size()));
+        for (int i = 0; i < hits.size() && results.size() < topK; i++) {
+            Hit hit = hits.get(i);
+            VectorMetadata metadata = VectorMetadata.parse(hit.source.metadata(hit.ordinal));
+            results.add(new SearchResult(hit.source.id(hit.ordinal), metric.toScore(hit.distance),
+                metadata.raw, metadata.content()));
+        }
+        return results;
+    }
+
+    private static void collect(List<Hit> hits, SegmentEntries source, NodeHeap heap) {
+        for (int i = 0; i < heap.size(); i++) {
+            hits.add(new Hit(source, heap.nodeAt(i), heap.distanceAt(i)));
+        }
+    }
+
+    /**
+     * 冻结当前尾部并换上新的空尾部，调用方需持有 writeLock
+     */
+    private void freezeActive() {
+        Snapshot current = snapshot;
+        if (current.active.size() == 0) {
+            return;
+        }
+        Tail[] frozen = Arrays.copyOf(current.frozen, current.frozen.length + 1);
+        frozen[frozen.length - 1] = current.active;
+        snapshot = new Snapshot(current.segments, frozen, new Tail(tailCapacity, dimension));
+    }
+
+    /**
+     * 把一个冻结的尾部写成段文件并替换到快照中
+     */
+    private void seal(Tail tail) {
+        synchronized (tail) {
+            if (tail.sealed) {
+                return;
+            }
+            LiveEntries live = new LiveEntries(new SegmentEntries[]{tail});
+            VectorSegment segment = live.size() == 0 ? null : writeSegment(live);
+            synchronized (writeLock) {
+                Snapshot current = snapshot;
+                List<Tail> frozen = new ArrayList<>(Arrays.asList(current.frozen));
+                frozen.remove(tail);
+                VectorSegment[] segments = current.segments;
+                if (segment != null) {
+                    live.carryDeletes(segment);
+                    segment.saveTombstones();
+                    segments = Arrays.copyOf(segments, segments.length + 1);
+                    segments[segments.length - 1] = segment;
+                    writeManifest(segments);
+                }
+                snapshot = new Snapshot(segments, frozen.toArray(new Tail[0]), current.active);
+            }
+            tail.sealed = true;
+        }
+        scheduleMerge();
+    }
+
+    private void scheduleMerge() {
+        if (!closed && needsMerge(snapshot.segments) && mergeScheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                mergeScheduled.set(false);
+                merge();
+            });
+        }
+    }
+
+    private boolean needsMerge(VectorSegment[] segments) {
+        return segments.length > mergeFactor || mostDeleted(segments) != null;
+    }
+
+    /**
+     * @return 删除比例不低于压缩阈值的段中比例最高的一个，没有时返回 null
+     */
+    private VectorSegment mostDeleted(VectorSegment[] segments) {
+        VectorSegment selected = null;
+        double selectedRatio = compactionThreshold;
+        for (VectorSegment segment : segments) {
+            double ratio = segment.deletedCount() / (double) segment.count;
+            if (ratio >= selectedRatio) {
+                selected = segment;
+                selectedRatio = ratio;
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * 只要段数量超过合并因子，就把最小的若干个段合并为一个；否则逐个重写删除比例过高的段
+     */
+    private void merge() {
+        synchronized (mergeLock) {
+            VectorSegment[] sources;
+            while (!closed && (sources = selectMerge(snapshot.segments)) != null) {
+                LiveEntries live = new LiveEntries(sources);
+                VectorSegment merged = live.size() == 0 ? null : writeSegment(live);
+                synchronized (writeLock) {
+                    Snapshot current = snapshot;
+                    Set<VectorSegment> replaced = new HashSet<>(Arrays.asList(sources));
+                    List<VectorSegment> segments = new ArrayList<>();
+                    for (VectorSegment segment : current.segments) {
+                        if (!replaced.contains(segment)) {
+                            segments.add(segment);
+                        }
+                    }
+                    if (merged != null) {
+                        // 合并期间发生的删除要同步到新段
+                        live.carryDeletes(merged);
+                        merged.saveTombstones();
+                        segments.add(merged);
+                    }
+                    VectorSegment[] published = segments.toArray(new VectorSegment[0]);
+                    writeManifest(published);
+                    snapshot = new Snapshot(published, current.frozen, current.active);
+                }
+                for (VectorSegment source : sources) {
+                    deleteSegmentFiles(source.name);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按大小从小到大选取至多 mergeFactor 个段，合并后的大小不超过 maxSegmentBytes；
+     * 段数量未超过合并因子时，选取删除比例最高且超过压缩阈值的单个段
+     *
+     * @return 待合并的段，不需要合并时返回 null
+     */
+    private VectorSegment[] selectMerge(VectorSegment[] segments) {
+        if (segments.length <= mergeFactor) {
+            VectorSegment compaction = mostDeleted(segments);
+            return compaction == null ? null : new VectorSegment[]{compaction};
+        }
+        VectorSegment[] bySize = segments.clone();
+        Arrays.sort(bySize, Comparator.comparingLong(segment -> segment.byteSize));
+        List<VectorSegment> selected = new ArrayList<>();
+        long bytes = 0;
+        for (VectorSegment segment : bySize) {
+            if (selected.size() == mergeFactor || bytes + segment.byteSize > maxSegmentBytes) {
+                break;
+            }
+            selected.add(segment);
+            bytes += segment.byteSize;
+        }
+        return selected.size() < 2 ? null : selected.toArray(new VectorSegment[0]);
+    }
+
+    private VectorSegment writeSegment(SegmentEntries entries) {
+        String name;
+        synchronized (writeLock) {
+            name = SEGMENT_PREFIX + nextGeneration++;
+        }
+        Path path = directory.resolve(name + VectorSegment.EXTENSION);
+        VectorSegment.write(path, dimension, metric, entries);
+        return VectorSegment.open(path);
+    }
+
+    private void writeManifest(VectorSegment[] segments) {
+        StringBuilder content = new StringBuilder();
+        for (VectorSegment segment : segments) {
+            content.append(segment.name).append('\n');
+        }
+        Path manifest = directory.resolve(MANIFEST);
+        Path temp = directory.resolve(MANIFEST + TEMP_SUFFIX);
+        try {
+            Files.write(temp, content.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(temp, manifest, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void deleteSegmentFiles(String name) {
+        try {
+            Files.deleteIfExists(directory.resolve(name + VectorSegment.TOMBSTONE_EXTENSION));
+            Files.deleteIfExists(directory.resolve(name + VectorSegment.EXTENSION));
+        } catch (IOException e) {
+            // 仍被映射的文件在部分平台上无法删除，下次启动时会作为孤儿文件清理
+        }
+    }
+
+    /**
+     * 映射清单中记录的段，并清理不在清单中的段文件和临时文件
+     */
+    private VectorSegment[] open() {
+        try {
+            Files.createDirectories(directory);
+            Path manifest = directory.resolve(MANIFEST);
+            List<String> names = new ArrayList<>();
+            if (Files.exists(manifest)) {
+                for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+                    if (!line.trim().isEmpty()) {
+                        names.add(line.trim());
+                    }
+                }
+            }
+
+            Set<String> retained = new HashSet<>();
+            for (String name : names) {
+                retained.add(name + VectorSegment.EXTENSION);
+                retained.add(name + VectorSegment.TOMBSTONE_EXTENSION);
+                nextGeneration = Math.max(nextGeneration, Long.parseLong(name.substring(SEGMENT_PREFIX.length())) + 1);
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    String fileName = file.getFileName().toString();
+                    boolean segmentFile = fileName.startsWith(SEGMENT_PREFIX) && !retained.contains(fileName);
+                    if (segmentFile || fileName.endsWith(TEMP_SUFFIX)) {
+                        Files.deleteIfExists(file);
+                    }
+                }
+            }
+
+            VectorSegment[] segments = new VectorSegment[names.size()];
+            for (int i = 0; i < segments.length; i++) {
+                segments[i] = VectorSegment.open(directory.resolve(names.get(i) + VectorSegment.EXTENSION));
+                ensureTrue(segments[i].dimension == dimension && segments[i].metric == metric,
+                    "segment " + names.get(i) + " was written with dimension " + segments[i].dimension
+                        + " and metric " + segments[i].metric);
+                liveCount.addAndGet(segments[i].count - segments[i].deletedCount());
+            }
+            return segments;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 一次按批读取的状态：已读过的 ID 和尚未交付的一批条目
+     */
+    private final class EntryScan {
+        final MetadataFilter filter;
+        final int batchSize;
+        final Consumer<List<VectorEntry>> consumer;
+        final Set<String> seen = new HashSet<>();
+        List<VectorEntry> batch = new ArrayList<>();
+
+        EntryScan(MetadataFilter filter, int batchSize, Consumer<List<VectorEntry>> consumer) {
+            this.filter = filter;
+            this.batchSize = batchSize;
+            this.consumer = consumer;
+        }
+
+        void read(SegmentEntries source) {
+            int count = source.size();
+            for (int i = count - 1; i >= 0; i--) {
+                // 先按是否已读过判断，较新的版本不满足条件时较旧的版本也不会被返回
+                if (source.isDeleted(i) || !seen.add(source.id(i))) {
+                    continue;
+                }
+                String metadata = source.metadata(i);
+                if (filter != null && !filter.test(VectorMetadata.parse(metadata))) {
+                    continue;
+                }
+                float[] vector = new float[dimension];
+                source.vector(i, vector, 0);
+                batch.add(VectorEntry.of(source.id(i), vector, metadata));
+                if (batch.size() == batchSize) {
+                    consumer.accept(batch);
+                    batch = new ArrayList<>();
+                }
+            }
+        }
+
+        void finish() {
+            if (!batch.isEmpty()) {
+                consumer.accept(batch);
+            }
+        }
+    }
+
+    /**
+     * 某一时刻的段和尾部，发布后不再修改；活跃尾部本身仍会追加，通过其 volatile 大小发布新条目
+     */
+    private static final class Snapshot {
+        final VectorSegment[] segments;
+        final Tail[] frozen;
+        final Tail active;
+
+        Snapshot(VectorSegment[] segments, Tail[] frozen, Tail active) {
+            this.segments = segments;
+            this.frozen = frozen;
+            this.active = active;
+        }
+    }
+
+    private static final class Hit {
+        final SegmentEntries source;
+        final int ordinal;
+        final float distance;
+
+        Hit(SegmentEntries source, int ordinal, float distance) {
+            this.source = source;
+            this.ordinal = ordinal;
+            this.distance = distance;
+        }
+    }
+
+    /**
+     * 内存中的可变尾部，容量固定，写入方持有 writeLock 追加，查询方只读取已发布的前 size 个条目
+     * <p>
+     * 元数据在写入时解析，过滤时不再解析原始 JSON。
+     */
+    private static final class Tail implements SegmentEntries {
+        private final int dimension;
+        private final float[] vectors;
+        private final String[] ids;
+        private final VectorMetadata[] metadata;
+        private final Tombstones tombstones;
+        private final Map<String, Integer> index = new HashMap<>();
+        private volatile int size;
+        private boolean sealed;
+
+        Tail(int capacity, int dimension) {
+            this.dimension = dimension;
+            this.vectors = new float[capacity * dimension];
+            this.ids = new String[capacity];
+            this.metadata = new VectorMetadata[capacity];
+            this.tombstones = new Tombstones(capacity);
+        }
+
+        boolean isFull() {
+            return size == ids.length;
+        }
+
+        void append(String id, float[] vector, VectorMetadata parsed) {
+            int slot = size;
+            System.arraycopy(vector, 0, vectors, slot * dimension, dimension);
+            ids[slot] = id;
+            metadata[slot] = parsed;
+            index.put(id, slot);
+            size = slot + 1;
+        }
+
+        /**
+         * @return 该ID当前向量的副本，不存在或已删除时返回 null
+         */
+        boolean contains(String id) {
+            return index.containsKey(id);
+        }
+
+        float[] find(String id) {
+            Integer slot = index.get(id);
+            if (slot == null) {
+                return null;
+            }
+            return Arrays.copyOfRange(vectors, slot * dimension, (slot + 1) * dimension);
+        }
+
+        boolean delete(String id) {
+            Integer slot = index.remove(id);
+            return slot != null && tombstones.set(slot);
+        }
+
+        NodeHeap scan(DistanceMetric metric, float[] query, int topK, MetadataFilter filter) {
+            NodeHeap heap = NodeHeap.maxHeap(topK + 1);
+            int count = size;
+            for (int i = 0; i < count; i++) {
+                if (tombstones.get(i)) {
+                    continue;
+                }
+                float distance = metric.distance(query, 0, vectors, i * dimension, dimension);
+                if (heap.size() >= topK && distance >= heap.topDistance()) {
+                    continue;
+                }
+                if (filter != null && !filter.test(metadata[i])) {
+                    continue;
+                }
+                heap.offer(i, distance, topK);
+            }
+            return heap;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String id(int ordinal) {
+            return ids[ordinal];
+        }
+
+        @Override
+        public String metadata(int ordinal) {
+            return metadata[ordinal].raw;
+        }
+
+        @Override
+        public void vector(int ordinal, float[] out, int offset) {
+            System.arraycopy(vectors, ordinal * dimension, out, offset, dimension);
+        }
+
+        @Override
+        public boolean isDeleted(int ordinal) {
+            return tombstones.get(ordinal);
+        }
+    }
+
+    /**
+     * 若干来源中某一时刻仍未删除的条目，按来源顺序编号，作为写入新段的数据
+     */
+    private static final class LiveEntries implements SegmentEntries {
+        private final SegmentEntries[] sources;
+        private final int[] sourceIndexes;
+        private final int[] ordinals;
+
+        LiveEntries(SegmentEntries[] sources) {
+            this.sources = sources;
+            int total = 0;
+            for (SegmentEntries source : sources) {
+                total += source.size();
+            }
+            int[] sourceIndexes = new int[total];
+            int[] ordinals = new int[total];
+            int count = 0;
+            for (int s = 0; s < sources.length; s++) {
+                for (int i = 0, n = sources[s].size(); i < n; i++) {
+                    if (!sources[s].isDeleted(i)) {
+                        sourceIndexes[count] = s;
+                        ordinals[count++] = i;
+                    }
+                }
+            }
+            this.sourceIndexes = Arrays.copyOf(sourceIndexes, count);
+            this.ordinals = Arrays.copyOf(ordinals, count);
+        }
+
+        /**
+         * 把快照之后在来源中发生的删除同步到新段，调用方需持有 writeLock
+         */
+        void carryDeletes(VectorSegment target) {
+            for (int i = 0; i < ordinals.length; i++) {
+                if (sources[sourceIndexes[i]].isDeleted(ordinals[i])) {
+                    target.delete(i);
+                }
+            }
+        }
+
+        @Override
+        public int size() {
+            return ordinals.length;
+        }
+
+        @Override
+        public String id(int ordinal) {
+            return sources[sourceIndexes[ordinal]].id(ordinals[ordinal]);
+        }
+
+        @Override
+        public String metadata(int ordinal) {
+            return sources[sourceIndexes[ordinal]].metadata(ordinals[ordinal]);
+        }
+
+        @Override
+        public void vector(int ordinal, float[] out, int offset) {
+            sources[sourceIndexes[ordinal]].vector(ordinals[ordinal], out, offset);
+        }
+
+        @Override
+        public boolean isDeleted(int ordinal) {
+            return sources[sourceIndexes[ordinal]].isDeleted(ordinals[ordinal]);
+        }
+    }
+
+    /**
+     * SegmentedVectorStore的构建器
+     */
+    public static class Builder {
+        private Path directory;
+        private int dimension;
+        private DistanceMetric metric = DistanceMetric.L2;
+        private int tailCapacity = 4096;
+        private int mergeFactor = 8;
+        private double compactionThreshold = 0.3;
+        private long maxSegmentBytes = 1L << 30;
+        private boolean writeAheadLog = true;
+        private boolean fsync = true;
+        private long syncIntervalMillis;
+        private long checkpointBytes = 64L << 20;
+        private Executor executor;
+
+        /**
+         * 设置数据目录，目录中已有的段会在构建时被映射
+         *
+         * @param directory 数据目录
+         * @return Builder实例
+         */
+        public Builder directory(Path directory) {
+            this.directory = directory;
+            return this;
+        }
+
+        /**
+         * 设置向量维度
+         *
+         * @param dimension 向量维度
+         * @return Builder实例
+         */
+        public Builder dimension(int dimension) {
+            this.dimension = dimension;
+            return this;
+        }
+
+        /**
+         * 设置距离度量
+         *
+         * @param metric 距离度量
+         * @return Builder实例
+         */
+        public Builder metric(DistanceMetric metric) {
+            this.metric = metric;
+            return this;
+        }
+
+        /**
+         * 设置内存尾部的容量，写满后冻结并写成段文件
+         *
+         * @param tailCapacity 尾部容量
+         * @return Builder实例
+         */
+        public Builder tailCapacity(int tailCapacity) {
+            this.tailCapacity = tailCapacity;
+            return this;
+        }
+
+        /**
+         * 设置合并因子，段数量超过该值时触发后台合并
+         *
+         * @param mergeFactor 合并因子
+         * @return Builder实例
+         */
+        public Builder mergeFactor(int mergeFactor) {
+            this.mergeFactor = mergeFactor;
+            return this;
+        }
+
+        /**
+         * 设置触发单段压缩的删除比例，默认 0.3
+         *
+         * @param compactionThreshold 段中被删除条目所占的比例，取值 (0, 1]
+         * @return Builder实例
+         */
+        public Builder compactionThreshold(double compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        /**
+         * 设置合并产生的段的最大字节数，不超过 2GB
+         *
+         * @param maxSegmentBytes 最大字节数
+         * @return Builder实例
+         */
+        public Builder maxSegmentBytes(long maxSegmentBytes) {
+            this.maxSegmentBytes = maxSegmentBytes;
+            return this;
+        }
+
+        /**
+         * 设置是否启用预写日志，默认启用
+         *
+         * @param writeAheadLog 是否启用
+         * @return Builder实例
+         */
+        public Builder writeAheadLog(boolean writeAheadLog) {
+            this.writeAheadLog = writeAheadLog;
+            return this;
+        }
+
+        /**
+         * 设置日志每组写入后是否 fsync，默认开启；关闭后进程崩溃不丢数据，但掉电可能丢失最近的写入
+         *
+         * @param fsync 是否 fsync
+         * @return Builder实例
+         */
+        public Builder fsync(boolean fsync) {
+            this.fsync = fsync;
+            return this;
+        }
+
+        /**
+         * 设置日志同步线程写盘前等待积累写入的毫秒数，默认为 0，即上一次写盘完成后立即写下一组
+         *
+         * @param syncIntervalMillis 等待毫秒数
+         * @return Builder实例
+         */
+        public Builder syncIntervalMillis(long syncIntervalMillis) {
+            this.syncIntervalMillis = syncIntervalMillis;
+            return this;
+        }
+
+        /**
+         * 设置触发检查点的日志字节数，默认 64MB
+         *
+         * @param checkpointBytes 日志字节数
+         * @return Builder实例
+         */
+        public Builder checkpointBytes(long checkpointBytes) {
+            this.checkpointBytes = checkpointBytes;
+            return this;
+        }
+
+        /**
+         * 设置执行异步操作、写段和合并的线程池，未设置时内部创建并在 close 时关闭
+         *
+         * @param executor 线程池
+         * @return Builder实例
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * 构建SegmentedVectorStore实例
+         *
+         * @return SegmentedVectorStore实例
+         */
+        public SegmentedVectorStore build() {
+            return new SegmentedVectorStore(this);
+        }
+    }
+}
@@ -0,0 +1,445 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotEmpty;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * 把数据按分片键分布到多个 VectorStore 上的门面
+ * <p>
+ * 写入按知识库ID或向量ID的哈希路由到某一个分片；查询并行发往所有相关分片，各分片的有序结果通过 k 路堆归并得到 topK。
+ * 单个分片超时或失败时按空结果处理，查询返回其余分片的部分结果，失败次数可通过 {@link #getShardFailures()} 观察。
+ * <p>
+ * 按知识库路由时，带知识库过滤条件的查询只发往持有这些知识库的分片。同一 ID 的向量更换知识库后会落到另一个分片，
+ * 需要先删除再写入。分片实例由调用方创建和关闭。
+ */
+public class ShardedVectorStore implements VectorStore, AutoCloseable {
+    private final List<VectorStore> shards;
+    private final Routing routing;
+    private final DistanceMetric metric;
+    private final long shardTimeoutMillis;
+    private final ScheduledExecutorService scheduler;
+    private final AtomicLong shardFailures = new AtomicLong();
+
+    /**
+     * 分片键
+     */
+    public enum Routing {
+        /**
+         * 按元数据中的知识库ID路由，同一知识库的数据在同一分片；元数据中没有知识库ID时退化为按向量ID路由
+         */
+        KNOWLEDGE_ID,
+        /**
+         * 按向量ID的哈希路由，数据在分片间均匀分布
+         */
+        ID_HASH
+    }
+
+    private ShardedVectorStore(Builder builder) {
+        this.shards = Collections.unmodifiableList(new ArrayList<>(ensureNotEmpty(builder.shards, "shards")));
+        this.routing = ensureNotNull(builder.routing, "routing");
+        this.metric = ensureNotNull(builder.metric, "metric");
+        ensureTrue(builder.shardTimeoutMillis >= 0, "shardTimeoutMillis must be non-negative");
+        this.shardTimeoutMillis = builder.shardTimeoutMillis;
+        this.scheduler = shardTimeoutMillis > 0 ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ragflow4j-shard-timeout");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * 创建一个新的Builder实例
+     *
+     * @return Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * 在本层生成 ID 后按分片分组写入
+     */
+    @Override
+    public CompletableFuture<Boolean> addVectors(List<float[]> vectors, List<String> metadata) {
+        List<String> ids = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return upsertVectors(ids, vectors, metadata);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> upsertVectors(List<String> ids, List<float[]> vectors, List<String> metadata) {
+        ensureTrue(ids.size() == vectors.size() && ids.size() == metadata.size(),
+            "ids, vectors and metadata must have the same size");
+        List<List<Integer>> groups = new ArrayList<>(shards.size());
+        for (int s = 0; s < shards.size(); s++) {
+            groups.add(new ArrayList<>());
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            groups.get(shardOf(ids.get(i), metadata.get(i))).add(i);
+        }
+
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (int s = 0; s < shards.size(); s++) {
+            List<Integer> group = groups.get(s);
+            if (group.isEmpty()) {
+                continue;
+            }
+            List<String> shardIds = new ArrayList<>(group.size());
+            List<float[]> shardVectors = new ArrayList<>(group.size());
+            List<String> shardMetadata = new ArrayList<>(group.size());
+            for (int i : group) {
+                shardIds.add(ids.get(i));
+                shardVectors.add(vectors.get(i));
+                shardMetadata.add(metadata.get(i));
+            }
+            futures.add(shards.get(s).upsertVectors(shardIds, shardVectors, shardMetadata));
+        }
+        return allTrue(futures);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateVector(String id, float[] vector, String metadata) {
+        return shards.get(shardOf(id, metadata)).updateVector(id, vector, metadata);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK) {
+        return search(queryVector, topK, null);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK, MetadataFilter filter) {
+        List<CompletableFuture<List<SearchResult>>> futures = new ArrayList<>();
+        for (int s : targetShards(filter)) {
+            futures.add(withTimeout(shards.get(s).search(queryVector, topK, filter), Collections.emptyList()));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<List<SearchResult>> partial = new ArrayList<>(futures.size());
+            for (CompletableFuture<List<SearchResult>> future : futures) {
+                partial.add(future.join());
+            }
+            return merge(partial, topK, metric.isAscending());
+        });
+    }
+
+    /**
+     * 每个分片收到整批查询，再按查询逐个归并
+     */
+    @Override
+    public CompletableFuture<List<List<SearchResult>>> searchBatch(List<float[]> queryVectors, int topK) {
+        List<CompletableFuture<List<List<SearchResult>>>> futures = new ArrayList<>(shards.size());
+        for (VectorStore shard : shards) {
+            futures.add(withTimeout(shard.searchBatch(queryVectors, topK), Collections.emptyList()));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            List<List<SearchResult>> results = new ArrayList<>(queryVectors.size());
+            for (int q = 0; q < queryVectors.size(); q++) {
+                List<List<SearchResult>> partial = new ArrayList<>(futures.size());
+                for (CompletableFuture<List<List<SearchResult>>> future : futures) {
+                    List<List<SearchResult>> shardResults = future.join();
+                    if (q < shardResults.size()) {
+                        partial.add(shardResults.get(q));
+                    }
+                }
+                results.add(merge(partial, topK, metric.isAscending()));
+            }
+            return results;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteVectors(List<String> ids) {
+        if (routing == Routing.ID_HASH) {
+            List<List<String>> groups = new ArrayList<>(shards.size());
+            for (int s = 0; s < shards.size(); s++) {
+                groups.add(new ArrayList<>());
+            }
+            for (String id : ids) {
+                groups.get(hashShard(id)).add(id);
+            }
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (int s = 0; s < shards.size(); s++) {
+                if (!groups.get(s).isEmpty()) {
+                    futures.add(shards.get(s).deleteVectors(groups.get(s)));
+                }
+            }
+            return allTrue(futures);
+        }
+        // 按知识库路由时无法从 ID 推出分片，删除发往所有分片
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(shards.size());
+        for (VectorStore shard : shards) {
+            futures.add(shard.deleteVectors(ids));
+        }
+        return allTrue(futures);
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> existingIds(List<String> ids) {
+        List<CompletableFuture<Set<String>>> futures = new ArrayList<>(shards.size());
+        for (VectorStore shard : shards) {
+            futures.add(shard.existingIds(ids));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            Set<String> existing = new HashSet<>();
+            for (CompletableFuture<Set<String>> future : futures) {
+                existing.addAll(future.join());
+            }
+            return existing;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, float[]>> getVectors(List<String> ids) {
+        List<CompletableFuture<Map<String, float[]>>> futures = new ArrayList<>(shards.size());
+        for (VectorStore shard : shards) {
+            futures.add(shard.getVectors(ids));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            Map<String, float[]> vectors = new HashMap<>();
+            for (CompletableFuture<Map<String, float[]>> future : futures) {
+                vectors.putAll(future.join());
+            }
+            return vectors;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> retainChunks(String documentId, Collection<String> ids) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(shards.size());
+        for (VectorStore shard : shards) {
+            futures.add(shard.retainChunks(documentId, ids));
+        }
+        return allTrue(futures);
+    }
+
+    /**
+     * 分片数量
+     *
+     * @return 分片数量
+     */
+    public int getShardCount() {
+        return shards.size();
+    }
+
+    /**
+     * 查询时超时或失败、按空结果处理的分片请求累计次数
+     *
+     * @return 累计次数
+     */
+    public long getShardFailures() {
+        return shardFailures.get();
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 计算一条数据所属的分片
+     */
+    int shardOf(String id, String metadata) {
+        if (routing == Routing.KNOWLEDGE_ID) {
+            String knowledgeId = VectorMetadata.parse(metadata).knowledgeId;
+            if (knowledgeId != null) {
+                return hashShard(knowledgeId);
+            }
+        }
+        return hashShard(id);
+    }
+
+    private int hashShard(String key) {
+        // String.hashCode 的结果由规范确定，重启后路由保持不变
+        return Math.floorMod(key.hashCode(), shards.size());
+    }
+
+    private List<Integer> targetShards(MetadataFilter filter) {
+        List<Integer> targets = new ArrayList<>();
+        if (routing == Routing.KNOWLEDGE_ID && filter != null && !filter.getKnowledgeIds().isEmpty()) {
+            Set<Integer> owners = new HashSet<>();
+            for (String knowledgeId : filter.getKnowledgeIds()) {
+                owners.add(hashShard(knowledgeId));
+            }
+            targets.addAll(owners);
+            return targets;
+        }
+        for (int s = 0; s < shards.size(); s++) {
+            targets.add(s);
+        }
+        return targets;
+    }
+
+    /**
+     * 分片超时或失败时以 fallback 完成，不影响其他分片
+     */
+    private <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future, T fallback) {
+        CompletableFuture<T> bounded = new CompletableFuture<>();
+        // 先计数再完成，调用方拿到结果时计数已经可见
+        AtomicBoolean settled = new AtomicBoolean();
+        ScheduledFuture<?> timer = scheduler == null ? null : scheduler.schedule(() -> {
+            if (settled.compareAndSet(false, true)) {
+                shardFailures.incrementAndGet();
+                bounded.complete(fallback);
+            }
+        }, shardTimeoutMillis, TimeUnit.MILLISECONDS);
+        future.whenComplete((value, ex) -> {
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            if (ex == null && value != null) {
+                bounded.complete(value);
+            } else {
+                shardFailures.incrementAndGet();
+                bounded.complete(fallback);
+            }
+        });
+        return bounded;
+    }
+
+    private static CompletableFuture<Boolean> allTrue(List<CompletableFuture<Boolean>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+            .thenApply(v -> futures.stream().map(CompletableFuture::join).allMatch(Boolean::booleanValue));
+    }
+
+    /**
+     * k 路归并多个已按相似度排好序的结果列表，返回前 topK 个
+     *
+     * @param lists 各来源的有序结果
+     * @param topK 返回数量
+     * @param ascending 分数越小越相似时为 true
+     * @return 归并后的结果
+     */
+    static List<SearchResult> merge(List<List<SearchResult>> lists, int topK, boolean ascending) {
+        Comparator<SearchResult> byScore = ascending
+            ? Comparator.comparingDouble((SearchResult result) -> result.score)
+            : Comparator.comparingDouble((SearchResult result) -> result.score).reversed();
+        // 堆中每个元素是 {列表序号, 列表内位置}
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, lists.size()),
+            (a, b) -> byScore.compare(lists.get(a[0]).get(a[1]), lists.get(b[0]).get(b[1])));
+        for (int i = 0; i < lists.size(); i++) {
+            if (!lists.get(i).isEmpty()) {
+                heap.add(new int[]{i, 0});
+            }
+        }
+        List<SearchResult> merged = new ArrayList<>(Math.max(0, topK));
+        Set<String> seen = new HashSet<>();
+        while (merged.size() < topK && !heap.isEmpty()) {
+            int[] cursor = heap.poll();
+            List<SearchResult> list = lists.get(cursor[0]);
+            SearchResult result = list.get(cursor[1]);
+            // 同一 ID 可能短暂存在于两个来源（例如迁移中），只保留更相似的一条
+            if (seen.add(result.id)) {
+                merged.add(result);
+            }
+            if (cursor[1] + 1 < list.size()) {
+                cursor[1]++;
+                heap.add(cursor);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * ShardedVectorStore的构建器
+     */
+    public static class Builder {
+        private final List<VectorStore> shards = new ArrayList<>();
+        private Routing routing = Routing.KNOWLEDGE_ID;
+        private DistanceMetric metric = DistanceMetric.L2;
+        private long shardTimeoutMillis;
+
+        /**
+         * 添加一个分片，分片顺序决定路由结果，重启后需保持一致
+         *
+         * @param shard 分片
+         * @return Builder实例
+         */
+        public Builder shard(VectorStore shard) {
+            this.shards.add(ensureNotNull(shard, "shard"));
+            return this;
+        }
+
+        /**
+         * 添加多个分片
+         *
+         * @param shards 分片列表
+         * @return Builder实例
+         */
+        public Builder shards(List<? extends VectorStore> shards) {
+            for (VectorStore shard : shards) {
+                shard(shard);
+            }
+            return this;
+        }
+
+        /**
+         * 设置分片键
+         *
+         * @param routing 分片键
+         * @return Builder实例
+         */
+        public Builder routing(Routing routing) {
+            this.routing = routing;
+            return this;
+        }
+
+        /**
+         * 设置各分片使用的距离度量，决定归并时分数的排序方向
+         *
+         * @param metric 距离度量
+         * @return Builder实例
+         */
+        public Builder metric(DistanceMetric metric) {
+            this.metric = metric;
+            return this;
+        }
+
+        /**
+         * 设置单个分片的查询超时，为 0 时不限时
+         *
+         * @param timeout 超时时间
+         * @param unit 时间单位
+         * @return Builder实例
+         */
+        public Builder shardTimeout(long timeout, TimeUnit unit) {
+            this.shardTimeoutMillis = unit.toMillis(timeout);
+            return this;
+        }
+
+        /**
+         * 构建ShardedVectorStore实例
+         *
+         * @return ShardedVectorStore实例
+         */
+        public ShardedVectorStore build() {
+            return new ShardedVectorStore(this);
+        }
+    }
+}
@@ -0,0 +1,573 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+import static com.ragflow4j.core.utils.ValidationUtils.ensureTrue;
+
+/**
+ * 冷热分层的 VectorStore
+ * <p>
+ * 数据按知识库分区。冷层（例如 {@link SegmentedVectorStore} 或 Milvus）保存全部数据，是唯一的数据来源；
+ * 热层（例如 {@link HnswVectorStore}）只保存访问最频繁的若干分区的副本。写入总是落到冷层，属于热分区的写入同时写入热层。
+ * <p>
+ * 每次查询按结果所属的分区累计访问次数，{@link #rebalance()} 按衰减后的访问频率把排名靠前的分区从冷层复制到热层，
+ * 把掉出排名的分区从热层删除。查询按知识库过滤条件拆分：热分区发往热层，其余发往冷层，两边结果归并；
+ * 不带知识库条件的查询只发往冷层，因为冷层已经包含全部数据。
+ * 升级时通过 {@link VectorStore#scanEntries(MetadataFilter, int, Consumer)} 分批复制，冷层必须支持 listEntries，构建时检查。
+ */
+public class TieredVectorStore implements VectorStore, AutoCloseable {
+    // 每次重新平衡时历史访问次数的衰减系数
+    private static final double DECAY = 0.5;
+
+    private final VectorStore hot;
+    private final VectorStore cold;
+    private final DistanceMetric metric;
+    private final int maxHotPartitions;
+    private final double minAccesses;
+    private final int copyBatchSize;
+    private final ScheduledExecutorService scheduler;
+
+    private final ConcurrentHashMap<String, Partition> partitions = new ConcurrentHashMap<>();
+    // 热层中每个 ID 所属的分区和文档，用于降级时删除、ID 更换分区时清理旧副本以及清理文档的旧分块
+    private final ConcurrentHashMap<String, HotCopy> hotOwners = new ConcurrentHashMap<>();
+    // 升级复制期间被写入或删除的 ID，复制时跳过，避免旧数据覆盖新数据
+    private final Set<String> touched = ConcurrentHashMap.newKeySet();
+    // 升级复制期间清理过旧分块的文档及其保留的 ID，复制时跳过其余分块
+    private final ConcurrentHashMap<String, Set<String>> retained = new ConcurrentHashMap<>();
+    private final AtomicInteger promotions = new AtomicInteger();
+    // 写入按纪元计数，分区状态变化后等待旧纪元的写入全部结束，保证没有写入仍按旧状态路由
+    private final AtomicInteger[] writers = {new AtomicInteger(), new AtomicInteger()};
+    private volatile int epoch;
+    private final Object rebalanceLock = new Object();
+
+    private enum State {
+        COLD, PROMOTING, HOT
+    }
+
+    private static final class Partition {
+        final String knowledgeId;
+        final LongAdder accesses = new LongAdder();
+        volatile State state = State.COLD;
+        double score;
+
+        Partition(String knowledgeId) {
+            this.knowledgeId = knowledgeId;
+        }
+    }
+
+    private static final class HotCopy {
+        final Partition partition;
+        final String documentId;
+
+        HotCopy(Partition partition, String documentId) {
+            this.partition = partition;
+            this.documentId = documentId;
+        }
+    }
+
+    private TieredVectorStore(Builder builder) {
+        this.hot = ensureNotNull(builder.hot, "hot");
+        this.cold = ensureNotNull(builder.cold, "cold");
+        this.metric = ensureNotNull(builder.metric, "metric");
+        this.maxHotPartitions = ensureGreaterThanZero(builder.maxHotPartitions, "maxHotPartitions");
+        ensureTrue(builder.minAccesses >= 0, "minAccesses must be non-negative");
+        this.minAccesses = builder.minAccesses;
+        this.copyBatchSize = ensureGreaterThanZero(builder.copyBatchSize, "copyBatchSize");
+        ensureTrue(cold.supportsListEntries(), "cold tier must support listEntries");
+        ensureTrue(builder.rebalanceIntervalMillis >= 0, "rebalanceInterval must be non-negative");
+        if (builder.rebalanceIntervalMillis > 0) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "ragflow4j-tier-rebalance");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(this::rebalanceQuietly, builder.rebalanceIntervalMillis,
+                builder.rebalanceIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * 创建一个新的Builder实例
+     *
+     * @return Builder实例
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> addVectors(List<float[]> vectors, List<String> metadata) {
+        List<String> ids = new ArrayList<>(vectors.size());
+        for (int i = 0; i < vectors.size(); i++) {
+            ids.add(UUID.randomUUID().toString());
+        }
+        return upsertVectors(ids, vectors, metadata);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateVector(String id, float[] vector, String metadata) {
+        return upsertVectors(Collections.singletonList(id), Collections.singletonList(vector),
+            Collections.singletonList(metadata));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> upsertVectors(List<String> ids, List<float[]> vectors, List<String> metadata) {
+        ensureTrue(ids.size() == vectors.size() && ids.size() == metadata.size(),
+            "ids, vectors and metadata must have the same size");
+        int slot = enterWrite();
+        try {
+            if (promotions.get() > 0) {
+                touched.addAll(ids);
+            }
+            List<String> hotIds = new ArrayList<>();
+            List<float[]> hotVectors = new ArrayList<>();
+            List<String> hotMetadata = new ArrayList<>();
+            List<String> moved = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                String id = ids.get(i);
+                VectorMetadata parsed = VectorMetadata.parse(metadata.get(i));
+                Partition partition = partition(parsed.knowledgeId);
+                if (partition != null && partition.state != State.COLD) {
+                    hotOwners.put(id, new HotCopy(partition, parsed.documentId));
+                    hotIds.add(id);
+                    hotVectors.add(vectors.get(i));
+                    hotMetadata.add(metadata.get(i));
+                } else if (hotOwners.remove(id) != null) {
+                    // 更换到冷分区后热层里的旧副本需要删除
+                    moved.add(id);
+                }
+            }
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            futures.add(cold.upsertVectors(ids, vectors, metadata));
+            if (!hotIds.isEmpty()) {
+                futures.add(hot.upsertVectors(hotIds, hotVectors, hotMetadata));
+            }
+            if (!moved.isEmpty()) {
+                futures.add(hot.deleteVectors(moved));
+            }
+            return exitWhenDone(slot, allTrue(futures));
+        } catch (RuntimeException e) {
+            exitWrite(slot);
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteVectors(List<String> ids) {
+        int slot = enterWrite();
+        try {
+            if (promotions.get() > 0) {
+                touched.addAll(ids);
+            }
+            List<String> hotIds = new ArrayList<>();
+            for (String id : ids) {
+                if (hotOwners.remove(id) != null) {
+                    hotIds.add(id);
+                }
+            }
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            futures.add(cold.deleteVectors(ids));
+            if (!hotIds.isEmpty()) {
+                futures.add(hot.deleteVectors(hotIds));
+            }
+            return exitWhenDone(slot, allTrue(futures));
+        } catch (RuntimeException e) {
+            exitWrite(slot);
+            throw e;
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK) {
+        return search(queryVector, topK, null);
+    }
+
+    @Override
+    public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK, MetadataFilter filter) {
+        if (filter == null || filter.getKnowledgeIds().isEmpty()) {
+            return cold.search(queryVector, topK, filter).thenApply(this::recordAccess);
+        }
+        Set<String> hotIds = new HashSet<>();
+        Set<String> coldIds = new HashSet<>();
+        for (String knowledgeId : filter.getKnowledgeIds()) {
+            Partition partition = partitions.get(knowledgeId);
+            (partition != null && partition.state == State.HOT ? hotIds : coldIds).add(knowledgeId);
+        }
+        if (hotIds.isEmpty()) {
+            return cold.search(queryVector, topK, filter).thenApply(this::recordAccess);
+        }
+        if (coldIds.isEmpty()) {
+            return hot.search(queryVector, topK, filter).thenApply(this::recordAccess);
+        }
+        CompletableFuture<List<SearchResult>> hotResults = hot.search(queryVector, topK, filter.withKnowledgeIds(hotIds));
+        CompletableFuture<List<SearchResult>> coldResults = cold.search(queryVector, topK, filter.withKnowledgeIds(coldIds));
+        return hotResults.thenCombine(coldResults, (a, b) ->
+            recordAccess(ShardedVectorStore.merge(Arrays.asList(a, b), topK, metric.isAscending())));
+    }
+
+    /**
+     * 批量查询不带过滤条件，直接由包含全部数据的冷层完成
+     */
+    @Override
+    public CompletableFuture<List<List<SearchResult>>> searchBatch(List<float[]> queryVectors, int topK) {
+        return cold.searchBatch(queryVectors, topK).thenApply(results -> {
+            results.forEach(this::recordAccess);
+            return results;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Set<String>> existingIds(List<String> ids) {
+        return cold.existingIds(ids);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, float[]>> getVectors(List<String> ids) {
+        return cold.getVectors(ids);
+    }
+
+    @Override
+    public CompletableFuture<List<VectorEntry>> listEntries(MetadataFilter filter) {
+        return cold.listEntries(filter);
+    }
+
+    @Override
+    public CompletableFuture<Void> scanEntries(MetadataFilter filter, int batchSize,
+                                               Consumer<List<VectorEntry>> consumer) {
+        return cold.scanEntries(filter, batchSize, consumer);
+    }
+
+    @Override
+    public boolean supportsListEntries() {
+        return true;
+    }
+
+    /**
+     * 冷层按文档删除旧分块，热层按登记的文档找出旧分块的副本删除，两层都成功才返回 true
+     */
+    @Override
+    public CompletableFuture<Boolean> retainChunks(String documentId, Collection<String> ids) {
+        ensureNotNull(documentId, "documentId");
+        Set<String> keep = new HashSet<>(ids);
+        int slot = enterWrite();
+        try {
+            if (promotions.get() > 0) {
+                retained.put(documentId, keep);
+            }
+            List<String> hotIds = new ArrayList<>();
+            for (Map.Entry<String, HotCopy> entry : hotOwners.entrySet()) {
+                if (documentId.equals(entry.getValue().documentId) && !keep.contains(entry.getKey())
+                    && hotOwners.remove(entry.getKey(), entry.getValue())) {
+                    hotIds.add(entry.getKey());
+                }
+            }
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            futures.add(cold.retainChunks(documentId, keep));
+            if (!hotIds.isEmpty()) {
+                futures.add(hot.deleteVectors(hotIds));
+            }
+            return exitWhenDone(slot, allTrue(futures));
+        } catch (RuntimeException e) {
+            exitWrite(slot);
+            throw e;
+        }
+    }
+
+    /**
+     * 按衰减后的访问频率重新选择热分区，复制新的热分区并删除降级分区的热层副本，完成后返回
+     */
+    public void rebalance() {
+        synchronized (rebalanceLock) {
+            List<Partition> ranked = new ArrayList<>();
+            for (Partition partition : partitions.values()) {
+                partition.score = partition.score * DECAY + partition.accesses.sumThenReset();
+                if (partition.score >= minAccesses && partition.score > 0) {
+                    ranked.add(partition);
+                }
+            }
+            ranked.sort((a, b) -> Double.compare(b.score, a.score));
+            Set<Partition> wanted = new HashSet<>(ranked.subList(0, Math.min(maxHotPartitions, ranked.size())));
+            for (Partition partition : partitions.values()) {
+                if (partition.state == State.HOT && !wanted.contains(partition)) {
+                    demote(partition);
+                }
+            }
+            for (Partition partition : ranked) {
+                if (wanted.contains(partition) && partition.state == State.COLD) {
+                    promote(partition);
+                }
+            }
+        }
+    }
+
+    /**
+     * 当前位于热层的知识库
+     *
+     * @return 知识库ID
+     */
+    public Set<String> getHotPartitions() {
+        Set<String> hotPartitions = new TreeSet<>();
+        for (Partition partition : partitions.values()) {
+            if (partition.state == State.HOT) {
+                hotPartitions.add(partition.knowledgeId);
+            }
+        }
+        return hotPartitions;
+    }
+
+    @Override
+    public void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void rebalanceQuietly() {
+        try {
+            rebalance();
+        } catch (RuntimeException e) {
+            // 下一轮重试，期间查询仍由冷层兜底
+        }
+    }
+
+    private void promote(Partition partition) {
+        promotions.incrementAndGet();
+        partition.state = State.PROMOTING;
+        try {
+            awaitWriters();
+            MetadataFilter filter = MetadataFilter.builder().knowledgeId(partition.knowledgeId).build();
+            // 冷层分批读出，每批写入热层后再读取下一批，分区再大也只占用一批的内存
+            cold.scanEntries(filter, copyBatchSize, entries -> copyToHot(partition, entries)).join();
+            partition.state = State.HOT;
+        } catch (RuntimeException e) {
+            demote(partition);
+            throw e;
+        } finally {
+            if (promotions.decrementAndGet() == 0) {
+                touched.clear();
+                retained.clear();
+            }
+        }
+    }
+
+    private void copyToHot(Partition partition, List<VectorEntry> entries) {
+        List<String> ids = new ArrayList<>();
+        List<float[]> vectors = new ArrayList<>();
+        List<String> metadata = new ArrayList<>();
+        List<String> documentIds = new ArrayList<>();
+        for (VectorEntry entry : entries) {
+            if (touched.contains(entry.id)) {
+                continue;
+            }
+            String documentId = VectorMetadata.parse(entry.metadata).documentId;
+            Set<String> keep = documentId == null ? null : retained.get(documentId);
+            if (keep != null && !keep.contains(entry.id)) {
+                continue;
+            }
+            ids.add(entry.id);
+            vectors.add(entry.vector);
+            metadata.add(entry.metadata);
+            documentIds.add(documentId);
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        // 先登记再写入，写入失败时能一并清理
+        for (int i = 0; i < ids.size(); i++) {
+            hotOwners.putIfAbsent(ids.get(i), new HotCopy(partition, documentIds.get(i)));
+        }
+        if (!hot.upsertVectors(ids, vectors, metadata).join()) {
+            throw new IllegalStateException("failed to copy partition " + partition.knowledgeId + " to hot tier");
+        }
+    }
+
+    private void demote(Partition partition) {
+        partition.state = State.COLD;
+        // 等仍按热分区路由的写入结束后再删除，避免它们把副本写回热层
+        awaitWriters();
+        List<String> ids = new ArrayList<>();
+        for (Map.Entry<String, HotCopy> entry : hotOwners.entrySet()) {
+            if (entry.getValue().partition == partition && hotOwners.remove(entry.getKey(), entry.getValue())) {
+                ids.add(entry.getKey());
+            }
+        }
+        for (int start = 0; start < ids.size(); start += copyBatchSize) {
+            hot.deleteVectors(ids.subList(start, Math.min(start + copyBatchSize, ids.size()))).join();
+        }
+    }
+
+    private Partition partition(String knowledgeId) {
+        return knowledgeId == null ? null : partitions.computeIfAbsent(knowledgeId, Partition::new);
+    }
+
+    private List<SearchResult> recordAccess(List<SearchResult> results) {
+        Set<String> seen = new HashSet<>();
+        for (SearchResult result : results) {
+            String knowledgeId = VectorMetadata.parse(result.metadata).knowledgeId;
+            if (knowledgeId != null && seen.add(knowledgeId)) {
+                Partition partition = partition(knowledgeId);
+                partition.accesses.increment();
+            }
+        }
+        return results;
+    }
+
+    private int enterWrite() {
+        while (true) {
+            int current = epoch;
+            int slot = current & 1;
+            writers[slot].incrementAndGet();
+            if (epoch == current) {
+                return slot;
+            }
+            writers[slot].decrementAndGet();
+        }
+    }
+
+    private void exitWrite(int slot) {
+        writers[slot].decrementAndGet();
+    }
+
+    private CompletableFuture<Boolean> exitWhenDone(int slot, CompletableFuture<Boolean> future) {
+        return future.whenComplete((result, ex) -> exitWrite(slot));
+    }
+
+    /**
+     * 切换纪元并等待上一纪元开始的写入全部完成，只在 rebalanceLock 内调用
+     */
+    private void awaitWriters() {
+        int previous = epoch;
+        epoch = previous + 1;
+        AtomicInteger pending = writers[previous & 1];
+        while (pending.get() > 0) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static CompletableFuture<Boolean> allTrue(List<CompletableFuture<Boolean>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+            .thenApply(v -> futures.stream().map(CompletableFuture::join).allMatch(Boolean::booleanValue));
+    }
+
+    /**
+     * TieredVectorStore的构建器
+     */
+    public static class Builder {
+        private VectorStore hot;
+        private VectorStore cold;
+        private DistanceMetric metric = DistanceMetric.L2;
+        private int maxHotPartitions = 4;
+        private double minAccesses = 1;
+        private int copyBatchSize = 1000;
+        private long rebalanceIntervalMillis;
+
+        /**
+         * 设置热层存储，通常为内存中的 HNSW 索引
+         *
+         * @param hot 热层存储
+         * @return Builder实例
+         */
+        public Builder hot(VectorStore hot) {
+            this.hot = hot;
+            return this;
+        }
+
+        /**
+         * 设置冷层存储，保存全部数据，需要支持 listEntries（{@link VectorStore#supportsListEntries()}）
+         *
+         * @param cold 冷层存储
+         * @return Builder实例
+         */
+        public Builder cold(VectorStore cold) {
+            this.cold = cold;
+            return this;
+        }
+
+        /**
+         * 设置两层使用的距离度量，决定归并时分数的排序方向
+         *
+         * @param metric 距离度量
+         * @return Builder实例
+         */
+        public Builder metric(DistanceMetric metric) {
+            this.metric = metric;
+            return this;
+        }
+
+        /**
+         * 设置热层最多容纳的分区数
+         *
+         * @param maxHotPartitions 热分区上限
+         * @return Builder实例
+         */
+        public Builder maxHotPartitions(int maxHotPartitions) {
+            this.maxHotPartitions = maxHotPartitions;
+            return this;
+        }
+
+        /**
+         * 设置升级到热层所需的最低衰减访问次数
+         *
+         * @param minAccesses 最低访问次数
+         * @return Builder实例
+         */
+        public Builder minAccesses(double minAccesses) {
+            this.minAccesses = minAccesses;
+            return this;
+        }
+
+        /**
+         * 设置分区复制时每批写入的条目数
+         *
+         * @param copyBatchSize 批次大小
+         * @return Builder实例
+         */
+        public Builder copyBatchSize(int copyBatchSize) {
+            this.copyBatchSize = copyBatchSize;
+            return this;
+        }
+
+        /**
+         * 设置后台重新平衡的间隔，为 0 时只在调用 {@link TieredVectorStore#rebalance()} 时进行
+         *
+         * @param interval 间隔
+         * @param unit 时间单位
+         * @return Builder实例
+         */
+        public Builder rebalanceInterval(long interval, TimeUnit unit) {
+            this.rebalanceIntervalMillis = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * 构建TieredVectorStore实例
+         *
+         * @return TieredVectorStore实例
+         */
+        public TieredVectorStore build() {
+            return new TieredVectorStore(this);
+        }
+    }
+}
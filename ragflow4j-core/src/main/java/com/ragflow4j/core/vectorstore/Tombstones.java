@@ -0,0 +1,123 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 固定容量的删除标记位图，写入方通过 CAS 置位，查询方无锁读取
+ */
+final class Tombstones {
+    private final int capacity;
+    private final AtomicLongArray words;
+    private final AtomicInteger count = new AtomicInteger();
+
+    Tombstones(int capacity) {
+        this.capacity = capacity;
+        this.words = new AtomicLongArray((capacity + 63) >>> 6);
+    }
+
+    /**
+     * 标记删除
+     *
+     * @return 之前未被标记时返回 true
+     */
+    boolean set(int index) {
+        int word = index >>> 6;
+        long mask = 1L << index;
+        while (true) {
+            long current = words.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (words.compareAndSet(word, current, current | mask)) {
+                count.incrementAndGet();
+                return true;
+            }
+        }
+    }
+
+    boolean get(int index) {
+        return (words.get(index >>> 6) & (1L << index)) != 0;
+    }
+
+    /**
+     * 已标记删除的数量
+     */
+    int count() {
+        return count.get();
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * 复制到一个容量不小于当前容量的新位图，调用方需保证复制期间没有并发置位
+     */
+    Tombstones copy(int newCapacity) {
+        Tombstones copy = new Tombstones(newCapacity);
+        for (int i = 0; i < words.length(); i++) {
+            copy.words.set(i, words.get(i));
+        }
+        copy.count.set(count.get());
+        return copy;
+    }
+
+    /**
+     * 以小端 long 数组的形式写入文件，先写临时文件并刷盘再原子替换
+     */
+    void write(Path path) {
+        ByteBuffer buffer = ByteBuffer.allocate(words.length() * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < words.length(); i++) {
+            buffer.putLong(words.get(i));
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 从文件读取位图，文件不存在时返回空位图
+     */
+    static Tombstones read(Path path, int capacity) {
+        Tombstones tombstones = new Tombstones(capacity);
+        if (!Files.exists(path)) {
+            return tombstones;
+        }
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path)).order(ByteOrder.LITTLE_ENDIAN);
+            int words = Math.min(tombstones.words.length(), buffer.remaining() / Long.BYTES);
+            int count = 0;
+            for (int i = 0; i < words; i++) {
+                long word = buffer.getLong();
+                tombstones.words.set(i, word);
+                count += Long.bitCount(word);
+            }
+            tombstones.count.set(count);
+            return tombstones;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
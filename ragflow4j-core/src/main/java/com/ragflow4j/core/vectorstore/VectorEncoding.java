@@ -0,0 +1,30 @@
+package com.ragflow4j.core.vectorstore;
+
+/**
+ * 进程内向量存储中向量的编码方式
+ * <p>
+ * 由 {@link HnswVectorStore} 和 {@link FlatVectorStore} 支持。{@link IvfPqVectorStore} 本身保存的就是乘积量化码，
+ * {@link SegmentedVectorStore} 的向量在内存映射的段文件中、不占用 Java 堆，{@link TieredVectorStore} 的编码由其热层和冷层各自决定。
+ */
+public enum VectorEncoding {
+    /**
+     * 原始 float 向量，每维 4 字节
+     */
+    FLOAT32,
+
+    /**
+     * 按向量缩放的 int8 标量量化，每维 1 字节外加每个向量一个 float 缩放系数。
+     * 查询向量保持 float，与量化后的向量做非对称距离计算，可选用原始向量对候选重排
+     */
+    INT8;
+
+    /**
+     * 单个向量在内存中占用的字节数
+     *
+     * @param dimension 向量维度
+     * @return 字节数
+     */
+    public long bytesPerVector(int dimension) {
+        return this == INT8 ? dimension + Float.BYTES : (long) dimension * Float.BYTES;
+    }
+}
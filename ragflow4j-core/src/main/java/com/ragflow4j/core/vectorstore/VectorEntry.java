@@ -0,0 +1,44 @@
+package com.ragflow4j.core.vectorstore;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureNotNull;
+
+/**
+ * 待写入的一条向量及其元数据
+ */
+public final class VectorEntry {
+    /**
+     * 向量ID，为 null 时由存储生成
+     */
+    public final String id;
+    public final float[] vector;
+    public final String metadata;
+
+    private VectorEntry(String id, float[] vector, String metadata) {
+        this.id = id;
+        this.vector = ensureNotNull(vector, "vector");
+        this.metadata = metadata;
+    }
+
+    /**
+     * 创建由存储生成 ID 的条目
+     *
+     * @param vector 向量
+     * @param metadata 元数据
+     * @return 条目
+     */
+    public static VectorEntry of(float[] vector, String metadata) {
+        return new VectorEntry(null, vector, metadata);
+    }
+
+    /**
+     * 创建指定 ID 的条目，写入时替换同 ID 的旧数据
+     *
+     * @param id 向量ID
+     * @param vector 向量
+     * @param metadata 元数据
+     * @return 条目
+     */
+    public static VectorEntry of(String id, float[] vector, String metadata) {
+        return new VectorEntry(ensureNotNull(id, "id"), vector, metadata);
+    }
+}
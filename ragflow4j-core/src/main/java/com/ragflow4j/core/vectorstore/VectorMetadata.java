@@ -0,0 +1,170 @@
+package com.ragflow4j.core.vectorstore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * 写入时解析一次的向量元数据
+ * <p>
+ * knowledgeId、documentId、chunkIndex 这些常用于过滤的字段在写入时提取出来，
+ * 过滤时直接比较；其他顶层的标量字段也在写入时解析为字段名和值的数组，过滤时不再解析原始 JSON。
+ * 内置字段按其类型归一化保存（knowledgeId、documentId 为字符串，chunkIndex 为整数），
+ * 进程内过滤和外部存储看到的字段类型一致。
+ * 文本块内容只在组装搜索结果时从原始 JSON 中读取，不额外占用常驻内存。
+ */
+final class VectorMetadata {
+    static final int NO_CHUNK_INDEX = -1;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final String[] NO_KEYS = new String[0];
+    private static final JsonNode[] NO_VALUES = new JsonNode[0];
+    static final VectorMetadata EMPTY = new VectorMetadata(null, null, null, NO_CHUNK_INDEX, NO_KEYS, NO_VALUES);
+
+    final String raw;
+    final String knowledgeId;
+    final String documentId;
+    final int chunkIndex;
+    private final String[] keys;
+    private final JsonNode[] values;
+
+    private VectorMetadata(String raw, String knowledgeId, String documentId, int chunkIndex,
+                           String[] keys, JsonNode[] values) {
+        this.raw = raw;
+        this.knowledgeId = knowledgeId;
+        this.documentId = documentId;
+        this.chunkIndex = chunkIndex;
+        this.keys = keys;
+        this.values = values;
+    }
+
+    /**
+     * 解析 JSON 格式的元数据，非 JSON 对象的内容只保留原文
+     *
+     * @param raw 原始元数据
+     * @return 解析结果
+     */
+    static VectorMetadata parse(String raw) {
+        JsonNode object = parseObject(raw);
+        if (object == null) {
+            return raw == null ? EMPTY : new VectorMetadata(raw, null, null, NO_CHUNK_INDEX, NO_KEYS, NO_VALUES);
+        }
+        String knowledgeId = asString(object.get(MetadataFilter.KNOWLEDGE_ID));
+        String documentId = asString(object.get(MetadataFilter.DOCUMENT_ID));
+        int chunkIndex = asInt(object.get(MetadataFilter.CHUNK_INDEX));
+
+        int count = 0;
+        for (Iterator<Map.Entry<String, JsonNode>> it = object.fields(); it.hasNext(); ) {
+            if (isAttribute(it.next())) {
+                count++;
+            }
+        }
+        String[] keys = count == 0 ? NO_KEYS : new String[count];
+        JsonNode[] values = count == 0 ? NO_VALUES : new JsonNode[count];
+        int i = 0;
+        for (Iterator<Map.Entry<String, JsonNode>> it = object.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> entry = it.next();
+            if (!isAttribute(entry)) {
+                continue;
+            }
+            // 字段名在各条元数据之间大量重复
+            String key = entry.getKey().intern();
+            JsonNode value = entry.getValue();
+            if (MetadataFilter.KNOWLEDGE_ID.equals(key)) {
+                value = TextNode.valueOf(knowledgeId);
+            } else if (MetadataFilter.DOCUMENT_ID.equals(key)) {
+                value = TextNode.valueOf(documentId);
+            } else if (MetadataFilter.CHUNK_INDEX.equals(key) && chunkIndex != NO_CHUNK_INDEX) {
+                value = IntNode.valueOf(chunkIndex);
+            }
+            keys[i] = key;
+            values[i++] = value;
+        }
+        return new VectorMetadata(raw, knowledgeId, documentId, chunkIndex, keys, values);
+    }
+
+    /**
+     * 读取写入时解析的顶层标量字段，对象、数组、null 以及文本块内容不会被保留
+     *
+     * @param key 字段名
+     * @return 字段值（字符串、数字或布尔值节点），不存在时返回 null
+     */
+    JsonNode get(String key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 写入时解析的顶层标量字段重新组成的 JSON 对象，用于外部存储按任意字段过滤
+     *
+     * @return JSON 对象文本，没有标量字段时为 {}
+     */
+    String attributesJson() {
+        ObjectNode object = JsonNodeFactory.instance.objectNode();
+        for (int i = 0; i < keys.length; i++) {
+            object.set(keys[i], values[i]);
+        }
+        return object.toString();
+    }
+
+    /**
+     * 读取文本块内容，只在组装搜索结果时调用，会重新解析原始 JSON
+     *
+     * @return 文本块内容，不存在时返回 null
+     */
+    String content() {
+        JsonNode object = parseObject(raw);
+        return object == null ? null : asString(object.get(SearchResult.CONTENT));
+    }
+
+    private static boolean isAttribute(Map.Entry<String, JsonNode> entry) {
+        return isScalar(entry.getValue()) && !SearchResult.CONTENT.equals(entry.getKey());
+    }
+
+    private static boolean isScalar(JsonNode node) {
+        return node != null && (node.isTextual() || node.isNumber() || node.isBoolean());
+    }
+
+    private static JsonNode parseObject(String raw) {
+        if (raw == null || raw.isEmpty()) {
+            return null;
+        }
+        try {
+            JsonNode node = MAPPER.readTree(raw);
+            return node != null && node.isObject() ? node : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static String asString(JsonNode node) {
+        return isScalar(node) ? node.asText() : null;
+    }
+
+    private static int asInt(JsonNode node) {
+        if (node == null) {
+            return NO_CHUNK_INDEX;
+        }
+        if (node.isNumber()) {
+            return node.intValue();
+        }
+        if (!node.isTextual()) {
+            return NO_CHUNK_INDEX;
+        }
+        try {
+            return Integer.parseInt(node.textValue().trim());
+        } catch (NumberFormatException e) {
+            return NO_CHUNK_INDEX;
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * 不可变的向量段文件，整个文件以只读方式内存映射
+ * <p>
+ * 文件布局（小端）：
+ * <pre>
+ * header   64 字节：magic、version、dimension、count、metric，以及后续各区的起始位置
+ * vectors  count * dimension 个 float
+ * strings  全部 ID 的 UTF-8 字节，随后是全部元数据的 UTF-8 字节
+ * idOffsets        count + 1 个 int，ID 在 strings 区内的起止位置
+ * metadataOffsets  count + 1 个 int，元数据在 strings 区内的起止位置，长度为 0 表示没有元数据
+ * sorted           count 个 int，按 ID 排序后的序号，用于按 ID 二分查找
+ * </pre>
+ * 打开段只需要映射文件和读取删除标记，向量、ID 和元数据都留在页缓存中，不占用 Java 堆。
+ * 段本身不可修改，删除记录在同名的 {@code .del} 位图文件中。
+ */
+final class VectorSegment implements SegmentEntries {
+    static final String EXTENSION = ".vec";
+    static final String TOMBSTONE_EXTENSION = ".del";
+    /**
+     * 整个段以单个 MappedByteBuffer 映射，大小不能超过 2GB
+     */
+    static final long MAX_BYTES = Integer.MAX_VALUE;
+
+    private static final int MAGIC = 0x52344A53;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int WRITE_BUFFER_BYTES = 1 << 16;
+
+    final String name;
+    final int dimension;
+    final DistanceMetric metric;
+    final int count;
+    final long byteSize;
+    private final Path tombstonePath;
+    private final ByteBuffer data;
+    private final FloatBuffer vectors;
+    private final int stringsPosition;
+    private final int idOffsetsPosition;
+    private final int metadataOffsetsPosition;
+    private final int sortedPosition;
+    private final Tombstones tombstones;
+    private volatile boolean tombstonesDirty;
+
+    private VectorSegment(Path path, ByteBuffer data) {
+        String fileName = path.getFileName().toString();
+        this.name = fileName.substring(0, fileName.length() - EXTENSION.length());
+        this.tombstonePath = path.resolveSibling(name + TOMBSTONE_EXTENSION);
+        this.data = data;
+        this.byteSize = data.capacity();
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IllegalStateException("Not a vector segment: " + path);
+        }
+        this.dimension = data.getInt(8);
+        this.count = data.getInt(12);
+        this.metric = DistanceMetric.values()[data.getInt(16)];
+        this.stringsPosition = (int) data.getLong(24);
+        this.idOffsetsPosition = (int) data.getLong(32);
+        this.metadataOffsetsPosition = (int) data.getLong(40);
+        this.sortedPosition = (int) data.getLong(48);
+
+        ByteBuffer vectorBytes = data.duplicate();
+        vectorBytes.position(HEADER_BYTES).limit(HEADER_BYTES + count * dimension * Float.BYTES);
+        this.vectors = vectorBytes.slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        this.tombstones = Tombstones.read(tombstonePath, count);
+    }
+
+    /**
+     * 映射一个已写好的段文件
+     *
+     * @param path 段文件路径
+     * @return 段
+     */
+    static VectorSegment open(Path path) {
+        // 映射建立后即可关闭文件，映射在段对象被回收前一直有效
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                .order(ByteOrder.LITTLE_ENDIAN);
+            return new VectorSegment(path, data);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 写入一个新段：先写临时文件并刷盘，再原子地重命名为目标文件
+     *
+     * @param path 段文件路径
+     * @param dimension 向量维度
+     * @param metric 距离度量
+     * @param entries 段中的条目
+     */
+    static void write(Path path, int dimension, DistanceMetric metric, SegmentEntries entries) {
+        int count = entries.size();
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            Output out = new Output(channel, HEADER_BYTES);
+
+            float[] vector = new float[dimension];
+            for (int i = 0; i < count; i++) {
+                entries.vector(i, vector, 0);
+                for (int d = 0; d < dimension; d++) {
+                    out.putFloat(vector[d]);
+                }
+            }
+
+            long stringsPosition = out.position;
+            String[] ids = new String[count];
+            int[] idOffsets = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                ids[i] = entries.id(i);
+                idOffsets[i] = (int) (out.position - stringsPosition);
+                out.putBytes(ids[i].getBytes(StandardCharsets.UTF_8));
+            }
+            idOffsets[count] = (int) (out.position - stringsPosition);
+            int[] metadataOffsets = new int[count + 1];
+            for (int i = 0; i < count; i++) {
+                metadataOffsets[i] = (int) (out.position - stringsPosition);
+                String metadata = entries.metadata(i);
+                if (metadata != null) {
+                    out.putBytes(metadata.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            metadataOffsets[count] = (int) (out.position - stringsPosition);
+
+            long idOffsetsPosition = out.position;
+            out.putInts(idOffsets);
+            long metadataOffsetsPosition = out.position;
+            out.putInts(metadataOffsets);
+            long sortedPosition = out.position;
+            Integer[] sorted = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                sorted[i] = i;
+            }
+            Arrays.sort(sorted, Comparator.comparing(i -> ids[i]));
+            for (Integer ordinal : sorted) {
+                out.putInt(ordinal);
+            }
+            out.flush();
+            if (out.position > MAX_BYTES) {
+                throw new IllegalStateException("Segment exceeds " + MAX_BYTES + " bytes: " + path);
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(dimension).putInt(count).putInt(metric.ordinal()).putInt(0)
+                .putLong(stringsPosition).putLong(idOffsetsPosition).putLong(metadataOffsetsPosition)
+                .putLong(sortedPosition);
+            header.clear();
+            channel.write(header, 0);
+            channel.force(true);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 估算写出一个段需要的字节数，用于控制合并后段的大小
+     */
+    static long estimateBytes(int count, int dimension) {
+        return HEADER_BYTES + (long) count * dimension * Float.BYTES + (long) count * 3 * Integer.BYTES;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public String id(int ordinal) {
+        return string(idOffsetsPosition, ordinal);
+    }
+
+    /**
+     * 空元数据读取为 null
+     */
+    @Override
+    public String metadata(int ordinal) {
+        String metadata = string(metadataOffsetsPosition, ordinal);
+        return metadata.isEmpty() ? null : metadata;
+    }
+
+    @Override
+    public void vector(int ordinal, float[] out, int offset) {
+        FloatBuffer view = vectors.duplicate();
+        view.position(ordinal * dimension);
+        view.get(out, offset, dimension);
+    }
+
+    @Override
+    public boolean isDeleted(int ordinal) {
+        return tombstones.get(ordinal);
+    }
+
+    /**
+     * 标记删除
+     *
+     * @return 之前未被删除时返回 true
+     */
+    boolean delete(int ordinal) {
+        if (tombstones.set(ordinal)) {
+            tombstonesDirty = true;
+            return true;
+        }
+        return false;
+    }
+
+    int deletedCount() {
+        return tombstones.count();
+    }
+
+    /**
+     * 按 ID 二分查找未删除的条目
+     *
+     * @return 序号，不存在时返回 -1
+     */
+    int find(String id) {
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (id(sortedAt(middle)).compareTo(id) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        // 同一个 ID 在段内可能有多条已删除的旧记录，跳过它们
+        for (int i = low; i < count; i++) {
+            int ordinal = sortedAt(i);
+            if (!id(ordinal).equals(id)) {
+                break;
+            }
+            if (!tombstones.get(ordinal)) {
+                return ordinal;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 顺序扫描整个段，返回以最大距离为堆顶、最多 topK 个元素的结果堆
+     *
+     * @param query 查询向量，需要已按度量归一化
+     * @param topK 返回数量
+     * @param filter 元数据过滤条件，为 null 时不过滤
+     * @return 结果堆
+     */
+    NodeHeap scan(float[] query, int topK, MetadataFilter filter) {
+        NodeHeap heap = NodeHeap.maxHeap(topK + 1);
+        FloatBuffer view = vectors.duplicate();
+        float[] vector = VectorSlab.scratch(dimension);
+        for (int i = 0; i < count; i++) {
+            view.get(vector, 0, dimension);
+            if (tombstones.get(i)) {
+                continue;
+            }
+            float distance = metric.distance(query, 0, vector, 0, dimension);
+            // 只对可能进入结果的条目解析元数据
+            if (heap.size() >= topK && distance >= heap.topDistance()) {
+                continue;
+            }
+            if (filter != null && !filter.test(VectorMetadata.parse(metadata(i)))) {
+                continue;
+            }
+            heap.offer(i, distance, topK);
+        }
+        return heap;
+    }
+
+    /**
+     * 如果删除标记有变化则写回 {@code .del} 文件
+     */
+    void saveTombstones() {
+        if (tombstonesDirty) {
+            tombstonesDirty = false;
+            tombstones.write(tombstonePath);
+        }
+    }
+
+    private int sortedAt(int index) {
+        return data.getInt(sortedPosition + index * Integer.BYTES);
+    }
+
+    private String string(int offsetsPosition, int ordinal) {
+        int start = data.getInt(offsetsPosition + ordinal * Integer.BYTES);
+        int end = data.getInt(offsetsPosition + (ordinal + 1) * Integer.BYTES);
+        byte[] bytes = new byte[end - start];
+        ByteBuffer view = data.duplicate();
+        view.position(stringsPosition + start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 带缓冲的顺序写出
+     */
+    private static final class Output {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        private long position;
+
+        Output(FileChannel channel, long position) {
+            this.channel = channel;
+            this.position = position;
+        }
+
+        void putFloat(float value) throws IOException {
+            ensure(Float.BYTES);
+            buffer.putFloat(value);
+            position += Float.BYTES;
+        }
+
+        void putInt(int value) throws IOException {
+            ensure(Integer.BYTES);
+            buffer.putInt(value);
+            position += Integer.BYTES;
+        }
+
+        void putInts(int[] values) throws IOException {
+            for (int value : values) {
+                putInt(value);
+            }
+        }
+
+        void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+            position += bytes.length;
+        }
+
+        void flush() throws IOException {
+            buffer.flip();
+            long target = position - buffer.remaining();
+            while (buffer.hasRemaining()) {
+                target += channel.write(buffer, target);
+            }
+            buffer.clear();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+    }
+}
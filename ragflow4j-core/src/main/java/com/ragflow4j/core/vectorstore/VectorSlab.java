@@ -0,0 +1,168 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * 一段固定容量的连续向量存储，按 {@link VectorEncoding} 决定内部表示
+ * <p>
+ * 进程内的 VectorStore 按槽位写入和读取向量，距离计算统一经过这里，
+ * 不需要关心向量是以 float 还是 int8 形式保存的。写入的向量应当已经按度量要求做过归一化。
+ */
+abstract class VectorSlab {
+    private static final ThreadLocal<float[]> SCRATCH = ThreadLocal.withInitial(() -> new float[0]);
+
+    final int dimension;
+
+    VectorSlab(int dimension) {
+        this.dimension = dimension;
+    }
+
+    /**
+     * 按编码方式创建存储
+     *
+     * @param encoding 编码方式
+     * @param capacity 可容纳的向量数
+     * @param dimension 向量维度
+     * @return 向量存储
+     */
+    static VectorSlab create(VectorEncoding encoding, int capacity, int dimension) {
+        return encoding == VectorEncoding.INT8
+            ? new Int8Slab(capacity, dimension)
+            : new Float32Slab(capacity, dimension);
+    }
+
+    /**
+     * 写入一个向量
+     */
+    abstract void set(int slot, float[] vector, int offset);
+
+    /**
+     * 计算 float 查询向量与槽位中向量的距离
+     */
+    abstract float distance(DistanceMetric metric, float[] query, int queryOffset, int slot);
+
+    /**
+     * 将槽位中的向量还原为 float
+     */
+    abstract void decode(int slot, float[] out, int outOffset);
+
+    /**
+     * 把连续若干个槽位原样复制到同一编码的另一个存储中，不经过解码和重新量化
+     */
+    abstract void copyTo(int slot, VectorSlab target, int targetSlot, int count);
+
+    /**
+     * 计算本存储中一个向量与另一个存储中向量的距离
+     */
+    float distanceTo(DistanceMetric metric, int slot, VectorSlab other, int otherSlot) {
+        float[] scratch = scratch(dimension);
+        decode(slot, scratch, 0);
+        return other.distance(metric, scratch, 0, otherSlot);
+    }
+
+    static float[] scratch(int dimension) {
+        float[] buffer = SCRATCH.get();
+        if (buffer.length < dimension) {
+            buffer = new float[dimension];
+            SCRATCH.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * 原始 float 存储
+     */
+    static final class Float32Slab extends VectorSlab {
+        final float[] vectors;
+
+        Float32Slab(int capacity, int dimension) {
+            super(dimension);
+            this.vectors = new float[capacity * dimension];
+        }
+
+        @Override
+        void set(int slot, float[] vector, int offset) {
+            System.arraycopy(vector, offset, vectors, slot * dimension, dimension);
+        }
+
+        @Override
+        float distance(DistanceMetric metric, float[] query, int queryOffset, int slot) {
+            return metric.distance(query, queryOffset, vectors, slot * dimension, dimension);
+        }
+
+        @Override
+        void decode(int slot, float[] out, int outOffset) {
+            System.arraycopy(vectors, slot * dimension, out, outOffset, dimension);
+        }
+
+        @Override
+        void copyTo(int slot, VectorSlab target, int targetSlot, int count) {
+            System.arraycopy(vectors, slot * dimension, ((Float32Slab) target).vectors, targetSlot * dimension,
+                count * dimension);
+        }
+
+        @Override
+        float distanceTo(DistanceMetric metric, int slot, VectorSlab other, int otherSlot) {
+            return other.distance(metric, vectors, slot * dimension, otherSlot);
+        }
+    }
+
+    /**
+     * int8 标量量化存储
+     * <p>
+     * 向量逐条写入，没有可用于统计每维取值范围的训练集，因此每个向量使用自己的缩放系数：
+     * scale = max(|x|) / 127，第 i 维编码为 round(x[i] / scale)。
+     */
+    static final class Int8Slab extends VectorSlab {
+        final byte[] codes;
+        final float[] scales;
+
+        Int8Slab(int capacity, int dimension) {
+            super(dimension);
+            this.codes = new byte[capacity * dimension];
+            this.scales = new float[capacity];
+        }
+
+        @Override
+        void set(int slot, float[] vector, int offset) {
+            float maxAbs = 0f;
+            for (int i = 0; i < dimension; i++) {
+                maxAbs = Math.max(maxAbs, Math.abs(vector[offset + i]));
+            }
+            int base = slot * dimension;
+            if (maxAbs == 0f) {
+                Arrays.fill(codes, base, base + dimension, (byte) 0);
+                scales[slot] = 0f;
+                return;
+            }
+            float scale = maxAbs / Byte.MAX_VALUE;
+            float inverse = 1f / scale;
+            for (int i = 0; i < dimension; i++) {
+                int code = Math.round(vector[offset + i] * inverse);
+                codes[base + i] = (byte) Math.max(-Byte.MAX_VALUE, Math.min(Byte.MAX_VALUE, code));
+            }
+            scales[slot] = scale;
+        }
+
+        @Override
+        float distance(DistanceMetric metric, float[] query, int queryOffset, int slot) {
+            return metric.distance(query, queryOffset, codes, slot * dimension, scales[slot], dimension);
+        }
+
+        @Override
+        void copyTo(int slot, VectorSlab target, int targetSlot, int count) {
+            Int8Slab int8 = (Int8Slab) target;
+            System.arraycopy(codes, slot * dimension, int8.codes, targetSlot * dimension, count * dimension);
+            System.arraycopy(scales, slot, int8.scales, targetSlot, count);
+        }
+
+        @Override
+        void decode(int slot, float[] out, int outOffset) {
+            int base = slot * dimension;
+            float scale = scales[slot];
+            for (int i = 0; i < dimension; i++) {
+                out[outOffset + i] = scale * codes[base + i];
+            }
+        }
+    }
+}
@@ -1,10 +1,27 @@
 package com.ragflow4j.core.vectorstore;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.IntStream;
+
+import static com.ragflow4j.core.utils.ValidationUtils.ensureGreaterThanZero;
 
 /**
  * 向量存储接口，定义向量数据库的基本操作
+ * <p>
+ * 写操作（添加、更新、写入、删除和 {@link #retainChunks(String, Collection)}）返回的 future 在成功时为 true。
+ * 进程内存储遇到参数错误、写日志或落盘失败等错误时，future 以原始异常结束，不会被转换为 false；
+ * 分片、分层等组合存储原样传递下层的异常。false 只表示存储无法执行该操作（例如旧版 Milvus 集合无法按文档删除），
+ * 或远程服务返回了失败状态。
  */
 public interface VectorStore {
     /**
@@ -18,13 +35,32 @@ public interface VectorStore {
 
     /**
      * 批量添加向量
+     * <p>
+     * 通过 {@link BulkLoader} 按批次流水线写入，同时在途的批次数有上限；需要进度报告或流式输入时直接使用 {@link BulkLoader}。
      *
      * @param vectors 向量列表
      * @param metadata 元数据列表
      * @param batchSize 批次大小
      * @return 添加结果
      */
-    CompletableFuture<Boolean> addVectorsBatch(List<float[]> vectors, List<String> metadata, int batchSize);
+    default CompletableFuture<Boolean> addVectorsBatch(List<float[]> vectors, List<String> metadata, int batchSize) {
+        Iterator<VectorEntry> entries = IntStream.range(0, vectors.size())
+            .mapToObj(i -> VectorEntry.of(vectors.get(i), metadata.get(i)))
+            .iterator();
+        return BulkLoader.builder()
+            .vectorStore(this)
+            .batchSize(batchSize)
+            .build()
+            .load(entries)
+            .thenApply(result -> {
+                for (BulkLoader.BatchResult failure : result.failures) {
+                    if (failure.error != null) {
+                        throw new CompletionException(failure.error);
+                    }
+                }
+                return result.isSuccess();
+            });
+    }
 
     /**
      * 搜索相似向量
@@ -35,6 +71,25 @@ public interface VectorStore {
      */
     CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK);
 
+    /**
+     * 按元数据过滤后搜索相似向量，过滤在检索过程中完成，返回的结果数量不会因过滤而被浪费
+     *
+     * @param queryVector 查询向量
+     * @param topK 返回结果数量
+     * @param filter 元数据过滤条件，为 null 时等同于不过滤
+     * @return 搜索结果
+     */
+    CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK, MetadataFilter filter);
+
+    /**
+     * 批量搜索相似向量，多个查询向量在一次请求中完成
+     *
+     * @param queryVectors 查询向量列表
+     * @param topK 每个查询返回的结果数量
+     * @return 与查询向量一一对应的搜索结果
+     */
+    CompletableFuture<List<List<SearchResult>>> searchBatch(List<float[]> queryVectors, int topK);
+
     /**
      * 删除向量
      *
@@ -52,4 +107,134 @@ public interface VectorStore {
      * @return 更新结果
      */
     CompletableFuture<Boolean> updateVector(String id, float[] vector, String metadata);
+
+    /**
+     * 按给定 ID 批量写入向量，已存在的 ID 被替换
+     * <p>
+     * 默认实现逐条调用 {@link #updateVector(String, float[], String)}，支持批量写入的存储会覆盖为一次请求完成。
+     *
+     * @param ids 向量ID列表
+     * @param vectors 向量列表
+     * @param metadata 元数据列表
+     * @return 写入结果
+     */
+    default CompletableFuture<Boolean> upsertVectors(List<String> ids, List<float[]> vectors, List<String> metadata) {
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            futures.add(updateVector(ids.get(i), vectors.get(i), metadata.get(i)));
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]))
+            .thenApply(v -> futures.stream().map(CompletableFuture::join).allMatch(Boolean::booleanValue));
+    }
+
+    /**
+     * 查询哪些 ID 已经存在
+     * <p>
+     * 默认实现无法判断，返回空集合，调用方会把所有分块视为需要写入。
+     *
+     * @param ids 向量ID列表
+     * @return 已存在的ID
+     */
+    default CompletableFuture<Set<String>> existingIds(List<String> ids) {
+        return CompletableFuture.completedFuture(Collections.emptySet());
+    }
+
+    /**
+     * 按ID读出已存储的向量，用于在检索结果上做二次选择而不必重新计算嵌入
+     * <p>
+     * 余弦度量的存储返回归一化后的向量，量化存储返回解码后的近似值。默认实现无法读出向量，返回空映射，
+     * 调用方需要在缺少向量时退回原有排序。
+     *
+     * @param ids 向量ID列表
+     * @return ID到向量的映射，不存在的ID不出现在结果中
+     */
+    default CompletableFuture<Map<String, float[]>> getVectors(List<String> ids) {
+        return CompletableFuture.completedFuture(Collections.emptyMap());
+    }
+
+    /**
+     * 以 {@link ChunkIds} 推导的确定性 ID 幂等写入文档分块，ID 已存在（内容未变化）的分块直接跳过
+     *
+     * @param vectors 向量列表
+     * @param metadata 元数据列表，需包含 documentId、chunkIndex 和 content
+     * @return 写入结果
+     */
+    default CompletableFuture<Boolean> upsertChunks(List<float[]> vectors, List<String> metadata) {
+        List<String> ids = ChunkIds.of(metadata);
+        return existingIds(ids).thenCompose(existing -> {
+            List<String> newIds = new ArrayList<>();
+            List<float[]> newVectors = new ArrayList<>();
+            List<String> newMetadata = new ArrayList<>();
+            Set<String> seen = new HashSet<>(existing);
+            for (int i = 0; i < ids.size(); i++) {
+                // 同一批次中重复的分块也只写一次
+                if (seen.add(ids.get(i))) {
+                    newIds.add(ids.get(i));
+                    newVectors.add(vectors.get(i));
+                    newMetadata.add(metadata.get(i));
+                }
+            }
+            return upsertVectors(newIds, newVectors, newMetadata);
+        });
+    }
+
+    /**
+     * 读出满足过滤条件的全部向量及元数据，用于在存储之间迁移数据
+     * <p>
+     * 默认实现不支持，返回以 {@link UnsupportedOperationException} 结束的 future。
+     *
+     * @param filter 元数据过滤条件，为 null 时读出全部
+     * @return 满足条件的条目
+     */
+    default CompletableFuture<List<VectorEntry>> listEntries(MetadataFilter filter) {
+        CompletableFuture<List<VectorEntry>> future = new CompletableFuture<>();
+        future.completeExceptionally(new UnsupportedOperationException(
+            getClass().getSimpleName() + " does not support listEntries"));
+        return future;
+    }
+
+    /**
+     * 分批读出满足过滤条件的向量及元数据，一批处理完之后才读取下一批，迁移大量数据时不需要一次读入内存
+     * <p>
+     * 默认实现通过 {@link #listEntries(MetadataFilter)} 一次读出后再分批交付，能够增量读取的存储会覆盖这个方法。
+     * consumer 抛出异常时停止读取，返回的 future 以该异常结束。
+     *
+     * @param filter 元数据过滤条件，为 null 时读出全部
+     * @param batchSize 每批的最大条目数
+     * @param consumer 处理每一批条目
+     * @return 全部读完后完成的 future
+     */
+    default CompletableFuture<Void> scanEntries(MetadataFilter filter, int batchSize,
+                                                Consumer<List<VectorEntry>> consumer) {
+        ensureGreaterThanZero(batchSize, "batchSize");
+        return listEntries(filter).thenAccept(entries -> {
+            for (int start = 0; start < entries.size(); start += batchSize) {
+                consumer.accept(entries.subList(start, Math.min(start + batchSize, entries.size())));
+            }
+        });
+    }
+
+    /**
+     * 是否支持 {@link #listEntries(MetadataFilter)} 和 {@link #scanEntries(MetadataFilter, int, Consumer)}
+     * <p>
+     * 默认返回 false，覆盖了 listEntries 的存储同时覆盖这个方法。
+     *
+     * @return 支持时返回 true
+     */
+    default boolean supportsListEntries() {
+        return false;
+    }
+
+    /**
+     * 删除文档中不在给定 ID 集合内的分块，用于清理内容已变化或已不存在的旧分块
+     * <p>
+     * 默认实现不支持按文档枚举分块，返回 false。
+     *
+     * @param documentId 文档ID
+     * @param ids 需要保留的分块ID
+     * @return 删除结果
+     */
+    default CompletableFuture<Boolean> retainChunks(String documentId, Collection<String> ids) {
+        return CompletableFuture.completedFuture(false);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,47 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.util.Arrays;
+
+/**
+ * 图遍历用的访问标记表
+ * <p>
+ * 通过递增版本号实现 O(1) 重置，每个线程复用一个实例，避免每次查询分配新的位图。
+ */
+final class VisitedTable {
+    private int[] marks = new int[1024];
+    private int epoch;
+
+    /**
+     * 开始一次新的遍历
+     *
+     * @param capacity 预计的节点数量
+     */
+    void reset(int capacity) {
+        if (marks.length < capacity) {
+            marks = new int[capacity + (capacity >>> 2)];
+            epoch = 0;
+        }
+        epoch++;
+        if (epoch == 0) {
+            Arrays.fill(marks, 0);
+            epoch = 1;
+        }
+    }
+
+    /**
+     * 标记节点为已访问
+     *
+     * @param node 节点编号
+     * @return 节点此前未被访问时返回 true
+     */
+    boolean visit(int node) {
+        if (node >= marks.length) {
+            marks = Arrays.copyOf(marks, Math.max(node + 1, marks.length << 1));
+        }
+        if (marks[node] == epoch) {
+            return false;
+        }
+        marks[node] = epoch;
+        return true;
+    }
+}
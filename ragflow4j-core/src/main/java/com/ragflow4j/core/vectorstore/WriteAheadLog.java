@@ -0,0 +1,436 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * 只追加的预写日志，按组提交
+ * <p>
+ * 写入方在内存中追加编码好的记录并拿到一个 future；后台同步线程每次取走所有已追加的记录，
+ * 一次写入并只做一次 fsync，然后完成这一组的全部 future。同步进行期间到达的写入自然归入下一组，
+ * 因此并发写入越多，每次 fsync 分摊的记录就越多。可以设置同步间隔，让同步线程在写盘前多等待一会以积累更大的组。
+ * <p>
+ * 日志按代号分为多个文件 {@code wal-<generation>.log}，检查点时切换到新文件，
+ * 之前的文件在其中的数据全部写入段文件后被删除。每条记录带长度和 CRC32，重放时遇到不完整的记录即截断。
+ */
+final class WriteAheadLog implements AutoCloseable {
+    static final String PREFIX = "wal-";
+    static final String EXTENSION = ".log";
+
+    private static final byte UPSERT = 1;
+    private static final byte DELETE = 2;
+    private static final int RECORD_HEADER_BYTES = 8;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final long syncIntervalNanos;
+    private final Object lock = new Object();
+    private final ArrayDeque<Batch> queue = new ArrayDeque<>();
+    private final AtomicLong bytesSinceRotate = new AtomicLong();
+    private final Thread syncThread;
+
+    private long generation;
+    private Batch current;
+    private CompletableFuture<Void> lastCommit = CompletableFuture.completedFuture(null);
+    private IOException failure;
+    private boolean closed;
+
+    private FileChannel channel;
+    private long channelGeneration = -1;
+
+    /**
+     * @param directory 日志目录
+     * @param generation 新写入使用的代号，需要大于已有日志文件的代号
+     * @param fsync 每组写入后是否强制刷盘，为 false 时只写入操作系统缓存，进程崩溃不丢数据但掉电可能丢失
+     * @param syncIntervalMillis 同步线程写盘前等待积累记录的时间，为 0 时有记录就立即写盘
+     */
+    WriteAheadLog(Path directory, long generation, boolean fsync, long syncIntervalMillis) {
+        this.directory = directory;
+        this.generation = generation;
+        this.fsync = fsync;
+        this.syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        this.current = new Batch(generation);
+        this.syncThread = new Thread(this::syncLoop, "ragflow4j-wal-sync");
+        this.syncThread.setDaemon(true);
+        this.syncThread.start();
+    }
+
+    /**
+     * 编码一条写入记录
+     */
+    static byte[] upsert(String id, float[] vector, String metadata) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + vector.length * Float.BYTES);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(UPSERT);
+            writeString(out, id);
+            writeString(out, metadata);
+            out.writeInt(vector.length);
+            for (float v : vector) {
+                out.writeFloat(v);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 编码一条删除记录
+     */
+    static byte[] delete(String id) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(16 + id.length());
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(DELETE);
+            writeString(out, id);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 按代号顺序重放目录中的全部日志，末尾不完整或校验失败的记录会被截断
+     *
+     * @param directory 日志目录
+     * @param consumer 记录的处理方
+     * @return 已有日志文件的最大代号，没有日志时返回 -1
+     */
+    static long replay(Path directory, Consumer<Record> consumer) {
+        TreeMap<Long, Path> files = list(directory);
+        for (Path file : files.values()) {
+            long valid = replayFile(file, consumer);
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+                if (channel.size() > valid) {
+                    channel.truncate(valid);
+                    channel.force(true);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return files.isEmpty() ? -1 : files.lastKey();
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @param record 由 {@link #upsert} 或 {@link #delete} 编码的记录
+     * @return 记录所在的组写盘完成后完成的 future
+     */
+    CompletableFuture<Void> append(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("write-ahead log is closed");
+            }
+            if (failure != null) {
+                throw new IllegalStateException("write-ahead log failed", failure);
+            }
+            current.write(record, (int) crc.getValue());
+            bytesSinceRotate.addAndGet(record.length + RECORD_HEADER_BYTES);
+            lastCommit = current.committed;
+            lock.notifyAll();
+            return current.committed;
+        }
+    }
+
+    /**
+     * @return 目前为止追加的全部记录写盘完成后完成的 future
+     */
+    CompletableFuture<Void> sync() {
+        synchronized (lock) {
+            return lastCommit;
+        }
+    }
+
+    /**
+     * 当前日志文件自上次切换以来追加的字节数
+     */
+    long bytesSinceRotate() {
+        return bytesSinceRotate.get();
+    }
+
+    /**
+     * 切换到新的日志文件，之后追加的记录都写入新文件
+     *
+     * @return 新文件的代号，代号小于它的文件可以在检查点完成后删除
+     */
+    long rotate() {
+        synchronized (lock) {
+            if (!current.isEmpty()) {
+                queue.add(current);
+            }
+            generation++;
+            current = new Batch(generation);
+            bytesSinceRotate.set(0);
+            lock.notifyAll();
+            return generation;
+        }
+    }
+
+    /**
+     * 删除代号小于 generation 的日志文件
+     */
+    void deleteBefore(long generation) {
+        for (Path file : list(directory).headMap(generation).values()) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * 写完所有已追加的记录后停止同步线程
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            syncThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void syncLoop() {
+        while (true) {
+            synchronized (lock) {
+                while (queue.isEmpty() && current.isEmpty() && !closed) {
+                    waitQuietly(0);
+                }
+                if (queue.isEmpty() && current.isEmpty()) {
+                    break;
+                }
+                if (syncIntervalNanos > 0 && !closed) {
+                    // 等待更多记录进入这一组
+                    long deadline = System.nanoTime() + syncIntervalNanos;
+                    long remaining;
+                    while (!closed && (remaining = deadline - System.nanoTime()) > 0) {
+                        waitQuietly(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+                    }
+                }
+            }
+            List<Batch> batches;
+            synchronized (lock) {
+                if (!current.isEmpty()) {
+                    queue.add(current);
+                    current = new Batch(generation);
+                }
+                batches = new ArrayList<>(queue);
+                queue.clear();
+            }
+            writeBatches(batches);
+        }
+        closeChannel();
+    }
+
+    private void writeBatches(List<Batch> batches) {
+        try {
+            for (Batch batch : batches) {
+                if (batch.generation != channelGeneration) {
+                    closeChannel();
+                    channel = FileChannel.open(directory.resolve(PREFIX + batch.generation + EXTENSION),
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                    channelGeneration = batch.generation;
+                }
+                ByteBuffer buffer = ByteBuffer.wrap(batch.bytes, 0, batch.size);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (fsync) {
+                    channel.force(false);
+                }
+            }
+            for (Batch batch : batches) {
+                batch.committed.complete(null);
+            }
+        } catch (IOException e) {
+            synchronized (lock) {
+                failure = e;
+            }
+            for (Batch batch : batches) {
+                batch.committed.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (fsync) {
+                channel.force(false);
+            }
+            channel.close();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            channel = null;
+            channelGeneration = -1;
+        }
+    }
+
+    private void waitQuietly(long millis) {
+        try {
+            lock.wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static long replayFile(Path file, Consumer<Record> consumer) {
+        long valid = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length <= 0) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                consumer.accept(Record.decode(payload));
+                valid += RECORD_HEADER_BYTES + length;
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return valid;
+    }
+
+    private static TreeMap<Long, Path> list(Path directory) {
+        TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, PREFIX + "*" + EXTENSION)) {
+            for (Path file : stream) {
+                String name = file.getFileName().toString();
+                files.put(Long.parseLong(name.substring(PREFIX.length(), name.length() - EXTENSION.length())), file);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return files;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 重放得到的一条记录
+     */
+    static final class Record {
+        final boolean delete;
+        final String id;
+        final float[] vector;
+        final String metadata;
+
+        private Record(boolean delete, String id, float[] vector, String metadata) {
+            this.delete = delete;
+            this.id = id;
+            this.vector = vector;
+            this.metadata = metadata;
+        }
+
+        private static Record decode(byte[] payload) throws IOException {
+            InputStream bytes = new ByteArrayInputStream(payload);
+            DataInputStream in = new DataInputStream(bytes);
+            byte type = in.readByte();
+            String id = readString(in);
+            if (type == DELETE) {
+                return new Record(true, id, null, null);
+            }
+            String metadata = readString(in);
+            float[] vector = new float[in.readInt()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = in.readFloat();
+            }
+            return new Record(false, id, vector, metadata);
+        }
+    }
+
+    /**
+     * 一组等待写盘的记录
+     */
+    private static final class Batch {
+        final long generation;
+        final CompletableFuture<Void> committed = new CompletableFuture<>();
+        byte[] bytes = new byte[256];
+        int size;
+
+        Batch(long generation) {
+            this.generation = generation;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void write(byte[] record, int checksum) {
+            int required = size + RECORD_HEADER_BYTES + record.length;
+            if (required > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length << 1));
+            }
+            ByteBuffer.wrap(bytes, size, RECORD_HEADER_BYTES).putInt(record.length).putInt(checksum);
+            System.arraycopy(record, 0, bytes, size + RECORD_HEADER_BYTES, record.length);
+            size = required;
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.ragflow4j.core.vectorstore;
+
+/**
+ * 选择 {@link DistanceKernels} 的实现
+ * <p>
+ * 这是 JDK 17+ 版本，打包在 multi-release jar 的 {@code META-INF/versions/17} 下。
+ * Vector API 仍是孵化模块，需要以 {@code --add-modules jdk.incubator.vector} 启动 JVM 才会启用，
+ * 否则以及设置了 {@code -Dragflow4j.vectorstore.simd=false} 时使用标量实现。
+ */
+final class KernelLoader {
+    static final String SIMD_PROPERTY = "ragflow4j.vectorstore.simd";
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+
+    private KernelLoader() {}
+
+    static DistanceKernels load() {
+        boolean enabled = Boolean.parseBoolean(System.getProperty(SIMD_PROPERTY, "true"));
+        if (enabled && ModuleLayer.boot().findModule(VECTOR_MODULE).isPresent()) {
+            try {
+                return new PanamaDistanceKernels();
+            } catch (LinkageError e) {
+                // 模块存在但无法链接时退回标量实现
+            }
+        }
+        return new ScalarDistanceKernels();
+    }
+}
@@ -0,0 +1,122 @@
+package com.ragflow4j.core.vectorstore;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 Vector API 的实现，使用平台首选宽度的 SIMD 寄存器，主循环用 FMA 累加，剩余不足一个寄存器宽度的元素走标量循环
+ * <p>
+ * int8 编码每次读取与 float 寄存器同样多的字节再扩展为 float；首选宽度不足 256 位时字节向量的形状不存在，int8 算子退回标量实现。
+ */
+final class PanamaDistanceKernels extends DistanceKernels {
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Byte> BYTES = FLOATS.length() >= 8
+        ? VectorSpecies.of(byte.class, VectorShape.forBitSize(FLOATS.length() * Byte.SIZE))
+        : null;
+
+    private final ScalarDistanceKernels scalar = new ScalarDistanceKernels();
+
+    @Override
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, bOffset + i);
+            sum = va.fma(vb, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[aOffset + i] * b[bOffset + i];
+        }
+        return result;
+    }
+
+    @Override
+    float squareDistance(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector diff = FloatVector.fromArray(FLOATS, a, aOffset + i)
+                .sub(FloatVector.fromArray(FLOATS, b, bOffset + i));
+            sum = diff.fma(diff, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float diff = a[aOffset + i] - b[bOffset + i];
+            result += diff * diff;
+        }
+        return result;
+    }
+
+    @Override
+    float cosine(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector dot = FloatVector.zero(FLOATS);
+        FloatVector normA = FloatVector.zero(FLOATS);
+        FloatVector normB = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, bOffset + i);
+            dot = va.fma(vb, dot);
+            normA = va.fma(va, normA);
+            normB = vb.fma(vb, normB);
+        }
+        float dotSum = dot.reduceLanes(VectorOperators.ADD);
+        float normASum = normA.reduceLanes(VectorOperators.ADD);
+        float normBSum = normB.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float va = a[aOffset + i];
+            float vb = b[bOffset + i];
+            dotSum += va * vb;
+            normASum += va * va;
+            normBSum += vb * vb;
+        }
+        return ScalarDistanceKernels.cosine(dotSum, normASum, normBSum);
+    }
+
+    @Override
+    float dot(float[] a, int aOffset, byte[] codes, int codeOffset, int length) {
+        if (BYTES == null) {
+            return scalar.dot(a, aOffset, codes, codeOffset, length);
+        }
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, aOffset + i);
+            FloatVector vc = (FloatVector) ByteVector.fromArray(BYTES, codes, codeOffset + i)
+                .convertShape(VectorOperators.B2F, FLOATS, 0);
+            sum = va.fma(vc, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            result += a[aOffset + i] * codes[codeOffset + i];
+        }
+        return result;
+    }
+
+    @Override
+    float squareDistance(float[] a, int aOffset, byte[] codes, int codeOffset, float scale, int length) {
+        if (BYTES == null) {
+            return scalar.squareDistance(a, aOffset, codes, codeOffset, scale, length);
+        }
+        FloatVector negativeScale = FloatVector.broadcast(FLOATS, -scale);
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector vc = (FloatVector) ByteVector.fromArray(BYTES, codes, codeOffset + i)
+                .convertShape(VectorOperators.B2F, FLOATS, 0);
+            FloatVector diff = vc.fma(negativeScale, FloatVector.fromArray(FLOATS, a, aOffset + i));
+            sum = diff.fma(diff, sum);
+        }
+        float result = sum.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            float diff = a[aOffset + i] - scale * codes[codeOffset + i];
+            result += diff * diff;
+        }
+        return result;
+    }
+}
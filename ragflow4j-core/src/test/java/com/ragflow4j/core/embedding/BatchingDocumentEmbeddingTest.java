@@ -0,0 +1,158 @@
+package com.ragflow4j.core.embedding;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BatchingDocumentEmbeddingTest {
+
+    @Test
+    void testConcurrentRequestsShareLengthBuckets() {
+        RecordingEmbedding model = new RecordingEmbedding();
+        try (BatchingDocumentEmbedding batching = BatchingDocumentEmbedding.builder()
+            .delegate(model)
+            .maxBatchSize(6)
+            .maxDelayMillis(10_000)
+            .build()) {
+            List<String> texts = Arrays.asList(repeat('a', 100), "b", repeat('c', 150), "dd", repeat('e', 10), "f");
+            List<CompletableFuture<float[]>> futures = new ArrayList<>();
+            for (String text : texts) {
+                futures.add(batching.embedAsync(text));
+            }
+            for (int i = 0; i < texts.size(); i++) {
+                assertEquals(texts.get(i).length(), futures.get(i).join()[0], 0f);
+            }
+            // 攒满 6 条立即分发，短文本一桶，长文本一桶
+            assertEquals(Arrays.asList(
+                Arrays.asList("b", "f", "dd", repeat('e', 10)),
+                Arrays.asList(repeat('a', 100), repeat('c', 150))), model.batches());
+        }
+    }
+
+    @Test
+    void testQueryLaneFlushesBeforeBulkDeadline() {
+        RecordingEmbedding model = new RecordingEmbedding();
+        try (BatchingDocumentEmbedding batching = BatchingDocumentEmbedding.builder()
+            .delegate(model)
+            .maxBatchSize(32)
+            .maxDelayMillis(60_000)
+            .queryMaxDelayMillis(1)
+            .build()) {
+            CompletableFuture<float[]> bulk = batching.embedAsync("bulk");
+            assertArrayEquals(new float[]{5f}, batching.embed("query"));
+            assertFalse(bulk.isDone());
+            assertEquals(Collections.singletonList(Collections.singletonList("query")), model.batches());
+
+            // 关闭时排队的请求照常完成
+            batching.close();
+            assertArrayEquals(new float[]{4f}, bulk.join());
+            assertTrue(batching.embedAsync("late").isCompletedExceptionally());
+        }
+    }
+
+    @Test
+    void testFailedBucketFailsOnlyItsRequests() {
+        RecordingEmbedding model = new RecordingEmbedding();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (BatchingDocumentEmbedding batching = BatchingDocumentEmbedding.builder()
+            .delegate(model)
+            .maxBatchSize(2)
+            .executor(executor)
+            .build()) {
+            String failing = "fail" + repeat('x', 100);
+            CompletableFuture<float[]> ok = batching.embedAsync("ok");
+            CompletableFuture<float[]> failed = batching.embedAsync(failing);
+            assertArrayEquals(new float[]{2f}, ok.join());
+            assertThrows(CompletionException.class, failed::join);
+            assertEquals(Arrays.asList(Collections.singletonList("ok"), Collections.singletonList(failing)),
+                model.batches());
+
+            assertEquals(2, batching.embedBatch(Arrays.asList("x", "yy")).size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testRejectedBatchFailsItsRequests() {
+        RecordingEmbedding model = new RecordingEmbedding();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.shutdown();
+        try (BatchingDocumentEmbedding batching = BatchingDocumentEmbedding.builder()
+            .delegate(model)
+            .maxBatchSize(1)
+            .executor(executor)
+            .build()) {
+            CompletionException e = assertThrows(CompletionException.class, batching.embedAsync("a")::join);
+            assertTrue(e.getCause() instanceof RejectedExecutionException);
+            // 分发线程没有退出，后续批次照常分发
+            assertThrows(CompletionException.class, batching.embedAsync("b")::join);
+            assertTrue(model.batches().isEmpty());
+        }
+    }
+
+    private static String repeat(char c, int count) {
+        char[] chars = new char[count];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+
+    /**
+     * 以文本长度作为向量，记录每次批量调用的输入
+     */
+    private static class RecordingEmbedding implements DocumentEmbedding {
+        private final List<List<String>> batches = new ArrayList<>();
+
+        synchronized List<List<String>> batches() {
+            return new ArrayList<>(batches);
+        }
+
+        @Override
+        public float[] embed(String text) {
+            return embedBatch(Collections.singletonList(text)).get(0);
+        }
+
+        @Override
+        public CompletableFuture<float[]> embedAsync(String text) {
+            return CompletableFuture.completedFuture(embed(text));
+        }
+
+        @Override
+        public synchronized List<float[]> embedBatch(List<String> texts) {
+            batches.add(new ArrayList<>(texts));
+            List<float[]> embeddings = new ArrayList<>();
+            for (String text : texts) {
+                if (text.startsWith("fail")) {
+                    throw new IllegalStateException("model failure");
+                }
+                embeddings.add(new float[]{text.length()});
+            }
+            return embeddings;
+        }
+
+        @Override
+        public CompletableFuture<List<float[]>> embedBatchAsync(List<String> texts) {
+            return CompletableFuture.completedFuture(embedBatch(texts));
+        }
+
+        @Override
+        public int getDimension() {
+            return 1;
+        }
+
+        @Override
+        public String getModelName() {
+            return "recording";
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.ragflow4j.core.embedding;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CachingDocumentEmbeddingTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRepeatedTextsAreEmbeddedOnce() {
+        CountingEmbedding model = new CountingEmbedding(null);
+        CachingDocumentEmbedding cache = CachingDocumentEmbedding.builder().delegate(model).maxEntries(2).build();
+
+        List<float[]> first = cache.embedBatch(Arrays.asList("a", "bb", "a"));
+        assertArrayEquals(new float[]{2f, 2f}, first.get(1));
+        assertArrayEquals(first.get(0), first.get(2));
+        assertEquals(Collections.singletonList(Arrays.asList("a", "bb")), model.calls());
+
+        // 返回的是副本，调用方修改不影响缓存
+        first.get(1)[0] = 42f;
+        assertArrayEquals(new float[]{2f, 2f}, cache.embed("bb"));
+        cache.embed("ccc");
+        // 容量为 2，最久未使用的 a 被淘汰
+        cache.embed("a");
+        assertEquals(Arrays.asList(Arrays.asList("a", "bb"), Collections.singletonList("ccc"),
+            Collections.singletonList("a")), model.calls());
+
+        CachingDocumentEmbedding.Stats stats = cache.getStats();
+        assertEquals(1, stats.heapHits);
+        assertEquals(4, stats.misses);
+        assertEquals(2, stats.heapSize);
+        assertEquals(0.2, stats.getHitRate(), 1e-9);
+    }
+
+    @Test
+    void testConcurrentMissesShareOneComputation() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountingEmbedding model = new CountingEmbedding(release);
+        CachingDocumentEmbedding cache = CachingDocumentEmbedding.builder().delegate(model).build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<List<float[]>>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(CompletableFuture.supplyAsync(() -> cache.embedBatch(Arrays.asList("same", "x")), executor));
+            }
+            assertTrue(model.started.await(5, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            release.countDown();
+            for (CompletableFuture<List<float[]>> future : futures) {
+                assertArrayEquals(new float[]{4f, 2f}, future.get(5, TimeUnit.SECONDS).get(0));
+            }
+            // 每个键只计算一次，两个键可能由不同的调用方分别认领
+            List<String> computed = new ArrayList<>();
+            for (List<String> call : model.calls()) {
+                computed.addAll(call);
+            }
+            Collections.sort(computed);
+            assertEquals(Arrays.asList("same", "x"), computed);
+            assertEquals(2, cache.getStats().misses);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testDiskTierSurvivesRestartAndWrapsAround() {
+        Path file = tempDir.resolve("embeddings.cache");
+        CountingEmbedding model = new CountingEmbedding(null);
+        try (CachingDocumentEmbedding cache = CachingDocumentEmbedding.builder()
+            .delegate(model)
+            .modelName("counting-v1")
+            .maxEntries(1)
+            .diskCache(file, 3)
+            .build()) {
+            cache.embedBatch(Arrays.asList("a", "bb", "ccc"));
+            assertArrayEquals(new float[]{1f, 2f}, cache.embed("a"));
+            assertEquals(1, cache.getStats().diskHits);
+        }
+
+        try (CachingDocumentEmbedding reopened = CachingDocumentEmbedding.builder()
+            .delegate(model)
+            .modelName("counting-v1")
+            .diskCache(file, 3)
+            .build()) {
+            assertArrayEquals(new float[]{3f, 2f}, reopened.embed("ccc"));
+            assertEquals(3, reopened.getStats().diskSize);
+            // 写满后覆盖最早的 a
+            reopened.embed("dddd");
+            reopened.embed("a");
+            assertEquals(3, model.calls().size());
+            reopened.embed("bb");
+            assertEquals(4, model.calls().size());
+            assertEquals(Collections.singletonList("bb"), model.calls().get(3));
+        }
+
+        assertThrows(IllegalArgumentException.class, () -> CachingDocumentEmbedding.builder()
+            .delegate(model)
+            .modelName("counting-v1")
+            .diskCache(file, 4)
+            .build());
+        // 磁盘层可能被不同权重的同名模型共用，必须显式给出模型名称
+        assertThrows(IllegalArgumentException.class, () -> CachingDocumentEmbedding.builder()
+            .delegate(model)
+            .diskCache(file, 3)
+            .build());
+    }
+
+    @Test
+    void testBrokenEmbeddingFailsOnlyItsText() {
+        CountingEmbedding model = new CountingEmbedding(null);
+        CachingDocumentEmbedding cache = CachingDocumentEmbedding.builder().delegate(model).build();
+
+        CompletableFuture<List<float[]>> batch = cache.embedBatchAsync(Arrays.asList("broken", "ok"));
+        assertThrows(CompletionException.class, batch::join);
+        // 其余文本照常完成并写入缓存，出错的文本不会一直占着 inFlight
+        assertArrayEquals(new float[]{2f, 2f}, cache.embed("ok"));
+        assertThrows(CompletionException.class, cache.embedBatchAsync(Collections.singletonList("broken"))::join);
+        assertEquals(Arrays.asList(Arrays.asList("broken", "ok"), Collections.singletonList("broken")),
+            model.calls());
+    }
+
+    /**
+     * 向量为 {文本长度, 2}（以 broken 开头的文本返回 null），记录每次批量调用的输入
+     */
+    private static class CountingEmbedding implements DocumentEmbedding {
+        private final CountDownLatch release;
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final List<List<String>> calls = Collections.synchronizedList(new ArrayList<>());
+
+        CountingEmbedding(CountDownLatch release) {
+            this.release = release;
+        }
+
+        List<List<String>> calls() {
+            return new ArrayList<>(calls);
+        }
+
+        @Override
+        public float[] embed(String text) {
+            return embedBatch(Collections.singletonList(text)).get(0);
+        }
+
+        @Override
+        public CompletableFuture<float[]> embedAsync(String text) {
+            return CompletableFuture.completedFuture(embed(text));
+        }
+
+        @Override
+        public List<float[]> embedBatch(List<String> texts) {
+            calls.add(new ArrayList<>(texts));
+            started.countDown();
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            List<float[]> embeddings = new ArrayList<>();
+            for (String text : texts) {
+                embeddings.add(text.startsWith("broken") ? null : new float[]{text.length(), 2f});
+            }
+            return embeddings;
+        }
+
+        @Override
+        public CompletableFuture<List<float[]>> embedBatchAsync(List<String> texts) {
+            return CompletableFuture.completedFuture(embedBatch(texts));
+        }
+
+        @Override
+        public int getDimension() {
+            return 2;
+        }
+
+        @Override
+        public String getModelName() {
+            return "counting";
+        }
+    }
+}
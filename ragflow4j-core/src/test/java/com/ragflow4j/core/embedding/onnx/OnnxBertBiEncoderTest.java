@@ -0,0 +1,36 @@
+package com.ragflow4j.core.embedding.onnx;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OnnxBertBiEncoderTest {
+
+    @Test
+    void testPartitionDoesNotSplitWords() {
+        String[] tokens = {"the", "emb", "##edd", "##ing", "model", "runs", "in", "##line"};
+
+        List<int[]> partitions = OnnxBertBiEncoder.partition(tokens, 3);
+
+        assertEquals(4, partitions.size());
+        assertArrayEquals(new int[]{0, 1}, partitions.get(0));
+        assertArrayEquals(new int[]{1, 4}, partitions.get(1));
+        assertArrayEquals(new int[]{4, 6}, partitions.get(2));
+        assertArrayEquals(new int[]{6, 8}, partitions.get(3));
+    }
+
+    @Test
+    void testPartitionSplitsWordLongerThanPartition() {
+        String[] tokens = {"a", "##b", "##c", "##d", "##e"};
+
+        List<int[]> partitions = OnnxBertBiEncoder.partition(tokens, 2);
+
+        assertEquals(3, partitions.size());
+        assertArrayEquals(new int[]{0, 2}, partitions.get(0));
+        assertArrayEquals(new int[]{2, 4}, partitions.get(1));
+        assertArrayEquals(new int[]{4, 5}, partitions.get(2));
+        assertTrue(OnnxBertBiEncoder.partition(new String[0], 2).isEmpty());
+    }
+}
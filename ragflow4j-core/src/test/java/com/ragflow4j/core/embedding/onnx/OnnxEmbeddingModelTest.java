@@ -53,4 +53,55 @@ class OnnxEmbeddingModelTest {
         assertEquals(384, results.get(0).length);
         assertEquals(384, results.get(1).length);
     }
-}
\ No newline at end of file
+
+    @Test
+    void testEmbedBatchPadsTextsIntoSharedCalls() {
+        String modelPath = getClass().getClassLoader().getResource("e5-small-v2-q.onnx").getPath();
+        String tokenizerPath = getClass().getClassLoader().getResource("e5-small-v2-q-tokenizer.json").getPath();
+        OnnxEmbeddingModel embeddingModel = new OnnxEmbeddingModel(
+                Paths.get(modelPath), Paths.get(tokenizerPath), PoolingMode.MEAN, null, 2, 256);
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 400; i++) {
+            longText.append("word").append(i).append(' ');
+        }
+        List<String> texts = Arrays.asList("short", "a somewhat longer sentence to embed", longText.toString(), "text");
+
+        List<float[]> results = embeddingModel.embedBatch(texts);
+        assertEquals(texts.size(), results.size());
+        for (int i = 0; i < texts.size(); i++) {
+            assertArrayEquals(embeddingModel.embed(texts.get(i)), results.get(i), 1e-4f);
+        }
+    }
+
+    @Test
+    void testBuilderAppliesSessionOptions() {
+        String modelPath = getClass().getClassLoader().getResource("e5-small-v2-q.onnx").getPath();
+        String tokenizerPath = getClass().getClassLoader().getResource("e5-small-v2-q-tokenizer.json").getPath();
+        OnnxEmbeddingModel tuned = OnnxEmbeddingModel.builder()
+                .pathToModel(Paths.get(modelPath))
+                .pathToTokenizer(Paths.get(tokenizerPath))
+                .poolingMode(PoolingMode.MEAN)
+                .optimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT)
+                .memoryPatternOptimization(false)
+                .autoThreads()
+                .build();
+        OnnxEmbeddingModel plain = new OnnxEmbeddingModel(modelPath, tokenizerPath, PoolingMode.MEAN);
+        assertArrayEquals(plain.embed("test text"), tuned.embed("test text"), 1e-4f);
+
+        assertThrows(IllegalArgumentException.class, () -> OnnxEmbeddingModel.builder()
+                .pathToModel(Paths.get(modelPath))
+                .pathToTokenizer(Paths.get(tokenizerPath))
+                .poolingMode(PoolingMode.MEAN)
+                .intraOpThreads(2)
+                .autoThreads()
+                .build());
+    }
+
+    @Test
+    void testAutoThreadsKeepsTotalWithinCores() {
+        assertArrayEquals(new int[]{1, 1}, OnnxEmbeddingModel.splitThreads(1));
+        assertArrayEquals(new int[]{1, 2}, OnnxEmbeddingModel.splitThreads(2));
+        assertArrayEquals(new int[]{2, 4}, OnnxEmbeddingModel.splitThreads(8));
+        assertArrayEquals(new int[]{4, 4}, OnnxEmbeddingModel.splitThreads(16));
+    }
+}
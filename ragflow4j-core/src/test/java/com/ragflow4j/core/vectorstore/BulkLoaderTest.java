@@ -0,0 +1,229 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BulkLoaderTest {
+
+    @Test
+    void testWindowBoundsInFlightBatchesAndPulls() {
+        PendingStore store = new PendingStore();
+        AtomicInteger pulled = new AtomicInteger();
+        Iterator<VectorEntry> entries = IntStream.range(0, 100)
+            .peek(i -> pulled.incrementAndGet())
+            .mapToObj(i -> VectorEntry.of(new float[]{i}, "m" + i))
+            .iterator();
+        List<BulkLoader.BatchResult> progress = new ArrayList<>();
+
+        CompletableFuture<BulkLoader.Result> result = BulkLoader.builder()
+            .vectorStore(store)
+            .batchSize(10)
+            .maxInFlight(3)
+            .listener(progress::add)
+            .build()
+            .load(entries);
+
+        // 只有 3 个批次在途，生产方没有被继续拉取
+        assertEquals(3, store.pending.size());
+        assertEquals(30, pulled.get());
+
+        store.pending.remove(0).complete(true);
+        assertEquals(3, store.pending.size());
+        assertEquals(40, pulled.get());
+        assertEquals(1, progress.size());
+
+        while (!store.pending.isEmpty()) {
+            store.pending.remove(0).complete(true);
+        }
+        BulkLoader.Result summary = result.join();
+        assertTrue(summary.isSuccess());
+        assertEquals(10, summary.batches);
+        assertEquals(100, summary.succeeded);
+        assertEquals(10, progress.size());
+        assertEquals(3, store.maxPending);
+    }
+
+    @Test
+    void testFailedBatchesAreReportedAndLoadingContinues() {
+        PendingStore store = new PendingStore();
+        store.immediate = true;
+        store.failingBatch = 2;
+        List<Integer> completed = new ArrayList<>();
+
+        BulkLoader.Result summary = BulkLoader.builder()
+            .vectorStore(store)
+            .batchSize(4)
+            .maxInFlight(2)
+            .listener(batch -> completed.add(batch.index))
+            .build()
+            .load(IntStream.range(0, 18).mapToObj(i -> VectorEntry.of(new float[]{i}, null)))
+            .join();
+
+        assertFalse(summary.isSuccess());
+        assertEquals(5, summary.batches);
+        assertEquals(14, summary.succeeded);
+        assertEquals(4, summary.failed);
+        assertEquals(1, summary.failures.size());
+        assertEquals(2, summary.failures.get(0).index);
+        assertEquals(8, summary.failures.get(0).offset);
+        assertTrue(summary.failures.get(0).error instanceof IllegalStateException);
+        assertEquals(5, completed.size());
+    }
+
+    @Test
+    void testIteratorFailureCompletesExceptionally() {
+        PendingStore store = new PendingStore();
+        store.immediate = true;
+        Iterator<VectorEntry> entries = IntStream.range(0, 10)
+            .mapToObj(i -> {
+                if (i == 7) {
+                    throw new IllegalArgumentException("bad entry");
+                }
+                return VectorEntry.of(new float[]{i}, null);
+            })
+            .iterator();
+
+        CompletableFuture<BulkLoader.Result> result = BulkLoader.builder()
+            .vectorStore(store)
+            .batchSize(5)
+            .build()
+            .load(entries);
+
+        CompletionException error = assertThrows(CompletionException.class, result::join);
+        assertTrue(error.getCause() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    void testSlowProducerDoesNotBlockCompletingBatches() throws Exception {
+        PendingStore store = new PendingStore();
+        CountDownLatch pulling = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger pulled = new AtomicInteger();
+        Iterator<VectorEntry> entries = IntStream.range(0, 4)
+            .mapToObj(i -> {
+                if (pulled.incrementAndGet() == 3) {
+                    pulling.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+                return VectorEntry.of(new float[]{i}, null);
+            })
+            .iterator();
+        List<BulkLoader.BatchResult> progress = Collections.synchronizedList(new ArrayList<>());
+
+        CompletableFuture<BulkLoader.Result> result = BulkLoader.builder()
+            .vectorStore(store)
+            .batchSize(1)
+            .maxInFlight(2)
+            .listener(progress::add)
+            .build()
+            .load(entries);
+
+        // 完成第一个批次的线程接着拉取下一条，在生产方中阻塞
+        Thread producer = new Thread(() -> store.pending(0).complete(true));
+        producer.start();
+        assertTrue(pulling.await(5, TimeUnit.SECONDS));
+        // 生产方阻塞期间，其他批次照常完成并报告进度
+        CompletableFuture.runAsync(() -> store.pending(1).complete(true)).get(5, TimeUnit.SECONDS);
+        assertEquals(2, progress.size());
+
+        release.countDown();
+        producer.join(5000);
+        store.pending(2).complete(true);
+        store.pending(3).complete(true);
+        BulkLoader.Result summary = result.get(5, TimeUnit.SECONDS);
+        assertEquals(4, summary.succeeded);
+        assertEquals(4, progress.size());
+    }
+
+    @Test
+    void testEntriesWithIdsAreUpserted() {
+        try (FlatVectorStore store = FlatVectorStore.builder().dimension(1).build()) {
+            List<VectorEntry> entries = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                entries.add(VectorEntry.of("id" + i, new float[]{i}, "v1"));
+            }
+            entries.add(VectorEntry.of("id0", new float[]{0}, "v2"));
+
+            BulkLoader.Result summary = BulkLoader.builder().vectorStore(store).batchSize(2).build()
+                .load(entries.iterator()).join();
+
+            assertTrue(summary.isSuccess());
+            assertEquals(5, store.size());
+            assertEquals("v2", store.search(new float[]{0}, 1).join().get(0).metadata);
+        }
+    }
+
+    /**
+     * 每次写入返回一个由测试手动完成的 future
+     */
+    private static final class PendingStore implements VectorStore {
+        final List<CompletableFuture<Boolean>> pending = new ArrayList<>();
+        boolean immediate;
+        int failingBatch = -1;
+        int calls;
+        int maxPending;
+
+        @Override
+        public synchronized CompletableFuture<Boolean> addVectors(List<float[]> vectors, List<String> metadata) {
+            int call = calls++;
+            if (immediate) {
+                CompletableFuture<Boolean> future = new CompletableFuture<>();
+                if (call == failingBatch) {
+                    future.completeExceptionally(new IllegalStateException("rejected"));
+                } else {
+                    future.complete(true);
+                }
+                return future;
+            }
+            CompletableFuture<Boolean> future = new CompletableFuture<>();
+            pending.add(future);
+            maxPending = Math.max(maxPending, pending.size());
+            return future;
+        }
+
+        synchronized CompletableFuture<Boolean> pending(int index) {
+            return pending.get(index);
+        }
+
+        @Override
+        public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        @Override
+        public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK, MetadataFilter filter) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        @Override
+        public CompletableFuture<List<List<SearchResult>>> searchBatch(List<float[]> queryVectors, int topK) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        @Override
+        public CompletableFuture<Boolean> deleteVectors(List<String> ids) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> updateVector(String id, float[] vector, String metadata) {
+            return CompletableFuture.completedFuture(true);
+        }
+    }
+}
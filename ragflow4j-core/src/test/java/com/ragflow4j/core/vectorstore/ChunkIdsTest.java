@@ -0,0 +1,30 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkIdsTest {
+
+    @Test
+    void testIdIsDeterministic() {
+        assertEquals(ChunkIds.of("doc1", 0, "hello"), ChunkIds.of("doc1", 0, "hello"));
+        assertNotEquals(ChunkIds.of("doc1", 0, "hello"), ChunkIds.of("doc1", 0, "hello!"));
+        assertNotEquals(ChunkIds.of("doc1", 0, "hello"), ChunkIds.of("doc1", 1, "hello"));
+        assertNotEquals(ChunkIds.of("doc1", 0, "hello"), ChunkIds.of("doc2", 0, "hello"));
+    }
+
+    @Test
+    void testIdFromMetadataMatchesFields() {
+        String metadata = "{\"knowledgeId\":\"kb1\",\"documentId\":\"doc1\",\"chunkIndex\":3,\"content\":\"hello\"}";
+        assertEquals(ChunkIds.of("doc1", 3, "hello"), ChunkIds.of(metadata));
+
+        List<String> ids = ChunkIds.of(Arrays.asList(metadata, "plain", "plain"));
+        assertEquals(3, ids.size());
+        assertEquals(ids.get(1), ids.get(2));
+        assertNotEquals(ids.get(0), ids.get(1));
+    }
+}
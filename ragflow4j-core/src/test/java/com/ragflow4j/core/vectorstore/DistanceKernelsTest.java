@@ -0,0 +1,79 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DistanceKernelsTest {
+    private static final int OFFSET = 3;
+
+    @Test
+    void testScalarKernelsMatchReference() {
+        assertMatchesReference(new ScalarDistanceKernels());
+    }
+
+    @Test
+    void testSelectedKernelsMatchReference() {
+        assertMatchesReference(DistanceKernels.INSTANCE);
+    }
+
+    @Test
+    void testCosineOfZeroVectorIsZero() {
+        float[] zero = new float[16];
+        float[] other = new float[16];
+        other[0] = 1f;
+        assertEquals(0f, DistanceKernels.INSTANCE.cosine(zero, 0, other, 0, 16));
+        assertEquals(1f, DistanceKernels.INSTANCE.cosine(other, 0, other, 0, 16), 1e-6f);
+    }
+
+    /**
+     * 覆盖不足一个 SIMD 宽度、恰好整数倍和带余数的长度，以及非零起始位置
+     */
+    private static void assertMatchesReference(DistanceKernels kernels) {
+        Random random = new Random(42);
+        for (int length = 0; length <= 70; length++) {
+            float[] a = randomFloats(random, length + OFFSET);
+            float[] b = randomFloats(random, length + OFFSET);
+            byte[] codes = new byte[length + OFFSET];
+            random.nextBytes(codes);
+            float scale = 0.01f;
+
+            double dot = 0;
+            double squareDistance = 0;
+            double normA = 0;
+            double normB = 0;
+            double codeDot = 0;
+            double codeSquareDistance = 0;
+            for (int i = 0; i < length; i++) {
+                float x = a[OFFSET + i];
+                float y = b[OFFSET + i];
+                dot += x * y;
+                squareDistance += (x - y) * (x - y);
+                normA += x * x;
+                normB += y * y;
+                codeDot += x * codes[OFFSET + i];
+                double diff = x - scale * codes[OFFSET + i];
+                codeSquareDistance += diff * diff;
+            }
+            double cosine = length == 0 ? 0 : dot / Math.sqrt(normA * normB);
+
+            String message = "length " + length;
+            assertEquals(dot, kernels.dot(a, OFFSET, b, OFFSET, length), 1e-4, message);
+            assertEquals(squareDistance, kernels.squareDistance(a, OFFSET, b, OFFSET, length), 1e-4, message);
+            assertEquals(cosine, kernels.cosine(a, OFFSET, b, OFFSET, length), 1e-5, message);
+            assertEquals(codeDot, kernels.dot(a, OFFSET, codes, OFFSET, length), 1e-2, message);
+            assertEquals(codeSquareDistance,
+                kernels.squareDistance(a, OFFSET, codes, OFFSET, scale, length), 1e-3, message);
+        }
+    }
+
+    private static float[] randomFloats(Random random, int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextFloat() * 2f - 1f;
+        }
+        return values;
+    }
+}
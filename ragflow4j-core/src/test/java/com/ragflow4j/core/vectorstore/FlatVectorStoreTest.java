@@ -0,0 +1,397 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlatVectorStoreTest {
+    private FlatVectorStore vectorStore;
+
+    @BeforeEach
+    void setUp() {
+        vectorStore = FlatVectorStore.builder()
+            .dimension(2)
+            .initialCapacity(2)
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vectorStore.close();
+    }
+
+    @Test
+    void testAddAndSearch() {
+        List<float[]> vectors = Arrays.asList(
+            new float[]{0.0f, 0.0f},
+            new float[]{1.0f, 1.0f},
+            new float[]{5.0f, 5.0f}
+        );
+        List<String> metadata = Arrays.asList("meta0", "meta1", "meta2");
+
+        assertTrue(vectorStore.addVectors(vectors, metadata).join());
+        assertEquals(3, vectorStore.size());
+
+        List<SearchResult> results = vectorStore.search(new float[]{4.5f, 4.5f}, 2).join();
+
+        assertEquals(2, results.size());
+        assertEquals("meta2", results.get(0).metadata);
+        assertEquals(0.5, results.get(0).score, 1e-6);
+        assertEquals(24.5, results.get(1).score, 1e-6);
+    }
+
+    @Test
+    void testUpdateAndDelete() {
+        vectorStore.updateVector("a", new float[]{0.0f, 0.0f}, "a0").join();
+        vectorStore.updateVector("b", new float[]{3.0f, 3.0f}, "b0").join();
+        vectorStore.updateVector("a", new float[]{10.0f, 10.0f}, "a1").join();
+        assertEquals(2, vectorStore.size());
+
+        List<SearchResult> results = vectorStore.search(new float[]{0.0f, 0.0f}, 5).join();
+        assertEquals(2, results.size());
+        assertEquals("b", results.get(0).id);
+        assertEquals("a1", results.get(1).metadata);
+
+        assertTrue(vectorStore.deleteVectors(Arrays.asList("b", "missing")).join());
+        results = vectorStore.search(new float[]{0.0f, 0.0f}, 5).join();
+        assertEquals(1, results.size());
+        assertEquals("a", results.get(0).id);
+    }
+
+    @Test
+    void testUpsertChunksSkipsUnchangedChunks() {
+        String chunk0 = "{\"documentId\":\"doc1\",\"chunkIndex\":0,\"content\":\"a\"}";
+        String chunk1 = "{\"documentId\":\"doc1\",\"chunkIndex\":1,\"content\":\"b\"}";
+        assertTrue(vectorStore.upsertChunks(
+            Arrays.asList(new float[]{0.0f, 0.0f}, new float[]{1.0f, 1.0f}), Arrays.asList(chunk0, chunk1)).join());
+
+        // 重复写入同样的分块不会产生新的向量，也不会覆盖已有的向量
+        assertTrue(vectorStore.upsertChunks(
+            Arrays.asList(new float[]{9.0f, 9.0f}, new float[]{9.0f, 9.0f}), Arrays.asList(chunk0, chunk1)).join());
+        assertEquals(2, vectorStore.size());
+
+        List<SearchResult> results = vectorStore.search(new float[]{0.0f, 0.0f}, 1).join();
+        assertEquals(ChunkIds.of(chunk0), results.get(0).id);
+        assertEquals(0.0, results.get(0).score, 1e-6);
+    }
+
+    @Test
+    void testRetainChunksRemovesStaleChunks() {
+        assertTrue(vectorStore.upsertVectors(Arrays.asList("c0", "c1", "other"),
+            Arrays.asList(new float[]{0.0f, 0.0f}, new float[]{1.0f, 1.0f}, new float[]{2.0f, 2.0f}),
+            Arrays.asList("{\"documentId\":\"doc1\",\"chunkIndex\":0}", "{\"documentId\":\"doc1\",\"chunkIndex\":1}",
+                "{\"documentId\":\"doc2\",\"chunkIndex\":0}")).join());
+
+        assertTrue(vectorStore.retainChunks("doc1", Arrays.asList("c0")).join());
+        assertEquals(new HashSet<>(Arrays.asList("c0", "other")),
+            vectorStore.existingIds(Arrays.asList("c0", "c1", "other")).join());
+        assertEquals(2, vectorStore.size());
+    }
+
+    @Test
+    void testScanEntriesDeliversBatches() {
+        for (int i = 0; i < 10; i++) {
+            vectorStore.updateVector("v" + i, new float[]{i, i}, "{\"knowledgeId\":\"kb" + (i % 2) + "\"}").join();
+        }
+        List<Integer> sizes = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        MetadataFilter filter = MetadataFilter.builder().knowledgeId("kb0").build();
+        vectorStore.scanEntries(filter, 2, batch -> {
+            sizes.add(batch.size());
+            batch.forEach(entry -> ids.add(entry.id));
+        }).join();
+
+        assertEquals(Arrays.asList(2, 2, 1), sizes);
+        assertEquals(Arrays.asList("v0", "v2", "v4", "v6", "v8"), ids);
+        assertTrue(vectorStore.supportsListEntries());
+    }
+
+    @Test
+    void testReplacementsAreCompactedInBackground() {
+        for (int round = 0; round < 4; round++) {
+            List<String> ids = new ArrayList<>();
+            List<float[]> vectors = new ArrayList<>();
+            List<String> metadata = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                ids.add("v" + i);
+                vectors.add(new float[]{i, round});
+                metadata.add("m" + i);
+            }
+            assertTrue(vectorStore.upsertVectors(ids, vectors, metadata).join());
+        }
+
+        // 每轮替换都留下 50 个被删除的槽位，不压缩时会累积到 150 个；超过阈值后由写入触发压缩
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (vectorStore.deadCount() > 50 && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertTrue(vectorStore.deadCount() <= 50);
+        assertEquals(50, vectorStore.size());
+        assertArrayEquals(new float[]{7.0f, 3.0f}, vectorStore.getVectors(Arrays.asList("v7")).join().get("v7"));
+    }
+
+    @Test
+    void testDeletesAreCompactedInBackground() {
+        Random random = new Random(5);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            vectors.add(randomVector(random, 2));
+            vectorStore.updateVector("v" + i, vectors.get(i), "m" + i).join();
+        }
+        List<String> deleted = new ArrayList<>();
+        for (int i = 0; i < 200; i += 2) {
+            deleted.add("v" + i);
+        }
+        assertTrue(vectorStore.deleteVectors(deleted).join());
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (vectorStore.deadCount() != 0 && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertEquals(0, vectorStore.deadCount());
+        assertEquals(100, vectorStore.size());
+        for (int i = 1; i < 200; i += 2) {
+            assertEquals("v" + i, vectorStore.search(vectors.get(i), 1).join().get(0).id);
+        }
+        assertNotEquals("v0", vectorStore.search(vectors.get(0), 1).join().get(0).id);
+        assertTrue(vectorStore.getVectors(Arrays.asList("v0")).join().isEmpty());
+        assertArrayEquals(vectors.get(1), vectorStore.getVectors(Arrays.asList("v1")).join().get("v1"));
+
+        // 少量删除不会触发后台压缩，可以手动压缩
+        vectorStore.deleteVectors(Arrays.asList("v1", "v3")).join();
+        assertEquals(2, vectorStore.deadCount());
+        vectorStore.compact();
+        assertEquals(0, vectorStore.deadCount());
+        vectorStore.updateVector("v0", vectors.get(0), "m0").join();
+        assertEquals("v0", vectorStore.search(vectors.get(0), 1).join().get(0).id);
+        assertEquals(99, vectorStore.size());
+    }
+
+    @Test
+    void testWriteErrorsCompleteExceptionally() {
+        CompletionException error = assertThrows(CompletionException.class, () -> vectorStore.addVectors(
+            Arrays.asList(new float[]{1.0f, 2.0f, 3.0f}), Arrays.asList("meta")).join());
+        assertInstanceOf(IllegalArgumentException.class, error.getCause());
+        error = assertThrows(CompletionException.class, () -> vectorStore.updateVector("a", new float[]{1.0f}, null).join());
+        assertInstanceOf(IllegalArgumentException.class, error.getCause());
+        // 默认的批量写入同样保留原始异常
+        error = assertThrows(CompletionException.class, () -> vectorStore.addVectorsBatch(
+            Arrays.asList(new float[]{1.0f, 2.0f}, new float[]{1.0f}), Arrays.asList("a", "b"), 1).join());
+        assertInstanceOf(IllegalArgumentException.class, error.getCause());
+        assertEquals(1, vectorStore.size());
+    }
+
+    @Test
+    void testSearchWithFilter() {
+        for (int i = 0; i < 20; i++) {
+            String metadata = "{\"knowledgeId\":\"kb" + (i % 4) + "\",\"chunkIndex\":" + i + "}";
+            vectorStore.updateVector("v" + i, new float[]{i, i}, metadata).join();
+        }
+
+        MetadataFilter filter = MetadataFilter.builder().knowledgeId("kb3").build();
+        List<SearchResult> results = vectorStore.search(new float[]{0.0f, 0.0f}, 3, filter).join();
+
+        assertEquals(Arrays.asList("v3", "v7", "v11"), ids(results));
+    }
+
+    @Test
+    void testParallelScanMatchesBruteForce() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        FlatVectorStore store = FlatVectorStore.builder()
+            .dimension(16)
+            .metric(DistanceMetric.COSINE)
+            .pool(pool)
+            .build();
+        try {
+            Random random = new Random(7);
+            List<float[]> vectors = new ArrayList<>();
+            List<String> metadata = new ArrayList<>();
+            for (int i = 0; i < 20000; i++) {
+                vectors.add(randomVector(random, 16));
+                metadata.add("m" + i);
+            }
+            assertTrue(store.addVectorsBatch(vectors, metadata, 5000).join());
+
+            List<float[]> queries = Arrays.asList(randomVector(random, 16), randomVector(random, 16));
+            List<List<SearchResult>> batch = store.searchBatch(queries, 10).join();
+            for (int q = 0; q < queries.size(); q++) {
+                float[] query = DistanceMetric.normalize(queries.get(q));
+                List<String> expected = new ArrayList<>();
+                List<Integer> order = new ArrayList<>();
+                for (int i = 0; i < vectors.size(); i++) {
+                    order.add(i);
+                }
+                float[][] normalized = new float[vectors.size()][];
+                for (int i = 0; i < vectors.size(); i++) {
+                    normalized[i] = DistanceMetric.normalize(vectors.get(i));
+                }
+                order.sort(Comparator.comparingDouble(i -> DistanceMetric.COSINE.distance(query, 0, normalized[i], 0, 16)));
+                for (int i = 0; i < 10; i++) {
+                    expected.add("m" + order.get(i));
+                }
+
+                List<String> single = new ArrayList<>();
+                for (SearchResult result : store.search(queries.get(q), 10).join()) {
+                    single.add(result.metadata);
+                }
+                List<String> batched = new ArrayList<>();
+                for (SearchResult result : batch.get(q)) {
+                    batched.add(result.metadata);
+                }
+                assertEquals(expected, single);
+                assertEquals(expected, batched);
+            }
+        } finally {
+            store.close();
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testPrefixSearchReranksOnFullVectors() {
+        FlatVectorStore exact = FlatVectorStore.builder().dimension(64).metric(DistanceMetric.COSINE).build();
+        FlatVectorStore twoStage = FlatVectorStore.builder()
+            .dimension(64)
+            .metric(DistanceMetric.COSINE)
+            .prefixDimension(16)
+            .prefixFetchFactor(10)
+            .build();
+        try {
+            Random random = new Random(13);
+            for (int i = 0; i < 3000; i++) {
+                float[] vector = matryoshkaVector(random);
+                String metadata = "{\"knowledgeId\":\"kb" + (i % 3) + "\"}";
+                exact.updateVector("v" + i, vector, metadata).join();
+                twoStage.updateVector("v" + i, vector, metadata).join();
+            }
+            List<float[]> queries = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                queries.add(matryoshkaVector(random));
+            }
+
+            double recall = exact.measureRecall(twoStage, queries, 10).join();
+            assertTrue(recall > 0.9, "recall@10 = " + recall);
+
+            // 分数来自完整向量，与精确检索一致
+            MetadataFilter filter = MetadataFilter.builder().knowledgeId("kb1").build();
+            List<SearchResult> expected = exact.search(queries.get(0), 5, filter).join();
+            List<SearchResult> actual = twoStage.search(queries.get(0), 5, filter).join();
+            assertEquals(expected.get(0).id, actual.get(0).id);
+            for (SearchResult result : actual) {
+                assertTrue(result.metadata.contains("kb1"));
+            }
+            assertEquals(expected.get(0).score, actual.get(0).score, 1e-6);
+
+            assertThrows(IllegalArgumentException.class,
+                () -> FlatVectorStore.builder().dimension(16).prefixDimension(16).build());
+        } finally {
+            exact.close();
+            twoStage.close();
+        }
+    }
+
+    @Test
+    void testMeasureRecall() {
+        FlatVectorStore exact = FlatVectorStore.builder().dimension(8).build();
+        HnswVectorStore approximate = HnswVectorStore.builder().dimension(8).m(16).efConstruction(100).efSearch(64).build();
+        try {
+            Random random = new Random(11);
+            for (int i = 0; i < 2000; i++) {
+                float[] vector = randomVector(random, 8);
+                exact.updateVector("v" + i, vector, "m" + i).join();
+                approximate.updateVector("v" + i, vector, "m" + i).join();
+            }
+            List<float[]> queries = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                queries.add(randomVector(random, 8));
+            }
+
+            assertEquals(1.0, exact.measureRecall(exact, queries, 10).join(), 1e-9);
+            double recall = exact.measureRecall(approximate, queries, 10).join();
+            assertTrue(recall > 0.9, "recall@10 = " + recall);
+        } finally {
+            exact.close();
+            approximate.close();
+        }
+    }
+
+    @Test
+    void testInt8EncodingSurvivesGrowthAndCompaction() {
+        FlatVectorStore exact = FlatVectorStore.builder().dimension(32).build();
+        FlatVectorStore int8 = FlatVectorStore.builder()
+            .dimension(32)
+            .initialCapacity(16)
+            .encoding(VectorEncoding.INT8)
+            .build();
+        try {
+            assertEquals(VectorEncoding.INT8, int8.getEncoding());
+            Random random = new Random(5);
+            List<String> deleted = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                float[] vector = randomVector(random, 32);
+                exact.updateVector("v" + i, vector, "m" + i).join();
+                int8.updateVector("v" + i, vector, "m" + i).join();
+                if (i % 2 == 0) {
+                    deleted.add("v" + i);
+                }
+            }
+            exact.deleteVectors(deleted).join();
+            int8.deleteVectors(deleted).join();
+            int8.compact();
+            assertEquals(0, int8.deadCount());
+
+            List<float[]> queries = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                queries.add(randomVector(random, 32));
+            }
+            double recall = exact.measureRecall(int8, queries, 10).join();
+            assertTrue(recall > 0.9, "int8 recall@10 = " + recall);
+
+            // 读出的是还原后的近似向量
+            float[] original = exact.getVectors(Arrays.asList("v1")).join().get("v1");
+            float[] decoded = int8.getVectors(Arrays.asList("v1")).join().get("v1");
+            assertArrayEquals(original, decoded, 0.01f);
+        } finally {
+            exact.close();
+            int8.close();
+        }
+    }
+
+    /**
+     * 前 16 维携带主要信息、后面各维逐渐衰减的向量，模拟 Matryoshka 嵌入
+     */
+    private static float[] matryoshkaVector(Random random) {
+        float[] vector = new float[64];
+        for (int d = 0; d < vector.length; d++) {
+            vector[d] = (float) random.nextGaussian() * (d < 16 ? 1f : 4f / d);
+        }
+        return vector;
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = random.nextFloat() * 2 - 1;
+        }
+        return vector;
+    }
+
+    private static List<String> ids(List<SearchResult> results) {
+        List<String> ids = new ArrayList<>();
+        for (SearchResult result : results) {
+            ids.add(result.id);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,390 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswVectorStoreTest {
+    private HnswVectorStore vectorStore;
+
+    @BeforeEach
+    void setUp() {
+        vectorStore = HnswVectorStore.builder()
+            .dimension(2)
+            .m(8)
+            .efConstruction(64)
+            .efSearch(32)
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vectorStore.close();
+    }
+
+    @Test
+    void testRetainChunksRemovesStaleChunks() {
+        assertTrue(vectorStore.upsertVectors(Arrays.asList("c0", "c1", "other"),
+            Arrays.asList(new float[]{0.0f, 0.0f}, new float[]{1.0f, 1.0f}, new float[]{2.0f, 2.0f}),
+            Arrays.asList("{\"documentId\":\"doc1\",\"chunkIndex\":0}", "{\"documentId\":\"doc1\",\"chunkIndex\":1}",
+                "{\"documentId\":\"doc2\",\"chunkIndex\":0}")).join());
+
+        assertTrue(vectorStore.retainChunks("doc1", Arrays.asList("c0")).join());
+        assertEquals(new HashSet<>(Arrays.asList("c0", "other")),
+            vectorStore.existingIds(Arrays.asList("c0", "c1", "other")).join());
+        assertEquals(2, vectorStore.size());
+    }
+
+    @Test
+    void testAddAndSearch() {
+        List<float[]> vectors = Arrays.asList(
+            new float[]{0.0f, 0.0f},
+            new float[]{1.0f, 1.0f},
+            new float[]{5.0f, 5.0f}
+        );
+        List<String> metadata = Arrays.asList("meta0", "meta1", "meta2");
+
+        assertTrue(vectorStore.addVectors(vectors, metadata).join());
+        assertEquals(3, vectorStore.size());
+
+        List<SearchResult> results = vectorStore.search(new float[]{4.5f, 4.5f}, 2).join();
+
+        assertEquals(2, results.size());
+        // L2 返回平方距离，越小越相似
+        assertEquals(0.5, results.get(0).score, 1e-6);
+        assertEquals(24.5, results.get(1).score, 1e-6);
+    }
+
+    @Test
+    void testSearchReturnsMetadataAndContent() {
+        String metadata = "{\"documentId\":\"doc1\",\"chunkIndex\":0,\"content\":\"hello world\"}";
+        vectorStore.updateVector("a", new float[]{0.0f, 0.0f}, metadata).join();
+        vectorStore.updateVector("b", new float[]{1.0f, 1.0f}, "plain").join();
+
+        List<SearchResult> results = vectorStore.search(new float[]{0.0f, 0.0f}, 2).join();
+
+        assertEquals(metadata, results.get(0).metadata);
+        assertEquals("hello world", results.get(0).content);
+        assertEquals("plain", results.get(1).metadata);
+        assertNull(results.get(1).content);
+    }
+
+    @Test
+    void testSearchBatch() {
+        List<float[]> vectors = Arrays.asList(
+            new float[]{0.0f, 0.0f},
+            new float[]{1.0f, 1.0f},
+            new float[]{5.0f, 5.0f}
+        );
+        vectorStore.addVectors(vectors, Arrays.asList("meta0", "meta1", "meta2")).join();
+
+        List<float[]> queries = Arrays.asList(new float[]{4.5f, 4.5f}, new float[]{0.0f, 0.0f});
+        List<List<SearchResult>> results = vectorStore.searchBatch(queries, 2).join();
+
+        assertEquals(2, results.size());
+        for (int i = 0; i < queries.size(); i++) {
+            List<SearchResult> expected = vectorStore.search(queries.get(i), 2).join();
+            assertEquals(expected.size(), results.get(i).size());
+            for (int j = 0; j < expected.size(); j++) {
+                assertEquals(expected.get(j).id, results.get(i).get(j).id);
+            }
+        }
+        assertEquals(0.0, results.get(1).get(0).score, 1e-6);
+    }
+
+    @Test
+    void testDeleteVectors() {
+        vectorStore.updateVector("a", new float[]{0.0f, 0.0f}, "ma").join();
+        vectorStore.updateVector("b", new float[]{1.0f, 1.0f}, "mb").join();
+
+        assertTrue(vectorStore.deleteVectors(Arrays.asList("a")).join());
+
+        List<SearchResult> results = vectorStore.search(new float[]{0.0f, 0.0f}, 2).join();
+        assertEquals(1, results.size());
+        assertEquals("b", results.get(0).id);
+        assertEquals(1, vectorStore.size());
+    }
+
+    @Test
+    void testUpdateVectorReplacesExistingId() {
+        vectorStore.updateVector("a", new float[]{0.0f, 0.0f}, "ma").join();
+        vectorStore.updateVector("b", new float[]{3.0f, 3.0f}, "mb").join();
+
+        assertTrue(vectorStore.updateVector("b", new float[]{0.1f, 0.1f}, "mb2").join());
+
+        List<SearchResult> results = vectorStore.search(new float[]{0.2f, 0.2f}, 5).join();
+        assertEquals(2, results.size());
+        assertEquals("b", results.get(0).id);
+    }
+
+    @Test
+    void testDimensionMismatch() {
+        CompletionException error = assertThrows(CompletionException.class, () -> vectorStore.addVectors(
+            Arrays.asList(new float[]{1.0f, 2.0f, 3.0f}), Arrays.asList("meta")).join());
+        assertInstanceOf(IllegalArgumentException.class, error.getCause());
+        assertEquals(0, vectorStore.size());
+    }
+
+    @Test
+    void testConcurrentUpsertsOfSameIdLeaveOneNode() {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        HnswVectorStore store = HnswVectorStore.builder().dimension(2).executor(executor).build();
+        try {
+            Random random = new Random(11);
+            List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+            for (int i = 0; i < 2000; i++) {
+                futures.add(store.updateVector("id" + (i % 5), new float[]{random.nextFloat(), random.nextFloat()}, "m"));
+            }
+            futures.forEach(future -> assertTrue(future.join()));
+
+            assertEquals(5, store.size());
+            store.setEfSearch(4096);
+            List<SearchResult> results = store.search(new float[]{0.5f, 0.5f}, 100).join();
+            Set<String> ids = new HashSet<>();
+            results.forEach(result -> ids.add(result.getId()));
+            assertEquals(5, results.size());
+            assertEquals(5, ids.size());
+        } finally {
+            store.close();
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testRecallAgainstBruteForce() {
+        HnswVectorStore store = HnswVectorStore.builder()
+            .dimension(16)
+            .metric(DistanceMetric.COSINE)
+            .efSearch(100)
+            .build();
+        try {
+            assertTrue(recallAt10(store) > 0.9, "recall@10 should be above 0.9");
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void testInt8EncodingRecall() {
+        HnswVectorStore store = HnswVectorStore.builder()
+            .dimension(16)
+            .metric(DistanceMetric.COSINE)
+            .efSearch(100)
+            .encoding(VectorEncoding.INT8)
+            .build();
+        try {
+            assertEquals(VectorEncoding.INT8, store.getEncoding());
+            assertTrue(recallAt10(store) > 0.85, "int8 recall@10 should be above 0.85");
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void testInt8EncodingWithRerank() {
+        HnswVectorStore store = HnswVectorStore.builder()
+            .dimension(16)
+            .metric(DistanceMetric.COSINE)
+            .efSearch(100)
+            .encoding(VectorEncoding.INT8)
+            .rerankCandidates(40)
+            .build();
+        try {
+            assertTrue(recallAt10(store) > 0.9, "reranked int8 recall@10 should be above 0.9");
+
+            // 重排后返回的是全精度分数
+            float[] vector = new float[16];
+            vector[0] = 0.3f;
+            vector[1] = 0.7f;
+            store.insert("exact", vector, null);
+            List<SearchResult> results = store.search(vector, 1).join();
+            assertEquals("exact", results.get(0).id);
+            assertEquals(1.0, results.get(0).score, 1e-6);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void testRecallAndSizeStayStableUnderChurn() {
+        int dimension = 16;
+        int count = 2000;
+        Random random = new Random(11);
+        // 在调用线程上执行，达到阈值后的重建在写入返回前完成
+        HnswVectorStore store = HnswVectorStore.builder()
+            .dimension(dimension)
+            .metric(DistanceMetric.COSINE)
+            .efSearch(100)
+            .encoding(VectorEncoding.INT8)
+            .rerankCandidates(40)
+            .executor(Runnable::run)
+            .build();
+        try {
+            List<float[]> vectors = randomVectors(random, count, dimension);
+            for (int i = 0; i < count; i++) {
+                store.insert("id" + i, vectors.get(i), "{\"round\":0}");
+            }
+            for (int round = 1; round <= 10; round++) {
+                for (int i = 0; i < 600; i++) {
+                    int index = random.nextInt(count);
+                    vectors.set(index, randomVectors(random, 1, dimension).get(0));
+                    store.updateVector("id" + index, vectors.get(index), "{\"round\":" + round + "}").join();
+                }
+                List<String> deleted = new ArrayList<>();
+                for (int i = 0; i < 200; i++) {
+                    deleted.add("id" + random.nextInt(count));
+                }
+                store.deleteVectors(deleted).join();
+                for (String id : deleted) {
+                    int index = Integer.parseInt(id.substring(2));
+                    store.insert(id, vectors.get(index), "{\"round\":" + round + "}");
+                }
+                assertEquals(count, store.size());
+                assertTrue(store.allocatedCount() < count + 1024, "allocated nodes = " + store.allocatedCount());
+            }
+            assertTrue(recallAt10(store, vectors, random) > 0.9, "recall@10 after churn should be above 0.9");
+
+            store.compact();
+            assertEquals(0, store.deadCount());
+            assertEquals(count, store.allocatedCount());
+            assertEquals(count, store.size());
+            assertTrue(recallAt10(store, vectors, random) > 0.9, "recall@10 after compact should be above 0.9");
+            assertEquals("id7", store.search(vectors.get(7), 1).join().get(0).id);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void testConcurrentInsertAndSearch() {
+        int dimension = 8;
+        Random random = new Random(7);
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        List<CompletableFuture<List<SearchResult>>> searches = new ArrayList<>();
+        HnswVectorStore store = HnswVectorStore.builder().dimension(dimension).build();
+        try {
+            for (int batch = 0; batch < 8; batch++) {
+                List<float[]> vectors = randomVectors(random, 200, dimension);
+                List<String> metadata = new ArrayList<>();
+                for (int i = 0; i < vectors.size(); i++) {
+                    metadata.add("meta" + i);
+                }
+                futures.add(store.addVectors(vectors, metadata));
+                searches.add(store.search(vectors.get(0), 5));
+            }
+
+            futures.forEach(future -> assertTrue(future.join()));
+            searches.forEach(search -> assertNotNull(search.join()));
+            assertEquals(1600, store.size());
+            assertEquals(5, store.search(new float[dimension], 5).join().size());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void testFilteredSearchReturnsFullTopK() {
+        Random random = new Random(7);
+        for (int i = 0; i < 500; i++) {
+            String metadata = String.format("{\"knowledgeId\":\"kb%d\",\"documentId\":\"doc%d\",\"chunkIndex\":%d}",
+                i % 10, i % 50, i);
+            vectorStore.updateVector("v" + i, new float[]{random.nextFloat(), random.nextFloat()}, metadata).join();
+        }
+
+        // 只有 1/10 的向量满足条件，过滤在遍历中完成，结果数量仍然是 topK
+        MetadataFilter filter = MetadataFilter.builder().knowledgeId("kb3").build();
+        List<SearchResult> results = vectorStore.search(new float[]{0.5f, 0.5f}, 10, filter).join();
+        assertEquals(10, results.size());
+        for (SearchResult result : results) {
+            assertEquals(3, Integer.parseInt(result.id.substring(1)) % 10);
+        }
+
+        MetadataFilter rangeFilter = MetadataFilter.builder()
+            .documentId("doc3", "doc13")
+            .chunkIndexBetween(0, 100)
+            .build();
+        Set<String> ids = new HashSet<>();
+        for (SearchResult result : vectorStore.search(new float[]{0.5f, 0.5f}, 10, rangeFilter).join()) {
+            ids.add(result.id);
+        }
+        assertEquals(new HashSet<>(Arrays.asList("v3", "v13", "v53", "v63")), ids);
+    }
+
+    @Test
+    void testBuilderValidation() {
+        assertThrows(IllegalArgumentException.class, () -> HnswVectorStore.builder().build());
+        assertThrows(IllegalArgumentException.class, () -> vectorStore.setEfSearch(0));
+    }
+
+    /**
+     * 写入 2000 个随机向量，用 50 个随机查询与暴力搜索对比，返回 recall@10
+     */
+    private static double recallAt10(HnswVectorStore store) {
+        int dimension = store.getDimension();
+        int count = 2000;
+        Random random = new Random(42);
+        List<float[]> vectors = randomVectors(random, count, dimension);
+        for (int i = 0; i < count; i++) {
+            store.insert("id" + i, vectors.get(i), null);
+        }
+        return recallAt10(store, vectors, random);
+    }
+
+    private static double recallAt10(HnswVectorStore store, List<float[]> vectors, Random random) {
+        int dimension = store.getDimension();
+        int hits = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomVectors(random, 1, dimension).get(0);
+            Set<String> expected = bruteForceTopK(vectors, query, 10);
+            for (SearchResult result : store.search(query, 10).join()) {
+                if (expected.contains(result.id)) {
+                    hits++;
+                }
+            }
+        }
+        return hits / (double) (queries * 10);
+    }
+
+    private static List<float[]> randomVectors(Random random, int count, int dimension) {
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[dimension];
+            for (int j = 0; j < dimension; j++) {
+                vector[j] = (float) random.nextGaussian();
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+
+    private static Set<String> bruteForceTopK(List<float[]> vectors, float[] query, int topK) {
+        float[] normalizedQuery = DistanceMetric.normalize(query);
+        Integer[] order = new Integer[vectors.size()];
+        float[] distances = new float[vectors.size()];
+        for (int i = 0; i < vectors.size(); i++) {
+            order[i] = i;
+            distances[i] = DistanceMetric.COSINE.distance(
+                normalizedQuery, 0, DistanceMetric.normalize(vectors.get(i)), 0, query.length);
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(distances[a], distances[b]));
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < topK; i++) {
+            ids.add("id" + order[i]);
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,347 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IvfPqVectorStoreTest {
+    private static final int DIMENSION = 32;
+
+    private IvfPqVectorStore vectorStore;
+
+    @BeforeEach
+    void setUp() {
+        vectorStore = IvfPqVectorStore.builder()
+            .dimension(DIMENSION)
+            .nlist(16)
+            .subspaces(8)
+            .nprobe(4)
+            .rerankDepth(100)
+            .trainingSampleSize(1000)
+            .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vectorStore.close();
+    }
+
+    @Test
+    void testSearchBeforeTraining() {
+        float[] near = new float[DIMENSION];
+        float[] far = new float[DIMENSION];
+        Arrays.fill(far, 5f);
+        vectorStore.updateVector("near", near, "{\"documentId\":\"d1\"}").join();
+        vectorStore.updateVector("far", far, "{\"documentId\":\"d2\"}").join();
+
+        assertFalse(vectorStore.isTrained());
+        List<SearchResult> results = vectorStore.search(new float[DIMENSION], 2).join();
+        assertEquals(Arrays.asList("near", "far"), Arrays.asList(results.get(0).id, results.get(1).id));
+        assertEquals(0.0, results.get(0).score, 1e-6);
+
+        MetadataFilter filter = MetadataFilter.builder().documentId("d2").build();
+        assertEquals("far", vectorStore.search(new float[DIMENSION], 2, filter).join().get(0).id);
+    }
+
+    @Test
+    void testTrainingTriggeredBySampleSize() {
+        List<float[]> vectors = clusteredVectors(new Random(1), 1500);
+        insertAll(vectorStore, vectors);
+        // 训练在后台进行，写入不等待训练完成
+        vectorStore.train().join();
+
+        assertTrue(vectorStore.isTrained());
+        assertEquals(1500, vectorStore.size());
+        // 训练前后写入的向量都能被检索到
+        for (int i : new int[]{0, 999, 1000, 1499}) {
+            assertEquals("id" + i, vectorStore.search(vectors.get(i), 1).join().get(0).id);
+        }
+    }
+
+    @Test
+    void testRecallWithRerank() {
+        Random random = new Random(2);
+        List<float[]> vectors = clusteredVectors(random, 4000);
+        insertAll(vectorStore, vectors);
+
+        double reranked = recallAt10(vectorStore, vectors, random, 4, 100);
+        double exhaustive = recallAt10(vectorStore, vectors, random, 16, 100);
+        double singleProbe = recallAt10(vectorStore, vectors, random, 1, 100);
+        double noRerank = recallAt10(vectorStore, vectors, random, 4, 0);
+        assertTrue(reranked > 0.9, "recall@10 with rerank = " + reranked);
+        assertTrue(exhaustive >= singleProbe, "nprobe=16 recall " + exhaustive + " < nprobe=1 recall " + singleProbe);
+        assertTrue(noRerank > 0.3, "pq-only recall@10 = " + noRerank);
+    }
+
+    @Test
+    void testDeleteAndUpdate() {
+        List<float[]> vectors = clusteredVectors(new Random(3), 1200);
+        insertAll(vectorStore, vectors);
+
+        assertTrue(vectorStore.deleteVectors(Arrays.asList("id5")).join());
+        assertEquals(1199, vectorStore.size());
+        for (SearchResult result : vectorStore.search(vectors.get(5), 10).join()) {
+            assertNotEquals("id5", result.id);
+        }
+
+        vectorStore.updateVector("id6", vectors.get(7), "moved").join();
+        assertEquals(1199, vectorStore.size());
+        List<SearchResult> results = vectorStore.search(vectors.get(7), 2).join();
+        assertEquals(new HashSet<>(Arrays.asList("id6", "id7")), new HashSet<>(Arrays.asList(results.get(0).id, results.get(1).id)));
+    }
+
+    @Test
+    void testDeletedNodesArePurgedFromInvertedLists() {
+        List<float[]> vectors = clusteredVectors(new Random(5), 1200);
+        insertAll(vectorStore, vectors);
+        vectorStore.train().join();
+
+        List<String> deleted = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            deleted.add("id" + i);
+        }
+        vectorStore.deleteVectors(deleted).join();
+        // 替换同一个 ID 也会留下一个被删除的节点
+        vectorStore.updateVector("id300", vectors.get(300), "replaced").join();
+        vectorStore.compact();
+
+        assertEquals(0, vectorStore.deadCount());
+        assertEquals(900, vectorStore.size());
+        assertEquals(new HashSet<>(Arrays.asList("id300")), vectorStore.existingIds(Arrays.asList("id0", "id300")).join());
+        SearchResult closest = vectorStore.search(vectors.get(300), 1).join().get(0);
+        assertEquals("id300", closest.id);
+        assertEquals("replaced", closest.metadata);
+        for (SearchResult result : vectorStore.search(vectors.get(10), 20).join()) {
+            assertTrue(Integer.parseInt(result.id.substring(2)) >= 300, result.id + " was deleted");
+        }
+    }
+
+    @Test
+    void testRebuildReclaimsDeletedAndReplacedNodes() {
+        List<float[]> vectors = clusteredVectors(new Random(8), 1200);
+        insertAll(vectorStore, vectors);
+        vectorStore.train().join();
+        // 反复替换同一批 ID，记录和原始向量只增不减
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 400; i++) {
+                vectorStore.updateVector("id" + i, vectors.get(i), "{\"round\":" + round + "}").join();
+            }
+        }
+        List<String> deleted = new ArrayList<>();
+        for (int i = 1100; i < 1200; i++) {
+            deleted.add("id" + i);
+        }
+        vectorStore.deleteVectors(deleted).join();
+        vectorStore.compact();
+        assertEquals(1100, vectorStore.size());
+        assertEquals(2400, vectorStore.allocatedCount());
+
+        IvfPqVectorStore rebuilt = vectorStore.rebuild();
+        try {
+            assertTrue(rebuilt.isTrained());
+            assertEquals(1100, rebuilt.size());
+            assertEquals(1100, rebuilt.allocatedCount());
+            assertEquals(0, rebuilt.deadCount());
+            assertEquals(new HashSet<>(Arrays.asList("id5")),
+                rebuilt.existingIds(Arrays.asList("id5", "id1150")).join());
+            SearchResult closest = rebuilt.search(vectors.get(5), 1).join().get(0);
+            assertEquals("id5", closest.id);
+            assertEquals("{\"round\":2}", closest.metadata);
+            assertArrayEquals(vectors.get(700), rebuilt.getVectors(Arrays.asList("id700")).join().get("id700"), 0f);
+            double recall = recallAt10(rebuilt, vectors.subList(0, 1100), new Random(9), 4, 100);
+            assertTrue(recall > 0.9, "recall@10 after rebuild = " + recall);
+        } finally {
+            rebuilt.close();
+        }
+    }
+
+    @Test
+    void testRebuildBeforeTraining() {
+        List<float[]> vectors = clusteredVectors(new Random(10), 200);
+        insertAll(vectorStore, vectors);
+        vectorStore.updateVector("id0", vectors.get(0), "replaced").join();
+        vectorStore.deleteVectors(Arrays.asList("id1")).join();
+
+        IvfPqVectorStore rebuilt = vectorStore.rebuild();
+        try {
+            assertFalse(rebuilt.isTrained());
+            assertEquals(199, rebuilt.allocatedCount());
+            assertEquals("replaced", rebuilt.search(vectors.get(0), 1).join().get(0).metadata);
+        } finally {
+            rebuilt.close();
+        }
+    }
+
+    @Test
+    void testCosineWithoutRerank() {
+        IvfPqVectorStore store = IvfPqVectorStore.builder()
+            .dimension(DIMENSION)
+            .nlist(8)
+            .subspaces(16)
+            .nprobe(8)
+            .metric(DistanceMetric.COSINE)
+            .trainingSampleSize(500)
+            .build();
+        try {
+            List<float[]> vectors = clusteredVectors(new Random(4), 800);
+            insertAll(store, vectors);
+            store.train().join();
+
+            List<SearchResult> results = store.search(vectors.get(42), 5).join();
+            assertEquals(5, results.size());
+            assertTrue(results.get(0).score > 0.9, "cosine similarity of the closest match should be high");
+            for (int i = 1; i < results.size(); i++) {
+                assertTrue(results.get(i - 1).score >= results.get(i).score);
+            }
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    void testGetVectorsReturnsOriginalsOrDecodedApproximations() {
+        List<float[]> vectors = clusteredVectors(new Random(7), 800);
+        IvfPqVectorStore store = IvfPqVectorStore.builder()
+            .dimension(DIMENSION)
+            .nlist(8)
+            .subspaces(16)
+            .trainingSampleSize(500)
+            .build();
+        try {
+            insertAll(store, vectors.subList(0, 400));
+            // 训练前返回缓存的原始向量
+            assertArrayEquals(vectors.get(3), store.getVectors(Arrays.asList("id3")).join().get("id3"), 0f);
+
+            for (int i = 400; i < vectors.size(); i++) {
+                store.insert("id" + i, vectors.get(i), null);
+            }
+            store.train().join();
+            assertTrue(store.isTrained());
+            store.deleteVectors(Arrays.asList("id5")).join();
+            Map<String, float[]> decoded = store.getVectors(Arrays.asList("id0", "id5", "id799", "missing")).join();
+            assertEquals(new HashSet<>(Arrays.asList("id0", "id799")), decoded.keySet());
+            // 解码结果是近似值，原向量仍在它最近的几个向量之中
+            for (int i : new int[]{0, 799}) {
+                assertTrue(bruteForceTopK(vectors, decoded.get("id" + i), 5).contains("id" + i));
+            }
+        } finally {
+            store.close();
+        }
+
+        // 开启重排时返回保存的原始向量
+        insertAll(vectorStore, vectors);
+        vectorStore.train().join();
+        assertArrayEquals(vectors.get(42), vectorStore.getVectors(Arrays.asList("id42")).join().get("id42"), 0f);
+    }
+
+    @Test
+    void testBuilderValidation() {
+        assertThrows(IllegalArgumentException.class, () -> IvfPqVectorStore.builder().build());
+        assertThrows(IllegalArgumentException.class,
+            () -> IvfPqVectorStore.builder().dimension(30).subspaces(8).build());
+        assertThrows(IllegalArgumentException.class,
+            () -> IvfPqVectorStore.builder().dimension(32).nlist(100).trainingSampleSize(50).build());
+    }
+
+    @Test
+    void testWriteErrorsCompleteExceptionally() {
+        CompletionException error = assertThrows(CompletionException.class,
+            () -> vectorStore.updateVector("a", new float[DIMENSION - 1], null).join());
+        assertInstanceOf(IllegalArgumentException.class, error.getCause());
+        assertEquals(0, vectorStore.size());
+    }
+
+    @Test
+    void testRetainChunksRemovesStaleChunks() {
+        List<float[]> vectors = clusteredVectors(new Random(6), 1200);
+        for (int i = 0; i < vectors.size(); i++) {
+            vectorStore.updateVector("id" + i, vectors.get(i), "{\"documentId\":\"d" + (i % 2) + "\"}").join();
+        }
+        vectorStore.train().join();
+
+        Set<String> keep = new HashSet<>();
+        for (int i = 0; i < 100; i += 2) {
+            keep.add("id" + i);
+        }
+        assertTrue(vectorStore.retainChunks("d0", keep).join());
+        assertEquals(650, vectorStore.size());
+        assertEquals("id1", vectorStore.search(vectors.get(1), 1).join().get(0).id);
+        MetadataFilter filter = MetadataFilter.builder().documentId("d0").build();
+        for (SearchResult result : vectorStore.search(vectors.get(500), 10, filter).join()) {
+            assertTrue(keep.contains(result.id));
+        }
+    }
+
+    private static void insertAll(IvfPqVectorStore store, List<float[]> vectors) {
+        for (int i = 0; i < vectors.size(); i++) {
+            store.insert("id" + i, vectors.get(i), null);
+        }
+    }
+
+    /**
+     * 围绕 32 个随机中心生成的高斯簇，比均匀随机数据更接近真实的嵌入分布
+     */
+    private static List<float[]> clusteredVectors(Random random, int count) {
+        float[][] centers = new float[32][DIMENSION];
+        for (float[] center : centers) {
+            for (int d = 0; d < DIMENSION; d++) {
+                center[d] = (float) random.nextGaussian() * 3f;
+            }
+        }
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] center = centers[random.nextInt(centers.length)];
+            float[] vector = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                vector[d] = center[d] + (float) random.nextGaussian();
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+
+    private static double recallAt10(IvfPqVectorStore store, List<float[]> vectors, Random random,
+                                     int nprobe, int rerankDepth) {
+        int hits = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = vectors.get(random.nextInt(vectors.size())).clone();
+            for (int d = 0; d < DIMENSION; d++) {
+                query[d] += (float) random.nextGaussian() * 0.5f;
+            }
+            Set<String> expected = bruteForceTopK(vectors, query, 10);
+            for (SearchResult result : store.search(query, 10, nprobe, rerankDepth).join()) {
+                if (expected.contains(result.id)) {
+                    hits++;
+                }
+            }
+        }
+        return hits / (double) (queries * 10);
+    }
+
+    private static Set<String> bruteForceTopK(List<float[]> vectors, float[] query, int topK) {
+        Integer[] order = new Integer[vectors.size()];
+        float[] distances = new float[vectors.size()];
+        for (int i = 0; i < vectors.size(); i++) {
+            order[i] = i;
+            distances[i] = DistanceMetric.L2.distance(query, 0, vectors.get(i), 0, DIMENSION);
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(distances[a], distances[b]));
+        Set<String> ids = new HashSet<>();
+        for (int i = 0; i < topK; i++) {
+            ids.add("id" + order[i]);
+        }
+        return ids;
+    }
+}
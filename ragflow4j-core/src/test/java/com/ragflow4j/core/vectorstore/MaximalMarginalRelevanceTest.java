@@ -0,0 +1,59 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MaximalMarginalRelevanceTest {
+
+    @Test
+    void testNearDuplicatesAreSkipped() {
+        try (FlatVectorStore store = FlatVectorStore.builder().dimension(2).metric(DistanceMetric.COSINE).build()) {
+            store.updateVector("a1", new float[]{1f, 0.10f}, null).join();
+            store.updateVector("a2", new float[]{1f, 0.11f}, null).join();
+            store.updateVector("a3", new float[]{1f, 0.12f}, null).join();
+            store.updateVector("b", new float[]{0.2f, 1f}, null).join();
+            float[] query = {1f, 0.3f};
+
+            List<SearchResult> candidates = store.search(query, 4).join();
+            assertEquals(Arrays.asList("a3", "a2", "a1", "b"), ids(candidates));
+            Map<String, float[]> vectors = store.getVectors(ids(candidates)).join();
+            assertEquals(4, vectors.size());
+
+            List<SearchResult> diverse = MaximalMarginalRelevance.select(query, candidates, vectors, 2, 0.5);
+            assertEquals(Arrays.asList("a3", "b"), ids(diverse));
+            assertEquals(candidates.get(3).score, diverse.get(1).score, 1e-9);
+
+            List<SearchResult> relevant = MaximalMarginalRelevance.select(query, candidates, vectors, 2, 1.0);
+            assertEquals(Arrays.asList("a3", "a2"), ids(relevant));
+        }
+    }
+
+    @Test
+    void testCandidatesWithoutVectorsKeepOriginalOrderAtTheEnd() {
+        List<SearchResult> candidates = Arrays.asList(
+            new SearchResult("x", 0.9), new SearchResult("y", 0.8), new SearchResult("z", 0.7));
+        Map<String, float[]> vectors = new HashMap<>();
+        vectors.put("z", new float[]{1f, 0f});
+
+        List<SearchResult> results = MaximalMarginalRelevance.select(new float[]{1f, 0f}, candidates, vectors, 2, 0.7);
+        assertEquals(Arrays.asList("z", "x"), ids(results));
+
+        assertThrows(IllegalArgumentException.class,
+            () -> MaximalMarginalRelevance.select(new float[]{1f, 0f}, candidates, vectors, 2, 1.5));
+    }
+
+    private static List<String> ids(List<SearchResult> results) {
+        List<String> ids = new ArrayList<>();
+        for (SearchResult result : results) {
+            ids.add(result.id);
+        }
+        return ids;
+    }
+}
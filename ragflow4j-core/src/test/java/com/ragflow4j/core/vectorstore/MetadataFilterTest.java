@@ -0,0 +1,117 @@
+package com.ragflow4j.core.vectorstore;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetadataFilterTest {
+    private static final String METADATA =
+        "{\"knowledgeId\":\"kb1\",\"documentId\":\"doc1\",\"chunkIndex\":3,\"title\":\"RAG\",\"page\":2,\"draft\":false}";
+
+    @Test
+    void testTypedFields() {
+        assertTrue(MetadataFilter.builder().knowledgeId("kb1").build().matches(METADATA));
+        assertTrue(MetadataFilter.builder().knowledgeId("kb0", "kb1").documentId("doc1").build().matches(METADATA));
+        assertFalse(MetadataFilter.builder().knowledgeId("kb2").build().matches(METADATA));
+        assertFalse(MetadataFilter.builder().documentId("doc2").build().matches(METADATA));
+    }
+
+    @Test
+    void testChunkIndexRange() {
+        assertTrue(MetadataFilter.builder().chunkIndexBetween(3, 3).build().matches(METADATA));
+        assertFalse(MetadataFilter.builder().chunkIndexBetween(4, 10).build().matches(METADATA));
+        // 没有 chunkIndex 的元数据不满足范围条件
+        assertFalse(MetadataFilter.builder().chunkIndexBetween(0, 10).build().matches("{\"documentId\":\"doc1\"}"));
+        assertThrows(IllegalArgumentException.class, () -> MetadataFilter.builder().chunkIndexBetween(5, 1));
+    }
+
+    @Test
+    void testArbitraryAttributes() {
+        assertTrue(MetadataFilter.builder().eq("title", "RAG").eq("page", 2).eq("draft", false).build().matches(METADATA));
+        assertFalse(MetadataFilter.builder().eq("page", 3).build().matches(METADATA));
+        assertFalse(MetadataFilter.builder().eq("author", "x").build().matches(METADATA));
+    }
+
+    @Test
+    void testAttributeComparisonIsTypeStrict() {
+        String metadata = "{\"page\":5,\"code\":\"5\",\"draft\":true,\"flag\":\"true\"}";
+        assertTrue(MetadataFilter.builder().eq("page", 5).eq("code", "5").build().matches(metadata));
+        assertTrue(MetadataFilter.builder().eq("page", 5.0).eq("draft", true).eq("flag", "true").build().matches(metadata));
+        assertFalse(MetadataFilter.builder().eq("page", "5").build().matches(metadata));
+        assertFalse(MetadataFilter.builder().eq("code", 5).build().matches(metadata));
+        assertFalse(MetadataFilter.builder().eq("draft", "true").build().matches(metadata));
+        assertFalse(MetadataFilter.builder().eq("flag", true).build().matches(metadata));
+    }
+
+    @Test
+    void testInProcessMatchingAgreesWithMilvusPushdown() throws IOException {
+        List<String> metadata = Arrays.asList(
+            "{\"knowledgeId\":\"kb1\",\"chunkIndex\":\"3\",\"page\":5,\"code\":\"5\",\"draft\":false}",
+            "{\"knowledgeId\":7,\"chunkIndex\":3,\"page\":\"5\",\"code\":5,\"draft\":\"false\"}",
+            "{\"page\":5.0,\"title\":\"say \\\"hi\\\"\"}");
+        List<MetadataFilter> filters = Arrays.asList(
+            MetadataFilter.builder().eq("page", 5).build(),
+            MetadataFilter.builder().eq("page", "5").build(),
+            MetadataFilter.builder().eq("code", "5").build(),
+            MetadataFilter.builder().eq("code", 5L).build(),
+            MetadataFilter.builder().eq("draft", false).build(),
+            MetadataFilter.builder().eq("draft", "false").build(),
+            MetadataFilter.builder().eq("knowledgeId", "7").build(),
+            MetadataFilter.builder().eq("chunkIndex", 3).build(),
+            MetadataFilter.builder().eq("title", "say \"hi\"").build());
+        MilvusVectorStore.Schema schema = new MilvusVectorStore.Schema(false, true);
+        for (MetadataFilter filter : filters) {
+            String expression = MilvusVectorStore.toExpression(filter, schema);
+            for (String raw : metadata) {
+                JsonNode attributes = MAPPER.readTree(VectorMetadata.parse(raw).attributesJson());
+                assertEquals(filter.matches(raw), evaluate(expression, attributes), filter + " on " + raw);
+            }
+        }
+    }
+
+    @Test
+    void testEmptyFilterAndNonJsonMetadata() {
+        MetadataFilter empty = MetadataFilter.builder().build();
+        assertTrue(empty.isEmpty());
+        assertTrue(empty.matches("plain text"));
+        assertTrue(empty.matches(null));
+        assertFalse(MetadataFilter.builder().knowledgeId("kb1").build().matches("plain text"));
+    }
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final Pattern CLAUSE = Pattern.compile("attributes\\[\"(\\w+)\"\\] == (.+)");
+
+    /**
+     * 按 Milvus 的语义求值只含 attributes 等值比较的表达式：JSON 字段与字面量类型不同时不相等
+     */
+    private static boolean evaluate(String expression, JsonNode attributes) throws IOException {
+        for (String clause : expression.split(" && ")) {
+            Matcher matcher = CLAUSE.matcher(clause);
+            assertTrue(matcher.matches(), clause);
+            JsonNode value = attributes.get(matcher.group(1));
+            JsonNode literal = MAPPER.readTree(matcher.group(2));
+            boolean equal;
+            if (value == null) {
+                equal = false;
+            } else if (literal.isNumber()) {
+                equal = value.isNumber() && value.decimalValue().compareTo(literal.decimalValue()) == 0;
+            } else if (literal.isBoolean()) {
+                equal = value.isBoolean() && value.booleanValue() == literal.booleanValue();
+            } else {
+                equal = value.isTextual() && value.textValue().equals(literal.textValue());
+            }
+            if (!equal) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
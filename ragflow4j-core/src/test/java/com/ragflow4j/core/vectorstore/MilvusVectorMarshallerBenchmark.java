@@ -0,0 +1,83 @@
+package com.ragflow4j.core.vectorstore;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 对比旧的逐个 add 到 ArrayList 的方式，统计 10k x 768 批量写入在 SDK 调用路径上的内存分配
+ * <p>
+ * 分配量与 JVM 和硬件有关，不作为单元测试运行，需要时直接执行 main 方法。
+ */
+public class MilvusVectorMarshallerBenchmark {
+    private static final int DIMENSION = 768;
+    private static final int VECTORS = 10_000;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (!(threadMXBean instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("thread allocation counters are not available on this JVM");
+            return;
+        }
+        com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean) threadMXBean;
+        long thread = Thread.currentThread().getId();
+
+        List<float[]> vectors = new ArrayList<>();
+        Random random = new Random(1);
+        for (int i = 0; i < VECTORS; i++) {
+            float[] vector = new float[DIMENSION];
+            for (int j = 0; j < DIMENSION; j++) {
+                vector[j] = random.nextFloat();
+            }
+            vectors.add(vector);
+        }
+        MilvusVectorMarshaller marshaller = new MilvusVectorMarshaller(DIMENSION, vectors.size());
+
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = allocations.getThreadAllocatedBytes(thread);
+            consumeLikeSdk(legacyMarshal(vectors));
+            long middle = allocations.getThreadAllocatedBytes(thread);
+            try (MilvusVectorMarshaller.MarshalledVectors marshalled = marshaller.marshal(vectors)) {
+                consumeLikeSdk(marshalled.vectors());
+            }
+            long end = allocations.getThreadAllocatedBytes(thread);
+            System.out.printf("round %d, bulk insert %d x %d: legacy %d MB, pooled %d MB%n",
+                round, VECTORS, DIMENSION, (middle - start) >> 20, (end - middle) >> 20);
+        }
+    }
+
+    private static List<List<Float>> legacyMarshal(List<float[]> vectors) {
+        List<List<Float>> vectorList = new ArrayList<>();
+        for (float[] vector : vectors) {
+            List<Float> list = new ArrayList<>();
+            for (float v : vector) {
+                list.add(v);
+            }
+            vectorList.add(list);
+        }
+        return vectorList;
+    }
+
+    /**
+     * 模拟 SDK 的 ParamUtils：先逐个元素做类型校验，再把所有向量合并进一个 List<Float>
+     */
+    private static long consumeLikeSdk(List<List<Float>> vectors) {
+        long checked = 0;
+        for (List<?> vector : vectors) {
+            for (Object value : vector) {
+                if (!(value instanceof Float)) {
+                    throw new IllegalStateException("unexpected value " + value);
+                }
+                checked++;
+            }
+        }
+        List<Float> floats = new ArrayList<>();
+        for (List<Float> vector : vectors) {
+            floats.addAll(vector);
+        }
+        return checked + floats.size();
+    }
+}
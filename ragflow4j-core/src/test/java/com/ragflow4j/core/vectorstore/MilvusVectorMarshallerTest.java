@@ -0,0 +1,69 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MilvusVectorMarshallerTest {
+
+    @Test
+    void testMarshalPreservesValues() {
+        MilvusVectorMarshaller marshaller = new MilvusVectorMarshaller(3);
+        List<float[]> vectors = Arrays.asList(
+            new float[]{1.0f, 2.0f, 3.0f},
+            new float[]{4.0f, 5.0f, 6.0f}
+        );
+
+        try (MilvusVectorMarshaller.MarshalledVectors marshalled = marshaller.marshal(vectors)) {
+            List<List<Float>> lists = marshalled.vectors();
+            assertEquals(2, lists.size());
+            assertEquals(Arrays.asList(1.0f, 2.0f, 3.0f), lists.get(0));
+            assertEquals(Arrays.asList(4.0f, 5.0f, 6.0f), new ArrayList<>(lists.get(1)));
+            assertThrows(UnsupportedOperationException.class, () -> lists.get(0).set(0, 9.0f));
+        }
+    }
+
+    @Test
+    void testBuffersAreReturnedToPool() {
+        MilvusVectorMarshaller marshaller = new MilvusVectorMarshaller(2, 1);
+
+        marshaller.marshal(Arrays.asList(new float[]{1.0f, 2.0f}, new float[]{3.0f, 4.0f})).close();
+        // 池容量为 1，多余的缓冲区直接丢弃
+        assertEquals(1, marshaller.pooledBuffers());
+
+        try (MilvusVectorMarshaller.MarshalledVectors marshalled = marshaller.marshal(new float[]{5.0f, 6.0f})) {
+            assertEquals(0, marshaller.pooledBuffers());
+            assertEquals(Arrays.asList(5.0f, 6.0f), marshalled.vectors().get(0));
+        }
+        assertEquals(1, marshaller.pooledBuffers());
+    }
+
+    @Test
+    void testUnexpectedDimensionIsNotPooled() {
+        MilvusVectorMarshaller marshaller = new MilvusVectorMarshaller(2);
+
+        try (MilvusVectorMarshaller.MarshalledVectors marshalled = marshaller.marshal(new float[]{1.0f, 2.0f, 3.0f})) {
+            assertEquals(3, marshalled.vectors().get(0).size());
+        }
+        assertEquals(0, marshaller.pooledBuffers());
+    }
+
+    @Test
+    void testEachComponentIsBoxedOnce() {
+        MilvusVectorMarshaller marshaller = new MilvusVectorMarshaller(3);
+
+        try (MilvusVectorMarshaller.MarshalledVectors marshalled = marshaller.marshal(new float[]{1.0f, 2.0f, 3.0f})) {
+            List<Float> vector = marshalled.vectors().get(0);
+            // SDK 先逐个校验元素，再通过 addAll 调用 toArray，两次读取拿到的是同一批对象
+            Object[] copied = vector.toArray();
+            for (int i = 0; i < vector.size(); i++) {
+                assertSame(vector.get(i), vector.get(i));
+                assertSame(vector.get(i), copied[i]);
+            }
+        }
+    }
+}
@@ -1,21 +1,59 @@
 package com.ragflow4j.core.vectorstore;
 
+import com.alibaba.fastjson.JSONObject;
 import io.milvus.client.MilvusServiceClient;
+import io.milvus.grpc.CollectionSchema;
+import io.milvus.grpc.DataType;
+import io.milvus.grpc.DescribeCollectionResponse;
+import io.milvus.grpc.DescribeIndexResponse;
+import io.milvus.grpc.FieldData;
+import io.milvus.grpc.FieldSchema;
+import io.milvus.grpc.FlushResponse;
+import io.milvus.grpc.GetCollectionStatisticsResponse;
+import io.milvus.grpc.GetIndexBuildProgressResponse;
+import io.milvus.grpc.IndexDescription;
+import io.milvus.grpc.KeyValuePair;
 import io.milvus.grpc.MutationResult;
+import io.milvus.grpc.QueryResults;
+import io.milvus.grpc.ScalarField;
 import io.milvus.grpc.SearchResults;
+import io.milvus.grpc.ShowCollectionsResponse;
+import io.milvus.grpc.StringArray;
+import io.milvus.orm.iterator.QueryIterator;
 import io.milvus.param.R;
+import io.milvus.param.RpcStatus;
+import io.milvus.param.alias.AlterAliasParam;
+import io.milvus.param.alias.CreateAliasParam;
+import io.milvus.param.collection.CreateCollectionParam;
+import io.milvus.param.collection.DescribeCollectionParam;
+import io.milvus.param.collection.DropCollectionParam;
+import io.milvus.param.collection.FlushParam;
+import io.milvus.param.collection.GetCollectionStatisticsParam;
+import io.milvus.param.collection.LoadCollectionParam;
+import io.milvus.param.collection.ReleaseCollectionParam;
+import io.milvus.param.collection.ShowCollectionsParam;
 import io.milvus.param.dml.DeleteParam;
 import io.milvus.param.dml.InsertParam;
+import io.milvus.param.dml.QueryIteratorParam;
+import io.milvus.param.dml.QueryParam;
 import io.milvus.param.dml.SearchParam;
+import io.milvus.param.dml.UpsertParam;
+import io.milvus.param.index.CreateIndexParam;
+import io.milvus.param.index.DescribeIndexParam;
+import io.milvus.param.index.GetIndexBuildProgressParam;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -32,10 +70,23 @@ class MilvusVectorStoreTest {
         MockitoAnnotations.openMocks(this);
         // 模拟集合存在的情况
         when(milvusClient.hasCollection(any())).thenReturn(R.success(true));
+        mockSchema("id", "vector", "metadata", "knowledge_id", "document_id", "chunk_index", "attributes");
         // 使用新构造函数注入模拟的 milvusClient
         vectorStore = new MilvusVectorStore(milvusClient, "test_collection", 128);
     }
 
+    private void mockSchema(String... fields) {
+        CollectionSchema.Builder schema = CollectionSchema.newBuilder();
+        for (String field : fields) {
+            schema.addFields(FieldSchema.newBuilder().setName(field));
+        }
+        when(milvusClient.describeCollection(any(DescribeCollectionParam.class)))
+            .thenReturn(R.success(DescribeCollectionResponse.newBuilder()
+                .setCollectionName("test_collection")
+                .setSchema(schema)
+                .build()));
+    }
+
     @Test
     void testAddVectors() {
         // 准备测试数据
@@ -76,6 +127,137 @@ class MilvusVectorStoreTest {
         verify(milvusClient).search(any(SearchParam.class));
     }
 
+    @Test
+    void testSearchBatchSendsSingleRequest() {
+        when(milvusClient.search(any(SearchParam.class)))
+            .thenReturn(R.success(SearchResults.newBuilder().build()));
+
+        List<float[]> queries = Arrays.asList(
+            new float[]{1.0f, 2.0f},
+            new float[]{3.0f, 4.0f},
+            new float[]{5.0f, 6.0f}
+        );
+        List<List<SearchResult>> results = vectorStore.searchBatch(queries, 2).join();
+
+        // 每个查询向量对应一个结果列表
+        assertEquals(3, results.size());
+        ArgumentCaptor<SearchParam> captor = ArgumentCaptor.forClass(SearchParam.class);
+        verify(milvusClient, times(1)).search(captor.capture());
+        assertEquals(3, captor.getValue().getNQ());
+    }
+
+    @Test
+    void testSearchWithFilterPushesDownExpression() {
+        when(milvusClient.search(any(SearchParam.class)))
+            .thenReturn(R.success(SearchResults.newBuilder().build()));
+
+        MetadataFilter filter = MetadataFilter.builder()
+            .knowledgeId("kb1")
+            .chunkIndexBetween(0, 9)
+            .build();
+        assertNotNull(vectorStore.search(new float[]{1.0f, 2.0f}, 5, filter).join());
+
+        ArgumentCaptor<SearchParam> captor = ArgumentCaptor.forClass(SearchParam.class);
+        verify(milvusClient).search(captor.capture());
+        assertEquals("knowledge_id in [\"kb1\"] && chunk_index >= 0 && chunk_index <= 9", captor.getValue().getExpr());
+        // 类型化字段全部下推，不需要多取结果
+        assertEquals(5, captor.getValue().getTopK());
+    }
+
+    @Test
+    void testSearchWithAttributeFilterPushesDownJsonField() {
+        when(milvusClient.search(any(SearchParam.class)))
+            .thenReturn(R.success(SearchResults.newBuilder().build()));
+
+        MetadataFilter filter = MetadataFilter.builder().eq("title", "RAG").build();
+        assertNotNull(vectorStore.search(new float[]{1.0f, 2.0f}, 5, filter).join());
+
+        ArgumentCaptor<SearchParam> captor = ArgumentCaptor.forClass(SearchParam.class);
+        verify(milvusClient).search(captor.capture());
+        assertEquals("attributes[\"title\"] == \"RAG\"", captor.getValue().getExpr());
+        // 任意字段也在服务端过滤，不需要多取结果
+        assertEquals(5, captor.getValue().getTopK());
+        assertEquals(Arrays.asList("metadata"), captor.getValue().getOutFields());
+    }
+
+    @Test
+    void testLegacyCollectionWritesOriginalFieldsAndOverFetches() {
+        mockSchema("id", "vector", "metadata");
+        MilvusVectorStore legacy = new MilvusVectorStore(milvusClient, "test_collection", 128);
+        when(milvusClient.insert(any(InsertParam.class)))
+            .thenReturn(R.success(MutationResult.newBuilder().build()));
+        when(milvusClient.search(any(SearchParam.class)))
+            .thenReturn(R.success(SearchResults.newBuilder().build()));
+
+        assertTrue(legacy.addVectors(Arrays.asList(new float[]{1.0f, 2.0f}),
+            Arrays.asList("{\"knowledgeId\":\"kb1\"}")).join());
+        ArgumentCaptor<InsertParam> insert = ArgumentCaptor.forClass(InsertParam.class);
+        verify(milvusClient).insert(insert.capture());
+        List<String> names = new ArrayList<>();
+        for (InsertParam.Field field : insert.getValue().getFields()) {
+            names.add(field.getName());
+        }
+        // 旧集合没有过滤字段，只写入原有的列
+        assertEquals(Arrays.asList("id", "vector", "metadata"), names);
+
+        MetadataFilter filter = MetadataFilter.builder().knowledgeId("kb1").build();
+        assertNotNull(legacy.search(new float[]{1.0f, 2.0f}, 5, filter).join());
+        ArgumentCaptor<SearchParam> search = ArgumentCaptor.forClass(SearchParam.class);
+        verify(milvusClient).search(search.capture());
+        assertNull(search.getValue().getExpr());
+        assertEquals(20, search.getValue().getTopK());
+
+        // 无法按文档删除
+        assertFalse(legacy.retainChunks("doc1", Collections.emptyList()).join());
+        verify(milvusClient, never()).delete(any(DeleteParam.class));
+    }
+
+    @Test
+    void testAddVectorsWritesAttributes() {
+        when(milvusClient.insert(any(InsertParam.class)))
+            .thenReturn(R.success(MutationResult.newBuilder().build()));
+
+        assertTrue(vectorStore.addVectors(Arrays.asList(new float[]{1.0f, 2.0f}),
+            Arrays.asList("{\"documentId\":\"doc1\",\"title\":\"RAG\",\"content\":\"text\"}")).join());
+
+        ArgumentCaptor<InsertParam> captor = ArgumentCaptor.forClass(InsertParam.class);
+        verify(milvusClient).insert(captor.capture());
+        List<String> names = new ArrayList<>();
+        for (InsertParam.Field field : captor.getValue().getFields()) {
+            names.add(field.getName());
+        }
+        assertEquals(Arrays.asList("id", "vector", "metadata", "knowledge_id", "document_id", "chunk_index",
+            "attributes"), names);
+        JSONObject attributes = (JSONObject) captor.getValue().getFields().get(6).getValues().get(0);
+        assertEquals("RAG", attributes.getString("title"));
+        // 文本块内容不进入 attributes
+        assertFalse(attributes.containsKey("content"));
+    }
+
+    @Test
+    void testToExpression() {
+        MilvusVectorStore.Schema current = MilvusVectorStore.Schema.CURRENT;
+        assertNull(MilvusVectorStore.toExpression(null, current));
+        assertEquals("attributes[\"title\"] == \"RAG\" && attributes[\"year\"] == 2024 && attributes[\"draft\"] == false",
+            MilvusVectorStore.toExpression(MetadataFilter.builder()
+                .eq("title", "RAG")
+                .eq("year", 2024)
+                .eq("draft", false)
+                .build(), current));
+        assertEquals("knowledge_id in [\"a\",\"b\"] && document_id in [\"say \\\"hi\\\"\"]",
+            MilvusVectorStore.toExpression(MetadataFilter.builder()
+                .knowledgeId("a", "b")
+                .documentId("say \"hi\"")
+                .build(), current));
+
+        // 旧集合没有可下推的字段
+        MilvusVectorStore.Schema legacy = new MilvusVectorStore.Schema(false, false);
+        MetadataFilter filter = MetadataFilter.builder().knowledgeId("a").build();
+        assertNull(MilvusVectorStore.toExpression(filter, legacy));
+        assertFalse(MilvusVectorStore.isPushedDown(filter, legacy));
+        assertTrue(MilvusVectorStore.isPushedDown(filter, current));
+    }
+
     @Test
     void testDeleteVectors() {
         // 准备测试数据
@@ -100,19 +282,259 @@ class MilvusVectorStoreTest {
         float[] vector = new float[]{1.0f, 2.0f};
         String metadata = "updated_meta";
 
-        // 模拟删除和插入都成功
-        when(milvusClient.delete(any(DeleteParam.class)))
-            .thenReturn(R.success(MutationResult.newBuilder().build()));
-        when(milvusClient.insert(any(InsertParam.class)))
+        // 模拟 upsert 成功
+        when(milvusClient.upsert(any(UpsertParam.class)))
             .thenReturn(R.success(MutationResult.newBuilder().build()));
 
         // 执行测试
         CompletableFuture<Boolean> result = vectorStore.updateVector(id, vector, metadata);
 
-        // 验证结果
+        // 验证结果：一次 upsert 完成替换，不再先删除再插入
         assertTrue(result.join());
+        verify(milvusClient).upsert(any(UpsertParam.class));
+        verify(milvusClient, never()).delete(any(DeleteParam.class));
+        verify(milvusClient, never()).insert(any(InsertParam.class));
+    }
+
+    @Test
+    void testUpsertVectorsSendsSingleRequest() {
+        List<String> ids = Arrays.asList("id1", "id2", "id3");
+        List<float[]> vectors = Arrays.asList(new float[]{1.0f, 2.0f}, new float[]{3.0f, 4.0f}, new float[]{5.0f, 6.0f});
+        List<String> metadata = Arrays.asList("meta1", "meta2", "meta3");
+
+        when(milvusClient.upsert(any(UpsertParam.class)))
+            .thenReturn(R.success(MutationResult.newBuilder().build()));
+
+        assertTrue(vectorStore.upsertVectors(ids, vectors, metadata).join());
+        verify(milvusClient, times(1)).upsert(any(UpsertParam.class));
+    }
+
+    @Test
+    void testUpsertChunksSkipsExistingIds() {
+        String unchanged = "{\"documentId\":\"doc1\",\"chunkIndex\":0,\"content\":\"a\"}";
+        String changed = "{\"documentId\":\"doc1\",\"chunkIndex\":1,\"content\":\"b2\"}";
+        List<float[]> vectors = Arrays.asList(new float[]{1.0f, 2.0f}, new float[]{3.0f, 4.0f});
+
+        // 模拟第一个分块已存在
+        QueryResults queryResults = QueryResults.newBuilder()
+            .addFieldsData(FieldData.newBuilder()
+                .setFieldName("id")
+                .setType(DataType.VarChar)
+                .setScalars(ScalarField.newBuilder()
+                    .setStringData(StringArray.newBuilder().addData(ChunkIds.of(unchanged)))))
+            .build();
+        when(milvusClient.query(any(QueryParam.class))).thenReturn(R.success(queryResults));
+        when(milvusClient.upsert(any(UpsertParam.class)))
+            .thenReturn(R.success(MutationResult.newBuilder().build()));
+
+        assertTrue(vectorStore.upsertChunks(vectors, Arrays.asList(unchanged, changed)).join());
+        verify(milvusClient).query(any(QueryParam.class));
+        verify(milvusClient, times(1)).upsert(any(UpsertParam.class));
+
+        // 所有分块都已存在时不发起写入
+        assertTrue(vectorStore.upsertChunks(vectors.subList(0, 1), Arrays.asList(unchanged)).join());
+        verify(milvusClient, times(1)).upsert(any(UpsertParam.class));
+    }
+
+    @Test
+    void testRetainChunksDeletesByDocument() {
+        when(milvusClient.delete(any(DeleteParam.class)))
+            .thenReturn(R.success(MutationResult.newBuilder().build()));
+
+        assertTrue(vectorStore.retainChunks("doc1", Arrays.asList("id1", "id2")).join());
         verify(milvusClient).delete(any(DeleteParam.class));
-        verify(milvusClient).insert(any(InsertParam.class));
+    }
+
+    @Test
+    void testRebuildIndexBuildsInPlaceWithoutIndex() {
+        RpcStatus ok = new RpcStatus(RpcStatus.SUCCESS_MSG);
+        when(milvusClient.describeIndex(any(DescribeIndexParam.class)))
+            .thenReturn(R.success(DescribeIndexResponse.newBuilder().build()));
+        when(milvusClient.createIndex(any(CreateIndexParam.class))).thenReturn(R.success(ok));
+        when(milvusClient.flush(any(FlushParam.class))).thenReturn(R.success(FlushResponse.newBuilder().build()));
+        when(milvusClient.getIndexBuildProgress(any(GetIndexBuildProgressParam.class)))
+            .thenReturn(R.success(GetIndexBuildProgressResponse.newBuilder().setIndexedRows(500).setTotalRows(500).build()));
+        when(milvusClient.loadCollection(any(LoadCollectionParam.class))).thenReturn(R.success(ok));
+
+        assertTrue(vectorStore.rebuildIndex(MilvusIndexParams.ivfFlat(128, 16)).join());
+
+        MilvusVectorStore.IndexStatus status = vectorStore.getIndexStatus();
+        assertEquals(MilvusVectorStore.IndexStatus.State.READY, status.state);
+        assertEquals(1.0, status.getProgress(), 1e-9);
+        verify(milvusClient).createIndex(any(CreateIndexParam.class));
+        verify(milvusClient, never()).createCollection(any(CreateCollectionParam.class));
+    }
+
+    @Test
+    void testRebuildIndexSwapsThroughShadowCollection() {
+        RpcStatus ok = new RpcStatus(RpcStatus.SUCCESS_MSG);
+        QueryIterator iterator = mockShadowRebuild();
+        when(milvusClient.dropCollection(any(DropCollectionParam.class))).thenReturn(R.success(ok));
+        when(milvusClient.createAlias(any(CreateAliasParam.class))).thenReturn(R.success(ok));
+
+        assertTrue(vectorStore.rebuildIndex(MilvusIndexParams.hnsw(32, 256, 128)).join());
+
+        assertEquals(MilvusVectorStore.IndexStatus.State.READY, vectorStore.getIndexStatus().state);
+        verify(milvusClient).createCollection(any(CreateCollectionParam.class));
+        verify(iterator).close();
+        // 旧集合不是别名，删除后建同名别名指向新集合
+        verify(milvusClient).dropCollection(any(DropCollectionParam.class));
+        verify(milvusClient).createAlias(any(CreateAliasParam.class));
+        verify(milvusClient, never()).alterAlias(any(AlterAliasParam.class));
+    }
+
+    @Test
+    void testRebuildKeepsLegacyCollectionWhenDropFails() {
+        mockShadowRebuild();
+        when(milvusClient.dropCollection(any(DropCollectionParam.class)))
+            .thenReturn(R.failed(new IllegalStateException("collection is busy")));
+
+        assertFalse(vectorStore.rebuildIndex(MilvusIndexParams.hnsw(32, 256, 128)).join());
+
+        assertEquals(MilvusVectorStore.IndexStatus.State.FAILED, vectorStore.getIndexStatus().state);
+        verify(milvusClient, never()).createAlias(any(CreateAliasParam.class));
+        // 旧集合删除失败后放弃切换，写入仍然发往旧集合
+        when(milvusClient.insert(any(InsertParam.class))).thenReturn(R.success(MutationResult.newBuilder().build()));
+        assertTrue(vectorStore.addVectors(Collections.singletonList(new float[128]),
+            Collections.singletonList("{}")).join());
+        ArgumentCaptor<InsertParam> insert = ArgumentCaptor.forClass(InsertParam.class);
+        verify(milvusClient).insert(insert.capture());
+        assertEquals("test_collection", insert.getValue().getCollectionName());
+    }
+
+    @Test
+    void testOpenRecoversAliasToLatestShadowCollection() {
+        when(milvusClient.hasCollection(any())).thenReturn(R.success(false));
+        when(milvusClient.showCollections(any(ShowCollectionsParam.class)))
+            .thenReturn(R.success(ShowCollectionsResponse.newBuilder()
+                .addCollectionNames("test_collection_100")
+                .addCollectionNames("test_collection_200")
+                .addCollectionNames("test_collection_archive")
+                .build()));
+        when(milvusClient.createAlias(any(CreateAliasParam.class)))
+            .thenReturn(R.success(new RpcStatus(RpcStatus.SUCCESS_MSG)));
+
+        new MilvusVectorStore(milvusClient, "test_collection", 128);
+
+        ArgumentCaptor<CreateAliasParam> alias = ArgumentCaptor.forClass(CreateAliasParam.class);
+        verify(milvusClient).createAlias(alias.capture());
+        assertEquals("test_collection_200", alias.getValue().getCollectionName());
+        verify(milvusClient, never()).createCollection(any(CreateCollectionParam.class));
+    }
+
+    @Test
+    void testAutoIndexingChecksDefaultThreshold() {
+        when(milvusClient.insert(any(InsertParam.class))).thenReturn(R.success(MutationResult.newBuilder().build()));
+        when(milvusClient.describeIndex(any(DescribeIndexParam.class)))
+            .thenReturn(R.success(DescribeIndexResponse.newBuilder().build()));
+        when(milvusClient.getCollectionStatistics(any(GetCollectionStatisticsParam.class)))
+            .thenReturn(R.success(GetCollectionStatisticsResponse.newBuilder()
+                .addStats(KeyValuePair.newBuilder().setKey("row_count").setValue("2000"))
+                .build()));
+
+        assertTrue(vectorStore.addVectors(zeroVectors(2000), metadata(2000)).join());
+
+        // 构造函数默认的阈值是 10000 行，写满一批后检查行数，2000 行还不需要建索引
+        verify(milvusClient, timeout(5000)).getCollectionStatistics(any(GetCollectionStatisticsParam.class));
+        verify(milvusClient, never()).createIndex(any(CreateIndexParam.class));
+    }
+
+    @Test
+    void testAutoIndexingCanBeDisabled() {
+        when(milvusClient.insert(any(InsertParam.class))).thenReturn(R.success(MutationResult.newBuilder().build()));
+        MilvusVectorStore store = MilvusVectorStore.builder()
+            .client(milvusClient)
+            .collectionName("test_collection")
+            .dimension(128)
+            .indexThreshold(0)
+            .build();
+
+        assertTrue(store.addVectors(zeroVectors(2000), metadata(2000)).join());
+
+        verify(milvusClient, never()).describeIndex(any(DescribeIndexParam.class));
+        verify(milvusClient, never()).getCollectionStatistics(any(GetCollectionStatisticsParam.class));
+    }
+
+    @Test
+    void testLegacyCollectionIsDroppedAfterInFlightSearchesFinish() throws Exception {
+        mockShadowRebuild();
+        CountDownLatch searching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(milvusClient.search(any(SearchParam.class))).thenAnswer(invocation -> {
+            searching.countDown();
+            release.await();
+            return R.failed(new IllegalStateException("no results"));
+        });
+        when(milvusClient.dropCollection(any(DropCollectionParam.class)))
+            .thenReturn(R.success(new RpcStatus(RpcStatus.SUCCESS_MSG)));
+        when(milvusClient.createAlias(any(CreateAliasParam.class)))
+            .thenReturn(R.success(new RpcStatus(RpcStatus.SUCCESS_MSG)));
+
+        CompletableFuture<List<SearchResult>> search = vectorStore.search(new float[128], 5);
+        assertTrue(searching.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Boolean> rebuilt = vectorStore.rebuildIndex(MilvusIndexParams.hnsw(32, 256, 128));
+
+        // 旧集合上的查询还没有结束，切换停在删除旧集合之前
+        Thread.sleep(300);
+        assertFalse(rebuilt.isDone());
+        verify(milvusClient, never()).dropCollection(any(DropCollectionParam.class));
+
+        release.countDown();
+        assertTrue(rebuilt.get(5, TimeUnit.SECONDS));
+        assertNotNull(search.join());
+        verify(milvusClient).dropCollection(any(DropCollectionParam.class));
+        verify(milvusClient).createAlias(any(CreateAliasParam.class));
+    }
+
+    private static List<float[]> zeroVectors(int count) {
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            vectors.add(new float[128]);
+        }
+        return vectors;
+    }
+
+    private static List<String> metadata(int count) {
+        return new ArrayList<>(Collections.nCopies(count, "{}"));
+    }
+
+    /**
+     * 模拟已有索引的旧版本集合上的影子重建，删除旧集合和建别名由各测试自行模拟
+     */
+    private QueryIterator mockShadowRebuild() {
+        RpcStatus ok = new RpcStatus(RpcStatus.SUCCESS_MSG);
+        when(milvusClient.describeIndex(any(DescribeIndexParam.class)))
+            .thenReturn(R.success(DescribeIndexResponse.newBuilder()
+                .addIndexDescriptions(IndexDescription.newBuilder().setIndexName("vector_index"))
+                .build()));
+        when(milvusClient.describeCollection(any(DescribeCollectionParam.class)))
+            .thenReturn(R.success(DescribeCollectionResponse.newBuilder().setCollectionName("test_collection").build()));
+        when(milvusClient.getCollectionStatistics(any(GetCollectionStatisticsParam.class)))
+            .thenReturn(R.success(GetCollectionStatisticsResponse.newBuilder()
+                .addStats(KeyValuePair.newBuilder().setKey("row_count").setValue("0"))
+                .build()));
+        when(milvusClient.createCollection(any(CreateCollectionParam.class))).thenReturn(R.success(ok));
+        when(milvusClient.createIndex(any(CreateIndexParam.class))).thenReturn(R.success(ok));
+        when(milvusClient.loadCollection(any(LoadCollectionParam.class))).thenReturn(R.success(ok));
+        QueryIterator iterator = mock(QueryIterator.class);
+        when(iterator.next()).thenReturn(Collections.emptyList());
+        when(milvusClient.queryIterator(any(QueryIteratorParam.class))).thenReturn(R.success(iterator));
+        when(milvusClient.flush(any(FlushParam.class))).thenReturn(R.success(FlushResponse.newBuilder().build()));
+        when(milvusClient.getIndexBuildProgress(any(GetIndexBuildProgressParam.class)))
+            .thenReturn(R.success(GetIndexBuildProgressResponse.newBuilder().build()));
+        when(milvusClient.releaseCollection(any(ReleaseCollectionParam.class))).thenReturn(R.success(ok));
+        return iterator;
+    }
+
+    @Test
+    void testIndexParams() {
+        MilvusIndexParams hnsw = MilvusIndexParams.hnsw(16, 200, 64);
+        assertEquals("{\"M\":16,\"efConstruction\":200}", hnsw.extraParam());
+        assertEquals("{\"ef\":64}", hnsw.searchParam(10));
+        assertEquals("{\"ef\":100}", hnsw.searchParam(100));
+        assertEquals("{\"nprobe\":16}", MilvusIndexParams.ivfFlat(1024, 16).searchParam(100));
+        assertEquals(hnsw, MilvusIndexParams.hnsw(16, 200, 64));
+        assertThrows(IllegalArgumentException.class, () -> MilvusIndexParams.ivfFlat(8, 16));
     }
 
     @Test
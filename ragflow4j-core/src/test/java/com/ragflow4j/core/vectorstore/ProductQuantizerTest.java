@@ -0,0 +1,83 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProductQuantizerTest {
+    private static final int DIMENSION = 16;
+    private static final int SUBSPACES = 4;
+    private static final int COUNT = 2000;
+
+    @Test
+    void testKMeansSeparatesClusters() {
+        float[] data = new float[200 * 2];
+        Random random = new Random(1);
+        for (int i = 0; i < 200; i++) {
+            float center = i < 100 ? -10f : 10f;
+            data[i * 2] = center + (float) random.nextGaussian();
+            data[i * 2 + 1] = center + (float) random.nextGaussian();
+        }
+        float[] centroids = KMeans.train(data, 200, 2, 0, 2, 2, 10, 7, ForkJoinPool.commonPool());
+
+        int first = KMeans.nearest(centroids, 2, 2, new float[]{-10f, -10f}, 0);
+        int second = KMeans.nearest(centroids, 2, 2, new float[]{10f, 10f}, 0);
+        assertNotEquals(first, second);
+        assertEquals(-10f, centroids[first * 2], 0.5f);
+        assertEquals(10f, centroids[second * 2 + 1], 0.5f);
+    }
+
+    @Test
+    void testTableScoreMatchesDecodedDistance() {
+        float[] data = randomData(new Random(2));
+        ProductQuantizer quantizer = ProductQuantizer.train(data, COUNT, DIMENSION, SUBSPACES, 8, 3,
+            ForkJoinPool.commonPool());
+        byte[] codes = new byte[COUNT * SUBSPACES];
+        quantizer.encodeAll(data, COUNT, codes, ForkJoinPool.commonPool());
+
+        float[] query = randomData(new Random(3));
+        float[] l2Table = new float[SUBSPACES * quantizer.codebookSize];
+        float[] ipTable = new float[SUBSPACES * quantizer.codebookSize];
+        quantizer.l2Table(query, l2Table);
+        quantizer.innerProductTable(query, ipTable);
+
+        float[] decoded = new float[DIMENSION];
+        for (int i = 0; i < 20; i++) {
+            quantizer.decode(codes, i * SUBSPACES, decoded, 0);
+            assertEquals(DistanceMetric.L2.distance(query, 0, decoded, 0, DIMENSION),
+                quantizer.score(l2Table, codes, i * SUBSPACES), 1e-3f);
+            assertEquals(-DistanceMetric.INNER_PRODUCT.distance(query, 0, decoded, 0, DIMENSION),
+                quantizer.score(ipTable, codes, i * SUBSPACES), 1e-3f);
+        }
+    }
+
+    @Test
+    void testEncodingReducesReconstructionError() {
+        float[] data = randomData(new Random(4));
+        ProductQuantizer quantizer = ProductQuantizer.train(data, COUNT, DIMENSION, SUBSPACES, 8, 5,
+            ForkJoinPool.commonPool());
+
+        byte[] codes = new byte[SUBSPACES];
+        float[] decoded = new float[DIMENSION];
+        double error = 0;
+        double energy = 0;
+        for (int i = 0; i < COUNT; i++) {
+            quantizer.encode(data, i * DIMENSION, codes, 0);
+            quantizer.decode(codes, 0, decoded, 0);
+            error += DistanceMetric.L2.distance(data, i * DIMENSION, decoded, 0, DIMENSION);
+            energy += DistanceMetric.L2.distance(data, i * DIMENSION, new float[DIMENSION], 0, DIMENSION);
+        }
+        assertTrue(error < energy * 0.5, "quantization error should be well below the signal energy");
+    }
+
+    private static float[] randomData(Random random) {
+        float[] data = new float[COUNT * DIMENSION];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (float) random.nextGaussian();
+        }
+        return data;
+    }
+}
@@ -0,0 +1,388 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SegmentedVectorStoreTest {
+    private static final int DIMENSION = 8;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testSearchAcrossTailAndSegments() {
+        List<float[]> vectors = randomVectors(new Random(1), 350);
+        try (SegmentedVectorStore store = newStore(100, 8)) {
+            insertAll(store, vectors);
+            // 300 条已写成段，50 条仍在尾部
+            waitForSegments(store, 3);
+            assertEquals(350, store.size());
+
+            Random random = new Random(2);
+            for (int q = 0; q < 20; q++) {
+                float[] query = randomVectors(random, 1).get(0);
+                List<SearchResult> results = store.searchNow(query, 10, null);
+                assertEquals(bruteForceTopK(vectors, query, 10), ids(results));
+            }
+        }
+    }
+
+    @Test
+    void testReopenServesPersistedSegments() {
+        List<float[]> vectors = randomVectors(new Random(3), 250);
+        try (SegmentedVectorStore store = newStore(100, 8)) {
+            insertAll(store, vectors);
+            store.updateVector("id7", vectors.get(7), "{\"documentId\":\"d7\",\"content\":\"chunk seven\"}").join();
+            assertTrue(store.deleteVectors(Arrays.asList("id3", "id120", "id240")).join());
+        }
+
+        try (SegmentedVectorStore reopened = newStore(100, 8)) {
+            assertEquals(247, reopened.size());
+            assertEquals(3, reopened.segmentCount());
+
+            SearchResult result = reopened.search(vectors.get(7), 1).join().get(0);
+            assertEquals("id7", result.id);
+            assertEquals("chunk seven", result.content);
+            for (String deleted : Arrays.asList("id3", "id120", "id240")) {
+                int index = Integer.parseInt(deleted.substring(2));
+                assertFalse(ids(reopened.search(vectors.get(index), 5).join()).contains(deleted));
+            }
+
+            MetadataFilter filter = MetadataFilter.builder().documentId("d7").build();
+            List<SearchResult> filtered = reopened.search(vectors.get(100), 5, filter).join();
+            assertEquals(Arrays.asList("id7"), ids(filtered));
+        }
+    }
+
+    @Test
+    void testBackgroundMergeKeepsLiveVectors() {
+        List<float[]> vectors = randomVectors(new Random(4), 600);
+        try (SegmentedVectorStore store = newStore(50, 2)) {
+            insertAll(store, vectors.subList(0, 300));
+            store.flush();
+            store.deleteVectors(Arrays.asList("id0", "id1")).join();
+            insertAll(store, vectors.subList(300, 600), 300);
+            store.flush();
+            waitForSegments(store, 2);
+
+            assertEquals(598, store.size());
+            for (int i = 2; i < vectors.size(); i += 37) {
+                assertEquals("id" + i, store.search(vectors.get(i), 1).join().get(0).id);
+            }
+            assertNotEquals("id0", store.search(vectors.get(0), 1).join().get(0).id);
+        }
+
+        try (SegmentedVectorStore reopened = newStore(50, 2)) {
+            assertEquals(598, reopened.size());
+        }
+    }
+
+    @Test
+    void testSegmentsWithManyDeletesAreRewritten() {
+        List<float[]> vectors = randomVectors(new Random(6), 100);
+        try (SegmentedVectorStore store = newStore(50, 8)) {
+            insertAll(store, vectors);
+            store.flush();
+            assertEquals(2, store.segmentCount());
+            List<String> before = segmentFiles();
+
+            List<String> deleted = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                deleted.add("id" + i);
+            }
+            for (int i = 50; i < 100; i++) {
+                deleted.add("id" + i);
+            }
+            assertTrue(store.deleteVectors(deleted).join());
+            // 全部删除的段被丢弃，删除过半的段被重写
+            waitForSegments(store, 1);
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!Collections.disjoint(before, segmentFiles()) && System.currentTimeMillis() < deadline) {
+                Thread.yield();
+            }
+            assertTrue(Collections.disjoint(before, segmentFiles()));
+
+            assertEquals(30, store.size());
+            for (int i = 20; i < 50; i++) {
+                assertEquals("id" + i, store.search(vectors.get(i), 1).join().get(0).id);
+            }
+        }
+
+        try (SegmentedVectorStore reopened = newStore(50, 8)) {
+            assertEquals(30, reopened.size());
+        }
+    }
+
+    @Test
+    void testUpdateReplacesVectorInSealedSegment() {
+        try (SegmentedVectorStore store = newStore(10, 8)) {
+            float[] original = new float[DIMENSION];
+            float[] moved = new float[DIMENSION];
+            Arrays.fill(moved, 3f);
+            store.updateVector("doc", original, null).join();
+            store.flush();
+            assertEquals(1, store.segmentCount());
+
+            store.updateVector("doc", moved, "moved").join();
+            List<SearchResult> results = store.search(moved, 5).join();
+            assertEquals(1, results.size());
+            assertEquals("moved", results.get(0).metadata);
+            assertEquals(0.0, results.get(0).score, 1e-6);
+            assertEquals(1, store.size());
+        }
+    }
+
+    @Test
+    void testUpsertVectorsReplacesBatchDurably() {
+        List<float[]> vectors = randomVectors(new Random(8), 20);
+        List<String> ids = new ArrayList<>();
+        List<String> metadata = new ArrayList<>();
+        for (int i = 0; i < vectors.size(); i++) {
+            ids.add("id" + i);
+            metadata.add("v1");
+        }
+        try (SegmentedVectorStore store = newStore(10, 8)) {
+            assertTrue(store.upsertVectors(ids, vectors, metadata).join());
+            assertTrue(store.upsertVectors(ids.subList(0, 5), vectors.subList(0, 5),
+                Arrays.asList("v2", "v2", "v2", "v2", "v2")).join());
+            assertEquals(20, store.size());
+        }
+        try (SegmentedVectorStore reopened = newStore(10, 8)) {
+            assertEquals(20, reopened.size());
+            assertEquals("v2", reopened.search(vectors.get(3), 1).join().get(0).metadata);
+            assertEquals("v1", reopened.search(vectors.get(12), 1).join().get(0).metadata);
+        }
+    }
+
+    @Test
+    void testListEntriesReturnsLatestLiveCopies() {
+        List<float[]> vectors = randomVectors(new Random(9), 30);
+        try (SegmentedVectorStore store = newStore(10, 8)) {
+            for (int i = 0; i < vectors.size(); i++) {
+                store.insert("id" + i, vectors.get(i), "{\"knowledgeId\":\"kb" + (i % 2) + "\"}");
+            }
+            store.updateVector("id2", vectors.get(0), "{\"knowledgeId\":\"kb0\",\"content\":\"moved\"}").join();
+            assertTrue(store.deleteVectors(Arrays.asList("id4")).join());
+
+            MetadataFilter filter = MetadataFilter.builder().knowledgeId("kb0").build();
+            List<VectorEntry> entries = store.listEntries(filter).join();
+            assertEquals(14, entries.size());
+            for (VectorEntry entry : entries) {
+                assertNotEquals("id4", entry.id);
+                if ("id2".equals(entry.id)) {
+                    assertArrayEquals(vectors.get(0), entry.vector);
+                    assertTrue(entry.metadata.contains("moved"));
+                }
+            }
+            assertEquals(29, store.listEntries(null).join().size());
+        }
+    }
+
+    @Test
+    void testOpenCleansOrphanFilesAndRejectsMismatchedDimension() throws Exception {
+        try (SegmentedVectorStore store = newStore(10, 8)) {
+            insertAll(store, randomVectors(new Random(5), 5));
+        }
+        Files.write(tempDir.resolve("seg-99.vec"), new byte[16]);
+        Files.write(tempDir.resolve("seg-100.vec.tmp"), new byte[16]);
+
+        try (SegmentedVectorStore reopened = newStore(10, 8)) {
+            assertEquals(5, reopened.size());
+        }
+        assertFalse(Files.exists(tempDir.resolve("seg-99.vec")));
+        assertFalse(Files.exists(tempDir.resolve("seg-100.vec.tmp")));
+
+        assertThrows(IllegalArgumentException.class,
+            () -> SegmentedVectorStore.builder().directory(tempDir).dimension(DIMENSION * 2).build());
+    }
+
+    @Test
+    void testRecoversUnflushedWritesFromLog() {
+        List<float[]> vectors = randomVectors(new Random(6), 150);
+        // 不调用 close，模拟进程崩溃：100 条已写成段，其余只在日志中
+        SegmentedVectorStore crashed = newStore(100, 8);
+        assertTrue(crashed.addVectorsBatch(vectors.subList(0, 1), Arrays.asList("{\"documentId\":\"d0\"}"), 1).join());
+        for (int i = 1; i < vectors.size(); i++) {
+            assertTrue(crashed.updateVector("id" + i, vectors.get(i), null).join());
+        }
+        assertTrue(crashed.deleteVectors(Arrays.asList("id5", "id120")).join());
+        waitForSegments(crashed, 1);
+
+        try (SegmentedVectorStore recovered = newStore(100, 8)) {
+            assertEquals(148, recovered.size());
+            assertEquals("id140", recovered.search(vectors.get(140), 1).join().get(0).id);
+            assertNotEquals("id120", recovered.search(vectors.get(120), 1).join().get(0).id);
+            MetadataFilter filter = MetadataFilter.builder().documentId("d0").build();
+            assertEquals(1, recovered.search(vectors.get(0), 5, filter).join().size());
+        }
+    }
+
+    @Test
+    void testCheckpointRemovesCoveredLogs() throws Exception {
+        SegmentedVectorStore store = SegmentedVectorStore.builder()
+            .directory(tempDir)
+            .dimension(DIMENSION)
+            .tailCapacity(1000)
+            .checkpointBytes(4096)
+            .build();
+        try {
+            List<float[]> vectors = randomVectors(new Random(7), 200);
+            for (int i = 0; i < vectors.size(); i++) {
+                assertTrue(store.updateVector("id" + i, vectors.get(i), null).join());
+            }
+            store.flush();
+            assertTrue(store.segmentCount() >= 1);
+            long logBytes = 0;
+            try (DirectoryStream<Path> logs = Files.newDirectoryStream(tempDir, "wal-*.log")) {
+                for (Path log : logs) {
+                    logBytes += Files.size(log);
+                }
+            }
+            assertEquals(0, logBytes);
+        } finally {
+            store.close();
+        }
+        try (SegmentedVectorStore reopened = newStore(1000, 8)) {
+            assertEquals(200, reopened.size());
+        }
+    }
+
+    @Test
+    void testRetainChunksAcrossSegmentsAndTail() {
+        List<float[]> vectors = randomVectors(new Random(8), 150);
+        try (SegmentedVectorStore store = newStore(100, 8)) {
+            for (int i = 0; i < vectors.size(); i++) {
+                store.updateVector("id" + i, vectors.get(i), "{\"documentId\":\"d" + (i % 3) + "\"}").join();
+            }
+            // 前 100 条已写成段，其余仍在尾部
+            waitForSegments(store, 1);
+
+            assertTrue(store.retainChunks("d0", Arrays.asList("id0", "id120")).join());
+            assertEquals(102, store.size());
+            MetadataFilter filter = MetadataFilter.builder().documentId("d0").build();
+            List<String> remaining = ids(store.search(vectors.get(0), 10, filter).join());
+            Collections.sort(remaining);
+            assertEquals(Arrays.asList("id0", "id120"), remaining);
+        }
+
+        try (SegmentedVectorStore reopened = newStore(100, 8)) {
+            assertEquals(102, reopened.size());
+        }
+    }
+
+    @Test
+    void testExistingIdsAcrossSegmentsAndTail() {
+        List<float[]> vectors = randomVectors(new Random(9), 150);
+        try (SegmentedVectorStore store = newStore(100, 8)) {
+            insertAll(store, vectors);
+            waitForSegments(store, 1);
+            store.deleteVectors(Arrays.asList("id5", "id130")).join();
+
+            assertEquals(new HashSet<>(Arrays.asList("id0", "id120")),
+                store.existingIds(Arrays.asList("id0", "id5", "id120", "id130", "missing")).join());
+        }
+
+        try (SegmentedVectorStore reopened = newStore(100, 8)) {
+            assertEquals(new HashSet<>(Arrays.asList("id0", "id120")),
+                reopened.existingIds(Arrays.asList("id0", "id5", "id120", "id130")).join());
+        }
+    }
+
+    @Test
+    void testWriteErrorsCompleteExceptionally() {
+        try (SegmentedVectorStore store = newStore(100, 8)) {
+            CompletionException error = assertThrows(CompletionException.class,
+                () -> store.upsertVectors(Arrays.asList("a"), Arrays.asList(new float[]{1.0f}), Arrays.asList("m")).join());
+            assertInstanceOf(IllegalArgumentException.class, error.getCause());
+            assertEquals(0, store.size());
+        }
+    }
+
+    private SegmentedVectorStore newStore(int tailCapacity, int mergeFactor) {
+        return SegmentedVectorStore.builder()
+            .directory(tempDir)
+            .dimension(DIMENSION)
+            .tailCapacity(tailCapacity)
+            .mergeFactor(mergeFactor)
+            .build();
+    }
+
+    private static void insertAll(SegmentedVectorStore store, List<float[]> vectors) {
+        insertAll(store, vectors, 0);
+    }
+
+    private static void insertAll(SegmentedVectorStore store, List<float[]> vectors, int firstId) {
+        for (int i = 0; i < vectors.size(); i++) {
+            store.insert("id" + (firstId + i), vectors.get(i), null);
+        }
+    }
+
+    private static void waitForSegments(SegmentedVectorStore store, int expected) {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (store.segmentCount() != expected && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+        assertEquals(expected, store.segmentCount());
+    }
+
+    private List<String> segmentFiles() {
+        List<String> names = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(tempDir, "*" + VectorSegment.EXTENSION)) {
+            for (Path path : stream) {
+                names.add(path.getFileName().toString());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return names;
+    }
+
+    private static List<String> ids(List<SearchResult> results) {
+        List<String> ids = new ArrayList<>();
+        for (SearchResult result : results) {
+            ids.add(result.id);
+        }
+        return ids;
+    }
+
+    private static List<float[]> randomVectors(Random random, int count) {
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            float[] vector = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                vector[d] = random.nextFloat();
+            }
+            vectors.add(vector);
+        }
+        return vectors;
+    }
+
+    private static List<String> bruteForceTopK(List<float[]> vectors, float[] query, int topK) {
+        Integer[] order = new Integer[vectors.size()];
+        float[] distances = new float[vectors.size()];
+        for (int i = 0; i < vectors.size(); i++) {
+            order[i] = i;
+            distances[i] = DistanceMetric.L2.distance(query, 0, vectors.get(i), 0, DIMENSION);
+        }
+        Arrays.sort(order, (a, b) -> Float.compare(distances[a], distances[b]));
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < topK; i++) {
+            ids.add("id" + order[i]);
+        }
+        return ids;
+    }
+}
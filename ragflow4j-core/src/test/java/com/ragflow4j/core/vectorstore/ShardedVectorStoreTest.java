@@ -0,0 +1,181 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ShardedVectorStoreTest {
+    private static final int DIMENSION = 4;
+
+    private final List<FlatVectorStore> shards = new ArrayList<>();
+    private FlatVectorStore reference;
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 3; i++) {
+            shards.add(FlatVectorStore.builder().dimension(DIMENSION).build());
+        }
+        reference = FlatVectorStore.builder().dimension(DIMENSION).build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        shards.forEach(FlatVectorStore::close);
+        reference.close();
+    }
+
+    @Test
+    void testScatterGatherMatchesSingleStore() {
+        try (ShardedVectorStore store = ShardedVectorStore.builder()
+            .shards(shards)
+            .routing(ShardedVectorStore.Routing.ID_HASH)
+            .build()) {
+            Random random = new Random(3);
+            for (int i = 0; i < 300; i++) {
+                float[] vector = randomVector(random);
+                store.updateVector("v" + i, vector, "m" + i).join();
+                reference.updateVector("v" + i, vector, "m" + i).join();
+            }
+            for (FlatVectorStore shard : shards) {
+                assertTrue(shard.size() > 50);
+            }
+
+            List<float[]> queries = Arrays.asList(randomVector(random), randomVector(random));
+            List<List<SearchResult>> batch = store.searchBatch(queries, 10).join();
+            for (int q = 0; q < queries.size(); q++) {
+                List<String> expected = ids(reference.search(queries.get(q), 10).join());
+                assertEquals(expected, ids(store.search(queries.get(q), 10).join()));
+                assertEquals(expected, ids(batch.get(q)));
+            }
+
+            assertTrue(store.deleteVectors(Arrays.asList("v0", "v1")).join());
+            assertEquals(298, shards.stream().mapToInt(FlatVectorStore::size).sum());
+        }
+    }
+
+    @Test
+    void testKnowledgeRoutingKeepsTenantOnOneShard() {
+        try (ShardedVectorStore store = ShardedVectorStore.builder().shards(shards).build()) {
+            List<float[]> vectors = new ArrayList<>();
+            List<String> metadata = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                vectors.add(new float[]{i, 0, 0, 0});
+                metadata.add("{\"knowledgeId\":\"kb" + (i % 2) + "\",\"chunkIndex\":" + i + "}");
+            }
+            assertTrue(store.addVectors(vectors, metadata).join());
+
+            int owner0 = store.shardOf("any", metadata.get(0));
+            int owner1 = store.shardOf("any", metadata.get(1));
+            for (int s = 0; s < shards.size(); s++) {
+                int expected = (s == owner0 ? 20 : 0) + (s == owner1 ? 20 : 0);
+                assertEquals(expected, shards.get(s).size());
+            }
+
+            MetadataFilter filter = MetadataFilter.builder().knowledgeId("kb1").build();
+            List<SearchResult> results = store.search(new float[]{0, 0, 0, 0}, 3, filter).join();
+            assertEquals(3, results.size());
+            assertEquals(1.0, results.get(0).score, 1e-6);
+        }
+    }
+
+    @Test
+    void testSlowShardReturnsPartialResults() {
+        FlatVectorStore fast = shards.get(0);
+        fast.updateVector("a", new float[]{1, 0, 0, 0}, null).join();
+        VectorStore slow = new StalledStore(fast);
+
+        try (ShardedVectorStore store = ShardedVectorStore.builder()
+            .shard(fast)
+            .shard(slow)
+            .shardTimeout(50, TimeUnit.MILLISECONDS)
+            .build()) {
+            List<SearchResult> results = store.search(new float[]{1, 0, 0, 0}, 5).join();
+            assertEquals(Collections.singletonList("a"), ids(results));
+            assertEquals(1, store.getShardFailures());
+        }
+    }
+
+    @Test
+    void testMergeKeepsOrderAndDropsDuplicates() {
+        List<SearchResult> first = Arrays.asList(new SearchResult("a", 0.9), new SearchResult("b", 0.5));
+        List<SearchResult> second = Arrays.asList(new SearchResult("c", 0.8), new SearchResult("a", 0.7),
+            new SearchResult("d", 0.1));
+
+        List<SearchResult> merged = ShardedVectorStore.merge(Arrays.asList(first, second), 3, false);
+        assertEquals(Arrays.asList("a", "c", "b"), ids(merged));
+
+        // L2 分数越小越相似
+        List<SearchResult> nearest = Arrays.asList(new SearchResult("d", 0.1), new SearchResult("a", 0.7));
+        List<SearchResult> farther = Arrays.asList(new SearchResult("b", 0.5), new SearchResult("a", 0.9),
+            new SearchResult("c", 1.2));
+        merged = ShardedVectorStore.merge(Arrays.asList(nearest, farther), 10, true);
+        assertEquals(Arrays.asList("d", "b", "a", "c"), ids(merged));
+    }
+
+    private static float[] randomVector(Random random) {
+        float[] vector = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            vector[i] = random.nextFloat();
+        }
+        return vector;
+    }
+
+    private static List<String> ids(List<SearchResult> results) {
+        List<String> ids = new ArrayList<>();
+        for (SearchResult result : results) {
+            ids.add(result.id);
+        }
+        return ids;
+    }
+
+    /**
+     * 查询永远不返回的分片
+     */
+    private static final class StalledStore implements VectorStore {
+        private final VectorStore delegate;
+
+        StalledStore(VectorStore delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletableFuture<Boolean> addVectors(List<float[]> vectors, List<String> metadata) {
+            return delegate.addVectors(vectors, metadata);
+        }
+
+        @Override
+        public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<List<SearchResult>> search(float[] queryVector, int topK, MetadataFilter filter) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<List<List<SearchResult>>> searchBatch(List<float[]> queryVectors, int topK) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<Boolean> deleteVectors(List<String> ids) {
+            return delegate.deleteVectors(ids);
+        }
+
+        @Override
+        public CompletableFuture<Boolean> updateVector(String id, float[] vector, String metadata) {
+            return delegate.updateVector(id, vector, metadata);
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TieredVectorStoreTest {
+    private static final int DIMENSION = 8;
+
+    @TempDir
+    Path tempDir;
+
+    private HnswVectorStore hot;
+    private SegmentedVectorStore cold;
+    private TieredVectorStore store;
+    private final List<float[]> vectors = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        hot = HnswVectorStore.builder().dimension(DIMENSION).m(16).efConstruction(100).efSearch(100).build();
+        cold = SegmentedVectorStore.builder().directory(tempDir).dimension(DIMENSION).tailCapacity(64).build();
+        store = TieredVectorStore.builder().hot(hot).cold(cold).maxHotPartitions(1).build();
+
+        Random random = new Random(21);
+        List<String> ids = new ArrayList<>();
+        List<String> metadata = new ArrayList<>();
+        for (int i = 0; i < 90; i++) {
+            float[] vector = new float[DIMENSION];
+            for (int d = 0; d < DIMENSION; d++) {
+                vector[d] = random.nextFloat();
+            }
+            vectors.add(vector);
+            ids.add("v" + i);
+            metadata.add(metadata("kb" + (i % 3), i));
+        }
+        assertTrue(store.upsertVectors(ids, vectors, metadata).join());
+    }
+
+    @AfterEach
+    void tearDown() {
+        store.close();
+        hot.close();
+        cold.close();
+    }
+
+    @Test
+    void testFrequentPartitionIsPromotedAndServedFromHotTier() {
+        MetadataFilter kb1 = MetadataFilter.builder().knowledgeId("kb1").build();
+        List<SearchResult> before = store.search(vectors.get(1), 5, kb1).join();
+        store.search(vectors.get(4), 5, kb1).join();
+
+        store.rebalance();
+
+        assertEquals(Collections.singleton("kb1"), store.getHotPartitions());
+        assertEquals(30, hot.size());
+        assertEquals(ids(before), ids(store.search(vectors.get(1), 5, kb1).join()));
+        assertEquals(ids(before), ids(hot.search(vectors.get(1), 5, kb1).join()));
+    }
+
+    @Test
+    void testMixedFilterMergesBothTiers() {
+        MetadataFilter kb1 = MetadataFilter.builder().knowledgeId("kb1").build();
+        store.search(vectors.get(1), 5, kb1).join();
+        store.rebalance();
+
+        MetadataFilter mixed = MetadataFilter.builder().knowledgeId("kb1", "kb2").build();
+        List<SearchResult> expected = cold.search(vectors.get(2), 10, mixed).join();
+        assertEquals(ids(expected), ids(store.search(vectors.get(2), 10, mixed).join()));
+    }
+
+    @Test
+    void testWritesReachHotCopyAndDemotionDropsIt() {
+        MetadataFilter kb1 = MetadataFilter.builder().knowledgeId("kb1").build();
+        store.search(vectors.get(1), 5, kb1).join();
+        store.rebalance();
+
+        float[] moved = new float[DIMENSION];
+        Arrays.fill(moved, 5f);
+        assertTrue(store.updateVector("v1", moved, metadata("kb1", 1)).join());
+        assertEquals("v1", hot.search(moved, 1).join().get(0).id);
+        assertTrue(store.deleteVectors(Collections.singletonList("v4")).join());
+        assertEquals(29, hot.size());
+
+        // kb2 的访问超过衰减后的 kb1，热分区切换
+        MetadataFilter kb2 = MetadataFilter.builder().knowledgeId("kb2").build();
+        for (int i = 0; i < 3; i++) {
+            store.search(vectors.get(2), 5, kb2).join();
+        }
+        store.rebalance();
+
+        assertEquals(Collections.singleton("kb2"), store.getHotPartitions());
+        assertEquals(30, hot.size());
+        List<SearchResult> results = store.search(moved, 1, kb1).join();
+        assertEquals("v1", results.get(0).id);
+        assertEquals(0.0, results.get(0).score, 1e-6);
+    }
+
+    @Test
+    void testRetainChunksDropsStaleHotCopies() {
+        MetadataFilter kb1 = MetadataFilter.builder().knowledgeId("kb1").build();
+        store.search(vectors.get(1), 5, kb1).join();
+        store.rebalance();
+
+        String chunk0 = "{\"knowledgeId\":\"kb1\",\"documentId\":\"doc\",\"chunkIndex\":0}";
+        String chunk1 = "{\"knowledgeId\":\"kb1\",\"documentId\":\"doc\",\"chunkIndex\":1}";
+        assertTrue(store.upsertVectors(Arrays.asList("c0", "c1"), Arrays.asList(vectors.get(0), vectors.get(3)),
+            Arrays.asList(chunk0, chunk1)).join());
+        assertEquals(32, hot.size());
+
+        assertTrue(store.retainChunks("doc", Collections.singletonList("c0")).join());
+        assertEquals(31, hot.size());
+        assertEquals(Collections.singleton("c0"), hot.existingIds(Arrays.asList("c0", "c1")).join());
+        assertEquals(Collections.singleton("c0"), cold.getVectors(Arrays.asList("c0", "c1")).join().keySet());
+    }
+
+    @Test
+    void testPromotionCopiesInBatches() {
+        TieredVectorStore batched = TieredVectorStore.builder().hot(hot).cold(cold).copyBatchSize(7).build();
+        MetadataFilter kb2 = MetadataFilter.builder().knowledgeId("kb2").build();
+        batched.search(vectors.get(2), 5, kb2).join();
+        batched.rebalance();
+
+        assertEquals(Collections.singleton("kb2"), batched.getHotPartitions());
+        assertEquals(30, hot.size());
+        batched.close();
+    }
+
+    @Test
+    void testColdTierMustSupportListEntries() {
+        HnswVectorStore unsupported = HnswVectorStore.builder().dimension(DIMENSION).build();
+        try {
+            assertThrows(IllegalArgumentException.class,
+                () -> TieredVectorStore.builder().hot(hot).cold(unsupported).build());
+        } finally {
+            unsupported.close();
+        }
+    }
+
+    private static String metadata(String knowledgeId, int chunkIndex) {
+        return "{\"knowledgeId\":\"" + knowledgeId + "\",\"chunkIndex\":" + chunkIndex + "}";
+    }
+
+    private static List<String> ids(List<SearchResult> results) {
+        List<String> ids = new ArrayList<>();
+        for (SearchResult result : results) {
+            ids.add(result.id);
+        }
+        return ids;
+    }
+}
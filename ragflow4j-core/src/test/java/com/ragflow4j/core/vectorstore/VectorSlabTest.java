@@ -0,0 +1,80 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorSlabTest {
+
+    @Test
+    void testFloat32RoundTrip() {
+        VectorSlab slab = VectorSlab.create(VectorEncoding.FLOAT32, 2, 3);
+        slab.set(1, new float[]{9f, 1f, 2f, 3f}, 1);
+
+        float[] decoded = new float[3];
+        slab.decode(1, decoded, 0);
+        assertArrayEquals(new float[]{1f, 2f, 3f}, decoded);
+        assertEquals(14f, slab.distance(DistanceMetric.L2, new float[]{0f, 0f, 0f}, 0, 1), 1e-6);
+    }
+
+    @Test
+    void testInt8QuantizationError() {
+        int dimension = 64;
+        VectorSlab slab = VectorSlab.create(VectorEncoding.INT8, 1, dimension);
+        float[] vector = randomVector(new Random(1), dimension);
+        slab.set(0, vector, 0);
+
+        float maxAbs = 0f;
+        for (float v : vector) {
+            maxAbs = Math.max(maxAbs, Math.abs(v));
+        }
+        float[] decoded = new float[dimension];
+        slab.decode(0, decoded, 0);
+        // 每维误差不超过半个量化步长
+        for (int i = 0; i < dimension; i++) {
+            assertEquals(vector[i], decoded[i], maxAbs / 127f / 2f + 1e-6f);
+        }
+    }
+
+    @Test
+    void testInt8AsymmetricDistanceMatchesDecoded() {
+        int dimension = 32;
+        Random random = new Random(2);
+        VectorSlab slab = VectorSlab.create(VectorEncoding.INT8, 1, dimension);
+        float[] vector = randomVector(random, dimension);
+        float[] query = randomVector(random, dimension);
+        slab.set(0, vector, 0);
+        float[] decoded = new float[dimension];
+        slab.decode(0, decoded, 0);
+
+        for (DistanceMetric metric : DistanceMetric.values()) {
+            float expected = metric.distance(query, 0, decoded, 0, dimension);
+            assertEquals(expected, slab.distance(metric, query, 0, 0), 1e-4, metric.name());
+            // 与原始向量的距离也应足够接近
+            assertEquals(metric.distance(query, 0, vector, 0, dimension), expected, 0.05 * dimension, metric.name());
+        }
+    }
+
+    @Test
+    void testInt8ZeroVector() {
+        VectorSlab slab = VectorSlab.create(VectorEncoding.INT8, 1, 4);
+        slab.set(0, new float[4], 0);
+        assertEquals(4f, slab.distance(DistanceMetric.L2, new float[]{1f, 1f, 1f, 1f}, 0, 0), 1e-6);
+    }
+
+    @Test
+    void testBytesPerVector() {
+        assertEquals(4096, VectorEncoding.FLOAT32.bytesPerVector(1024));
+        assertEquals(1028, VectorEncoding.INT8.bytesPerVector(1024));
+    }
+
+    private static float[] randomVector(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+        }
+        return vector;
+    }
+}
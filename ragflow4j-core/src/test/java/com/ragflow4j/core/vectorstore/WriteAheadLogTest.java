@@ -0,0 +1,102 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteAheadLogTest {
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testReplayReturnsRecordsInOrder() {
+        try (WriteAheadLog wal = new WriteAheadLog(tempDir, 0, true, 0)) {
+            wal.append(WriteAheadLog.upsert("a", new float[]{1f, 2f}, "{\"title\":\"a\"}"));
+            wal.append(WriteAheadLog.upsert("b", new float[]{3f, 4f}, null));
+            wal.append(WriteAheadLog.delete("a")).join();
+        }
+
+        List<WriteAheadLog.Record> records = new ArrayList<>();
+        assertEquals(0, WriteAheadLog.replay(tempDir, records::add));
+        assertEquals(3, records.size());
+        assertEquals("a", records.get(0).id);
+        assertArrayEquals(new float[]{1f, 2f}, records.get(0).vector);
+        assertEquals("{\"title\":\"a\"}", records.get(0).metadata);
+        assertNull(records.get(1).metadata);
+        assertTrue(records.get(2).delete);
+    }
+
+    @Test
+    void testConcurrentAppendsShareCommits() throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(8);
+        try (WriteAheadLog wal = new WriteAheadLog(tempDir, 0, true, 2)) {
+            List<CompletableFuture<Void>> commits = new ArrayList<>();
+            List<CompletableFuture<?>> appends = new ArrayList<>();
+            for (int i = 0; i < 400; i++) {
+                String id = "id" + i;
+                appends.add(CompletableFuture.runAsync(() -> {
+                    CompletableFuture<Void> commit = wal.append(WriteAheadLog.upsert(id, new float[4], null));
+                    synchronized (commits) {
+                        commits.add(commit);
+                    }
+                }, writers));
+            }
+            CompletableFuture.allOf(appends.toArray(new CompletableFuture[0])).join();
+            CompletableFuture.allOf(commits.toArray(new CompletableFuture[0])).join();
+            // 同一组内的记录共享一个 future，组数应远少于记录数
+            assertTrue(commits.stream().distinct().count() < 400);
+        } finally {
+            writers.shutdown();
+        }
+
+        List<WriteAheadLog.Record> records = new ArrayList<>();
+        WriteAheadLog.replay(tempDir, records::add);
+        assertEquals(400, records.size());
+    }
+
+    @Test
+    void testReplayTruncatesTornTail() throws Exception {
+        try (WriteAheadLog wal = new WriteAheadLog(tempDir, 3, true, 0)) {
+            wal.append(WriteAheadLog.upsert("a", new float[]{1f}, null));
+            wal.append(WriteAheadLog.upsert("b", new float[]{2f}, null)).join();
+        }
+        Path file = tempDir.resolve("wal-3.log");
+        long validSize = Files.size(file);
+        // 模拟写到一半时崩溃：只有长度和部分内容
+        Files.write(file, new byte[]{0, 0, 0, 40, 1, 2, 3, 4, 5}, StandardOpenOption.APPEND);
+
+        List<WriteAheadLog.Record> records = new ArrayList<>();
+        assertEquals(3, WriteAheadLog.replay(tempDir, records::add));
+        assertEquals(2, records.size());
+        assertEquals(validSize, Files.size(file));
+    }
+
+    @Test
+    void testRotateAndDeleteBefore() {
+        try (WriteAheadLog wal = new WriteAheadLog(tempDir, 0, false, 0)) {
+            wal.append(WriteAheadLog.delete("old")).join();
+            long generation = wal.rotate();
+            wal.append(WriteAheadLog.delete("new")).join();
+            assertTrue(wal.bytesSinceRotate() > 0);
+
+            wal.deleteBefore(generation);
+            assertFalse(Files.exists(tempDir.resolve("wal-0.log")));
+            assertTrue(Files.exists(tempDir.resolve("wal-" + generation + ".log")));
+        }
+
+        List<WriteAheadLog.Record> records = new ArrayList<>();
+        WriteAheadLog.replay(tempDir, records::add);
+        assertEquals(1, records.size());
+        assertEquals("new", records.get(0).id);
+    }
+}
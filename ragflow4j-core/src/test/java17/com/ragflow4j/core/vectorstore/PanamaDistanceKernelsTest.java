@@ -0,0 +1,57 @@
+package com.ragflow4j.core.vectorstore;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 只在 simd-kernels profile 中以 --add-modules jdk.incubator.vector 单独运行
+ */
+class PanamaDistanceKernelsTest {
+    private static final int OFFSET = 5;
+
+    @Test
+    void testLoaderSelectsPanamaKernels() {
+        assertInstanceOf(PanamaDistanceKernels.class, KernelLoader.load());
+        assertInstanceOf(PanamaDistanceKernels.class, DistanceKernels.INSTANCE);
+    }
+
+    /**
+     * 覆盖不足一个寄存器宽度、恰好整数倍和带余数的长度，以及非零起始位置
+     */
+    @Test
+    void testMatchesScalarKernels() {
+        PanamaDistanceKernels panama = new PanamaDistanceKernels();
+        ScalarDistanceKernels scalar = new ScalarDistanceKernels();
+        Random random = new Random(7);
+        for (int length = 0; length <= 300; length++) {
+            float[] a = randomFloats(random, length + OFFSET);
+            float[] b = randomFloats(random, length + OFFSET);
+            byte[] codes = new byte[length + OFFSET];
+            random.nextBytes(codes);
+            float scale = 0.01f;
+
+            String message = "length " + length;
+            assertEquals(scalar.dot(a, OFFSET, b, OFFSET, length), panama.dot(a, OFFSET, b, OFFSET, length), 1e-3,
+                message);
+            assertEquals(scalar.squareDistance(a, OFFSET, b, OFFSET, length),
+                panama.squareDistance(a, OFFSET, b, OFFSET, length), 1e-3, message);
+            assertEquals(scalar.cosine(a, OFFSET, b, OFFSET, length), panama.cosine(a, OFFSET, b, OFFSET, length),
+                1e-5, message);
+            assertEquals(scalar.dot(a, OFFSET, codes, OFFSET, length), panama.dot(a, OFFSET, codes, OFFSET, length),
+                1e-1, message);
+            assertEquals(scalar.squareDistance(a, OFFSET, codes, OFFSET, scale, length),
+                panama.squareDistance(a, OFFSET, codes, OFFSET, scale, length), 1e-3, message);
+        }
+    }
+
+    private static float[] randomFloats(Random random, int length) {
+        float[] values = new float[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = random.nextFloat() * 2f - 1f;
+        }
+        return values;
+    }
+}
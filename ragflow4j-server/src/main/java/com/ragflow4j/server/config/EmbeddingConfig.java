@@ -0,0 +1,35 @@
+package com.ragflow4j.server.config;
+
+import com.ragflow4j.core.embedding.CachingDocumentEmbedding;
+import com.ragflow4j.core.embedding.DocumentEmbedding;
+import com.ragflow4j.core.embedding.onnx.OnnxEmbeddingModel;
+import com.ragflow4j.core.embedding.onnx.PoolingMode;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Paths;
+
+/**
+ * 嵌入模型配置类，文档向量化和检索共用同一个模型
+ */
+@Configuration
+public class EmbeddingConfig {
+
+    @Bean
+    public DocumentEmbedding documentEmbedding(
+            @Value("${embedding.model-path}") String modelPath,
+            @Value("${embedding.tokenizer-path}") String tokenizerPath,
+            @Value("${embedding.pooling-mode:MEAN}") PoolingMode poolingMode) {
+        OnnxEmbeddingModel model = OnnxEmbeddingModel.builder()
+                .pathToModel(Paths.get(modelPath))
+                .pathToTokenizer(Paths.get(tokenizerPath))
+                .poolingMode(poolingMode)
+                .autoThreads()
+                .build();
+        // 重新上传内容相同的分块和重复的查询不再重复推理
+        return CachingDocumentEmbedding.builder()
+                .delegate(model)
+                .build();
+    }
+}
@@ -3,18 +3,23 @@ package com.ragflow4j.server.controller;
 import com.ragflow4j.server.entity.Document;
 import com.ragflow4j.server.entity.DocumentProcessStatus;
 import com.ragflow4j.server.entity.Knowledge;
+import com.ragflow4j.server.exception.ResourceNotFoundException;
 import com.ragflow4j.server.service.KnowledgeService;
 import com.ragflow4j.server.service.DocumentService;
+import com.ragflow4j.server.vectorstore.KnowledgeVectorStores;
 import com.ragflow4j.core.loader.DocumentLoader;
 import com.ragflow4j.core.loader.DocumentLoaderFactory;
 import com.ragflow4j.core.parser.DocumentParser;
 import com.ragflow4j.core.parser.DocumentParserFactory;
 import com.ragflow4j.core.parser.ParseResult;
+import com.ragflow4j.core.retriever.RetrievalResult;
 import com.ragflow4j.core.splitter.DocumentSplitter;
 import com.ragflow4j.core.splitter.SplitterFactory;
+import com.ragflow4j.core.vectorstore.ChunkIds;
 import com.ragflow4j.core.vectorstore.VectorStore;
 import com.ragflow4j.core.vectorstore.SearchResult;
 import com.ragflow4j.core.embedding.DocumentEmbedding;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
@@ -39,8 +44,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 
@@ -55,14 +64,18 @@ public class DocumentController {
 
     private final DocumentService documentService;
     private final KnowledgeService knowledgeService;
-    private final VectorStore vectorStore;
+    private final KnowledgeVectorStores vectorStores;
+    private final DocumentEmbedding documentEmbedding;
     private final Path fileStorageLocation;
+    private final ObjectMapper objectMapper = new ObjectMapper();
     
     @Autowired
-    public DocumentController(DocumentService documentService, KnowledgeService knowledgeService, VectorStore vectorStore) {
+    public DocumentController(DocumentService documentService, KnowledgeService knowledgeService,
+                              KnowledgeVectorStores vectorStores, DocumentEmbedding documentEmbedding) {
         this.documentService = documentService;
         this.knowledgeService = knowledgeService;
-        this.vectorStore = vectorStore;
+        this.vectorStores = vectorStores;
+        this.documentEmbedding = documentEmbedding;
         this.fileStorageLocation = Paths.get("./uploads").toAbsolutePath().normalize();
         try {
             Files.createDirectories(this.fileStorageLocation);
@@ -217,6 +230,17 @@ public class DocumentController {
                 .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
     }
     
+    @GetMapping("/{knowledgeBaseId}/retrieve")
+    @ApiOperation("在知识库内检索文本块")
+    public ResponseEntity<List<RetrievalResult>> retrieve(
+            @ApiParam("知识库ID") @PathVariable Long knowledgeBaseId,
+            @ApiParam("查询文本") @RequestParam String query,
+            @ApiParam("返回结果数量") @RequestParam(defaultValue = "5") int topK) {
+        return knowledgeService.findKnowledgeById(knowledgeBaseId)
+                .map(knowledge -> new ResponseEntity<>(vectorStores.retriever(knowledge).retrieve(query, topK), HttpStatus.OK))
+                .orElse(new ResponseEntity<>(HttpStatus.NOT_FOUND));
+    }
+    
     /**
      * 异步处理文档：加载、解析、切分和向量化
      * 
@@ -262,27 +286,53 @@ public class DocumentController {
                 
                 try {
                     // 使用DocumentEmbedding服务将文本块转换为向量
-                    List<float[]> vectors = new ArrayList<>();
+                    List<String> ids = new ArrayList<>();
+                    List<String> texts = new ArrayList<>();
                     List<String> metadatas = new ArrayList<>();
                     
+                    // 按知识库的向量编码取得对应的向量存储；异步线程中没有会话，重新加载知识库而不是访问懒加载的关联
+                    Long knowledgeKey = document.getKnowledge() != null ? document.getKnowledge().getId() : null;
+                    Knowledge knowledge = knowledgeKey == null ? null : knowledgeService.findKnowledgeById(knowledgeKey)
+                            .orElseThrow(() -> new ResourceNotFoundException("Knowledge not found", knowledgeKey));
+                    VectorStore vectorStore = vectorStores.get(knowledge);
+                    
+                    // 写入知识库ID，检索时可以按知识库过滤
+                    String knowledgeId = knowledge.getId().toString();
+                    String documentId = document.getId().toString();
+                    // 分块ID由文档ID、序号和内容决定，重新索引时内容未变化的分块不再向量化
+                    List<String> chunkIds = new ArrayList<>(chunks.size());
                     for (int i = 0; i < chunks.size(); i++) {
+                        chunkIds.add(ChunkIds.of(documentId, i, chunks.get(i)));
+                    }
+                    Set<String> existingIds = vectorStore.existingIds(chunkIds).get();
+                    for (int i = 0; i < chunks.size(); i++) {
+                        if (existingIds.contains(chunkIds.get(i))) {
+                            continue;
+                        }
                         String chunk = chunks.get(i);
-                        // 构建元数据JSON
-                        String metadata = String.format("{\"documentId\":\"%s\",\"chunkIndex\":%d,\"title\":\"%s\"}", 
-                                document.getId().toString(), i, document.getTitle());
-                        
-                        // 将文本转换为向量
-                        float[] vector = vectorStore instanceof DocumentEmbedding ? 
-                                ((DocumentEmbedding) vectorStore).embed(chunk) : 
-                                new float[0]; // 如果vectorStore不是DocumentEmbedding的实例，则使用空向量
+                        // 构建元数据JSON，同时保存文本块内容，检索时直接返回
+                        Map<String, Object> fields = new LinkedHashMap<>();
+                        fields.put("knowledgeId", knowledgeId);
+                        fields.put("documentId", documentId);
+                        fields.put("chunkIndex", i);
+                        fields.put("title", document.getTitle());
+                        fields.put(SearchResult.CONTENT, chunk);
+                        String metadata = objectMapper.writeValueAsString(fields);
                         
-                        vectors.add(vector);
+                        ids.add(chunkIds.get(i));
+                        texts.add(chunk);
                         metadatas.add(metadata);
                     }
                     
-                    // 将向量存储到向量数据库
-                    CompletableFuture<Boolean> future = vectorStore.addVectors(vectors, metadatas);
+                    // 新增或变化的分块一次批量转换为向量
+                    List<float[]> vectors = texts.isEmpty() ? Collections.emptyList() : documentEmbedding.embedBatch(texts);
+                    
+                    // 已存在的分块在上面跳过，直接按分块ID写入新增或变化的分块，再清理文档中已不存在的旧分块
+                    CompletableFuture<Boolean> future = vectorStore.upsertVectors(ids, vectors, metadatas);
                     Boolean result = future.get(); // 等待向量存储完成
+                    if (result && !vectorStore.retainChunks(documentId, chunkIds).get()) {
+                        throw new RuntimeException("Failed to remove stale chunks from vector database");
+                    }
                     
                     if (result) {
                         // 更新文档状态为已向量化
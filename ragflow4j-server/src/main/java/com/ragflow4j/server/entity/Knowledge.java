@@ -1,5 +1,6 @@
 package com.ragflow4j.server.entity;
 
+import com.ragflow4j.core.vectorstore.VectorEncoding;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.AllArgsConstructor;
@@ -57,6 +58,13 @@ public class Knowledge {
     @Column(columnDefinition = "JSON")
     private String metadata;
 
+    /**
+     * 进程内向量存储的向量编码，创建后不可修改
+     */
+    @Column(name = "vector_encoding", nullable = false, updatable = false, length = 20)
+    @Enumerated(EnumType.STRING)
+    private VectorEncoding vectorEncoding;
+
     /**
      * 知识库类型
      */
@@ -79,6 +87,9 @@ public class Knowledge {
         if (chunkOverlap == null) {
             chunkOverlap = 200;
         }
+        if (vectorEncoding == null) {
+            vectorEncoding = VectorEncoding.FLOAT32;
+        }
     }
 
     @PreUpdate
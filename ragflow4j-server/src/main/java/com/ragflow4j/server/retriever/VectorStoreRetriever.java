@@ -1,12 +1,17 @@
 package com.ragflow4j.server.retriever;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.ragflow4j.core.embedding.DocumentEmbedding;
 import com.ragflow4j.core.retriever.ContentRetriever;
 import com.ragflow4j.core.retriever.RetrievalResult;
 import com.ragflow4j.core.retriever.RetrieverType;
+import com.ragflow4j.core.vectorstore.MaximalMarginalRelevance;
+import com.ragflow4j.core.vectorstore.MetadataFilter;
 import com.ragflow4j.core.vectorstore.SearchResult;
 import com.ragflow4j.core.vectorstore.VectorStore;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -24,6 +29,10 @@ public class VectorStoreRetriever implements ContentRetriever {
     private final ExecutorService executorService;
     private final DocumentEmbedding documentEmbedding;
     private final int threadPoolSize;
+    private final Double mmrLambda;
+    private final int mmrFetchFactor;
+    private final MetadataFilter defaultFilter;
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     /**
      * 使用Builder模式创建VectorStoreRetriever实例
@@ -34,6 +43,9 @@ public class VectorStoreRetriever implements ContentRetriever {
         this.vectorStore = builder.vectorStore;
         this.documentEmbedding = builder.documentEmbedding;
         this.threadPoolSize = builder.threadPoolSize;
+        this.mmrLambda = builder.mmrLambda;
+        this.mmrFetchFactor = builder.mmrFetchFactor;
+        this.defaultFilter = builder.defaultFilter;
         this.executorService = Executors.newFixedThreadPool(this.threadPoolSize);
     }
     
@@ -47,6 +59,9 @@ public class VectorStoreRetriever implements ContentRetriever {
         this.vectorStore = vectorStore;
         this.documentEmbedding = documentEmbedding;
         this.threadPoolSize = Runtime.getRuntime().availableProcessors();
+        this.mmrLambda = null;
+        this.mmrFetchFactor = Builder.DEFAULT_MMR_FETCH_FACTOR;
+        this.defaultFilter = null;
         this.executorService = Executors.newFixedThreadPool(this.threadPoolSize);
     }
     
@@ -59,14 +74,37 @@ public class VectorStoreRetriever implements ContentRetriever {
         return new Builder();
     }
 
+    /**
+     * 检索时使用 {@link Builder#defaultFilter(MetadataFilter)} 设置的过滤条件，未设置时不过滤
+     *
+     * @param query 查询文本
+     * @param topK 返回结果数量
+     * @return 检索结果
+     */
     @Override
     public List<RetrievalResult> retrieve(String query, int topK) {
+        return retrieve(query, topK, defaultFilter);
+    }
+
+    /**
+     * 按元数据过滤条件检索，例如只在某个知识库或文档内检索
+     * <p>
+     * 通过 {@link Builder#mmrLambda(double)} 启用 MMR 时，结果会经过多样性重选。
+     *
+     * @param query 查询文本
+     * @param topK 返回结果数量
+     * @param filter 元数据过滤条件，为 null 时不过滤
+     * @return 检索结果
+     */
+    public List<RetrievalResult> retrieve(String query, int topK, MetadataFilter filter) {
         try {
             // 将查询文本转换为向量
             float[] queryVector = convertQueryToVector(query);
             
             // 执行向量检索
-            List<SearchResult> searchResults = vectorStore.search(queryVector, topK).join();
+            List<SearchResult> searchResults = mmrLambda != null
+                ? searchDiverse(queryVector, topK, filter, mmrLambda)
+                : vectorStore.search(queryVector, topK, filter).join();
             
             // 转换结果
             return convertSearchResults(searchResults);
@@ -80,6 +118,38 @@ public class VectorStoreRetriever implements ContentRetriever {
         }
     }
 
+    /**
+     * 以最大边际相关性（MMR）检索：多取回 topK 的若干倍候选，再用存储中的向量选出相关且互不重复的 topK 个分块，
+     * 同样的上下文预算可以容纳更多不同的内容
+     *
+     * @param query 查询文本
+     * @param topK 返回结果数量
+     * @param filter 元数据过滤条件，为 null 时不过滤
+     * @param lambda 相关性与多样性的权衡，取值 [0, 1]，1 等价于普通检索
+     * @return 检索结果
+     */
+    public List<RetrievalResult> retrieveDiverse(String query, int topK, MetadataFilter filter, double lambda) {
+        try {
+            float[] queryVector = convertQueryToVector(query);
+            return convertSearchResults(searchDiverse(queryVector, topK, filter, lambda));
+        } catch (Exception e) {
+            throw new RuntimeException("Error during vector search", e);
+        }
+    }
+
+    private List<SearchResult> searchDiverse(float[] queryVector, int topK, MetadataFilter filter, double lambda) {
+        List<SearchResult> candidates = vectorStore.search(queryVector, topK * mmrFetchFactor, filter).join();
+        if (candidates.size() <= 1) {
+            return candidates;
+        }
+        List<String> ids = new ArrayList<>(candidates.size());
+        for (SearchResult candidate : candidates) {
+            ids.add(candidate.id);
+        }
+        Map<String, float[]> vectors = vectorStore.getVectors(ids).join();
+        return MaximalMarginalRelevance.select(queryVector, candidates, vectors, topK, lambda);
+    }
+
     @Override
     public CompletableFuture<List<RetrievalResult>> retrieveAsync(String query, int topK) {
         return CompletableFuture.supplyAsync(() -> retrieve(query, topK), executorService);
@@ -94,12 +164,13 @@ public class VectorStoreRetriever implements ContentRetriever {
         List<RetrievalResult> results = new ArrayList<>();
         
         for (SearchResult result : searchResults) {
-            Map<String, Object> metadata = new HashMap<>();
+            Map<String, Object> metadata = parseMetadata(result.metadata);
+            metadata.remove(SearchResult.CONTENT);
             metadata.put("id", result.id);
             
             results.add(new RetrievalResult(
-                result.id, // 暂时使用ID作为内容
-                result.data instanceof Double ? (Double) result.data : ((Float) result.data).doubleValue(), // 处理Float到Double的转换
+                result.content != null ? result.content : result.id, // 没有保存文本块内容时退回使用ID
+                result.score,
                 metadata,
                 RetrieverType.VECTOR
             ));
@@ -108,6 +179,20 @@ public class VectorStoreRetriever implements ContentRetriever {
         return results;
     }
 
+    private Map<String, Object> parseMetadata(String metadata) {
+        if (metadata == null || metadata.isEmpty()) {
+            return new HashMap<>();
+        }
+        try {
+            return objectMapper.readValue(metadata, new TypeReference<HashMap<String, Object>>() {});
+        } catch (IOException e) {
+            // 非 JSON 格式的元数据原样保留
+            Map<String, Object> raw = new HashMap<>();
+            raw.put("metadata", metadata);
+            return raw;
+        }
+    }
+
     // 实现查询文本到向量的转换
     private float[] convertQueryToVector(String query) {
         // 使用DocumentEmbedding接口将文本转换为向量
@@ -124,7 +209,12 @@ public class VectorStoreRetriever implements ContentRetriever {
     public static class Builder {
         private VectorStore vectorStore;
         private DocumentEmbedding documentEmbedding;
+        private static final int DEFAULT_MMR_FETCH_FACTOR = 4;
+
         private int threadPoolSize = Runtime.getRuntime().availableProcessors();
+        private Double mmrLambda;
+        private int mmrFetchFactor = DEFAULT_MMR_FETCH_FACTOR;
+        private MetadataFilter defaultFilter;
         
         /**
          * 设置向量存储实例
@@ -159,6 +249,40 @@ public class VectorStoreRetriever implements ContentRetriever {
             return this;
         }
         
+        /**
+         * 启用 MMR 多样性重选，retrieve 返回的结果不再是简单的相似度前 topK
+         *
+         * @param mmrLambda 相关性与多样性的权衡，取值 [0, 1]，越小越偏向多样性
+         * @return Builder实例
+         */
+        public Builder mmrLambda(double mmrLambda) {
+            this.mmrLambda = mmrLambda;
+            return this;
+        }
+
+        /**
+         * 设置 MMR 候选数量相对 topK 的倍数，默认 4
+         *
+         * @param mmrFetchFactor 候选倍数
+         * @return Builder实例
+         */
+        public Builder mmrFetchFactor(int mmrFetchFactor) {
+            this.mmrFetchFactor = mmrFetchFactor;
+            return this;
+        }
+
+        /**
+         * 设置 {@link VectorStoreRetriever#retrieve(String, int)} 使用的过滤条件，例如限定在某个知识库内检索；
+         * 显式传入过滤条件的检索不使用该条件
+         *
+         * @param defaultFilter 元数据过滤条件
+         * @return Builder实例
+         */
+        public Builder defaultFilter(MetadataFilter defaultFilter) {
+            this.defaultFilter = defaultFilter;
+            return this;
+        }
+
         /**
          * 构建VectorStoreRetriever实例
          * 
@@ -171,6 +295,12 @@ public class VectorStoreRetriever implements ContentRetriever {
             if (documentEmbedding == null) {
                 throw new IllegalStateException("DocumentEmbedding must not be null");
             }
+            if (mmrLambda != null && (mmrLambda < 0 || mmrLambda > 1)) {
+                throw new IllegalStateException("mmrLambda must be between 0 and 1");
+            }
+            if (mmrFetchFactor < 1) {
+                throw new IllegalStateException("mmrFetchFactor must be at least 1");
+            }
             return new VectorStoreRetriever(this);
         }
     }
@@ -0,0 +1,132 @@
+package com.ragflow4j.server.vectorstore;
+
+import com.ragflow4j.core.embedding.DocumentEmbedding;
+import com.ragflow4j.core.vectorstore.HnswVectorStore;
+import com.ragflow4j.core.vectorstore.MetadataFilter;
+import com.ragflow4j.core.vectorstore.SegmentedVectorStore;
+import com.ragflow4j.core.vectorstore.TieredVectorStore;
+import com.ragflow4j.core.vectorstore.VectorEncoding;
+import com.ragflow4j.core.vectorstore.VectorStore;
+import com.ragflow4j.server.entity.Knowledge;
+import com.ragflow4j.server.retriever.VectorStoreRetriever;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按知识库管理向量存储和检索器
+ * <p>
+ * 每个知识库对应一个 {@link TieredVectorStore}：冷层是 {@code directory/knowledge-<id>} 下的 {@link SegmentedVectorStore}，
+ * 保存全部数据并在重启后恢复；热层是按知识库的 vectorEncoding 创建的 {@link HnswVectorStore}，
+ * 知识库被检索后由后台重新平衡从冷层复制进来。编码在知识库创建后不可修改，因此存储创建后不需要再检查编码是否变化。
+ * 向量维度取自注入的 {@link DocumentEmbedding}，写入和检索使用同一个模型。
+ */
+@Component
+public class KnowledgeVectorStores {
+
+    private static final long REBALANCE_INTERVAL_SECONDS = 30;
+    private static final int RETRIEVER_THREADS = 2;
+
+    private final DocumentEmbedding documentEmbedding;
+    private final int dimension;
+    private final Path directory;
+    // 升级时冷层扫描的回调在冷层线程中同步等待热层写入，两层共用一个线程池会在线程用尽时死锁
+    private final ExecutorService coldExecutor;
+    private final ExecutorService hotExecutor;
+    private final Map<Long, KnowledgeStore> stores = new ConcurrentHashMap<>();
+
+    public KnowledgeVectorStores(DocumentEmbedding documentEmbedding,
+                                 @Value("${vector-store.directory:./vector-stores}") String directory) {
+        this.documentEmbedding = documentEmbedding;
+        this.dimension = documentEmbedding.getDimension();
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+        this.coldExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        this.hotExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 获取知识库的向量存储，不存在时按知识库的编码创建
+     *
+     * @param knowledge 知识库
+     * @return 向量存储
+     */
+    public VectorStore get(Knowledge knowledge) {
+        return storeOf(knowledge).tiered;
+    }
+
+    /**
+     * 获取在知识库内检索的检索器，与 {@link #get(Knowledge)} 使用同一个向量存储
+     * <p>
+     * 检索默认带知识库过滤条件，查询才会路由到热层；不带该条件的查询只在冷层精确扫描。
+     *
+     * @param knowledge 知识库
+     * @return 检索器
+     */
+    public VectorStoreRetriever retriever(Knowledge knowledge) {
+        return storeOf(knowledge).retriever;
+    }
+
+    private KnowledgeStore storeOf(Knowledge knowledge) {
+        if (knowledge == null || knowledge.getId() == null) {
+            throw new IllegalArgumentException("knowledge must be persisted before storing vectors");
+        }
+        return stores.computeIfAbsent(knowledge.getId(), id -> new KnowledgeStore(id,
+            knowledge.getVectorEncoding() != null ? knowledge.getVectorEncoding() : VectorEncoding.FLOAT32));
+    }
+
+    @PreDestroy
+    public void close() {
+        stores.values().forEach(KnowledgeStore::close);
+        stores.clear();
+        coldExecutor.shutdown();
+        hotExecutor.shutdown();
+    }
+
+    private final class KnowledgeStore {
+        final SegmentedVectorStore cold;
+        final HnswVectorStore hot;
+        final TieredVectorStore tiered;
+        final VectorStoreRetriever retriever;
+
+        KnowledgeStore(Long knowledgeId, VectorEncoding encoding) {
+            this.cold = SegmentedVectorStore.builder()
+                .directory(directory.resolve("knowledge-" + knowledgeId))
+                .dimension(dimension)
+                .executor(coldExecutor)
+                .build();
+            this.hot = HnswVectorStore.builder()
+                .dimension(dimension)
+                .encoding(encoding)
+                .executor(hotExecutor)
+                .build();
+            // 每个知识库单独一个存储，热层只需要容纳这一个分区
+            this.tiered = TieredVectorStore.builder()
+                .hot(hot)
+                .cold(cold)
+                .maxHotPartitions(1)
+                .rebalanceInterval(REBALANCE_INTERVAL_SECONDS, TimeUnit.SECONDS)
+                .build();
+            this.retriever = VectorStoreRetriever.builder()
+                .vectorStore(tiered)
+                .documentEmbedding(documentEmbedding)
+                .threadPoolSize(RETRIEVER_THREADS)
+                .defaultFilter(MetadataFilter.builder().knowledgeId(knowledgeId.toString()).build())
+                .build();
+        }
+
+        void close() {
+            retriever.close();
+            tiered.close();
+            hot.close();
+            cold.close();
+        }
+    }
+}
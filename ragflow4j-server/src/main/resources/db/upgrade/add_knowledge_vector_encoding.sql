@@ -0,0 +1,9 @@
+-- 为已有的 knowledge_bases 表增加 vector_encoding 列
+-- schema.sql 使用 CREATE TABLE IF NOT EXISTS，不会修改已经存在的表；升级已有数据库时需要手动执行本脚本一次
+-- 已有的知识库按原来的 float 存储，默认值为 FLOAT32
+
+ALTER TABLE knowledge_bases
+    ADD COLUMN vector_encoding VARCHAR(20) NOT NULL DEFAULT 'FLOAT32';
+
+ALTER TABLE knowledge_bases
+    ADD CONSTRAINT chk_kb_vector_encoding CHECK (vector_encoding IN ('FLOAT32', 'INT8'));
@@ -30,8 +30,10 @@ CREATE TABLE IF NOT EXISTS knowledge_bases (
     chunk_size INT NOT NULL DEFAULT 1000,
     chunk_overlap INT NOT NULL DEFAULT 200,
     metadata JSON,
+    vector_encoding VARCHAR(20) NOT NULL DEFAULT 'FLOAT32',
     CONSTRAINT fk_kb_created_by FOREIGN KEY (created_by) REFERENCES users(id),
-    CONSTRAINT chk_kb_status CHECK (status IN ('ACTIVE', 'INACTIVE', 'ARCHIVED'))
+    CONSTRAINT chk_kb_status CHECK (status IN ('ACTIVE', 'INACTIVE', 'ARCHIVED')),
+    CONSTRAINT chk_kb_vector_encoding CHECK (vector_encoding IN ('FLOAT32', 'INT8'))
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_unicode_ci;
 
 -- 文档表
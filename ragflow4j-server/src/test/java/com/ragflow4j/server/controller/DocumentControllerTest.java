@@ -0,0 +1,194 @@
+package com.ragflow4j.server.controller;
+
+import com.ragflow4j.core.embedding.DocumentEmbedding;
+import com.ragflow4j.core.retriever.RetrievalResult;
+import com.ragflow4j.core.vectorstore.TieredVectorStore;
+import com.ragflow4j.core.vectorstore.VectorEncoding;
+import com.ragflow4j.server.entity.Document;
+import com.ragflow4j.server.entity.DocumentProcessStatus;
+import com.ragflow4j.server.entity.Knowledge;
+import com.ragflow4j.server.service.DocumentService;
+import com.ragflow4j.server.service.KnowledgeService;
+import com.ragflow4j.server.vectorstore.KnowledgeVectorStores;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+class DocumentControllerTest {
+
+    private static final String CONTENT = "Apples and pears grow in the orchard behind the farm house.\n\n"
+            + "Segment files keep every vector durable on disk across restarts.\n\n"
+            + "The harbour ferry leaves at noon and returns before sunset.";
+
+    @Mock
+    private DocumentService documentService;
+
+    @Mock
+    private KnowledgeService knowledgeService;
+
+    @TempDir
+    Path directory;
+
+    private final DocumentEmbedding embedding = new HashingEmbedding(64);
+    private final Knowledge knowledge = Knowledge.builder().id(1L).vectorEncoding(VectorEncoding.INT8).build();
+    private KnowledgeVectorStores vectorStores;
+    private DocumentController documentController;
+
+    @BeforeEach
+    void setUp() {
+        MockitoAnnotations.openMocks(this);
+        when(knowledgeService.findKnowledgeById(1L)).thenReturn(Optional.of(knowledge));
+        when(documentService.saveDocument(any(Document.class))).thenAnswer(invocation -> {
+            Document document = invocation.getArgument(0);
+            if (document.getId() == null) {
+                document.setId(100L);
+            }
+            return document;
+        });
+        vectorStores = new KnowledgeVectorStores(embedding, directory.toString());
+        documentController = new DocumentController(documentService, knowledgeService, vectorStores, embedding);
+    }
+
+    @AfterEach
+    void tearDown() {
+        vectorStores.close();
+    }
+
+    @Test
+    void testUploadVectorizeAndRetrieve() throws Exception {
+        MockMultipartFile file = new MockMultipartFile("file", "notes.txt", "text/plain",
+                CONTENT.getBytes(StandardCharsets.UTF_8));
+
+        ResponseEntity<Document> response = documentController.uploadDocument(file, 1L, "text/plain");
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        Document document = response.getBody();
+        try {
+            awaitProcessed(document);
+            assertEquals(DocumentProcessStatus.VECTORIZED, document.getProcessStatus(), document.getFailureReason());
+
+            // 冷层检索
+            assertDurableChunkFound(documentController.retrieve(1L, "durable segment files on disk", 1));
+
+            // 知识库升级到按 INT8 编码的热层后结果不变
+            TieredVectorStore store = (TieredVectorStore) vectorStores.get(knowledge);
+            store.rebalance();
+            assertTrue(store.getHotPartitions().contains("1"));
+            assertDurableChunkFound(documentController.retrieve(1L, "durable segment files on disk", 1));
+
+            // 重启后从磁盘恢复
+            vectorStores.close();
+            vectorStores = new KnowledgeVectorStores(embedding, directory.toString());
+            assertDurableChunkFound(vectorStores.retriever(knowledge).retrieve("durable segment files on disk", 1));
+        } finally {
+            Files.deleteIfExists(Paths.get(document.getFilePath()));
+        }
+    }
+
+    @Test
+    void testRetrieveFromUnknownKnowledge() {
+        when(knowledgeService.findKnowledgeById(2L)).thenReturn(Optional.empty());
+
+        ResponseEntity<List<RetrievalResult>> response = documentController.retrieve(2L, "query", 1);
+
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+    }
+
+    private static void assertDurableChunkFound(ResponseEntity<List<RetrievalResult>> response) {
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertDurableChunkFound(response.getBody());
+    }
+
+    private static void assertDurableChunkFound(List<RetrievalResult> results) {
+        assertEquals(1, results.size());
+        assertTrue(results.get(0).getContent().startsWith("Segment files"), results.get(0).getContent());
+        assertEquals("1", results.get(0).getMetadata().get("knowledgeId"));
+        assertEquals("100", results.get(0).getMetadata().get("documentId"));
+    }
+
+    private static void awaitProcessed(Document document) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (document.getProcessStatus() != DocumentProcessStatus.VECTORIZED
+                && document.getProcessStatus() != DocumentProcessStatus.FAILED
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * 把单词哈希到固定维度并归一化，词重叠越多的文本越接近
+     */
+    private static final class HashingEmbedding implements DocumentEmbedding {
+        private final int dimension;
+
+        HashingEmbedding(int dimension) {
+            this.dimension = dimension;
+        }
+
+        @Override
+        public float[] embed(String text) {
+            float[] vector = new float[dimension];
+            for (String word : text.toLowerCase().split("[^a-z]+")) {
+                if (!word.isEmpty()) {
+                    vector[Math.floorMod(word.hashCode(), dimension)] += 1;
+                }
+            }
+            float norm = 0;
+            for (float value : vector) {
+                norm += value * value;
+            }
+            norm = (float) Math.sqrt(norm);
+            for (int i = 0; i < dimension && norm > 0; i++) {
+                vector[i] /= norm;
+            }
+            return vector;
+        }
+
+        @Override
+        public CompletableFuture<float[]> embedAsync(String text) {
+            return CompletableFuture.completedFuture(embed(text));
+        }
+
+        @Override
+        public List<float[]> embedBatch(List<String> texts) {
+            List<float[]> vectors = new ArrayList<>(texts.size());
+            for (String text : texts) {
+                vectors.add(embed(text));
+            }
+            return vectors;
+        }
+
+        @Override
+        public CompletableFuture<List<float[]>> embedBatchAsync(List<String> texts) {
+            return CompletableFuture.completedFuture(embedBatch(texts));
+        }
+
+        @Override
+        public int getDimension() {
+            return dimension;
+        }
+
+        @Override
+        public String getModelName() {
+            return "hashing";
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.ragflow4j.server.retriever;
 import com.ragflow4j.core.embedding.DocumentEmbedding;
 import com.ragflow4j.core.retriever.RetrievalResult;
 import com.ragflow4j.core.retriever.RetrieverType;
+import com.ragflow4j.core.vectorstore.MetadataFilter;
 import com.ragflow4j.core.vectorstore.SearchResult;
 import com.ragflow4j.core.vectorstore.VectorStore;
 import org.junit.jupiter.api.BeforeEach;
@@ -11,12 +12,16 @@ import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class VectorStoreRetrieverTest {
@@ -40,6 +45,8 @@ class VectorStoreRetrieverTest {
 
         when(vectorStore.search(any(float[].class), anyInt()))
                 .thenReturn(CompletableFuture.completedFuture(searchResults));
+        when(vectorStore.search(any(float[].class), anyInt(), any()))
+                .thenReturn(CompletableFuture.completedFuture(searchResults));
 
         // 设置模拟文档嵌入的行为
         when(documentEmbedding.embed(any(String.class)))
@@ -75,6 +82,80 @@ class VectorStoreRetrieverTest {
         assertEquals(RetrieverType.VECTOR, results.get(0).getSourceType());
     }
 
+    @Test
+    void testRetrieveUsesStoredContentAndMetadata() {
+        SearchResult hit = new SearchResult("vec1", 0.8,
+                "{\"documentId\":\"doc1\",\"chunkIndex\":2,\"content\":\"chunk text\"}", "chunk text");
+        when(vectorStore.search(any(float[].class), anyInt(), any()))
+                .thenReturn(CompletableFuture.completedFuture(Arrays.asList(hit)));
+        vectorStoreRetriever = new VectorStoreRetriever(vectorStore, documentEmbedding);
+
+        List<RetrievalResult> results = vectorStoreRetriever.retrieve("test query", 1);
+
+        assertEquals("chunk text", results.get(0).getContent());
+        assertEquals(0.8, results.get(0).getScore(), 0.0001);
+        assertEquals("vec1", results.get(0).getMetadata().get("id"));
+        assertEquals("doc1", results.get(0).getMetadata().get("documentId"));
+        assertEquals(2, results.get(0).getMetadata().get("chunkIndex"));
+        assertFalse(results.get(0).getMetadata().containsKey("content"));
+    }
+
+    @Test
+    void testRetrieveWithFilter() {
+        vectorStoreRetriever = new VectorStoreRetriever(vectorStore, documentEmbedding);
+        MetadataFilter filter = MetadataFilter.builder().knowledgeId("kb1").build();
+
+        List<RetrievalResult> results = vectorStoreRetriever.retrieve("test query", 2, filter);
+
+        assertEquals(2, results.size());
+        verify(vectorStore).search(any(float[].class), eq(2), eq(filter));
+    }
+
+    @Test
+    void testRetrieveUsesDefaultFilter() {
+        MetadataFilter filter = MetadataFilter.builder().knowledgeId("kb1").build();
+        vectorStoreRetriever = VectorStoreRetriever.builder()
+                .vectorStore(vectorStore)
+                .documentEmbedding(documentEmbedding)
+                .defaultFilter(filter)
+                .build();
+
+        vectorStoreRetriever.retrieve("test query", 2);
+
+        verify(vectorStore).search(any(float[].class), eq(2), eq(filter));
+    }
+
+    @Test
+    void testRetrieveWithMmrSkipsNearDuplicates() {
+        List<SearchResult> candidates = Arrays.asList(
+                new SearchResult("a1", 0.99), new SearchResult("a2", 0.98),
+                new SearchResult("a3", 0.97), new SearchResult("b", 0.60));
+        Map<String, float[]> vectors = new HashMap<>();
+        vectors.put("a1", new float[]{1f, 0.10f, 0f});
+        vectors.put("a2", new float[]{1f, 0.11f, 0f});
+        vectors.put("a3", new float[]{1f, 0.12f, 0f});
+        vectors.put("b", new float[]{0.2f, 1f, 0f});
+        when(vectorStore.search(any(float[].class), eq(8), any()))
+                .thenReturn(CompletableFuture.completedFuture(candidates));
+        when(vectorStore.getVectors(any()))
+                .thenReturn(CompletableFuture.completedFuture(vectors));
+        when(documentEmbedding.embed(any(String.class)))
+                .thenReturn(new float[]{1f, 0.3f, 0f});
+
+        vectorStoreRetriever = VectorStoreRetriever.builder()
+                .vectorStore(vectorStore)
+                .documentEmbedding(documentEmbedding)
+                .mmrLambda(0.5)
+                .build();
+        List<RetrievalResult> results = vectorStoreRetriever.retrieve("test query", 2);
+
+        assertEquals(2, results.size());
+        assertEquals("a3", results.get(0).getContent());
+        assertEquals("b", results.get(1).getContent());
+        assertEquals(0.60, results.get(1).getScore(), 0.0001);
+        verify(vectorStore).search(any(float[].class), eq(8), any());
+    }
+
     @Test
     void testRetrieveAsync() {
         // 使用Builder模式创建VectorStoreRetriever